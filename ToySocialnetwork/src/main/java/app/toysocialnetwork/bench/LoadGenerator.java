@@ -0,0 +1,264 @@
+package app.toysocialnetwork.bench;
+
+import app.toysocialnetwork.repository.durable.DurableStore;
+import app.toysocialnetwork.repository.durable.FsyncPolicy;
+import app.toysocialnetwork.repository.snapshot.ColumnarSnapshot;
+import app.toysocialnetwork.service.Service;
+import app.toysocialnetwork.service.ServiceFactory;
+import app.toysocialnetwork.utils.Config;
+import app.toysocialnetwork.utils.OperationScope;
+import app.toysocialnetwork.utils.metrics.LatencyHistogram;
+import app.toysocialnetwork.utils.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates a synthetic social graph, then replays a mix of user actions against the service
+ * from several threads and reports the throughput and latency percentiles of every action.
+ * <p>
+ * Options, all given as {@code --name=value}:
+ * <pre>
+ * --backend=memory|jdbc     the repositories to run against (memory)
+ * --users=N                 the number of users to generate (1000)
+ * --alpha=A                 the power-law exponent of the friend count distribution (2.5)
+ * --min-degree=N            the smallest number of friends a user starts (1)
+ * --max-degree=N            the largest number of friends a user starts (200)
+ * --messages=N              the number of messages to generate (10000)
+ * --threads=N               the number of concurrent simulated users (16)
+ * --warmup=S                seconds to run before measuring (5)
+ * --duration=S              seconds to measure (30)
+ * --seed=N                  the random seed, for reproducible graphs and workloads (42)
+ * --mix=op=w,...            the relative weight of each operation
+ *                           (login=30,request=10,accept=10,chat=20,profile=30)
+ * --ingest-batch=N          send chat messages through the write-behind ingestion path,
+ *                           saving up to N messages per transaction; 0 saves each one right away (0)
+ * --durable-dir=DIR         make the memory backend durable, logging its changes and snapshots to DIR;
+ *                           the state left there by a previous run is restored first (none)
+ * --fsync=POLICY            when the log of a durable backend is forced: per-write, group or interval (group)
+ * --snapshot=FILE           restore the memory backend from a columnar snapshot instead of generating a graph;
+ *                           if FILE does not exist, the generated graph is written to it (none)
+ * </pre>
+ * e.g. {@code gradle runLoadGenerator --args="--backend=jdbc --users=100000 --threads=64"}
+ */
+public class LoadGenerator {
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    private final Service service;
+    private final SocialGraph graph;
+    private final Map<Operation, Integer> mix;
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+
+    /**
+     * Constructor for LoadGenerator
+     * @param service the service the workload runs against
+     * @param graph the users and friendships the workload picks from
+     * @param mix the relative weight of each operation; operations missing from it are not run
+     */
+    public LoadGenerator(Service service, SocialGraph graph, Map<Operation, Integer> mix) {
+        this.service = service;
+        this.graph = graph;
+        this.mix = mix;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            errors.put(operation, new AtomicLong());
+        }
+    }
+
+    /**
+     * Run the workload: every thread is a simulated user that does one operation after the other
+     * @param threads the number of simulated users
+     * @param warmupSeconds how long to run before latencies are recorded
+     * @param durationSeconds how long to record latencies
+     * @param seed the random seed; every thread derives its own from it
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public void run(int threads, long warmupSeconds, long durationSeconds, long seed) throws InterruptedException {
+        List<Operation> weighted = new ArrayList<>();
+        mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(operation);
+            }
+        });
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("The workload mix is empty.");
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed + t);
+            workers.execute(() -> {
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    Operation operation = weighted.get(random.nextInt(weighted.size()));
+                    OperationScope scope = OperationScope.open(operation.key());
+                    try {
+                        operation.run(service, graph, random);
+                    } catch (RuntimeException e) {
+                        errors.get(operation).incrementAndGet();
+                    } finally {
+                        scope.close();
+                    }
+                    if (now >= measureFrom) {
+                        latencies.get(operation).record(System.nanoTime() - now);
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(warmupSeconds + durationSeconds + 60, TimeUnit.SECONDS);
+        report(durationSeconds);
+    }
+
+    private void report(long durationSeconds) {
+        System.out.printf("%-10s %10s %10s %10s %10s %10s %10s %8s%n",
+                "operation", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors");
+        long totalCount = 0;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = latencies.get(operation);
+            if (!mix.containsKey(operation)) {
+                continue;
+            }
+            totalCount += histogram.count();
+            System.out.printf("%-10s %10d %10.1f %10.3f %10.3f %10.3f %10.3f %8d%n",
+                    operation.key(), histogram.count(), (double) histogram.count() / durationSeconds,
+                    millis(histogram.percentile(PERCENTILES[0])), millis(histogram.percentile(PERCENTILES[1])),
+                    millis(histogram.percentile(PERCENTILES[2])), millis(histogram.max()),
+                    errors.get(operation).get());
+        }
+        System.out.printf("%-10s %10d %10.1f%n", "total", totalCount, (double) totalCount / durationSeconds);
+        System.out.println();
+        System.out.print(MetricsRegistry.getInstance().getDump());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "backend", "memory", "users", "1000", "alpha", "2.5", "min-degree", "1", "max-degree", "200",
+                "messages", "10000", "threads", "16", "warmup", "5", "duration", "30", "seed", "42"));
+        options.put("ingest-batch", "0");
+        options.put("durable-dir", "");
+        options.put("fsync", "group");
+        options.put("snapshot", "");
+        options.put("mix", "login=30,request=10,accept=10,chat=20,profile=30");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0 || !options.containsKey(arg.substring(2, eq))) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", expected --name=value with name one of " + options.keySet());
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        DurableStore durableStore = options.get("durable-dir").isEmpty() ? null : new DurableStore(
+                Path.of(options.get("durable-dir")),
+                FsyncPolicy.valueOf(options.get("fsync").toUpperCase(Locale.ROOT).replace('-', '_')),
+                Config.getLong("memory.durable.fsyncIntervalMillis"),
+                Config.getLong("memory.durable.snapshotBytes"));
+        Path snapshotFile = options.get("snapshot").isEmpty() ? null : Path.of(options.get("snapshot"));
+        ColumnarSnapshot snapshot = snapshotFile != null && Files.exists(snapshotFile) ? ColumnarSnapshot.open(snapshotFile) : null;
+        long restoreStart = System.nanoTime();
+        ServiceFactory.Backend backend = null;
+        Service service;
+        switch (options.get("backend")) {
+            case "memory" -> service = ServiceFactory.memory(snapshot, durableStore);
+            case "jdbc" -> {
+                if (durableStore != null || snapshot != null) {
+                    throw new IllegalArgumentException("Only the memory backend can be made durable or restored from a snapshot");
+                }
+                backend = ServiceFactory.fromConfig();
+                service = backend.service();
+            }
+            default -> throw new IllegalArgumentException("Unknown backend " + options.get("backend") + ", expected memory or jdbc");
+        }
+        long seed = Long.parseLong(options.get("seed"));
+        int ingestBatch = Integer.parseInt(options.get("ingest-batch"));
+        if (ingestBatch > 0) {
+            service.startMessageIngestion(Config.getInt("messages.ingest.capacity"), ingestBatch,
+                    Config.getLong("messages.ingest.flushMillis"));
+        }
+
+        SocialGraph graph;
+        if (snapshot != null) {
+            graph = snapshotGraph(snapshot);
+            System.out.printf("Restored %d users and %d friendships from %s in %.1f s%n",
+                    graph.userCount(), graph.friendshipCount(), snapshotFile, (System.nanoTime() - restoreStart) / 1e9);
+        } else {
+            long generationStart = System.nanoTime();
+            graph = new SocialGraphGenerator(service, new Random(seed)).generate(
+                    Integer.parseInt(options.get("users")),
+                    Double.parseDouble(options.get("alpha")),
+                    Integer.parseInt(options.get("min-degree")),
+                    Integer.parseInt(options.get("max-degree")),
+                    Integer.parseInt(options.get("messages")));
+            System.out.printf("Generated %d users and %d friendships in %.1f s%n",
+                    graph.userCount(), graph.friendshipCount(), (System.nanoTime() - generationStart) / 1e9);
+            if (snapshotFile != null) {
+                service.dumpSnapshot(snapshotFile);
+            }
+        }
+
+        new LoadGenerator(service, graph, parseMix(options.get("mix"))).run(
+                Integer.parseInt(options.get("threads")),
+                Long.parseLong(options.get("warmup")),
+                Long.parseLong(options.get("duration")),
+                seed);
+        service.stopMessageIngestion();
+        if (backend != null) {
+            backend.close();
+        }
+        if (durableStore != null) {
+            durableStore.close();
+        }
+    }
+
+    /**
+     * Build the graph the workload picks from out of the user and friendship columns of a snapshot
+     */
+    private static SocialGraph snapshotGraph(ColumnarSnapshot snapshot) {
+        long[] userIds = new long[snapshot.userCount()];
+        for (int row = 0; row < userIds.length; row++) {
+            userIds[row] = snapshot.userId(row);
+        }
+        long[] friendPairs = new long[2 * snapshot.friendshipCount()];
+        for (int row = 0; row < snapshot.friendshipCount(); row++) {
+            friendPairs[2 * row] = snapshot.friendshipUser1Id(row);
+            friendPairs[2 * row + 1] = snapshot.friendshipUser2Id(row);
+        }
+        return new SocialGraph(userIds, snapshot.usernames(), friendPairs);
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry " + entry + ", expected operation=weight");
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(Operation.fromKey(parts[0].trim()), weight);
+            }
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,32 @@
+package app.toysocialnetwork.bench;
+
+import java.util.Random;
+
+/**
+ * Random chat messages made of common words, so full-text search has realistic terms to match
+ */
+class MessageTexts {
+    private static final String[] WORDS = {
+            "hello", "hi", "how", "are", "you", "today", "tomorrow", "meeting", "lunch", "coffee",
+            "project", "deadline", "weekend", "movie", "game", "thanks", "sure", "later", "call", "tonight",
+            "great", "idea", "see", "soon", "party", "music", "trip", "photos", "exam", "work"
+    };
+
+    private MessageTexts() {
+    }
+
+    /**
+     * @return a message of 3 to 12 random words
+     */
+    static String random(Random random) {
+        int length = 3 + random.nextInt(10);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
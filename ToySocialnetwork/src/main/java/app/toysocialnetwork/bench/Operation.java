@@ -0,0 +1,126 @@
+package app.toysocialnetwork.bench;
+
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.service.Service;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The user actions a workload is made of, each doing the service calls the GUI does for that action
+ */
+public enum Operation {
+    /**
+     * Log in and open the main window: look up the user, then load the friends and the received requests
+     */
+    LOGIN("login") {
+        @Override
+        void run(Service service, SocialGraph graph, Random random) {
+            service.findUserByUsername(graph.randomUsername(random)).ifPresent(user -> {
+                service.getFriendshipsOfUser(user.getId());
+                service.getRequestsByReceiver(user.getId());
+            });
+        }
+    },
+
+    /**
+     * Send a friend request to a random user; being refused (already friends or already requested) is normal
+     */
+    SEND_REQUEST("request") {
+        @Override
+        void run(Service service, SocialGraph graph, Random random) {
+            long senderId = graph.randomUserId(random);
+            long receiverId = graph.randomUserId(random);
+            if (senderId == receiverId) {
+                return;
+            }
+            try {
+                service.addRequest(senderId, receiverId);
+            } catch (IllegalStateException e) {
+                // refused by the service, not a failure of the run
+            }
+        }
+    },
+
+    /**
+     * Open the requests tab and accept the oldest request, if there is one
+     */
+    ACCEPT_REQUEST("accept") {
+        @Override
+        void run(Service service, SocialGraph graph, Random random) {
+            long receiverId = graph.randomUserId(random);
+            Iterable<Request> requests = service.getRequestsByReceiver(receiverId);
+            for (Request request : requests) {
+                service.acceptRequest(request.getSenderId(), receiverId);
+                return;
+            }
+        }
+    },
+
+    /**
+     * Open a conversation and send a burst of messages back and forth, waiting until all of them are saved
+     */
+    CHAT_BURST("chat") {
+        @Override
+        void run(Service service, SocialGraph graph, Random random) {
+            long[] pair = graph.randomFriendPair(random);
+            if (pair == null) {
+                return;
+            }
+            service.getRecentMessagesBetweenUsers(pair[0], pair[1]);
+            int burst = 1 + random.nextInt(5);
+            CompletableFuture<?>[] sent = new CompletableFuture<?>[burst];
+            for (int i = 0; i < burst; i++) {
+                boolean forward = i % 2 == 0;
+                sent[i] = service.addMessageAsync(forward ? pair[0] : pair[1], forward ? pair[1] : pair[0], MessageTexts.random(random));
+            }
+            CompletableFuture.allOf(sent).join();
+        }
+    },
+
+    /**
+     * View another user's profile: the user, their friends and the requests the viewer has pending
+     */
+    PROFILE_VIEW("profile") {
+        @Override
+        void run(Service service, SocialGraph graph, Random random) {
+            long viewerId = graph.randomUserId(random);
+            service.getUserById(graph.randomUserId(random)).ifPresent(user -> {
+                service.getFriendshipsOfUser(user.getId());
+                service.getRequestsToUser(viewerId);
+            });
+        }
+    };
+
+    private final String key;
+
+    Operation(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the name of the operation in the workload mix, e.g. "chat"
+     */
+    public String key() {
+        return key;
+    }
+
+    /**
+     * Find an operation by its name in the workload mix
+     * @param key the name
+     * @return the operation
+     * @throws IllegalArgumentException if there is no such operation
+     */
+    public static Operation fromKey(String key) throws IllegalArgumentException {
+        for (Operation operation : values()) {
+            if (operation.key.equals(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + key + ", expected one of "
+                + Arrays.stream(values()).map(Operation::key).toList());
+    }
+
+    abstract void run(Service service, SocialGraph graph, Random random);
+}
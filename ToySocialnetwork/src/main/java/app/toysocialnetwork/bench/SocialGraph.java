@@ -0,0 +1,54 @@
+package app.toysocialnetwork.bench;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The synthetic users and friendships a workload runs against.
+ * Created once by {@link SocialGraphGenerator} and only read afterwards, so it is shared between workers.
+ * Ids are kept in primitive arrays, so even a graph of millions of friendships is a few flat arrays.
+ */
+public class SocialGraph {
+    private final long[] userIds;
+    private final List<String> usernames;
+    private final long[] friendPairs;
+
+    /**
+     * Constructor for SocialGraph
+     * @param userIds the ids of the generated users
+     * @param usernames the usernames of the generated users, in the same order
+     * @param friendPairs the pairs of user ids that are friends, flattened: the i-th pair is at 2i and 2i + 1
+     */
+    public SocialGraph(long[] userIds, List<String> usernames, long[] friendPairs) {
+        this.userIds = userIds;
+        this.usernames = usernames;
+        this.friendPairs = friendPairs;
+    }
+
+    public int userCount() {
+        return userIds.length;
+    }
+
+    public int friendshipCount() {
+        return friendPairs.length / 2;
+    }
+
+    public long randomUserId(Random random) {
+        return userIds[random.nextInt(userIds.length)];
+    }
+
+    public String randomUsername(Random random) {
+        return usernames.get(random.nextInt(usernames.size()));
+    }
+
+    /**
+     * @return a random pair of friends, or null if nobody has friends
+     */
+    public long[] randomFriendPair(Random random) {
+        if (friendPairs.length == 0) {
+            return null;
+        }
+        int pair = 2 * random.nextInt(friendPairs.length / 2);
+        return new long[]{friendPairs[pair], friendPairs[pair + 1]};
+    }
+}
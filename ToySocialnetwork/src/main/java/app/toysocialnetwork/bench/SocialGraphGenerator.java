@@ -0,0 +1,115 @@
+package app.toysocialnetwork.bench;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.User;
+import app.toysocialnetwork.service.Service;
+import app.toysocialnetwork.utils.collections.LongList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Builds a synthetic social graph through the service.
+ * Degrees follow a power law: most users have a handful of friends and a few have very many,
+ * as in real social networks. Half of the friends of a user are picked in proportion to their
+ * current degree (preferential attachment), so the popular users are also the well-connected ones.
+ */
+public class SocialGraphGenerator {
+    private static final int PROGRESS_INTERVAL = 10_000;
+
+    private final Service service;
+    private final Random random;
+
+    /**
+     * Constructor for SocialGraphGenerator
+     * @param service the service the graph is created through
+     * service must not be null
+     * @param random the source of randomness; a seeded one makes the graph reproducible
+     */
+    public SocialGraphGenerator(Service service, Random random) {
+        this.service = service;
+        this.random = random;
+    }
+
+    /**
+     * Generate users, friendships between them and messages between friends
+     * @param users the number of users
+     * @param alpha the power-law exponent of the degree distribution; must be greater than 1, smaller is more skewed
+     * @param minDegree the smallest number of friends a user starts
+     * @param maxDegree the largest number of friends a user starts
+     * @param messages the number of messages, spread over random pairs of friends
+     * @return the generated graph
+     */
+    public SocialGraph generate(int users, double alpha, int minDegree, int maxDegree, int messages) {
+        // a run tag keeps the usernames unique when generating into a database that already has users
+        String runTag = Long.toString(System.currentTimeMillis() % 1_679_616, 36);
+        LongList userIds = new LongList(users);
+        List<String> usernames = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            String username = "lg" + runTag + "_" + i;
+            Optional<User> saved = service.addUser(new User("Load", "Tester", username, "password"));
+            if (saved.isPresent()) {
+                userIds.add(saved.get().getId());
+                usernames.add(username);
+            }
+            progress("users", i + 1);
+        }
+
+        // each user appears here once per friendship, so a uniform pick is a pick proportional to degree
+        // friend pairs are stored flat: user ids at 2i and 2i + 1
+        LongList endpoints = new LongList();
+        LongList friendPairs = new LongList();
+        for (int u = 0; u < userIds.size(); u++) {
+            long userId = userIds.get(u);
+            int degree = Math.min(sampleDegree(alpha, minDegree, maxDegree), userIds.size() - 1);
+            for (int k = 0; k < degree; k++) {
+                long friendId = !endpoints.isEmpty() && random.nextBoolean()
+                        ? endpoints.get(random.nextInt(endpoints.size()))
+                        : userIds.get(random.nextInt(userIds.size()));
+                if (friendId == userId) {
+                    continue;
+                }
+                try {
+                    Optional<Friendship> friendship = service.addFriendship(userId, friendId);
+                    if (friendship.isPresent()) {
+                        friendPairs.add(userId);
+                        friendPairs.add(friendId);
+                        endpoints.add(userId);
+                        endpoints.add(friendId);
+                        progress("friendships", friendPairs.size() / 2);
+                    }
+                } catch (IllegalStateException e) {
+                    // already friends; the degree is a target, not a promise
+                }
+            }
+        }
+
+        for (int i = 0; i < messages && !friendPairs.isEmpty(); i++) {
+            int pair = 2 * random.nextInt(friendPairs.size() / 2);
+            boolean forward = random.nextBoolean();
+            long from = friendPairs.get(forward ? pair : pair + 1);
+            long to = friendPairs.get(forward ? pair + 1 : pair);
+            service.addMessage(from, to, MessageTexts.random(random));
+            progress("messages", i + 1);
+        }
+
+        return new SocialGraph(userIds.toArray(), usernames, friendPairs.toArray());
+    }
+
+    /**
+     * Sample a degree from a Pareto distribution by inverse transform, truncated to [minDegree, maxDegree]
+     */
+    private int sampleDegree(double alpha, int minDegree, int maxDegree) {
+        double u = random.nextDouble();
+        double degree = minDegree * Math.pow(1 - u, -1 / (alpha - 1));
+        return (int) Math.min(maxDegree, Math.floor(degree));
+    }
+
+    private static void progress(String what, int count) {
+        if (count % PROGRESS_INTERVAL == 0) {
+            System.out.println("Generated " + count + " " + what);
+        }
+    }
+}
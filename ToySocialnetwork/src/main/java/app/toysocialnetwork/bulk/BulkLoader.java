@@ -0,0 +1,324 @@
+package app.toysocialnetwork.bulk;
+
+import app.toysocialnetwork.utils.DataBase;
+import app.toysocialnetwork.utils.NetworkDB;
+import app.toysocialnetwork.utils.SchemaMigrator;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Imports and exports whole tables as CSV through PostgreSQL's COPY protocol,
+ * which is orders of magnitude faster than inserting the rows one statement at a time.
+ * <p>
+ * An import reads the file in batches, validates the batches in parallel with the entity validators,
+ * and streams the valid rows, in file order, into a single COPY. Invalid rows are skipped and reported.
+ * The secondary indexes of the table are dropped before the COPY and rebuilt after it, since building
+ * an index once is much cheaper than updating it for every row; on a partitioned table they are rebuilt
+ * on every partition. Everything runs in one transaction:
+ * if the load fails, or an index cannot be rebuilt because the data violates it, nothing changes.
+ * <p>
+ * Usage, with files ending in .gz compressed transparently:
+ * <pre>
+ * BulkLoader export &lt;table&gt; &lt;file&gt;
+ * BulkLoader import &lt;table&gt; &lt;file&gt; [--threads=N] [--batch-size=N] [--keep-indexes] [--maintenance-work-mem=1GB]
+ * </pre>
+ * The files have a header line and the columns id first, then the others in table order;
+ * an export can be imported again as is. Explicit ids are loaded, and the id sequence is moved past them.
+ */
+public class BulkLoader {
+    private static final int MAX_REPORTED_REJECTS = 10;
+
+    private final DataBase dataBase;
+    private final int threads;
+    private final int batchSize;
+    private final boolean rebuildIndexes;
+    private final String maintenanceWorkMem;
+
+    /**
+     * Constructor for BulkLoader
+     * @param dataBase the database to load into and export from
+     * @param threads the number of threads validating batches
+     * @param batchSize the number of rows per batch
+     * @param rebuildIndexes whether to drop the secondary indexes during an import and rebuild them after;
+     *                       worth it unless the table already holds much more than is being added
+     * @param maintenanceWorkMem the memory each index build may use (e.g. "1GB"), or null for the server default
+     */
+    public BulkLoader(DataBase dataBase, int threads, int batchSize, boolean rebuildIndexes, String maintenanceWorkMem) {
+        if (maintenanceWorkMem != null && !maintenanceWorkMem.matches("\\d+\\s*(kB|MB|GB)")) {
+            throw new IllegalArgumentException("Invalid memory size " + maintenanceWorkMem + ", expected e.g. 512MB or 1GB");
+        }
+        this.dataBase = dataBase;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.rebuildIndexes = rebuildIndexes;
+        this.maintenanceWorkMem = maintenanceWorkMem;
+    }
+
+    /**
+     * Write a whole table as CSV
+     * @param table the table
+     * @param out where the CSV is written
+     * @return the number of rows written
+     * @throws SQLException if the table cannot be read
+     * @throws IOException if the CSV cannot be written
+     */
+    public long exportTable(BulkTable<?> table, OutputStream out) throws SQLException, IOException {
+        String copy = "COPY (SELECT " + table.columns() + " FROM " + table.name() + " ORDER BY id) TO STDOUT (FORMAT csv, HEADER true)";
+        try (Connection conn = dataBase.getConnection()) {
+            return conn.unwrap(PGConnection.class).getCopyAPI().copyOut(copy, out);
+        }
+    }
+
+    /**
+     * Load CSV rows into a table
+     * @param table the table
+     * @param in the CSV, starting with a header line naming the table's columns
+     * @return the number of rows loaded and the rows rejected by validation
+     * @throws SQLException if the rows cannot be loaded or the indexes rebuilt; nothing is loaded then
+     * @throws IOException if the CSV cannot be read or does not match the table
+     */
+    public ImportResult importTable(BulkTable<?> table, Reader in) throws SQLException, IOException {
+        Csv csv = new Csv(in);
+        String[] header = csv.read();
+        if (header == null || !Arrays.asList(header).equals(table.header())) {
+            throw new IOException("Expected the header " + String.join(",", table.header())
+                    + " but found " + (header == null ? "nothing" : String.join(",", header)));
+        }
+
+        try (Connection conn = dataBase.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (maintenanceWorkMem != null) {
+                    execute(conn, "SET LOCAL maintenance_work_mem = '" + maintenanceWorkMem + "'");
+                }
+                List<String> indexes = rebuildIndexes ? dropSecondaryIndexes(conn, table) : List.of();
+
+                CopyIn copy = conn.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn("COPY " + table.name() + " (" + table.columns() + ") FROM STDIN (FORMAT csv)");
+                ImportResult result;
+                try {
+                    result = copyValidated(table, csv, copy);
+                    copy.endCopy();
+                } finally {
+                    if (copy.isActive()) {
+                        copy.cancelCopy();
+                    }
+                }
+
+                for (String index : indexes) {
+                    execute(conn, index);
+                }
+                // the loaded rows carry their own ids; new rows must get ids after them
+                execute(conn, "SELECT setval(pg_get_serial_sequence('" + table.name() + "', 'id'), "
+                        + "COALESCE(MAX(id), 0) + 1, false) FROM " + table.name());
+                execute(conn, "ANALYZE " + table.name());
+                conn.commit();
+                return result;
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Validate the CSV in parallel batches and write the valid rows to the COPY in their original order.
+     * At most two batches per thread are in flight, so memory stays bounded whatever the file size.
+     */
+    private ImportResult copyValidated(BulkTable<?> table, Csv csv, CopyIn copy) throws SQLException, IOException {
+        ExecutorService validators = Executors.newFixedThreadPool(threads);
+        try {
+            Deque<Future<ValidatedBatch>> pending = new ArrayDeque<>();
+            ImportResult result = new ImportResult();
+            long firstLine = 2;
+            List<String[]> rows;
+            while (!(rows = csv.read(batchSize)).isEmpty()) {
+                List<String[]> batch = rows;
+                long batchFirstLine = firstLine;
+                pending.add(validators.submit(() -> validate(table, batch, batchFirstLine)));
+                firstLine += batch.size();
+                if (pending.size() >= threads * 2) {
+                    write(pending.poll(), copy, result);
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll(), copy, result);
+            }
+            return result;
+        } finally {
+            validators.shutdownNow();
+        }
+    }
+
+    private static ValidatedBatch validate(BulkTable<?> table, List<String[]> rows, long firstLine) {
+        StringBuilder valid = new StringBuilder(rows.size() * 64);
+        List<String> rejects = new ArrayList<>();
+        int loaded = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            String errors = table.check(rows.get(i));
+            if (errors == null) {
+                Csv.write(valid, rows.get(i));
+                loaded++;
+            } else {
+                rejects.add("record " + (firstLine + i) + ": " + errors.strip().replace('\n', ' '));
+            }
+        }
+        return new ValidatedBatch(valid.toString().getBytes(StandardCharsets.UTF_8), loaded, rejects);
+    }
+
+    private static void write(Future<ValidatedBatch> future, CopyIn copy, ImportResult result) throws SQLException {
+        ValidatedBatch batch;
+        try {
+            batch = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        copy.writeToCopy(batch.csv(), 0, batch.csv().length);
+        result.add(batch);
+    }
+
+    /**
+     * Drop every index of the table except the primary key.
+     * The index of a partitioned table is defined ON ONLY the parent, and recreated that way it would stay invalid
+     * with no index on any partition; without ONLY it is built on every partition and attached, as it was before.
+     * @return the statements that recreate the dropped indexes
+     */
+    private static List<String> dropSecondaryIndexes(Connection conn, BulkTable<?> table) throws SQLException {
+        List<String> definitions = new ArrayList<>();
+        String query = "SELECT indexname, indexdef FROM pg_indexes " +
+                "WHERE schemaname = current_schema() AND tablename = ? " +
+                "AND indexname NOT IN (SELECT conname FROM pg_constraint WHERE conrelid = ?::regclass AND contype = 'p')";
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, table.name());
+            stmt.setString(2, table.name());
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                names.add(rs.getString(1));
+                definitions.add(rs.getString(2).replaceFirst(" ON ONLY ", " ON "));
+            }
+        }
+        for (String name : names) {
+            execute(conn, "DROP INDEX \"" + name + "\"");
+        }
+        return definitions;
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private record ValidatedBatch(byte[] csv, int loaded, List<String> rejects) {
+    }
+
+    /**
+     * The outcome of an import: how many rows were loaded, and why the others were not
+     */
+    public static class ImportResult {
+        private long loaded;
+        private long rejected;
+        private final List<String> rejects = new ArrayList<>();
+
+        private void add(ValidatedBatch batch) {
+            loaded += batch.loaded();
+            rejected += batch.rejects().size();
+            for (String reject : batch.rejects()) {
+                if (rejects.size() < MAX_REPORTED_REJECTS) {
+                    rejects.add(reject);
+                }
+            }
+        }
+
+        public long loaded() {
+            return loaded;
+        }
+
+        public long rejected() {
+            return rejected;
+        }
+
+        /**
+         * @return the reasons for the first few rejected rows
+         */
+        public List<String> rejects() {
+            return rejects;
+        }
+    }
+
+    public static void main(String[] args) throws SQLException, IOException {
+        if (args.length < 3 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Usage: BulkLoader import|export <table> <file> [--threads=N] [--batch-size=N] [--keep-indexes] [--maintenance-work-mem=1GB]");
+            System.exit(2);
+        }
+        BulkTable<?> table = BulkTable.named(args[1]);
+        Path file = Path.of(args[2]);
+
+        Map<String, String> options = new HashMap<>();
+        options.put("threads", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        options.put("batch-size", "10000");
+        for (String option : Arrays.copyOfRange(args, 3, args.length)) {
+            String[] parts = option.replaceFirst("^--", "").split("=", 2);
+            options.put(parts[0], parts.length > 1 ? parts[1] : "true");
+        }
+
+        new SchemaMigrator(NetworkDB.getInstance()).migrate();
+        BulkLoader loader = new BulkLoader(NetworkDB.getInstance(),
+                Integer.parseInt(options.get("threads")),
+                Integer.parseInt(options.get("batch-size")),
+                !options.containsKey("keep-indexes"),
+                options.get("maintenance-work-mem"));
+
+        long start = System.nanoTime();
+        boolean compressed = file.getFileName().toString().endsWith(".gz");
+        if (args[0].equals("export")) {
+            try (OutputStream out = compressed
+                    ? new GZIPOutputStream(Files.newOutputStream(file), 1 << 16)
+                    : new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+                long rows = loader.exportTable(table, out);
+                System.out.printf("Exported %d rows from %s in %.1f s%n", rows, table.name(), (System.nanoTime() - start) / 1e9);
+            }
+        } else {
+            try (InputStream in = compressed ? new GZIPInputStream(Files.newInputStream(file), 1 << 16) : Files.newInputStream(file);
+                 Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                ImportResult result = loader.importTable(table, reader);
+                System.out.printf("Imported %d rows into %s in %.1f s, rejected %d%n",
+                        result.loaded(), table.name(), (System.nanoTime() - start) / 1e9, result.rejected());
+                result.rejects().forEach(reject -> System.out.println("  rejected " + reject));
+            }
+        }
+        NetworkDB.getInstance().close();
+    }
+}
@@ -0,0 +1,110 @@
+package app.toysocialnetwork.bulk;
+
+import app.toysocialnetwork.domain.Entity;
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.User;
+import app.toysocialnetwork.domain.validators.FriendshipValidation;
+import app.toysocialnetwork.domain.validators.MessageValidation;
+import app.toysocialnetwork.domain.validators.RequestValidation;
+import app.toysocialnetwork.domain.validators.UserValidation;
+import app.toysocialnetwork.domain.validators.Validator;
+import app.toysocialnetwork.repository.database.mapper.FriendshipRowMapper;
+import app.toysocialnetwork.repository.database.mapper.MessageRowMapper;
+import app.toysocialnetwork.repository.database.mapper.RequestRowMapper;
+import app.toysocialnetwork.repository.database.mapper.UserRowMapper;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A table that can be bulk loaded: its columns, in the same order as the row mappers select them,
+ * and how a CSV record of those columns is turned into an entity for validation.
+ * @param <E> - type of the entities stored in the table
+ */
+public class BulkTable<E extends Entity<Long>> {
+    static final BulkTable<User> USERS = new BulkTable<>("users", new UserRowMapper().columns(), new UserValidation(),
+            fields -> new User(fields[1], fields[2], fields[3], fields[4]));
+    static final BulkTable<Friendship> FRIENDSHIPS = new BulkTable<>("friendships", new FriendshipRowMapper().columns(), new FriendshipValidation(),
+            fields -> new Friendship(Long.parseLong(fields[1]), Long.parseLong(fields[2]), timestamp(fields[3])));
+    static final BulkTable<Request> REQUESTS = new BulkTable<>("requests", new RequestRowMapper().columns(), new RequestValidation(),
+            fields -> new Request(Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+    static final BulkTable<Message> MESSAGES = new BulkTable<>("messages", new MessageRowMapper().columns(), new MessageValidation(),
+            fields -> new Message(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3], timestamp(fields[4])));
+
+    static final List<BulkTable<?>> ALL = List.of(USERS, FRIENDSHIPS, REQUESTS, MESSAGES);
+
+    private final String name;
+    private final String columns;
+    private final List<String> header;
+    private final Validator<E> validator;
+    private final Function<String[], E> parser;
+
+    private BulkTable(String name, String columns, Validator<E> validator, Function<String[], E> parser) {
+        this.name = name;
+        this.columns = columns;
+        this.header = Arrays.stream(columns.split(",")).map(column -> column.trim().replace("\"", "")).toList();
+        this.validator = validator;
+        this.parser = parser;
+    }
+
+    /**
+     * Find a table by name
+     * @param name the name of the table
+     * @return the table
+     * @throws IllegalArgumentException if there is no such table
+     */
+    public static BulkTable<?> named(String name) throws IllegalArgumentException {
+        return ALL.stream().filter(table -> table.name.equals(name)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown table " + name + ", expected one of "
+                        + ALL.stream().map(BulkTable::name).toList()));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the column list, quoted where needed, for use in SQL
+     */
+    String columns() {
+        return columns;
+    }
+
+    /**
+     * @return the column names as they appear in the CSV header
+     */
+    List<String> header() {
+        return header;
+    }
+
+    /**
+     * Check a CSV record before it is loaded: it must have every column, a numeric id,
+     * and describe an entity the validator accepts
+     * @param fields the fields of the record, in column order
+     * @return why the record must not be loaded, one reason per line, or null if it can be
+     */
+    String check(String[] fields) {
+        if (fields.length != header.size()) {
+            return "Expected " + header.size() + " fields but found " + fields.length;
+        }
+        E entity;
+        try {
+            Long.parseLong(fields[0]);
+            entity = parser.apply(fields);
+        } catch (RuntimeException e) {
+            return "Malformed field: " + e.getMessage();
+        }
+        return validator.check(entity);
+    }
+
+    /**
+     * PostgreSQL writes timestamps as "2024-01-31 12:00:00.123456"; ISO uses a 'T' between date and time
+     */
+    private static LocalDateTime timestamp(String field) {
+        return LocalDateTime.parse(field.replace(' ', 'T'));
+    }
+}
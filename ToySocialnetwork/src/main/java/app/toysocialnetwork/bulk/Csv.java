@@ -0,0 +1,127 @@
+package app.toysocialnetwork.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reading and writing the CSV dialect of PostgreSQL's COPY: comma separated, fields quoted with
+ * double quotes when needed, quotes escaped by doubling them, and line breaks allowed inside quoted fields.
+ * An unquoted empty field is NULL to COPY, so empty strings are always written quoted.
+ */
+class Csv {
+    private final Reader in;
+    private final char[] buffer = new char[64 * 1024];
+    private int length;
+    private int pos;
+
+    /**
+     * @param in the CSV input; it is read in large chunks, so it need not be buffered
+     */
+    Csv(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Read up to the given number of records
+     * @param max the maximum number of records
+     * @return the records, empty at the end of the input
+     * @throws IOException if the input cannot be read or ends inside a quoted field
+     */
+    List<String[]> read(int max) throws IOException {
+        List<String[]> records = new ArrayList<>(max);
+        String[] record;
+        while (records.size() < max && (record = read()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Read the next record
+     * @return the fields of the record, or null at the end of the input
+     * @throws IOException if the input cannot be read or ends inside a quoted field
+     */
+    String[] read() throws IOException {
+        int c = next();
+        if (c < 0) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new IOException("The input ends inside a quoted field.");
+                }
+                if (c == '"') {
+                    c = next();
+                    if (c == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r' || c < 0) {
+                if (c == '\r' && peek() == '\n') {
+                    next();
+                }
+                fields.add(field.toString());
+                return fields.toArray(new String[0]);
+            } else {
+                field.append((char) c);
+            }
+            c = next();
+        }
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        if (c >= 0) {
+            pos++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (pos == length) {
+            length = in.read(buffer);
+            pos = 0;
+            if (length <= 0) {
+                length = 0;
+                return -1;
+            }
+        }
+        return buffer[pos];
+    }
+
+    /**
+     * Append a record as one CSV line
+     * @param out where the line is written
+     * @param fields the fields of the record
+     */
+    static void write(StringBuilder out, String[] fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            String field = fields[i];
+            if (field.isEmpty() || field.chars().anyMatch(c -> c == ',' || c == '"' || c == '\n' || c == '\r')) {
+                out.append('"').append(field.replace("\"", "\"\"")).append('"');
+            } else {
+                out.append(field);
+            }
+        }
+        out.append('\n');
+    }
+}
@@ -0,0 +1,12 @@
+package app.toysocialnetwork.controller;
+
+/**
+ * A controller holding on to something outside its view, like its registration as a service observer,
+ * that must be let go of when the view is closed
+ */
+public interface Disposable {
+    /**
+     * Release what the controller holds outside its view; it may be set up again afterwards
+     */
+    void dispose();
+}
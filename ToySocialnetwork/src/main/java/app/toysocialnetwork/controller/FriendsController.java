@@ -6,6 +6,8 @@ import app.toysocialnetwork.service.Service;
 import app.toysocialnetwork.utils.event.EventEnum;
 import app.toysocialnetwork.utils.event.FriendshipEvent;
 import app.toysocialnetwork.utils.observer.Observer;
+import app.toysocialnetwork.utils.observer.Subscription;
+import app.toysocialnetwork.utils.jfr.ControllerReloadEvent;
 
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
@@ -18,9 +20,10 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
 
-public class FriendsController implements Observer<FriendshipEvent> {
+public class FriendsController implements Observer<FriendshipEvent>, Disposable {
     private Runnable onMessage;
     private Service service;
+    private Subscription subscription;
     private final ObservableList<Friendship> friendsList = FXCollections.observableArrayList();
 
     @FXML
@@ -48,10 +51,24 @@ public class FriendsController implements Observer<FriendshipEvent> {
      */
     public void setService(Service service) {
         this.service = service;
-        this.service.addFriendshipObserver(this);
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+        subscription = this.service.addFriendshipObserver(this);
         loadFriendships();
     }
 
+    /**
+     * Stop observing friendship events, so the closed view is no longer reloaded and can be collected
+     */
+    @Override
+    public void dispose() {
+        if (subscription != null) {
+            subscription.unsubscribe();
+            subscription = null;
+        }
+    }
+
     /**
      * Set the onMessage runnable
      * @param onMessage the runnable to be set
@@ -95,9 +112,12 @@ public class FriendsController implements Observer<FriendshipEvent> {
      * Load the friendships of the current user and set them to the table view.
      */
     private void loadFriendships() {
+        ControllerReloadEvent reload = new ControllerReloadEvent();
+        reload.begin();
         Iterable<Friendship> friendships = service.getFriendshipsOfUser(service.getCurrentUserId());
         friendsList.setAll((List<Friendship>) friendships);
         friendsTableView.setItems(friendsList);
+        reload.finish(getClass(), "loadFriendships", friendsList.size());
     }
 
     /**
@@ -6,6 +6,7 @@ import app.toysocialnetwork.service.Service;
 import app.toysocialnetwork.utils.event.EventEnum;
 import app.toysocialnetwork.utils.event.MessageEvent;
 import app.toysocialnetwork.utils.observer.Observer;
+import app.toysocialnetwork.utils.jfr.ControllerReloadEvent;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -26,6 +27,7 @@ import java.time.LocalDateTime;
 public class MessageController implements Observer<MessageEvent> {
     private Service service;
     private User receiver;
+    private boolean wholeConversation;
 
     @FXML
     private Label conversationTitle;
@@ -49,6 +51,7 @@ public class MessageController implements Observer<MessageEvent> {
     public void setService(Service service, User receiver) {
         this.service = service;
         this.receiver = receiver;
+        this.wholeConversation = false;
         conversationTitle.setText("Conversation with " + receiver.getUsername());
 
         loadConversation();
@@ -58,12 +61,28 @@ public class MessageController implements Observer<MessageEvent> {
      * Load the conversation between the current user and the receiver
      */
     private void loadConversation() {
+        ControllerReloadEvent reload = new ControllerReloadEvent();
+        reload.begin();
         Long currentUserId = service.getCurrentUserId();
         Long receiverId = receiver.getId();
 
         conversationArea.getChildren().clear();
 
-        Iterable<Message> messages = service.getMessagesBetweenUsers(currentUserId, receiverId);
+        Iterable<Message> messages;
+        if (wholeConversation) {
+            messages = service.getMessagesBetweenUsers(currentUserId, receiverId);
+        } else {
+            // only the recent messages at first; the older ones are loaded on request
+            messages = service.getRecentMessagesBetweenUsers(currentUserId, receiverId);
+            Button loadOlder = new Button("Load older messages");
+            loadOlder.setOnAction(event -> {
+                wholeConversation = true;
+                loadConversation();
+            });
+            HBox loadOlderBox = new HBox(loadOlder);
+            loadOlderBox.setAlignment(Pos.CENTER);
+            conversationArea.getChildren().add(loadOlderBox);
+        }
 
         // Create a DateTimeFormatter to format the date
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd, yyyy HH:mm");
@@ -114,6 +133,7 @@ public class MessageController implements Observer<MessageEvent> {
         // Ensure that the scroll pane scrolls to the bottom to show the most recent message
         scrollPane.layout();
         scrollPane.setVvalue(1.0);
+        reload.finish(getClass(), "loadConversation", conversationArea.getChildren().size());
     }
 
 
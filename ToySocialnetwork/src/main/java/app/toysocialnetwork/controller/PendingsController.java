@@ -6,6 +6,8 @@ import app.toysocialnetwork.service.Service;
 import app.toysocialnetwork.utils.event.EventEnum;
 import app.toysocialnetwork.utils.event.RequestEvent;
 import app.toysocialnetwork.utils.observer.Observer;
+import app.toysocialnetwork.utils.observer.Subscription;
+import app.toysocialnetwork.utils.jfr.ControllerReloadEvent;
 
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
@@ -15,9 +17,10 @@ import javafx.scene.control.*;
 
 import java.util.List;
 
-public class PendingsController implements Observer<RequestEvent> {
+public class PendingsController implements Observer<RequestEvent>, Disposable {
     private Runnable onViewProfile;
     private Service service;
+    private Subscription subscription;
     private final ObservableList<Request> pendingsList = FXCollections.observableArrayList();
 
     @FXML
@@ -41,10 +44,24 @@ public class PendingsController implements Observer<RequestEvent> {
      */
     public void setService(Service service) {
         this.service = service;
-        this.service.addRequestObserver(this);
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+        subscription = this.service.addRequestObserver(this);
         loadPendings();
     }
 
+    /**
+     * Stop observing request events, so the closed view is no longer reloaded and can be collected
+     */
+    @Override
+    public void dispose() {
+        if (subscription != null) {
+            subscription.unsubscribe();
+            subscription = null;
+        }
+    }
+
     /**
      * Set the onViewProfile runnable.
      * @param onViewProfile the runnable to be set
@@ -79,9 +96,12 @@ public class PendingsController implements Observer<RequestEvent> {
      * Load the pending requests.
      */
     private void loadPendings() {
+        ControllerReloadEvent reload = new ControllerReloadEvent();
+        reload.begin();
         Iterable<Request> requests = service.getRequestsToUser(service.getCurrentUserId());
         pendingsList.setAll((List<Request>) requests);
         pendingsTableView.setItems(pendingsList);
+        reload.finish(getClass(), "loadPendings", pendingsList.size());
     }
 
     /**
@@ -7,6 +7,8 @@ import app.toysocialnetwork.service.Service;
 import app.toysocialnetwork.utils.event.EventEnum;
 import app.toysocialnetwork.utils.event.FriendshipEvent;
 import app.toysocialnetwork.utils.observer.Observer;
+import app.toysocialnetwork.utils.observer.Subscription;
+import app.toysocialnetwork.utils.jfr.ControllerReloadEvent;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -14,9 +16,10 @@ import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 
-public class ProfileController implements Observer<FriendshipEvent> {
+public class ProfileController implements Observer<FriendshipEvent>, Disposable {
     private Runnable onViewProfile;
     private Service service;
+    private Subscription subscription;
     private User viewedUser;
     private final ObservableList<User> friendsList = FXCollections.observableArrayList();
 
@@ -56,13 +59,27 @@ public class ProfileController implements Observer<FriendshipEvent> {
         this.service = service;
         this.viewedUser = viewedUser;
         this.service.setSelectedUserId(viewedUser.getId());
-        this.service.addFriendshipObserver(this);
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+        subscription = this.service.addFriendshipObserver(this);
 
         loadProfileDetails();
         loadFriends();
         configureActionButton();
     }
 
+    /**
+     * Stop observing friendship events, so the closed view is no longer reloaded and can be collected
+     */
+    @Override
+    public void dispose() {
+        if (subscription != null) {
+            subscription.unsubscribe();
+            subscription = null;
+        }
+    }
+
     /**
      * Set the action to be performed when the view profile button is clicked.
      * @param onViewProfile the action to be performed
@@ -96,6 +113,8 @@ public class ProfileController implements Observer<FriendshipEvent> {
      * Load the friends of the user.
      */
     private void loadFriends() {
+        ControllerReloadEvent reload = new ControllerReloadEvent();
+        reload.begin();
         friendsList.clear();
         Iterable<Friendship> friendships = service.getFriendshipsOfUser(viewedUser.getId());
         Long currentUserId = viewedUser.getId();
@@ -106,6 +125,7 @@ public class ProfileController implements Observer<FriendshipEvent> {
             service.getUserById(friendId).ifPresent(friendsList::add);
         }
         friendsTableView.setItems(friendsList);
+        reload.finish(getClass(), "loadFriends", friendsList.size());
     }
 
     /**
@@ -172,13 +192,7 @@ public class ProfileController implements Observer<FriendshipEvent> {
                 if (hasReceivedRequest) {
                     actionButton.setText("Accept Request");
                     actionButton.setOnAction(event -> {
-                        for (Request request : service.getRequests()) {
-                            if (request.getSenderId().equals(viewedUserId) && request.getReceiverId().equals(currentUserId)) {
-                                service.addFriendship(request.getSenderId(), request.getReceiverId());
-                                service.deleteRequest(request.getId());
-                                break;
-                            }
-                        }
+                        service.acceptRequest(viewedUserId, currentUserId);
                         loadFriends();
                         configureActionButton();
                     });
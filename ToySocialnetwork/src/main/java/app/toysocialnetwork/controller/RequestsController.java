@@ -6,6 +6,8 @@ import app.toysocialnetwork.service.Service;
 import app.toysocialnetwork.utils.event.EventEnum;
 import app.toysocialnetwork.utils.event.RequestEvent;
 import app.toysocialnetwork.utils.observer.Observer;
+import app.toysocialnetwork.utils.observer.Subscription;
+import app.toysocialnetwork.utils.jfr.ControllerReloadEvent;
 
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
@@ -15,9 +17,10 @@ import javafx.scene.control.*;
 
 import java.util.List;
 
-public class RequestsController implements Observer<RequestEvent> {
+public class RequestsController implements Observer<RequestEvent>, Disposable {
     private Runnable onViewProfile;
     private Service service;
+    private Subscription subscription;
     private final ObservableList<Request> requestsList = FXCollections.observableArrayList();
 
     @FXML
@@ -45,10 +48,24 @@ public class RequestsController implements Observer<RequestEvent> {
      */
     public void setService(Service service) {
         this.service = service;
-        this.service.addRequestObserver(this);
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+        subscription = this.service.addRequestObserver(this);
         loadRequests();
     }
 
+    /**
+     * Stop observing request events, so the closed view is no longer reloaded and can be collected
+     */
+    @Override
+    public void dispose() {
+        if (subscription != null) {
+            subscription.unsubscribe();
+            subscription = null;
+        }
+    }
+
     /**
      * Sets the onViewProfile runnable.
      * @param onViewProfile the runnable to be set
@@ -83,20 +100,22 @@ public class RequestsController implements Observer<RequestEvent> {
      * Loads the requests from the service and sets them to the table view.
      */
     private void loadRequests() {
+        ControllerReloadEvent reload = new ControllerReloadEvent();
+        reload.begin();
         Iterable<Request> requests = service.getRequestsByReceiver(service.getCurrentUserId());
         requestsList.setAll((List<Request>) requests);
         requestsTableView.setItems(requestsList);
+        reload.finish(getClass(), "loadRequests", requestsList.size());
     }
 
     /**
      * Handles the accept request button action.
-     * Deletes the request from the service and adds a friendship between the sender and the receiver.
+     * Deletes the request and adds a friendship between the sender and the receiver in one transaction.
      * Loads the requests.
      * @param request the request to be accepted
      */
     private void handleAcceptRequest(Request request) {
-        service.deleteRequest(request.getId());
-        service.addFriendship(request.getSenderId(), request.getReceiverId());
+        service.acceptRequest(request.getSenderId(), request.getReceiverId());
         loadRequests();
     }
 
@@ -5,6 +5,8 @@ import app.toysocialnetwork.service.Service;
 import app.toysocialnetwork.utils.event.EventEnum;
 import app.toysocialnetwork.utils.event.UserEvent;
 import app.toysocialnetwork.utils.observer.Observer;
+import app.toysocialnetwork.utils.observer.Subscription;
+import app.toysocialnetwork.utils.jfr.ControllerReloadEvent;
 
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -15,9 +17,10 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import java.util.List;
 import java.util.stream.Collectors;
 
-public class UsersController implements Observer<UserEvent> {
+public class UsersController implements Observer<UserEvent>, Disposable {
     private Runnable onViewProfile;
     private Service service;
+    private Subscription subscription;
     private final ObservableList<User> usersList = FXCollections.observableArrayList();
 
     @FXML
@@ -50,10 +53,24 @@ public class UsersController implements Observer<UserEvent> {
      */
     public void setService(Service service) {
         this.service = service;
-        this.service.addUserObserver(this);
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+        subscription = this.service.addUserObserver(this);
         loadUsers();
     }
 
+    /**
+     * Stop observing user events, so the closed view is no longer reloaded and can be collected
+     */
+    @Override
+    public void dispose() {
+        if (subscription != null) {
+            subscription.unsubscribe();
+            subscription = null;
+        }
+    }
+
     /**
      * Set the onViewProfile runnable
      * @param onViewProfile the runnable to be set
@@ -85,9 +102,12 @@ public class UsersController implements Observer<UserEvent> {
      * Load the users from the service
      */
     private void loadUsers() {
+        ControllerReloadEvent reload = new ControllerReloadEvent();
+        reload.begin();
         Iterable<User> users = service.getUsers();
         usersList.setAll((List<User>) users);
         usersTableView.setItems(usersList);
+        reload.finish(getClass(), "loadUsers", usersList.size());
     }
 
     /**
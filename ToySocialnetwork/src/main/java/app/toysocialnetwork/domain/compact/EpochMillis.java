@@ -0,0 +1,23 @@
+package app.toysocialnetwork.domain.compact;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Conversions between the {@code LocalDateTime} of the domain classes and the epoch milliseconds
+ * of the compact views. Local date-times are read as UTC, so the conversion does not depend on
+ * the time zone of the machine; precision below a millisecond is dropped.
+ */
+public final class EpochMillis {
+    private EpochMillis() {
+    }
+
+    public static long of(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+}
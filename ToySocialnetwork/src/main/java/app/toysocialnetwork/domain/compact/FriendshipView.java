@@ -0,0 +1,39 @@
+package app.toysocialnetwork.domain.compact;
+
+import app.toysocialnetwork.domain.Friendship;
+
+/**
+ * Compact, immutable form of a {@link Friendship}: four longs, with the date in epoch milliseconds
+ */
+public record FriendshipView(long id, long user1Id, long user2Id, long friendsFrom) {
+    /**
+     * @param friendship a saved friendship
+     * friendship must not be null and must have an id
+     * @return the view of the friendship
+     */
+    public static FriendshipView of(Friendship friendship) {
+        return new FriendshipView(friendship.getId(), friendship.getUser1Id(), friendship.getUser2Id(),
+                EpochMillis.of(friendship.getFriendsFrom()));
+    }
+
+    /**
+     * @return a new {@link Friendship} with the values of this view
+     */
+    public Friendship toFriendship() {
+        Friendship friendship = new Friendship(user1Id, user2Id, EpochMillis.toLocalDateTime(friendsFrom));
+        friendship.setId(id);
+        return friendship;
+    }
+
+    public boolean involves(long userId) {
+        return user1Id == userId || user2Id == userId;
+    }
+
+    /**
+     * @param userId one of the users of the friendship
+     * @return the other user
+     */
+    public long friendOf(long userId) {
+        return user1Id == userId ? user2Id : user1Id;
+    }
+}
@@ -0,0 +1,31 @@
+package app.toysocialnetwork.domain.compact;
+
+import app.toysocialnetwork.domain.Message;
+
+/**
+ * Compact, immutable form of a {@link Message}, with primitive ids and the date in epoch milliseconds
+ */
+public record MessageView(long id, long from, long to, String text, long date) {
+    /**
+     * @param message a saved message
+     * message must not be null and must have an id
+     * @return the view of the message
+     */
+    public static MessageView of(Message message) {
+        return new MessageView(message.getId(), message.getFrom(), message.getTo(), message.getText(),
+                EpochMillis.of(message.getDate()));
+    }
+
+    /**
+     * @return a new {@link Message} with the values of this view
+     */
+    public Message toMessage() {
+        Message message = new Message(from, to, text, EpochMillis.toLocalDateTime(date));
+        message.setId(id);
+        return message;
+    }
+
+    public boolean involves(long userId) {
+        return from == userId || to == userId;
+    }
+}
@@ -0,0 +1,26 @@
+package app.toysocialnetwork.domain.compact;
+
+import app.toysocialnetwork.domain.Request;
+
+/**
+ * Compact, immutable form of a {@link Request}
+ */
+public record RequestView(long id, long senderId, long receiverId) {
+    /**
+     * @param request a saved request
+     * request must not be null and must have an id
+     * @return the view of the request
+     */
+    public static RequestView of(Request request) {
+        return new RequestView(request.getId(), request.getSenderId(), request.getReceiverId());
+    }
+
+    /**
+     * @return a new {@link Request} with the values of this view
+     */
+    public Request toRequest() {
+        Request request = new Request(senderId, receiverId);
+        request.setId(id);
+        return request;
+    }
+}
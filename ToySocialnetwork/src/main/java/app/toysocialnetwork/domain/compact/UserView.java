@@ -0,0 +1,26 @@
+package app.toysocialnetwork.domain.compact;
+
+import app.toysocialnetwork.domain.User;
+
+/**
+ * Compact, immutable form of a {@link User}, with a primitive id
+ */
+public record UserView(long id, String firstName, String lastName, String username, String password) {
+    /**
+     * @param user a saved user
+     * user must not be null and must have an id
+     * @return the view of the user
+     */
+    public static UserView of(User user) {
+        return new UserView(user.getId(), user.getFirstName(), user.getLastName(), user.getUsername(), user.getPassword());
+    }
+
+    /**
+     * @return a new {@link User} with the values of this view
+     */
+    public User toUser() {
+        User user = new User(firstName, lastName, username, password);
+        user.setId(id);
+        return user;
+    }
+}
@@ -6,25 +6,22 @@ import java.util.Objects;
 
 public class FriendshipValidation implements Validator<Friendship> {
     @Override
-    public void validate(Friendship friendship) throws ValidationException {
-        StringBuilder errors = new StringBuilder();
+    public String check(Friendship friendship) {
+        StringBuilder errors = null;
 
         // user1Id && user2Id cant be null
         if (friendship.getUser1Id() == null) {
-            errors.append("User1Id cannot be null\n");
+            errors = Violations.add(errors, "User1Id cannot be null");
         }
         if (friendship.getUser2Id() == null) {
-            errors.append("User2Id cannot be null\n");
+            errors = Violations.add(errors, "User2Id cannot be null");
         }
 
         // user1Id && user2Id cant be the same
         if (Objects.equals(friendship.getUser1Id(), friendship.getUser2Id())) {
-            errors.append("User1Id and User2Id cannot be the same\n");
+            errors = Violations.add(errors, "User1Id and User2Id cannot be the same");
         }
 
-        // throw exception if there are errors
-        if (!errors.isEmpty()) {
-            throw new ValidationException(errors.toString());
-        }
+        return Violations.toMessage(errors);
     }
 }
@@ -4,31 +4,29 @@ import app.toysocialnetwork.domain.Message;
 
 public class MessageValidation implements Validator<Message> {
     @Override
-    public void validate(Message message) throws ValidationException {
-        StringBuilder errors = new StringBuilder();
+    public String check(Message message) {
+        StringBuilder errors = null;
 
         // from && to && text && date cant be null
         if (message.getFrom() == null) {
-            errors.append("From cannot be null\n");
+            errors = Violations.add(errors, "From cannot be null");
         }
         if (message.getTo() == null) {
-            errors.append("To cannot be null\n");
+            errors = Violations.add(errors, "To cannot be null");
         }
-        if (message.getText() == null || message.getText().isEmpty()) {
-            errors.append("Text cannot be empty\n");
+        String text = message.getText();
+        if (text == null || text.isEmpty()) {
+            errors = Violations.add(errors, "Text cannot be empty");
         }
         if (message.getDate() == null) {
-            errors.append("Date cannot be null\n");
+            errors = Violations.add(errors, "Date cannot be null");
         }
 
         // text cant be longer than 255 characters
-        if (message.getText().length() > 255) {
-            errors.append("Text cannot be longer than 255 characters\n");
+        if (text != null && text.length() > 255) {
+            errors = Violations.add(errors, "Text cannot be longer than 255 characters");
         }
 
-        // throw exception if there are errors
-        if (!errors.isEmpty()) {
-            throw new ValidationException(errors.toString());
-        }
+        return Violations.toMessage(errors);
     }
 }
@@ -1,31 +1,27 @@
 package app.toysocialnetwork.domain.validators;
 
-import app.toysocialnetwork.domain.Friendship;
 import app.toysocialnetwork.domain.Request;
 
 import java.util.Objects;
 
 public class RequestValidation implements Validator<Request> {
     @Override
-    public void validate(Request request) throws ValidationException {
-        StringBuilder errors = new StringBuilder();
+    public String check(Request request) {
+        StringBuilder errors = null;
 
         // senderId && receiverId cant be null
         if (request.getSenderId() == null) {
-            errors.append("SenderId cannot be null\n");
+            errors = Violations.add(errors, "SenderId cannot be null");
         }
         if (request.getReceiverId() == null) {
-            errors.append("ReceiverId cannot be null\n");
+            errors = Violations.add(errors, "ReceiverId cannot be null");
         }
 
         // senderId && receiverId cant be the same
         if (Objects.equals(request.getSenderId(), request.getReceiverId())) {
-            errors.append("SenderId and ReceiverId cannot be the same\n");
+            errors = Violations.add(errors, "SenderId and ReceiverId cannot be the same");
         }
 
-        // throw exception if there are errors
-        if (!errors.isEmpty()) {
-            throw new ValidationException(errors.toString());
-        }
+        return Violations.toMessage(errors);
     }
 }
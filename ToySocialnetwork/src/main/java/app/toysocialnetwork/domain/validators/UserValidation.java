@@ -4,48 +4,49 @@ import app.toysocialnetwork.domain.User;
 
 public class UserValidation implements Validator<User> {
     @Override
-    public void validate(User user) throws ValidationException {
-        StringBuilder errors = new StringBuilder();
+    public String check(User user) {
+        StringBuilder errors = null;
+        String firstName = user.getFirstName();
+        String lastName = user.getLastName();
+        String username = user.getUsername();
+        String password = user.getPassword();
 
         // firstName && lastName && username && password cant be null
-        if (user.getFirstName() == null || user.getFirstName().isEmpty()) {
-            errors.append("First name cannot be empty\n");
+        if (firstName == null || firstName.isEmpty()) {
+            errors = Violations.add(errors, "First name cannot be empty");
         }
-        if (user.getLastName() == null || user.getLastName().isEmpty()) {
-            errors.append("Last name cannot be empty\n");
+        if (lastName == null || lastName.isEmpty()) {
+            errors = Violations.add(errors, "Last name cannot be empty");
         }
-        if (user.getUsername() == null || user.getUsername().isEmpty() || user.getUsername().length() < 5) {
-            errors.append("Username must be at least 5 characters long\n");
+        if (username == null || username.length() < 5) {
+            errors = Violations.add(errors, "Username must be at least 5 characters long");
         }
-        if (user.getPassword() == null || user.getPassword().isEmpty() || user.getPassword().length() < 5) {
-            errors.append("Password must be at least 5 characters long\n");
+        if (password == null || password.length() < 5) {
+            errors = Violations.add(errors, "Password must be at least 5 characters long");
         }
 
         // firstName && lastName can only contain letters
-        if (user.getFirstName().matches(".*\\d.*")) {
-            errors.append("First name can only contain letters\n");
+        if (firstName != null && Violations.containsDigit(firstName)) {
+            errors = Violations.add(errors, "First name can only contain letters");
         }
-        if (user.getLastName().matches(".*\\d.*")) {
-            errors.append("Last name can only contain letters\n");
+        if (lastName != null && Violations.containsDigit(lastName)) {
+            errors = Violations.add(errors, "Last name can only contain letters");
         }
 
-        // firstName && lastName cant be longer than 20 characters
-        if (user.getFirstName().length() > 20) {
-            errors.append("First name cannot be longer than 20 characters\n");
+        // firstName && lastName && username && password cant be longer than 20 characters
+        if (firstName != null && firstName.length() > 20) {
+            errors = Violations.add(errors, "First name cannot be longer than 20 characters");
         }
-        if (user.getLastName().length() > 20) {
-            errors.append("Last name cannot be longer than 20 characters\n");
+        if (lastName != null && lastName.length() > 20) {
+            errors = Violations.add(errors, "Last name cannot be longer than 20 characters");
         }
-        if (user.getUsername().length() > 20) {
-            errors.append("Username cannot be longer than 20 characters\n");
+        if (username != null && username.length() > 20) {
+            errors = Violations.add(errors, "Username cannot be longer than 20 characters");
         }
-        if (user.getPassword().length() > 20) {
-            errors.append("Password cannot be longer than 20 characters\n");
+        if (password != null && password.length() > 20) {
+            errors = Violations.add(errors, "Password cannot be longer than 20 characters");
         }
 
-        // throw exception if there are errors
-        if (!errors.isEmpty()) {
-            throw new ValidationException(errors.toString());
-        }
+        return Violations.toMessage(errors);
     }
 }
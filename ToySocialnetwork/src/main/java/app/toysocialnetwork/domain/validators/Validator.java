@@ -1,5 +1,54 @@
 package app.toysocialnetwork.domain.validators;
 
+import java.util.List;
+
+/**
+ * Checks that an entity can be saved.
+ * Implementations only build an error message when the entity breaks a rule, so checking valid entities,
+ * the common case during imports and message bursts, allocates nothing.
+ * @param <T> - type of the checked entities
+ */
 public interface Validator<T> {
-    void validate(T entity) throws ValidationException;
-}
\ No newline at end of file
+    /**
+     * Check an entity without throwing
+     * @param entity the entity
+     * entity must not be null
+     * @return the rules the entity breaks, one per line, or null if it is valid
+     */
+    String check(T entity);
+
+    /**
+     * Check an entity
+     * @param entity the entity
+     * entity must not be null
+     * @throws ValidationException if the entity is not valid, with the rules it breaks as message
+     */
+    default void validate(T entity) throws ValidationException {
+        String errors = check(entity);
+        if (errors != null) {
+            throw new ValidationException(errors);
+        }
+    }
+
+    /**
+     * Check a batch of entities, e.g. before a bulk import, reporting all the invalid ones at once
+     * @param entities the entities
+     * entities must not be null
+     * @throws ValidationException if any entity is not valid; the message has one line per broken rule,
+     * prefixed by the index of the entity in the batch
+     */
+    default void validateAll(List<? extends T> entities) throws ValidationException {
+        StringBuilder errors = null;
+        for (int i = 0; i < entities.size(); i++) {
+            String entityErrors = check(entities.get(i));
+            if (entityErrors != null) {
+                for (String error : entityErrors.split("\n")) {
+                    errors = Violations.add(errors, "#" + i + ": " + error);
+                }
+            }
+        }
+        if (errors != null) {
+            throw new ValidationException(errors.toString());
+        }
+    }
+}
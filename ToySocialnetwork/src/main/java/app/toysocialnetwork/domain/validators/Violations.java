@@ -0,0 +1,44 @@
+package app.toysocialnetwork.domain.validators;
+
+/**
+ * Helpers shared by the validators, written so that a valid entity costs no allocation
+ */
+final class Violations {
+    private Violations() {
+    }
+
+    /**
+     * Add a broken rule to the errors found so far, creating the buffer on the first one
+     * @param errors the errors found so far, or null if there are none
+     * @param error the broken rule
+     * @return the errors, with the broken rule on its own line
+     */
+    static StringBuilder add(StringBuilder errors, String error) {
+        if (errors == null) {
+            errors = new StringBuilder();
+        }
+        return errors.append(error).append('\n');
+    }
+
+    /**
+     * @param errors the errors found, or null if there are none
+     * @return the errors as text, or null if there are none
+     */
+    static String toMessage(StringBuilder errors) {
+        return errors == null ? null : errors.toString();
+    }
+
+    /**
+     * @param value a string
+     * @return whether the string contains an ASCII digit, the same as matching {@code .*\d.*}
+     */
+    static boolean containsDigit(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -3,8 +3,13 @@ package app.toysocialnetwork.gui;
 import app.toysocialnetwork.controller.*;
 import app.toysocialnetwork.domain.User;
 import app.toysocialnetwork.service.Service;
+import app.toysocialnetwork.repository.*;
 import app.toysocialnetwork.repository.database.*;
 import app.toysocialnetwork.domain.validators.*;
+import app.toysocialnetwork.utils.Config;
+import app.toysocialnetwork.utils.NetworkDB;
+import app.toysocialnetwork.utils.SchemaMigrator;
+import app.toysocialnetwork.utils.metrics.MetricsRegistry;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
@@ -14,8 +19,10 @@ import javafx.scene.layout.AnchorPane;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.util.function.Consumer;
 
 public class GUI extends Application {
+    private ViewRegistry views;
 
     public static void main(String[] args) {
         launch(args);
@@ -23,10 +30,18 @@ public class GUI extends Application {
 
     @Override
     public void start(Stage primaryStage) throws IOException {
-        UserDBRepository userRepo = new UserDBRepository(new UserValidation());
-        FriendshipDBRepository friendshipRepo = new FriendshipDBRepository(new FriendshipValidation());
-        RequestDBRepository requestRepo = new RequestDBRepository(new RequestValidation());
-        MessageDBRepository messageRepo = new MessageDBRepository(new MessageValidation());
+        new SchemaMigrator(NetworkDB.getInstance()).migrate();
+
+        MetricsRegistry.getInstance().start(Config.getLong("metrics.dump.interval"));
+
+        UserRepository userRepo = InstrumentedRepository.of(UserRepository.class,
+                new UserDBRepository(new UserValidation()), "users");
+        FriendshipRepository friendshipRepo = InstrumentedRepository.of(FriendshipRepository.class,
+                new FriendshipDBRepository(new FriendshipValidation()), "friendships");
+        RequestRepository requestRepo = InstrumentedRepository.of(RequestRepository.class,
+                new RequestDBRepository(new RequestValidation()), "requests");
+        MessageRepository messageRepo = InstrumentedRepository.of(MessageRepository.class,
+                new MessageDBRepository(new MessageValidation()), "messages");
 
         Service service = new Service(userRepo, friendshipRepo, requestRepo, messageRepo);
 
@@ -62,70 +77,6 @@ public class GUI extends Application {
         return registerView;
     }
 
-    private AnchorPane loadUsersView(Service service) throws IOException {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("/app/toysocialnetwork/view/users-view.fxml"));
-
-        // Load the view
-        AnchorPane usersView = loader.load();
-
-        // Set up the controller
-        UsersController usersController = loader.getController();
-        usersController.setService(service);
-        usersController.setOnViewProfile(() -> {
-            openProfileWindow((Stage) usersView.getScene().getWindow(), service);
-        });
-
-        return usersView;
-    }
-
-    private AnchorPane loadFriendsView(Service service) throws IOException {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("/app/toysocialnetwork/view/friends-view.fxml"));
-
-        // Load the view
-        AnchorPane friendsView = loader.load();
-
-        // Set up the controller
-        FriendsController friendsController = loader.getController();
-        friendsController.setService(service);
-        friendsController.setOnMessage(() -> {
-            openMessageWindow((Stage) friendsView.getScene().getWindow(), service);
-        });
-
-        return friendsView;
-    }
-
-    private AnchorPane loadRequestsView(Service service) throws IOException {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("/app/toysocialnetwork/view/requests-view.fxml"));
-
-        // Load the view
-        AnchorPane requestsView = loader.load();
-
-        // Set up the controller
-        RequestsController requestsController = loader.getController();
-        requestsController.setService(service);
-        requestsController.setOnViewProfile(() -> {
-            openProfileWindow((Stage) requestsView.getScene().getWindow(), service);
-        });
-
-        return requestsView;
-    }
-
-    private AnchorPane loadPendingsView(Service service) throws IOException {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("/app/toysocialnetwork/view/pendings-view.fxml"));
-
-        // Load the view
-        AnchorPane pendingsView = loader.load();
-
-        // Set up the controller
-        PendingsController pendingsController = loader.getController();
-        pendingsController.setService(service);
-        pendingsController.setOnViewProfile(() -> {
-            openProfileWindow((Stage) pendingsView.getScene().getWindow(), service);
-        });
-
-        return pendingsView;
-    }
-
     private AnchorPane loadMainView(Service service) throws IOException {
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/app/toysocialnetwork/view/main-view.fxml"));
 
@@ -136,160 +87,68 @@ public class GUI extends Application {
         MainController mainController = loader.getController();
         mainController.setService(service);
         mainController.setOnLogOut(() -> {
+            // dispose the views of the session, so they stop observing the service
+            views.closeAll();
             openLoginWindow((Stage) mainView.getScene().getWindow(), service);
         });
-        mainController.setOnUsers(() -> {
-            openUsersWindow((Stage) mainView.getScene().getWindow(), service);
-        });
-        mainController.setOnFriends(() -> {
-            openFriendsWindow((Stage) mainView.getScene().getWindow(), service);
-        });
-        mainController.setOnRequests(() -> {
-            openRequestsWindow((Stage) mainView.getScene().getWindow(), service);
-        });
-        mainController.setOnPendings(() -> {
-            openPendingsWindow((Stage) mainView.getScene().getWindow(), service);
-        });
+        mainController.setOnUsers(() -> openUsersWindow(service));
+        mainController.setOnFriends(() -> openFriendsWindow(service));
+        mainController.setOnRequests(() -> openRequestsWindow(service));
+        mainController.setOnPendings(() -> openPendingsWindow(service));
 
         return mainView;
     }
 
-    private AnchorPane loadProfileView(Service service) throws IOException {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("/app/toysocialnetwork/view/profile-view.fxml"));
-
-        // Load the view
-        AnchorPane profileView = loader.load();
-
-        // Set up the controller
-        ProfileController profileController = loader.getController();
-        User selectedUser = service.getUserById(service.getSelectedUserId())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        profileController.setService(service, selectedUser);
-        profileController.setOnViewProfile(() -> {
-            openProfileWindow((Stage) profileView.getScene().getWindow(), service);
+    private void openUsersWindow(Service service) {
+        openView("users", "Users", "users-view.fxml", true, (UsersController usersController) -> {
+            usersController.setService(service);
+            usersController.setOnViewProfile(() -> openProfileWindow(service));
         });
-
-        return profileView;
     }
 
-    private AnchorPane loadMessageView(Service service) throws IOException {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("/app/toysocialnetwork/view/message-view.fxml"));
-
-        // Load the view
-        AnchorPane messageView = loader.load();
-
-        // Set up the controller
-        MessageController messageController = loader.getController();
-        User selectedUser = service.getUserById(service.getSelectedUserId())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        messageController.setService(service, selectedUser);
-
-        return messageView;
-    }
-
-    private void openUsersWindow(Stage stage, Service service) {
-        try {
-            // add the users view to the stage, to the already existing tabs
-            AnchorPane usersView = loadUsersView(service);
-            Tab usersTab = new Tab("Users");
-            usersTab.setContent(usersView);
-            usersTab.setClosable(true);
-
-            TabPane tabPane = (TabPane) stage.getScene().getRoot();
-            tabPane.getTabs().add(usersTab);
-
-            // select the users tab
-            tabPane.getSelectionModel().select(usersTab);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private void openFriendsWindow(Service service) {
+        openView("friends", "Friends", "friends-view.fxml", true, (FriendsController friendsController) -> {
+            friendsController.setService(service);
+            friendsController.setOnMessage(() -> openMessageWindow(service));
+        });
     }
 
-    private void openFriendsWindow(Stage stage, Service service) {
-        try {
-            // add the friends view to the stage, to the already existing tabs
-            AnchorPane friendsView = loadFriendsView(service);
-            Tab friendsTab = new Tab("Friends");
-            friendsTab.setContent(friendsView);
-            friendsTab.setClosable(true);
-
-            TabPane tabPane = (TabPane) stage.getScene().getRoot();
-            tabPane.getTabs().add(friendsTab);
-
-            // select the friends tab
-            tabPane.getSelectionModel().select(friendsTab);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private void openRequestsWindow(Service service) {
+        openView("requests", "Requests", "requests-view.fxml", true, (RequestsController requestsController) -> {
+            requestsController.setService(service);
+            requestsController.setOnViewProfile(() -> openProfileWindow(service));
+        });
     }
 
-    private void openRequestsWindow(Stage stage, Service service) {
-        try {
-            // add the requests view to the stage, to the already existing tabs
-            AnchorPane requestsView = loadRequestsView(service);
-            Tab requestsTab = new Tab("Requests");
-            requestsTab.setContent(requestsView);
-            requestsTab.setClosable(true);
-
-            TabPane tabPane = (TabPane) stage.getScene().getRoot();
-            tabPane.getTabs().add(requestsTab);
-
-            // select the requests tab
-            tabPane.getSelectionModel().select(requestsTab);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private void openPendingsWindow(Service service) {
+        openView("pendings", "Pendings", "pendings-view.fxml", true, (PendingsController pendingsController) -> {
+            pendingsController.setService(service);
+            pendingsController.setOnViewProfile(() -> openProfileWindow(service));
+        });
     }
 
-    private void openPendingsWindow(Stage stage, Service service) {
-        try {
-            // add the pendings view to the stage, to the already existing tabs
-            AnchorPane pendingsView = loadPendingsView(service);
-            Tab pendingsTab = new Tab("Pendings");
-            pendingsTab.setContent(pendingsView);
-            pendingsTab.setClosable(true);
-
-            TabPane tabPane = (TabPane) stage.getScene().getRoot();
-            tabPane.getTabs().add(pendingsTab);
-
-            // select the pendings tab
-            tabPane.getSelectionModel().select(pendingsTab);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private void openProfileWindow(Service service) {
+        User selectedUser = service.getUserById(service.getSelectedUserId())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        // one tab per profile: viewing the same user again selects the open tab
+        openView("profile:" + selectedUser.getId(), "Profile: " + selectedUser.getUsername(), "profile-view.fxml", false,
+                (ProfileController profileController) -> {
+                    profileController.setService(service, selectedUser);
+                    profileController.setOnViewProfile(() -> openProfileWindow(service));
+                });
     }
 
-    private void openProfileWindow(Stage stage, Service service) {
-        try {
-            // add the profile view to the stage, to the already existing tabs
-            AnchorPane profileView = loadProfileView(service);
-            Tab profileTab = new Tab("Profile");
-            profileTab.setContent(profileView);
-            profileTab.setClosable(true);
-
-            TabPane tabPane = (TabPane) stage.getScene().getRoot();
-            tabPane.getTabs().add(profileTab);
-
-            // select the profile tab
-            tabPane.getSelectionModel().select(profileTab);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private void openMessageWindow(Service service) {
+        User selectedUser = service.getUserById(service.getSelectedUserId())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        // one tab per conversation
+        openView("message:" + selectedUser.getId(), "Message: " + selectedUser.getUsername(), "message-view.fxml", false,
+                (MessageController messageController) -> messageController.setService(service, selectedUser));
     }
 
-    private void openMessageWindow(Stage stage, Service service) {
+    private <C> void openView(String key, String title, String fxml, boolean keepWhenClosed, Consumer<C> setUp) {
         try {
-            // add the message view to the stage, to the already existing tabs
-            AnchorPane messageView = loadMessageView(service);
-            Tab messageTab = new Tab("Message");
-            messageTab.setContent(messageView);
-            messageTab.setClosable(true);
-
-            TabPane tabPane = (TabPane) stage.getScene().getRoot();
-            tabPane.getTabs().add(messageTab);
-
-            // select the message tab
-            tabPane.getSelectionModel().select(messageTab);
+            views.open(key, title, fxml, keepWhenClosed, setUp);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -336,6 +195,7 @@ public class GUI extends Application {
             // Create the TabPane and add the tabs
             TabPane tabPane = new TabPane();
             tabPane.getTabs().addAll(mainTab);
+            views = new ViewRegistry(tabPane);
 
             // Create the scene and show the stage
             Scene scene = new Scene(tabPane, 600, 400);
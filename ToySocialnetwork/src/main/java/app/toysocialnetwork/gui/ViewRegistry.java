@@ -0,0 +1,103 @@
+package app.toysocialnetwork.gui;
+
+import app.toysocialnetwork.controller.Disposable;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.layout.AnchorPane;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The tabs of a window, one per view: opening a view that already has a tab selects that tab
+ * instead of parsing the FXML again and stacking another tab on top.
+ * <p>
+ * When a tab is closed its controller is disposed, so it stops observing the service.
+ * The parsed views of the fixed tabs (users, friends, ...) are kept and set up again when they are reopened;
+ * per-user views (profiles, conversations) are dropped, so their number stays bounded by the open tabs.
+ */
+public class ViewRegistry {
+    private static final String VIEWS = "/app/toysocialnetwork/view/";
+
+    /**
+     * A parsed view and its controller
+     */
+    private record View(AnchorPane root, Object controller) {
+    }
+
+    private final TabPane tabPane;
+    private final Map<String, Tab> tabs = new HashMap<>();
+    private final Map<String, View> closedViews = new HashMap<>();
+
+    /**
+     * Constructor for ViewRegistry
+     * @param tabPane the tabs of the window
+     */
+    public ViewRegistry(TabPane tabPane) {
+        this.tabPane = tabPane;
+    }
+
+    /**
+     * Select the tab of a view, opening it if it is not open
+     * @param key identifies the view, e.g. "users" or "profile:42"
+     * @param title the title of the tab
+     * @param fxml the file name of the view, under /app/toysocialnetwork/view/
+     * @param keepWhenClosed whether the parsed view is kept for the next time it is opened
+     * @param setUp sets up the controller, e.g. gives it the service; called each time the tab is opened
+     * @param <C> the type of the controller
+     * @throws IOException if the view cannot be loaded
+     */
+    public <C> void open(String key, String title, String fxml, boolean keepWhenClosed, Consumer<C> setUp) throws IOException {
+        Tab open = tabs.get(key);
+        if (open != null) {
+            tabPane.getSelectionModel().select(open);
+            return;
+        }
+        View view = closedViews.remove(key);
+        if (view == null) {
+            FXMLLoader loader = new FXMLLoader(ViewRegistry.class.getResource(VIEWS + fxml));
+            AnchorPane root = loader.load();
+            view = new View(root, loader.getController());
+        }
+        @SuppressWarnings("unchecked")
+        C controller = (C) view.controller();
+        setUp.accept(controller);
+
+        Tab tab = new Tab(title, view.root());
+        tab.setClosable(true);
+        View opened = view;
+        tab.setOnClosed(event -> {
+            tabs.remove(key);
+            dispose(opened);
+            if (keepWhenClosed) {
+                closedViews.put(key, opened);
+            }
+        });
+        tabs.put(key, tab);
+        tabPane.getTabs().add(tab);
+        tabPane.getSelectionModel().select(tab);
+    }
+
+    /**
+     * Close every tab opened through the registry and forget the kept views, e.g. when the user logs out
+     */
+    public void closeAll() {
+        for (Tab tab : new ArrayList<>(tabs.values())) {
+            tabPane.getTabs().remove(tab);
+            if (tab.getOnClosed() != null) {
+                tab.getOnClosed().handle(null);
+            }
+        }
+        closedViews.clear();
+    }
+
+    private static void dispose(View view) {
+        if (view.controller() instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+}
@@ -4,6 +4,8 @@ import app.toysocialnetwork.domain.Entity;
 import app.toysocialnetwork.domain.validators.ValidationException;
 
 import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * CRUD operations repository interface
@@ -27,6 +29,16 @@ public interface AbstractRepository<ID, E extends Entity<ID>> {
      */
     Iterable<E> findAll();
 
+    /**
+     * Stream all entities without holding the whole table in memory at once.
+     * The stream may hold a database cursor, so it must be closed after use
+     * (e.g. in a try-with-resources block).
+     * @return a {@code Stream} of all entities
+     */
+    default Stream<E> streamAll() {
+        return StreamSupport.stream(findAll().spliterator(), false);
+    }
+
     /**
      *
      * @param entity
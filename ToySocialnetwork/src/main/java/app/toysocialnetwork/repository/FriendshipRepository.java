@@ -0,0 +1,30 @@
+package app.toysocialnetwork.repository;
+
+import app.toysocialnetwork.domain.Friendship;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository of friendships, with the lookups the service needs beyond CRUD.
+ * Saving a friendship between two users who are already friends, in either direction, saves nothing.
+ */
+public interface FriendshipRepository extends AbstractRepository<Long, Friendship> {
+    /**
+     * Find all friendships of a user
+     * @param userId the id of the user
+     * userId must not be null
+     * @return the friendships in which the user is either side
+     */
+    List<Friendship> findByUser(Long userId);
+
+    /**
+     * Find the friendship between two users, in either direction
+     * @param userId1 the id of the first user
+     * userId1 must not be null
+     * @param userId2 the id of the second user
+     * userId2 must not be null
+     * @return an {@code Optional} encapsulating the friendship, if the users are friends
+     */
+    Optional<Friendship> findBetween(Long userId1, Long userId2);
+}
@@ -0,0 +1,78 @@
+package app.toysocialnetwork.repository;
+
+import app.toysocialnetwork.utils.metrics.MetricsRegistry;
+import app.toysocialnetwork.utils.metrics.OperationMetrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Decorates a repository so every call is recorded in the {@link MetricsRegistry}
+ * as "repository.{name}.{method}": its latency, whether it threw, and how many rows it returned.
+ * Rows are counted from the result: one or none for an {@code Optional}, the size of a collection,
+ * and the number of elements consumed for a {@code Stream}, recorded when the stream is closed.
+ */
+public class InstrumentedRepository implements InvocationHandler {
+    private final Object repository;
+    private final String name;
+    private final Map<Method, OperationMetrics> metrics = new ConcurrentHashMap<>();
+
+    private InstrumentedRepository(Object repository, String name) {
+        this.repository = repository;
+        this.name = name;
+    }
+
+    /**
+     * Wrap a repository
+     * @param type the repository interface, e.g. {@code UserRepository.class}
+     * @param repository the repository to wrap
+     * @param name the name of the repository in the metrics, e.g. "users"
+     * @return a repository of the same interface that records every call
+     */
+    public static <R extends AbstractRepository<?, ?>> R of(Class<R> type, R repository, String name) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new InstrumentedRepository(repository, name)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(repository, args);
+        }
+        OperationMetrics operation = metrics.computeIfAbsent(method,
+                m -> MetricsRegistry.getInstance().operation("repository." + name + "." + m.getName()));
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = method.invoke(repository, args);
+        } catch (InvocationTargetException e) {
+            operation.record(System.nanoTime() - start, -1, true);
+            throw e.getCause();
+        }
+        if (result instanceof Stream<?> stream) {
+            operation.record(System.nanoTime() - start, -1, false);
+            LongAdder rows = new LongAdder();
+            return stream.peek(row -> rows.increment()).onClose(() -> operation.recordRows(rows.sum()));
+        }
+        operation.record(System.nanoTime() - start, rows(result), false);
+        return result;
+    }
+
+    private static long rows(Object result) {
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,68 @@
+package app.toysocialnetwork.repository;
+
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.validators.ValidationException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Repository of messages, with the conversation and search queries the service needs beyond CRUD
+ */
+public interface MessageRepository extends AbstractRepository<Long, Message> {
+    /**
+     * Reserve a new message id, so a message can be saved with its id already set
+     * @return an id no other message has or will be given
+     */
+    Long nextId();
+
+    /**
+     * Find the conversation between two users
+     * @param userId1 the id of the first user
+     * userId1 must not be null
+     * @param userId2 the id of the second user
+     * userId2 must not be null
+     * @return the messages sent between the two users, oldest first
+     */
+    List<Message> findBetween(Long userId1, Long userId2);
+
+    /**
+     * Find the recent part of the conversation between two users.
+     * Repositories that store messages by date override it to read only the dates asked for.
+     * @param userId1 the id of the first user
+     * userId1 must not be null
+     * @param userId2 the id of the second user
+     * userId2 must not be null
+     * @param since the date of the oldest message to return
+     * since must not be null
+     * @return the messages sent between the two users since the date, oldest first
+     */
+    default List<Message> findBetween(Long userId1, Long userId2, LocalDateTime since) {
+        return findBetween(userId1, userId2).stream()
+                .filter(message -> !message.getDate().isBefore(since))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Full-text search over the messages of a user's conversations
+     * @param userId the id of the user whose conversations are searched
+     * userId must not be null
+     * @param query the words to search for
+     * query must not be null
+     * @param limit the maximum number of messages to return
+     * @param offset the number of matching messages to skip
+     * @return the matching messages, ordered by relevance and then by date (newest first)
+     */
+    List<Message> search(Long userId, String query, int limit, int offset);
+
+    /**
+     * Save a batch of messages in one transaction
+     * @param messages the messages to save
+     * messages must not be null
+     * @return the saved messages, with their ids set, in the same order
+     * @throws ValidationException
+     * if any of the messages is not valid; then none of them is saved
+     */
+    List<Message> saveAll(List<Message> messages) throws ValidationException;
+}
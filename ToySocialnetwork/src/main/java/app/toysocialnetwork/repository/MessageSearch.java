@@ -0,0 +1,90 @@
+package app.toysocialnetwork.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * The word matching and ranking of the message repositories that search without the database:
+ * a message matches if its text contains every word of the query, and matches are ranked by the number
+ * of occurrences of the query words, like ts_rank, then newest first.
+ */
+public final class MessageSearch {
+    private MessageSearch() {
+    }
+
+    /**
+     * @param text a text
+     * @return the words of the text, in lower case, in order, repeated words included
+     */
+    public static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("\\W+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @param text a text
+     * @return the distinct words of the text, in lower case
+     */
+    public static Set<String> distinctWords(String text) {
+        return new LinkedHashSet<>(words(text));
+    }
+
+    /**
+     * Score a text against the words of a query, tokenizing it once
+     * @param text the text
+     * @param queryWords the distinct words of the query
+     * @return the number of occurrences of the query words, or -1 if the text lacks one of them
+     */
+    public static int score(String text, Set<String> queryWords) {
+        int occurrences = 0;
+        Set<String> found = new LinkedHashSet<>();
+        for (String word : words(text)) {
+            if (queryWords.contains(word)) {
+                occurrences++;
+                found.add(word);
+            }
+        }
+        return found.size() == queryWords.size() ? occurrences : -1;
+    }
+
+    /**
+     * Keep the candidates that match the query and return a page of them, best first
+     * @param candidates the messages that may match
+     * @param query the words to search for
+     * @param text the text of a message
+     * @param date the date of a message, in any unit that orders them
+     * @param limit the maximum number of messages to return
+     * @param offset the number of best matches to skip
+     * @return the page of matches, empty if the query has no words, as with plainto_tsquery
+     */
+    public static <M> List<M> rank(Stream<M> candidates, String query, Function<M, String> text, ToLongFunction<M> date,
+                                   int limit, int offset) {
+        Set<String> queryWords = distinctWords(query);
+        if (queryWords.isEmpty()) {
+            return List.of();
+        }
+        record Scored<M>(M message, int score, long date) {
+        }
+        return candidates
+                .map(message -> new Scored<>(message, score(text.apply(message), queryWords), date.applyAsLong(message)))
+                .filter(scored -> scored.score() >= 0)
+                .sorted(Comparator.comparingInt((Scored<M> scored) -> scored.score()).reversed()
+                        .thenComparing(Comparator.comparingLong((Scored<M> scored) -> scored.date()).reversed()))
+                .skip(offset)
+                .limit(limit)
+                .map(Scored::message)
+                .toList();
+    }
+}
@@ -0,0 +1,64 @@
+package app.toysocialnetwork.repository;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.validators.ValidationException;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository of friend requests, with the lookups and atomic operations the service needs beyond CRUD.
+ * There is at most one request between two users, in either direction.
+ */
+public interface RequestRepository extends AbstractRepository<Long, Request> {
+    /**
+     * Find all requests sent by a user
+     * @param senderId the id of the user who sent the requests
+     * senderId must not be null
+     * @return the requests sent by the user
+     */
+    List<Request> findBySender(Long senderId);
+
+    /**
+     * Find all requests received by a user
+     * @param receiverId the id of the user who received the requests
+     * receiverId must not be null
+     * @return the requests received by the user
+     */
+    List<Request> findByReceiver(Long receiverId);
+
+    /**
+     * Find the request sent from one user to another
+     * @param senderId the id of the user who sent the request
+     * senderId must not be null
+     * @param receiverId the id of the user who received the request
+     * receiverId must not be null
+     * @return an {@code Optional} encapsulating the request, if it exists
+     */
+    Optional<Request> findBetween(Long senderId, Long receiverId);
+
+    /**
+     * Atomically save a request unless the two users are already friends or a request between them already exists
+     * @param request
+     * entity must not be null
+     * @return an {@code Optional}
+     * - the saved request, with its generated id
+     * - empty if the request was not saved
+     * @throws ValidationException
+     * if the entity is not valid
+     */
+    Optional<Request> saveIfNotFriends(Request request) throws ValidationException;
+
+    /**
+     * Atomically accept the request sent from the first user of a friendship to the second one:
+     * delete the request and create the friendship
+     * @param friendship the friendship to create; user1Id is the sender and user2Id the receiver of the request
+     * friendship must not be null
+     * @return an {@code Optional}
+     * - the accepted (deleted) request; the friendship's id is set if it was created,
+     * and left null if the users were already friends
+     * - empty if there was no such request
+     */
+    Optional<Request> acceptRequest(Friendship friendship);
+}
@@ -0,0 +1,18 @@
+package app.toysocialnetwork.repository;
+
+import app.toysocialnetwork.domain.User;
+
+import java.util.Optional;
+
+/**
+ * Repository of users, with the lookups the service needs beyond CRUD
+ */
+public interface UserRepository extends AbstractRepository<Long, User> {
+    /**
+     * Find the user with the given username
+     * @param username the username of the user to be returned
+     * username must not be null
+     * @return an {@code Optional} encapsulating the user with the given username
+     */
+    Optional<User> findByUsername(String username);
+}
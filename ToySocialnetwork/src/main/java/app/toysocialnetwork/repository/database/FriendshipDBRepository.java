@@ -3,23 +3,40 @@ package app.toysocialnetwork.repository.database;
 import app.toysocialnetwork.domain.Friendship;
 import app.toysocialnetwork.domain.validators.ValidationException;
 import app.toysocialnetwork.domain.validators.Validator;
-import app.toysocialnetwork.repository.AbstractRepository;
+import app.toysocialnetwork.repository.FriendshipRepository;
+import app.toysocialnetwork.repository.database.mapper.FriendshipRowMapper;
+import app.toysocialnetwork.repository.database.mapper.RowMapper;
+import app.toysocialnetwork.utils.DataBase;
 import app.toysocialnetwork.utils.NetworkDB;
 
 import java.sql.*;
 import java.util.*;
-import java.time.LocalDateTime;
+import java.util.stream.Stream;
 
-public class FriendshipDBRepository implements AbstractRepository<Long, Friendship> {
+public class FriendshipDBRepository implements FriendshipRepository {
     private final Validator<Friendship> validator;
+    private final RowMapper<Friendship> mapper = new FriendshipRowMapper();
+    private final DataBase dataBase;
 
     /**
-     * Constructor that creates a new FriendshipDBRepository
+     * Constructor that creates a new FriendshipDBRepository on the application's database
      * @param validator
      * validator must not be null
      */
     public FriendshipDBRepository(Validator<Friendship> validator) {
+        this(validator, NetworkDB.getInstance());
+    }
+
+    /**
+     * Constructor that creates a new FriendshipDBRepository
+     * @param validator
+     * validator must not be null
+     * @param dataBase the database holding the table
+     * dataBase must not be null
+     */
+    public FriendshipDBRepository(Validator<Friendship> validator, DataBase dataBase) {
         this.validator = validator;
+        this.dataBase = dataBase;
     }
 
     /**
@@ -29,7 +46,17 @@ public class FriendshipDBRepository implements AbstractRepository<Long, Friendsh
      * if the connection cannot be established
      */
     private Connection connect() throws SQLException {
-        return NetworkDB.getInstance().getConnection();
+        return dataBase.getConnection();
+    }
+
+    /**
+     * Establish a connection for a read, to a read replica if there is one
+     * @return a connection to a replica or to the primary database
+     * @throws SQLException
+     * if the connection cannot be established
+     */
+    private Connection connectForRead() throws SQLException {
+        return dataBase.getReadConnection();
     }
 
     /**
@@ -40,17 +67,12 @@ public class FriendshipDBRepository implements AbstractRepository<Long, Friendsh
      */
     @Override
     public Optional<Friendship> findOne(Long id) {
-        String query = "SELECT * FROM friendships WHERE id = ?";
-        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
+        String query = "SELECT " + mapper.columns() + " FROM friendships WHERE id = ?";
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, id);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
-                Long userId1 = rs.getLong("user_id1");
-                Long userId2 = rs.getLong("user_id2");
-                LocalDateTime friendsFrom = rs.getTimestamp("friends_from").toLocalDateTime();
-                Friendship friendship = new Friendship(userId1, userId2, friendsFrom);
-                friendship.setId(id);
-                return Optional.of(friendship);
+                return Optional.of(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -65,17 +87,11 @@ public class FriendshipDBRepository implements AbstractRepository<Long, Friendsh
     @Override
     public Iterable<Friendship> findAll() {
         List<Friendship> friendships = new ArrayList<>();
-        String query = "SELECT * FROM friendships";
-        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
+        String query = "SELECT " + mapper.columns() + " FROM friendships";
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                Long id = rs.getLong("id");
-                Long userId1 = rs.getLong("user_id1");
-                Long userId2 = rs.getLong("user_id2");
-                LocalDateTime friendsFrom = rs.getTimestamp("friends_from").toLocalDateTime();
-                Friendship friendship = new Friendship(userId1, userId2, friendsFrom);
-                friendship.setId(id);
-                friendships.add(friendship);
+                friendships.add(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -84,12 +100,77 @@ public class FriendshipDBRepository implements AbstractRepository<Long, Friendsh
     }
 
     /**
-     * Save the entity to the database
+     * Stream all entities, fetching them from the database in chunks
+     * @return a {@code Stream} of all entities, which must be closed after use
+     */
+    @Override
+    public Stream<Friendship> streamAll() {
+        String query = "SELECT " + mapper.columns() + " FROM friendships";
+        try {
+            return ResultSetStreams.stream(connectForRead(), query, ResultSetStreams.DEFAULT_FETCH_SIZE, mapper);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Find all friendships of a user
+     * @param userId the id of the user
+     * userId must not be null
+     * @return the friendships in which the user is either side
+     */
+    @Override
+    public List<Friendship> findByUser(Long userId) {
+        return findWhere("user_id1 = ? OR user_id2 = ?", userId, userId);
+    }
+
+    /**
+     * Find the friendship between two users, in either direction.
+     * The pair is compared in normalized (least, greatest) order, which is what the unique index is built on.
+     * @param userId1 the id of the first user
+     * userId1 must not be null
+     * @param userId2 the id of the second user
+     * userId2 must not be null
+     * @return an {@code Optional} encapsulating the friendship, if the users are friends
+     */
+    @Override
+    public Optional<Friendship> findBetween(Long userId1, Long userId2) {
+        return findWhere("LEAST(user_id1, user_id2) = LEAST(?, ?) AND GREATEST(user_id1, user_id2) = GREATEST(?, ?)",
+                userId1, userId2, userId1, userId2).stream().findFirst();
+    }
+
+    /**
+     * Find the friendships matching a condition on indexed user id columns
+     * @param condition the WHERE clause, with one placeholder per parameter
+     * @param params the user ids bound to the placeholders, in order
+     * @return the matching friendships
+     */
+    private List<Friendship> findWhere(String condition, Long... params) {
+        List<Friendship> friendships = new ArrayList<>();
+        String query = "SELECT " + mapper.columns() + " FROM friendships WHERE " + condition;
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setLong(i + 1, params[i]);
+            }
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                friendships.add(mapper.map(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return friendships;
+    }
+
+    /**
+     * Save the entity to the database.
+     * The unique index on the normalized user pair rejects a second friendship between the same users,
+     * in either direction, even when two saves race each other.
      * @param friendship
      * entity must be not null
      * @return an {@code Optional}
-     * - null if the entity was saved
-     * - the entity (id already exists)
+     * - the saved entity, with its generated id, or with the id it already had
+     * - empty if the users are already friends
      * @throws ValidationException
      * if the entity is not valid
      * @throws IllegalArgumentException
@@ -98,8 +179,11 @@ public class FriendshipDBRepository implements AbstractRepository<Long, Friendsh
     @Override
     public Optional<Friendship> save(Friendship friendship) throws ValidationException {
         validator.validate(friendship);
-        String query = "INSERT INTO friendships (user_id1, user_id2, friends_from) VALUES (?, ?, ?)";
-        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+        if (friendship.getId() != null) {
+            return saveWithId(friendship);
+        }
+        String query = "INSERT INTO friendships (user_id1, user_id2, friends_from) VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
+        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query, new String[]{"id"})) {
             stmt.setLong(1, friendship.getUser1Id());
             stmt.setLong(2, friendship.getUser2Id());
             stmt.setTimestamp(3, Timestamp.valueOf(friendship.getFriendsFrom()));
@@ -117,6 +201,27 @@ public class FriendshipDBRepository implements AbstractRepository<Long, Friendsh
         return Optional.empty();
     }
 
+    /**
+     * Save a friendship whose id was assigned elsewhere, e.g. by a sharded repository
+     * @param friendship the friendship, with its id set
+     * @return an {@code Optional} encapsulating the saved friendship, empty if the users are already friends
+     */
+    private Optional<Friendship> saveWithId(Friendship friendship) {
+        String query = "INSERT INTO friendships (id, user_id1, user_id2, friends_from) VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING";
+        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setLong(1, friendship.getId());
+            stmt.setLong(2, friendship.getUser1Id());
+            stmt.setLong(3, friendship.getUser2Id());
+            stmt.setTimestamp(4, Timestamp.valueOf(friendship.getFriendsFrom()));
+            if (stmt.executeUpdate() > 0) {
+                return Optional.of(friendship);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return Optional.empty();
+    }
+
     /**
      * Remove the entity with the specified id
      * @param id
@@ -129,12 +234,12 @@ public class FriendshipDBRepository implements AbstractRepository<Long, Friendsh
      */
     @Override
     public Optional<Friendship> delete(Long id) {
-        String query = "DELETE FROM friendships WHERE id = ?";
+        String query = "DELETE FROM friendships WHERE id = ? RETURNING " + mapper.columns();
         try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, id);
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                return Optional.of(new Friendship(0L, 0L, null));
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return Optional.of(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -171,4 +276,4 @@ public class FriendshipDBRepository implements AbstractRepository<Long, Friendsh
         }
         return Optional.empty();
     }
-}
\ No newline at end of file
+}
@@ -3,23 +3,43 @@ package app.toysocialnetwork.repository.database;
 import app.toysocialnetwork.domain.Message;
 import app.toysocialnetwork.domain.validators.ValidationException;
 import app.toysocialnetwork.domain.validators.Validator;
-import app.toysocialnetwork.repository.AbstractRepository;
+import app.toysocialnetwork.repository.MessageRepository;
+import app.toysocialnetwork.repository.database.mapper.MessageRowMapper;
+import app.toysocialnetwork.repository.database.mapper.RowMapper;
+import app.toysocialnetwork.utils.DataBase;
 import app.toysocialnetwork.utils.NetworkDB;
 
 import java.sql.*;
-import java.util.*;
 import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
 
-public class MessageDBRepository implements AbstractRepository<Long, Message> {
+public class MessageDBRepository implements MessageRepository {
     private final Validator<Message> validator;
+    private final RowMapper<Message> mapper = new MessageRowMapper();
+    private final DataBase dataBase;
+    private final SequenceIdAllocator ids;
 
     /**
-     * Constructor that creates a new MessageDBRepository
+     * Constructor that creates a new MessageDBRepository on the application's database
      * @param validator
      * validator must not be null
      */
     public MessageDBRepository(Validator<Message> validator) {
+        this(validator, NetworkDB.getInstance());
+    }
+
+    /**
+     * Constructor that creates a new MessageDBRepository
+     * @param validator
+     * validator must not be null
+     * @param dataBase the database holding the table
+     * dataBase must not be null
+     */
+    public MessageDBRepository(Validator<Message> validator, DataBase dataBase) {
         this.validator = validator;
+        this.dataBase = dataBase;
+        this.ids = new SequenceIdAllocator(dataBase, "messages");
     }
 
     /**
@@ -29,7 +49,17 @@ public class MessageDBRepository implements AbstractRepository<Long, Message> {
      * if the connection cannot be established
      */
     private Connection connect() throws SQLException {
-        return NetworkDB.getInstance().getConnection();
+        return dataBase.getConnection();
+    }
+
+    /**
+     * Establish a connection for a read, to a read replica if there is one
+     * @return a connection to a replica or to the primary database
+     * @throws SQLException
+     * if the connection cannot be established
+     */
+    private Connection connectForRead() throws SQLException {
+        return dataBase.getReadConnection();
     }
 
     /**
@@ -40,18 +70,12 @@ public class MessageDBRepository implements AbstractRepository<Long, Message> {
      */
     @Override
     public Optional<Message> findOne(Long id) {
-        String query = "SELECT * FROM messages WHERE id = ?";
-        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
+        String query = "SELECT " + mapper.columns() + " FROM messages WHERE id = ?";
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, id);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
-                Long from = rs.getLong("from");
-                Long to = rs.getLong("to");
-                String text = rs.getString("text");
-                LocalDateTime date = rs.getTimestamp("date").toLocalDateTime();
-                Message message = new Message(from, to, text, date);
-                message.setId(id);
-                return Optional.of(message);
+                return Optional.of(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -66,18 +90,84 @@ public class MessageDBRepository implements AbstractRepository<Long, Message> {
     @Override
     public Iterable<Message> findAll() {
         List<Message> messages = new ArrayList<>();
-        String query = "SELECT * FROM messages";
-        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
+        String query = "SELECT " + mapper.columns() + " FROM messages";
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                messages.add(mapper.map(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return messages;
+    }
+
+    /**
+     * Stream all entities, fetching them from the database in chunks
+     * @return a {@code Stream} of all entities, which must be closed after use
+     */
+    @Override
+    public Stream<Message> streamAll() {
+        String query = "SELECT " + mapper.columns() + " FROM messages";
+        try {
+            return ResultSetStreams.stream(connectForRead(), query, ResultSetStreams.DEFAULT_FETCH_SIZE, mapper);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Find the conversation between two users
+     * @param userId1 the id of the first user
+     * userId1 must not be null
+     * @param userId2 the id of the second user
+     * userId2 must not be null
+     * @return the messages sent between the two users, oldest first
+     */
+    @Override
+    public List<Message> findBetween(Long userId1, Long userId2) {
+        return conversation(userId1, userId2, null);
+    }
+
+    /**
+     * Find the recent part of the conversation between two users.
+     * The messages table is partitioned by month of date, so the bound on date lets the planner
+     * skip the partitions of older months instead of probing the index of every month.
+     * @param userId1 the id of the first user
+     * userId1 must not be null
+     * @param userId2 the id of the second user
+     * userId2 must not be null
+     * @param since the date of the oldest message to return
+     * since must not be null
+     * @return the messages sent between the two users since the date, oldest first
+     */
+    @Override
+    public List<Message> findBetween(Long userId1, Long userId2, LocalDateTime since) {
+        return conversation(userId1, userId2, since);
+    }
+
+    /**
+     * Load a conversation, all of it or from a date on
+     * @param since the date of the oldest message to return, or null for the whole conversation
+     */
+    private List<Message> conversation(Long userId1, Long userId2, LocalDateTime since) {
+        List<Message> messages = new ArrayList<>();
+        boolean bounded = since != null;
+        String query = "SELECT " + mapper.columns() + " FROM messages " +
+                "WHERE ((\"from\" = ? AND \"to\" = ?) OR (\"from\" = ? AND \"to\" = ?)) " +
+                (bounded ? "AND date >= ? " : "") +
+                "ORDER BY date, id";
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setLong(1, userId1);
+            stmt.setLong(2, userId2);
+            stmt.setLong(3, userId2);
+            stmt.setLong(4, userId1);
+            if (bounded) {
+                stmt.setTimestamp(5, Timestamp.valueOf(since));
+            }
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                Long id = rs.getLong("id");
-                Long from = rs.getLong("from");
-                Long to = rs.getLong("to");
-                String text = rs.getString("text");
-                LocalDateTime date = rs.getTimestamp("date").toLocalDateTime();
-                Message message = new Message(from, to, text, date);
-                message.setId(id);
-                messages.add(message);
+                messages.add(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -86,12 +176,21 @@ public class MessageDBRepository implements AbstractRepository<Long, Message> {
     }
 
     /**
-     * Save the entity to the database
+     * Reserve a new message id from the block allocated to this repository
+     * @return an id no other message has or will be given
+     */
+    @Override
+    public Long nextId() {
+        return ids.nextId();
+    }
+
+    /**
+     * Save the entity to the database, with its id if it was reserved through {@link #nextId()}
      * @param message
      * entity must not be null
      * @return an {@code Optional}
-     * - null if the entity was saved
-     * - the entity (id already exists)
+     * - the saved entity, with its id set
+     * - empty if the entity could not be saved
      * @throws ValidationException
      * if the entity is not valid
      * @throws IllegalArgumentException
@@ -100,19 +199,14 @@ public class MessageDBRepository implements AbstractRepository<Long, Message> {
     @Override
     public Optional<Message> save(Message message) throws ValidationException {
         validator.validate(message);
-        String query = "INSERT INTO messages (\"from\", \"to\", text, date) VALUES (?, ?, ?, ?)";
-        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setLong(1, message.getFrom());
-            stmt.setLong(2, message.getTo());
-            stmt.setString(3, message.getText());
-            stmt.setTimestamp(4, Timestamp.valueOf(message.getDate()));
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                ResultSet generatedKeys = stmt.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    message.setId(generatedKeys.getLong(1));
-                    return Optional.of(message);
-                }
+        if (message.getId() == null) {
+            message.setId(nextId());
+        }
+        String query = "INSERT INTO messages (id, \"from\", \"to\", text, date) VALUES (?, ?, ?, ?, ?)";
+        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
+            bind(stmt, message);
+            if (stmt.executeUpdate() > 0) {
+                return Optional.of(message);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -120,6 +214,54 @@ public class MessageDBRepository implements AbstractRepository<Long, Message> {
         return Optional.empty();
     }
 
+    /**
+     * Save a batch of messages with one round trip and one commit.
+     * The whole batch is validated first, so a single invalid message does not leave a partial batch behind.
+     * Messages without an id are given one through {@link #nextId()}.
+     * @param messages the messages to save
+     * messages must not be null
+     * @return the saved messages, with their ids set
+     * @throws ValidationException
+     * if any of the messages is not valid
+     * @throws RuntimeException
+     * if the batch cannot be saved; none of it is committed
+     */
+    @Override
+    public List<Message> saveAll(List<Message> messages) throws ValidationException {
+        validator.validateAll(messages);
+        for (Message message : messages) {
+            if (message.getId() == null) {
+                message.setId(nextId());
+            }
+        }
+        String query = "INSERT INTO messages (id, \"from\", \"to\", text, date) VALUES (?, ?, ?, ?, ?)";
+        try (Connection conn = connect()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                for (Message message : messages) {
+                    bind(stmt, message);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return messages;
+    }
+
+    private static void bind(PreparedStatement stmt, Message message) throws SQLException {
+        stmt.setLong(1, message.getId());
+        stmt.setLong(2, message.getFrom());
+        stmt.setLong(3, message.getTo());
+        stmt.setString(4, message.getText());
+        stmt.setTimestamp(5, Timestamp.valueOf(message.getDate()));
+    }
+
     /**
      * Delete the entity with the given id
      * @param id
@@ -128,13 +270,12 @@ public class MessageDBRepository implements AbstractRepository<Long, Message> {
      */
     @Override
     public Optional<Message> delete(Long id) {
-        Optional<Message> optional = findOne(id);
-        String query = "DELETE FROM messages WHERE id = ?";
+        String query = "DELETE FROM messages WHERE id = ? RETURNING " + mapper.columns();
         try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, id);
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                return optional;
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return Optional.of(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -146,4 +287,41 @@ public class MessageDBRepository implements AbstractRepository<Long, Message> {
     public Optional<Message> update(Message entity) {
         return Optional.empty();
     }
+
+    /**
+     * Full-text search over the messages of a user's conversations.
+     * The match uses the same to_tsvector('simple', text) expression as the GIN index on messages,
+     * so the planner can answer it from the index instead of scanning the table.
+     * @param userId the id of the user whose conversations are searched
+     * userId must not be null
+     * @param query the words to search for
+     * query must not be null
+     * @param limit the maximum number of messages to return
+     * @param offset the number of matching messages to skip
+     * @return the matching messages, ordered by relevance and then by date (newest first)
+     */
+    @Override
+    public List<Message> search(Long userId, String query, int limit, int offset) {
+        List<Message> messages = new ArrayList<>();
+        String sql = "SELECT " + mapper.columns() + " FROM messages " +
+                "WHERE (\"from\" = ? OR \"to\" = ?) " +
+                "AND to_tsvector('simple', text) @@ plainto_tsquery('simple', ?) " +
+                "ORDER BY ts_rank(to_tsvector('simple', text), plainto_tsquery('simple', ?)) DESC, date DESC " +
+                "LIMIT ? OFFSET ?";
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, userId);
+            stmt.setLong(2, userId);
+            stmt.setString(3, query);
+            stmt.setString(4, query);
+            stmt.setInt(5, limit);
+            stmt.setInt(6, offset);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                messages.add(mapper.map(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return messages;
+    }
 }
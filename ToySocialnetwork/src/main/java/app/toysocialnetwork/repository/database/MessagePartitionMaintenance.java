@@ -0,0 +1,122 @@
+package app.toysocialnetwork.repository.database;
+
+import app.toysocialnetwork.utils.DataBase;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the monthly partitions of the messages table in shape:
+ * creates the partitions of the coming months before messages arrive for them,
+ * so they do not pile up in the default partition, and archives the months past the retention period
+ * by detaching their partitions into the message_archive schema, which takes no time whatever their size.
+ * Archived messages are no longer returned by any query; they can be dumped and dropped from there.
+ */
+public class MessagePartitionMaintenance {
+    private static final System.Logger LOGGER = System.getLogger("app.toysocialnetwork.sql");
+    private final DataBase dataBase;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private ScheduledExecutorService maintenance;
+
+    /**
+     * Constructor for MessagePartitionMaintenance
+     * @param dataBase the database holding the messages table
+     * dataBase must not be null
+     * @param monthsAhead how many months after the current one get a partition in advance
+     * @param retentionMonths how many months, the current one included, are kept in the messages table,
+     *                        or 0 to never archive
+     */
+    public MessagePartitionMaintenance(DataBase dataBase, int monthsAhead, int retentionMonths) {
+        this.dataBase = dataBase;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    /**
+     * Create the missing partitions, from the current month to {@code monthsAhead} months later
+     * @throws RuntimeException if a partition cannot be created
+     */
+    public void createAhead() throws RuntimeException {
+        LocalDate month = LocalDate.now().withDayOfMonth(1);
+        try (Connection conn = dataBase.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT create_message_partition(?)")) {
+            for (int i = 0; i <= monthsAhead; i++) {
+                stmt.setDate(1, Date.valueOf(month.plusMonths(i)));
+                stmt.executeQuery().close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Detach the partitions of the months past the retention period and move them to the archive schema
+     * @return the names of the archived partitions
+     * @throws RuntimeException if a partition cannot be archived
+     */
+    public List<String> archive() throws RuntimeException {
+        List<String> archived = new ArrayList<>();
+        if (retentionMonths <= 0) {
+            return archived;
+        }
+        LocalDate oldestKept = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths - 1);
+        try (Connection conn = dataBase.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT archive_message_partitions(?)")) {
+            stmt.setDate(1, Date.valueOf(oldestKept));
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                archived.add(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return archived;
+    }
+
+    /**
+     * Run the maintenance now and then periodically, on a background thread
+     * @param intervalMinutes the time between two runs
+     */
+    public synchronized void start(long intervalMinutes) {
+        if (maintenance != null) {
+            return;
+        }
+        maintenance = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "message-partition-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, 0, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stop the periodic maintenance
+     */
+    public synchronized void close() {
+        if (maintenance != null) {
+            maintenance.shutdown();
+            maintenance = null;
+        }
+    }
+
+    private void maintain() {
+        try {
+            createAhead();
+            for (String partition : archive()) {
+                LOGGER.log(System.Logger.Level.INFO, "Archived message partition {0}", partition);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
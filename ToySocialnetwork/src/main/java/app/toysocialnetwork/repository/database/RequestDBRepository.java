@@ -1,24 +1,43 @@
 package app.toysocialnetwork.repository.database;
 
+import app.toysocialnetwork.domain.Friendship;
 import app.toysocialnetwork.domain.Request;
 import app.toysocialnetwork.domain.validators.ValidationException;
 import app.toysocialnetwork.domain.validators.Validator;
-import app.toysocialnetwork.repository.AbstractRepository;
+import app.toysocialnetwork.repository.RequestRepository;
+import app.toysocialnetwork.repository.database.mapper.RequestRowMapper;
+import app.toysocialnetwork.repository.database.mapper.RowMapper;
+import app.toysocialnetwork.utils.DataBase;
 import app.toysocialnetwork.utils.NetworkDB;
 
 import java.sql.*;
 import java.util.*;
+import java.util.stream.Stream;
 
-public class RequestDBRepository implements AbstractRepository<Long, Request> {
+public class RequestDBRepository implements RequestRepository {
     private final Validator<Request> validator;
+    private final RowMapper<Request> mapper = new RequestRowMapper();
+    private final DataBase dataBase;
 
     /**
-     * Constructor that creates a new RequestDBRepository
+     * Constructor that creates a new RequestDBRepository on the application's database
      * @param validator
      * validator must not be null
      */
     public RequestDBRepository(Validator<Request> validator) {
+        this(validator, NetworkDB.getInstance());
+    }
+
+    /**
+     * Constructor that creates a new RequestDBRepository
+     * @param validator
+     * validator must not be null
+     * @param dataBase the database holding the table
+     * dataBase must not be null
+     */
+    public RequestDBRepository(Validator<Request> validator, DataBase dataBase) {
         this.validator = validator;
+        this.dataBase = dataBase;
     }
 
     /**
@@ -28,7 +47,17 @@ public class RequestDBRepository implements AbstractRepository<Long, Request> {
      * if the connection cannot be established
      */
     private Connection connect() throws SQLException {
-        return NetworkDB.getInstance().getConnection();
+        return dataBase.getConnection();
+    }
+
+    /**
+     * Establish a connection for a read, to a read replica if there is one
+     * @return a connection to a replica or to the primary database
+     * @throws SQLException
+     * if the connection cannot be established
+     */
+    private Connection connectForRead() throws SQLException {
+        return dataBase.getReadConnection();
     }
 
     /**
@@ -39,16 +68,12 @@ public class RequestDBRepository implements AbstractRepository<Long, Request> {
      */
     @Override
     public Optional<Request> findOne(Long id) {
-        String query = "SELECT * FROM requests WHERE id = ?";
-        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
+        String query = "SELECT " + mapper.columns() + " FROM requests WHERE id = ?";
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, id);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
-                Long senderId = rs.getLong("sender_id");
-                Long receiverId = rs.getLong("receiver_id");
-                Request request = new Request(senderId, receiverId);
-                request.setId(id);
-                return Optional.of(request);
+                return Optional.of(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -63,16 +88,155 @@ public class RequestDBRepository implements AbstractRepository<Long, Request> {
     @Override
     public Iterable<Request> findAll() {
         List<Request> requests = new ArrayList<>();
-        String query = "SELECT * FROM requests";
+        String query = "SELECT " + mapper.columns() + " FROM requests";
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                requests.add(mapper.map(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return requests;
+    }
+
+    /**
+     * Stream all entities, fetching them from the database in chunks
+     * @return a {@code Stream} of all entities, which must be closed after use
+     */
+    @Override
+    public Stream<Request> streamAll() {
+        String query = "SELECT " + mapper.columns() + " FROM requests";
+        try {
+            return ResultSetStreams.stream(connectForRead(), query, ResultSetStreams.DEFAULT_FETCH_SIZE, mapper);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Find all requests sent by a user
+     * @param senderId the id of the user who sent the requests
+     * senderId must not be null
+     * @return the requests sent by the user
+     */
+    @Override
+    public List<Request> findBySender(Long senderId) {
+        return findWhere("sender_id = ?", senderId);
+    }
+
+    /**
+     * Find all requests received by a user
+     * @param receiverId the id of the user who received the requests
+     * receiverId must not be null
+     * @return the requests received by the user
+     */
+    @Override
+    public List<Request> findByReceiver(Long receiverId) {
+        return findWhere("receiver_id = ?", receiverId);
+    }
+
+    /**
+     * Find the request sent from one user to another
+     * @param senderId the id of the user who sent the request
+     * senderId must not be null
+     * @param receiverId the id of the user who received the request
+     * receiverId must not be null
+     * @return an {@code Optional} encapsulating the request, if it exists
+     */
+    @Override
+    public Optional<Request> findBetween(Long senderId, Long receiverId) {
+        return findWhere("sender_id = ? AND receiver_id = ?", senderId, receiverId).stream().findFirst();
+    }
+
+    /**
+     * Save a request unless the two users are already friends or a request between them already exists.
+     * The check and the insert are a single statement; the unique index on the normalized user pair
+     * rejects duplicate and crossing requests even when they are sent at the same time.
+     * @param request
+     * entity must not be null
+     * @return an {@code Optional}
+     * - the saved request, with its generated id
+     * - empty if the request was not saved
+     * @throws ValidationException
+     * if the entity is not valid
+     */
+    @Override
+    public Optional<Request> saveIfNotFriends(Request request) throws ValidationException {
+        validator.validate(request);
+        String query = "INSERT INTO requests (sender_id, receiver_id) " +
+                "SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM friendships " +
+                "WHERE LEAST(user_id1, user_id2) = LEAST(?, ?) AND GREATEST(user_id1, user_id2) = GREATEST(?, ?)) " +
+                "ON CONFLICT DO NOTHING RETURNING id";
         try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
+            for (int i = 0; i < 6; i += 2) {
+                stmt.setLong(i + 1, request.getSenderId());
+                stmt.setLong(i + 2, request.getReceiverId());
+            }
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                request.setId(rs.getLong(1));
+                return Optional.of(request);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Accept the request sent from the first user of a friendship to the second one:
+     * delete the request and create the friendship.
+     * Both happen in one statement, so either both are applied or neither is.
+     * @param friendship the friendship to create; user1Id is the sender and user2Id the receiver of the request
+     * friendship must not be null
+     * @return an {@code Optional}
+     * - the accepted (deleted) request; the friendship's id is set if it was created,
+     * and left null if the users were already friends
+     * - empty if there was no such request
+     */
+    @Override
+    public Optional<Request> acceptRequest(Friendship friendship) {
+        String query = "WITH accepted AS (" +
+                "DELETE FROM requests WHERE sender_id = ? AND receiver_id = ? RETURNING id, sender_id, receiver_id" +
+                "), created AS (" +
+                "INSERT INTO friendships (user_id1, user_id2, friends_from) " +
+                "SELECT sender_id, receiver_id, ? FROM accepted ON CONFLICT DO NOTHING RETURNING id" +
+                ") SELECT id, (SELECT id FROM created) FROM accepted";
+        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setLong(1, friendship.getUser1Id());
+            stmt.setLong(2, friendship.getUser2Id());
+            stmt.setTimestamp(3, Timestamp.valueOf(friendship.getFriendsFrom()));
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                Request request = new Request(friendship.getUser1Id(), friendship.getUser2Id());
+                request.setId(rs.getLong(1));
+                long friendshipId = rs.getLong(2);
+                friendship.setId(rs.wasNull() ? null : friendshipId);
+                return Optional.of(request);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Find the requests matching a condition on indexed user id columns
+     * @param condition the WHERE clause, with one placeholder per parameter
+     * @param params the user ids bound to the placeholders, in order
+     * @return the matching requests
+     */
+    private List<Request> findWhere(String condition, Long... params) {
+        List<Request> requests = new ArrayList<>();
+        String query = "SELECT " + mapper.columns() + " FROM requests WHERE " + condition;
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setLong(i + 1, params[i]);
+            }
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                Long id = rs.getLong("id");
-                Long senderId = rs.getLong("sender_id");
-                Long receiverId = rs.getLong("receiver_id");
-                Request request = new Request(senderId, receiverId);
-                request.setId(id);
-                requests.add(request);
+                requests.add(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -85,8 +249,8 @@ public class RequestDBRepository implements AbstractRepository<Long, Request> {
      * @param request
      * entity must be not null
      * @return an {@code Optional}
-     * - null if the entity was saved,
-     * - the entity (id already exists)
+     * - the saved entity, with its generated id
+     * - empty if a request between the two users already exists
      * @throws ValidationException
      * if the entity is not valid
      * @throws IllegalArgumentException
@@ -95,8 +259,8 @@ public class RequestDBRepository implements AbstractRepository<Long, Request> {
     @Override
     public Optional<Request> save(Request request) throws ValidationException {
         validator.validate(request);
-        String query = "INSERT INTO requests (sender_id, receiver_id) VALUES (?, ?)";
-        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+        String query = "INSERT INTO requests (sender_id, receiver_id) VALUES (?, ?) ON CONFLICT DO NOTHING";
+        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query, new String[]{"id"})) {
             stmt.setLong(1, request.getSenderId());
             stmt.setLong(2, request.getReceiverId());
             int rowsAffected = stmt.executeUpdate();
@@ -123,12 +287,12 @@ public class RequestDBRepository implements AbstractRepository<Long, Request> {
      */
     @Override
     public Optional<Request> delete(Long id) {
-        String query = "DELETE FROM requests WHERE id = ?";
+        String query = "DELETE FROM requests WHERE id = ? RETURNING " + mapper.columns();
         try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, id);
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                return Optional.of(new Request(0L, 0L)); // Dummy request object
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return Optional.of(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -165,4 +329,4 @@ public class RequestDBRepository implements AbstractRepository<Long, Request> {
         }
         return Optional.empty();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,98 @@
+package app.toysocialnetwork.repository.database;
+
+import app.toysocialnetwork.repository.database.mapper.RowMapper;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Cursor-backed streams over query results.
+ * The PostgreSQL driver only fetches rows in chunks when auto-commit is off and a fetch size is set,
+ * otherwise it reads the whole result into memory before the first row is returned.
+ */
+final class ResultSetStreams {
+    static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private ResultSetStreams() {
+    }
+
+    /**
+     * Run a query and stream its rows, pulling them from the server {@code fetchSize} rows at a time.
+     * The stream owns the connection: closing the stream closes the result set, the statement and the connection.
+     * @param conn the connection to run the query on
+     * @param query the query to run
+     * @param fetchSize the number of rows fetched per round trip
+     * @param mapper maps each row to an entity
+     * @return a stream that must be closed after use
+     * @throws RuntimeException if the query cannot be executed
+     */
+    static <E> Stream<E> stream(Connection conn, String query, int fetchSize, RowMapper<E> mapper) throws RuntimeException {
+        PreparedStatement stmt = null;
+        try {
+            conn.setAutoCommit(false);
+            stmt = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize);
+            ResultSet rs = stmt.executeQuery();
+            PreparedStatement statement = stmt;
+            return StreamSupport.stream(new RowSpliterator<>(rs, mapper), false)
+                    .onClose(() -> close(conn, statement, rs));
+        } catch (SQLException e) {
+            close(conn, stmt, null);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Release the cursor and end the read-only transaction it was opened in
+     */
+    private static void close(Connection conn, PreparedStatement stmt, ResultSet rs) {
+        try {
+            if (rs != null) {
+                rs.close();
+            }
+            if (stmt != null) {
+                stmt.close();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static class RowSpliterator<E> extends Spliterators.AbstractSpliterator<E> {
+        private final ResultSet rs;
+        private final RowMapper<E> mapper;
+
+        RowSpliterator(ResultSet rs, RowMapper<E> mapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.rs = rs;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            try {
+                if (!rs.next()) {
+                    return false;
+                }
+                action.accept(mapper.map(rs));
+                return true;
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package app.toysocialnetwork.repository.database;
+
+import app.toysocialnetwork.utils.DataBase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out ids for a table from blocks reserved on the table's id sequence (hi/lo allocation).
+ * The sequence is incremented by the block size, so a single nextval reserves a whole block of ids
+ * for this allocator; ids are then taken from the block with an atomic increment, without a round trip.
+ * Ids are unique across every allocator and instance sharing the sequence, but not gap-free: the unused
+ * rest of a block is lost when the application stops.
+ */
+public class SequenceIdAllocator {
+    private static final String RESERVE = "SELECT nextval(seq.name), s.increment_by " +
+            "FROM (SELECT pg_get_serial_sequence(?, 'id') AS name) seq " +
+            "JOIN pg_sequences s ON format('%I.%I', s.schemaname, s.sequencename) = seq.name";
+
+    /**
+     * A reserved range of ids, [next, end)
+     */
+    private record Block(AtomicLong next, long end) {
+    }
+
+    private final DataBase dataBase;
+    private final String table;
+    private volatile Block block = new Block(new AtomicLong(), 0);
+
+    /**
+     * Constructor for SequenceIdAllocator
+     * @param dataBase the database holding the sequence
+     * @param table the table whose serial id column the sequence belongs to
+     */
+    public SequenceIdAllocator(DataBase dataBase, String table) {
+        this.dataBase = dataBase;
+        this.table = table;
+    }
+
+    /**
+     * Get a new id; only reserves a new block, under a lock, when the current one is used up
+     * @return an id that has not been handed out before
+     * @throws RuntimeException if a new block cannot be reserved
+     */
+    public long nextId() throws RuntimeException {
+        while (true) {
+            Block current = block;
+            long id = current.next().getAndIncrement();
+            if (id < current.end()) {
+                return id;
+            }
+            synchronized (this) {
+                if (block == current) {
+                    block = reserve();
+                }
+            }
+        }
+    }
+
+    private Block reserve() {
+        try (Connection conn = dataBase.getConnection(); PreparedStatement stmt = conn.prepareStatement(RESERVE)) {
+            stmt.setString(1, table);
+            ResultSet rs = stmt.executeQuery();
+            if (!rs.next()) {
+                throw new SQLException("No id sequence found for table " + table);
+            }
+            long start = rs.getLong(1);
+            return new Block(new AtomicLong(start), start + rs.getLong(2));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
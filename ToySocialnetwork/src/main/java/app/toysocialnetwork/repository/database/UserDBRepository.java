@@ -3,22 +3,40 @@ package app.toysocialnetwork.repository.database;
 import app.toysocialnetwork.domain.User;
 import app.toysocialnetwork.domain.validators.ValidationException;
 import app.toysocialnetwork.domain.validators.Validator;
-import app.toysocialnetwork.repository.AbstractRepository;
+import app.toysocialnetwork.repository.UserRepository;
+import app.toysocialnetwork.repository.database.mapper.RowMapper;
+import app.toysocialnetwork.repository.database.mapper.UserRowMapper;
+import app.toysocialnetwork.utils.DataBase;
 import app.toysocialnetwork.utils.NetworkDB;
 
 import java.sql.*;
 import java.util.*;
+import java.util.stream.Stream;
 
-public class UserDBRepository implements AbstractRepository<Long, User> {
+public class UserDBRepository implements UserRepository {
     private final Validator<User> validator;
+    private final RowMapper<User> mapper = new UserRowMapper();
+    private final DataBase dataBase;
 
     /**
-     * Constructor that creates a new UserDBRepository
+     * Constructor that creates a new UserDBRepository on the application's database
      * @param validator
      * validator must not be null
      */
     public UserDBRepository(Validator<User> validator) {
+        this(validator, NetworkDB.getInstance());
+    }
+
+    /**
+     * Constructor that creates a new UserDBRepository
+     * @param validator
+     * validator must not be null
+     * @param dataBase the database holding the table
+     * dataBase must not be null
+     */
+    public UserDBRepository(Validator<User> validator, DataBase dataBase) {
         this.validator = validator;
+        this.dataBase = dataBase;
     }
 
     /**
@@ -28,7 +46,17 @@ public class UserDBRepository implements AbstractRepository<Long, User> {
      * if the connection cannot be established
      */
     private Connection connect() throws SQLException {
-        return NetworkDB.getInstance().getConnection();
+        return dataBase.getConnection();
+    }
+
+    /**
+     * Establish a connection for a read, to a read replica if there is one
+     * @return a connection to a replica or to the primary database
+     * @throws SQLException
+     * if the connection cannot be established
+     */
+    private Connection connectForRead() throws SQLException {
+        return dataBase.getReadConnection();
     }
 
     /**
@@ -39,18 +67,12 @@ public class UserDBRepository implements AbstractRepository<Long, User> {
      */
     @Override
     public Optional<User> findOne(Long id) {
-        String query = "SELECT * FROM users WHERE id = ?";
-        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
+        String query = "SELECT " + mapper.columns() + " FROM users WHERE id = ?";
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, id);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
-                String firstName = rs.getString("first_name");
-                String lastName = rs.getString("last_name");
-                String username = rs.getString("username");
-                String password = rs.getString("password");
-                User user = new User(firstName, lastName, username, password);
-                user.setId(id);
-                return Optional.of(user);
+                return Optional.of(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -65,18 +87,11 @@ public class UserDBRepository implements AbstractRepository<Long, User> {
     @Override
     public Iterable<User> findAll() {
         List<User> users = new ArrayList<>();
-        String query = "SELECT * FROM users";
-        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
+        String query = "SELECT " + mapper.columns() + " FROM users";
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                Long id = rs.getLong("id");
-                String firstName = rs.getString("first_name");
-                String lastName = rs.getString("last_name");
-                String username = rs.getString("username");
-                String password = rs.getString("password");
-                User user = new User(firstName, lastName, username, password);
-                user.setId(id);
-                users.add(user);
+                users.add(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -84,6 +99,41 @@ public class UserDBRepository implements AbstractRepository<Long, User> {
         return users;
     }
 
+    /**
+     * Stream all entities, fetching them from the database in chunks
+     * @return a {@code Stream} of all entities, which must be closed after use
+     */
+    @Override
+    public Stream<User> streamAll() {
+        String query = "SELECT " + mapper.columns() + " FROM users";
+        try {
+            return ResultSetStreams.stream(connectForRead(), query, ResultSetStreams.DEFAULT_FETCH_SIZE, mapper);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Find the user with the given username, using the unique index on username
+     * @param username the username of the user to be returned
+     * username must not be null
+     * @return an {@code Optional} encapsulating the user with the given username
+     */
+    @Override
+    public Optional<User> findByUsername(String username) {
+        String query = "SELECT " + mapper.columns() + " FROM users WHERE username = ?";
+        try (Connection conn = connectForRead(); PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, username);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return Optional.of(mapper.map(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return Optional.empty();
+    }
+
     /**
      * Save the entity to the database
      * @param user
@@ -97,7 +147,7 @@ public class UserDBRepository implements AbstractRepository<Long, User> {
     public Optional<User> save(User user) throws ValidationException {
         validator.validate(user);
         String query = "INSERT INTO users (first_name, last_name, username, password) VALUES (?, ?, ?, ?)";
-        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query, new String[]{"id"})) {
             stmt.setString(1, user.getFirstName());
             stmt.setString(2, user.getLastName());
             stmt.setString(3, user.getUsername());
@@ -126,12 +176,12 @@ public class UserDBRepository implements AbstractRepository<Long, User> {
      */
     @Override
     public Optional<User> delete(Long id) {
-        String query = "DELETE FROM users WHERE id = ?";
+        String query = "DELETE FROM users WHERE id = ? RETURNING " + mapper.columns();
         try (Connection conn = connect(); PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setLong(1, id);
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                return Optional.of(new User("firstname", "lastname", "username", "password"));
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return Optional.of(mapper.map(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
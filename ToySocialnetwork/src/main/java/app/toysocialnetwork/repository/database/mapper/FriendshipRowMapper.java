@@ -0,0 +1,25 @@
+package app.toysocialnetwork.repository.database.mapper;
+
+import app.toysocialnetwork.domain.Friendship;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class FriendshipRowMapper implements RowMapper<Friendship> {
+    private static final int ID = 1;
+    private static final int USER_ID1 = 2;
+    private static final int USER_ID2 = 3;
+    private static final int FRIENDS_FROM = 4;
+
+    @Override
+    public String columns() {
+        return "id, user_id1, user_id2, friends_from";
+    }
+
+    @Override
+    public Friendship map(ResultSet rs) throws SQLException {
+        Friendship friendship = new Friendship(rs.getLong(USER_ID1), rs.getLong(USER_ID2), rs.getTimestamp(FRIENDS_FROM).toLocalDateTime());
+        friendship.setId(rs.getLong(ID));
+        return friendship;
+    }
+}
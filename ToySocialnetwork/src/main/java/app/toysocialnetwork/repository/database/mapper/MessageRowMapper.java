@@ -0,0 +1,26 @@
+package app.toysocialnetwork.repository.database.mapper;
+
+import app.toysocialnetwork.domain.Message;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class MessageRowMapper implements RowMapper<Message> {
+    private static final int ID = 1;
+    private static final int FROM = 2;
+    private static final int TO = 3;
+    private static final int TEXT = 4;
+    private static final int DATE = 5;
+
+    @Override
+    public String columns() {
+        return "id, \"from\", \"to\", text, date";
+    }
+
+    @Override
+    public Message map(ResultSet rs) throws SQLException {
+        Message message = new Message(rs.getLong(FROM), rs.getLong(TO), rs.getString(TEXT), rs.getTimestamp(DATE).toLocalDateTime());
+        message.setId(rs.getLong(ID));
+        return message;
+    }
+}
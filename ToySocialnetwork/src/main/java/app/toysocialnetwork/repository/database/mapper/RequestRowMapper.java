@@ -0,0 +1,24 @@
+package app.toysocialnetwork.repository.database.mapper;
+
+import app.toysocialnetwork.domain.Request;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class RequestRowMapper implements RowMapper<Request> {
+    private static final int ID = 1;
+    private static final int SENDER_ID = 2;
+    private static final int RECEIVER_ID = 3;
+
+    @Override
+    public String columns() {
+        return "id, sender_id, receiver_id";
+    }
+
+    @Override
+    public Request map(ResultSet rs) throws SQLException {
+        Request request = new Request(rs.getLong(SENDER_ID), rs.getLong(RECEIVER_ID));
+        request.setId(rs.getLong(ID));
+        return request;
+    }
+}
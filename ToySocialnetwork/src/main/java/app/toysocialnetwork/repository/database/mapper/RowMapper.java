@@ -0,0 +1,25 @@
+package app.toysocialnetwork.repository.database.mapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps rows of a table to entities.
+ * Queries select exactly {@link #columns()} in that order, so every column is read by its position
+ * and the driver never has to resolve a column label for each row.
+ * @param <E> the type of the entity
+ */
+public interface RowMapper<E> {
+    /**
+     * @return the comma separated column list, in the order the mapper reads them
+     */
+    String columns();
+
+    /**
+     * Map the current row of the result set to an entity
+     * @param rs the result set, positioned on a row selected with {@link #columns()}
+     * @return the entity
+     * @throws SQLException if a column cannot be read
+     */
+    E map(ResultSet rs) throws SQLException;
+}
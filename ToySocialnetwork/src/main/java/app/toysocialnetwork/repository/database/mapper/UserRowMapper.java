@@ -0,0 +1,26 @@
+package app.toysocialnetwork.repository.database.mapper;
+
+import app.toysocialnetwork.domain.User;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class UserRowMapper implements RowMapper<User> {
+    private static final int ID = 1;
+    private static final int FIRST_NAME = 2;
+    private static final int LAST_NAME = 3;
+    private static final int USERNAME = 4;
+    private static final int PASSWORD = 5;
+
+    @Override
+    public String columns() {
+        return "id, first_name, last_name, username, password";
+    }
+
+    @Override
+    public User map(ResultSet rs) throws SQLException {
+        User user = new User(rs.getString(FIRST_NAME), rs.getString(LAST_NAME), rs.getString(USERNAME), rs.getString(PASSWORD));
+        user.setId(rs.getLong(ID));
+        return user;
+    }
+}
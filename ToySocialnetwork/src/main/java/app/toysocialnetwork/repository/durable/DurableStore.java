@@ -0,0 +1,359 @@
+package app.toysocialnetwork.repository.durable;
+
+import app.toysocialnetwork.repository.memory.InMemoryRepository;
+import app.toysocialnetwork.repository.memory.Journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Makes in-memory repositories survive restarts: every change they make is appended to a
+ * {@link WriteAheadLog}, and their whole state is written to a snapshot file whenever the log
+ * since the last snapshot grows past a size, so a restart loads the latest snapshot and replays
+ * only the log written after it.
+ * <p>
+ * Snapshots are taken without stopping the writers: the log is switched to a new generation first,
+ * then each repository is copied in turn. A copy may already contain changes made after the switch,
+ * but those are also in the new generation, and replaying a record sets an entity to the value it
+ * records whatever its value was before, so the snapshot plus the log from the switch on always gives
+ * the latest state. The older generations and snapshots are removed once the new snapshot is on disk.
+ * Changes that span repositories, like accepting a request, are {@link Journal#grouped grouped} into a
+ * single log record, so a crash never keeps one half of them.
+ * <p>
+ * Usage: attach the repositories, always in the same order, then {@link #open()} the store before
+ * the repositories are used, and {@link #close()} it after.
+ */
+public class DurableStore implements AutoCloseable {
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final long SNAPSHOT_MAGIC = 0x50414E5354534E54L;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final long SNAPSHOT_CHECK_SECONDS = 1;
+
+    private record Store<V>(byte tag, InMemoryRepository<?, V> repository, ViewCodec<V> codec) {
+        void replay(DataInputStream in) throws IOException {
+            if (in.readByte() == PUT) {
+                V view = codec.read(in);
+                repository.restore(codec.id(view), view);
+            } else {
+                repository.restore(in.readLong(), null);
+            }
+        }
+    }
+
+    private interface RecordWriter {
+        void write(DataOutput out) throws IOException;
+    }
+
+    private final Path directory;
+    private final FsyncPolicy policy;
+    private final long fsyncIntervalMillis;
+    private final long snapshotBytes;
+    private final List<Store<?>> stores = new ArrayList<>();
+
+    /**
+     * The records of the {@link Journal#grouped} change the current thread is recording, if any
+     */
+    private final ThreadLocal<ByteArrayOutputStream> group = new ThreadLocal<>();
+    private WriteAheadLog log;
+    private ScheduledExecutorService maintenance;
+
+    /**
+     * Log bytes not covered by the latest snapshot: replayed at startup, or written before the position
+     */
+    private long replayedBytes;
+    private long snapshotPosition;
+
+    /**
+     * Constructor for DurableStore
+     * @param directory the directory of the log and snapshot files
+     * @param policy when the log is forced to the disk
+     * @param fsyncIntervalMillis how often the log is forced with {@link FsyncPolicy#INTERVAL}
+     * @param snapshotBytes how much log is written before a new snapshot is taken; 0 to take them only on request
+     */
+    public DurableStore(Path directory, FsyncPolicy policy, long fsyncIntervalMillis, long snapshotBytes) {
+        if (policy == FsyncPolicy.INTERVAL && fsyncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("The fsync interval must be positive, not " + fsyncIntervalMillis);
+        }
+        this.directory = directory;
+        this.policy = policy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.snapshotBytes = snapshotBytes;
+    }
+
+    /**
+     * Add a repository to the store; its state is restored and its changes logged once the store is opened
+     * @param repository the repository
+     * @param codec the binary form of the views the repository stores
+     * @return this store
+     */
+    public synchronized <V> DurableStore attach(InMemoryRepository<?, V> repository, ViewCodec<V> codec) {
+        if (log != null) {
+            throw new IllegalStateException("Repositories must be attached before the store is opened.");
+        }
+        stores.add(new Store<>((byte) stores.size(), repository, codec));
+        return this;
+    }
+
+    /**
+     * Restore the repositories from the latest snapshot and the log written after it,
+     * then start logging their changes
+     * @throws IOException if the files cannot be read, or the snapshot is corrupt
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> snapshots = snapshots();
+        long from = 0;
+        if (!snapshots.isEmpty()) {
+            from = snapshots.get(snapshots.size() - 1);
+            loadSnapshot(directory.resolve(snapshotName(from)));
+        }
+        long last = from;
+        for (long generation : WriteAheadLog.generations(directory)) {
+            if (generation >= from) {
+                replayedBytes += WriteAheadLog.replay(directory, generation, this::replay);
+            }
+            last = Math.max(last, generation);
+        }
+        log = new WriteAheadLog(directory, policy, last + 1);
+        for (Store<?> store : stores) {
+            journal(store);
+        }
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "durable-store-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (policy == FsyncPolicy.INTERVAL) {
+            maintenance.scheduleWithFixedDelay(() -> {
+                try {
+                    log.sync();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        if (snapshotBytes > 0) {
+            maintenance.scheduleWithFixedDelay(() -> {
+                try {
+                    if (unsnapshottedBytes() >= snapshotBytes) {
+                        snapshot();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }, SNAPSHOT_CHECK_SECONDS, SNAPSHOT_CHECK_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return how many bytes of log a restart would replay on top of the latest snapshot
+     */
+    public synchronized long unsnapshottedBytes() {
+        return replayedBytes + log.written() - snapshotPosition;
+    }
+
+    /**
+     * Write the state of the repositories to a new snapshot, then remove the log and snapshots it replaces
+     * @throws IOException if the snapshot cannot be written
+     */
+    public synchronized void snapshot() throws IOException {
+        long position = log.written();
+        long generation = log.rotate();
+        Path file = directory.resolve(snapshotName(generation));
+        Path partial = directory.resolve(snapshotName(generation) + ".partial");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fileOut = new FileOutputStream(partial.toFile());
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOut), crc))) {
+            out.writeLong(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(generation);
+            out.writeInt(stores.size());
+            for (Store<?> store : stores) {
+                writeViews(store, out);
+            }
+            out.writeLong(crc.getValue());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        replayedBytes = 0;
+        snapshotPosition = position;
+
+        for (long old : snapshots()) {
+            if (old < generation) {
+                Files.deleteIfExists(directory.resolve(snapshotName(old)));
+            }
+        }
+        for (long old : WriteAheadLog.generations(directory)) {
+            if (old < generation) {
+                Files.deleteIfExists(directory.resolve(WriteAheadLog.fileName(old)));
+            }
+        }
+    }
+
+    /**
+     * Stop the background tasks, then force and close the log; the repositories can no longer be changed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (maintenance != null) {
+            maintenance.shutdown();
+        }
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    private <V> void journal(Store<V> store) {
+        store.repository().journalTo(new Journal<>() {
+            @Override
+            public long stored(V view) {
+                return append(record(store.tag(), PUT, out -> store.codec().write(view, out)));
+            }
+
+            @Override
+            public long removed(long id) {
+                return append(record(store.tag(), REMOVE, out -> out.writeLong(id)));
+            }
+
+            @Override
+            public long grouped(Runnable records) {
+                return group(records);
+            }
+
+            @Override
+            public void awaitDurable(long position) {
+                log.awaitDurable(position);
+            }
+        });
+    }
+
+    /**
+     * Append a record to the log, or to the group the current thread is recording
+     * @return the position of the record, or -1 if it was grouped
+     */
+    private long append(byte[] record) {
+        ByteArrayOutputStream records = group.get();
+        if (records == null) {
+            return log.append(record);
+        }
+        records.writeBytes(record);
+        return -1;
+    }
+
+    /**
+     * Append the records made by the current thread as one log record, whose checksum covers them all;
+     * a group recorded inside another one becomes part of it
+     */
+    private long group(Runnable changes) {
+        if (group.get() != null) {
+            changes.run();
+            return -1;
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream(128);
+        group.set(records);
+        try {
+            changes.run();
+        } finally {
+            group.remove();
+        }
+        return records.size() == 0 ? log.written() : log.append(records.toByteArray());
+    }
+
+    private static byte[] record(byte tag, byte operation, RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(tag);
+            out.writeByte(operation);
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void replay(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            // a grouped record holds several changes, one after the other
+            while (in.available() > 0) {
+                stores.get(in.readByte()).replay(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static <V> void writeViews(Store<V> store, DataOutputStream out) throws IOException {
+        List<V> views = store.repository().views();
+        out.writeInt(views.size());
+        for (V view : views) {
+            store.codec().write(view, out);
+        }
+    }
+
+    private void loadSnapshot(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file)), crc))) {
+            if (in.readLong() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException(file + " is not a snapshot of a supported version");
+            }
+            in.readLong();
+            if (in.readInt() != stores.size()) {
+                throw new IOException(file + " does not hold the " + stores.size() + " attached repositories");
+            }
+            for (Store<?> store : stores) {
+                readViews(store, in);
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException(file + " is corrupt: its checksum does not match");
+            }
+        }
+    }
+
+    private static <V> void readViews(Store<V> store, DataInputStream in) throws IOException {
+        for (int count = in.readInt(); count > 0; count--) {
+            V view = store.codec().read(in);
+            store.repository().restore(store.codec().id(view), view);
+        }
+    }
+
+    private static String snapshotName(long generation) {
+        return String.format("snapshot-%016d.snap", generation);
+    }
+
+    private List<Long> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("snapshot-\\d{16}\\.snap"))
+                    .map(name -> Long.parseLong(name.substring("snapshot-".length(), name.length() - ".snap".length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package app.toysocialnetwork.repository.durable;
+
+/**
+ * When the write-ahead log forces its records to the disk
+ */
+public enum FsyncPolicy {
+    /**
+     * Every record is forced before the write returns: nothing acknowledged is lost, one fsync per write
+     */
+    PER_WRITE,
+    /**
+     * Writers wait until their record is forced, and one fsync covers every record written while the
+     * previous one was running: nothing acknowledged is lost, and concurrent writers share the fsyncs
+     */
+    GROUP,
+    /**
+     * Writers do not wait; the log is forced every interval, so a crash loses at most the last interval
+     */
+    INTERVAL
+}
@@ -0,0 +1,135 @@
+package app.toysocialnetwork.repository.durable;
+
+import app.toysocialnetwork.domain.compact.FriendshipView;
+import app.toysocialnetwork.domain.compact.MessageView;
+import app.toysocialnetwork.domain.compact.RequestView;
+import app.toysocialnetwork.domain.compact.UserView;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary form of the views an in-memory repository stores, used by its log records and snapshots
+ * @param <V> - type of the views
+ */
+public interface ViewCodec<V> {
+    ViewCodec<UserView> USERS = new ViewCodec<>() {
+        @Override
+        public long id(UserView user) {
+            return user.id();
+        }
+
+        @Override
+        public void write(UserView user, DataOutput out) throws IOException {
+            out.writeLong(user.id());
+            writeString(user.firstName(), out);
+            writeString(user.lastName(), out);
+            writeString(user.username(), out);
+            writeString(user.password(), out);
+        }
+
+        @Override
+        public UserView read(DataInput in) throws IOException {
+            return new UserView(in.readLong(), readString(in), readString(in), readString(in), readString(in));
+        }
+    };
+
+    ViewCodec<FriendshipView> FRIENDSHIPS = new ViewCodec<>() {
+        @Override
+        public long id(FriendshipView friendship) {
+            return friendship.id();
+        }
+
+        @Override
+        public void write(FriendshipView friendship, DataOutput out) throws IOException {
+            out.writeLong(friendship.id());
+            out.writeLong(friendship.user1Id());
+            out.writeLong(friendship.user2Id());
+            out.writeLong(friendship.friendsFrom());
+        }
+
+        @Override
+        public FriendshipView read(DataInput in) throws IOException {
+            return new FriendshipView(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        }
+    };
+
+    ViewCodec<RequestView> REQUESTS = new ViewCodec<>() {
+        @Override
+        public long id(RequestView request) {
+            return request.id();
+        }
+
+        @Override
+        public void write(RequestView request, DataOutput out) throws IOException {
+            out.writeLong(request.id());
+            out.writeLong(request.senderId());
+            out.writeLong(request.receiverId());
+        }
+
+        @Override
+        public RequestView read(DataInput in) throws IOException {
+            return new RequestView(in.readLong(), in.readLong(), in.readLong());
+        }
+    };
+
+    ViewCodec<MessageView> MESSAGES = new ViewCodec<>() {
+        @Override
+        public long id(MessageView message) {
+            return message.id();
+        }
+
+        @Override
+        public void write(MessageView message, DataOutput out) throws IOException {
+            out.writeLong(message.id());
+            out.writeLong(message.from());
+            out.writeLong(message.to());
+            out.writeLong(message.date());
+            writeString(message.text(), out);
+        }
+
+        @Override
+        public MessageView read(DataInput in) throws IOException {
+            long id = in.readLong();
+            long from = in.readLong();
+            long to = in.readLong();
+            long date = in.readLong();
+            return new MessageView(id, from, to, readString(in), date);
+        }
+    };
+
+    /**
+     * @param view a view
+     * @return the id of the entity of the view
+     */
+    long id(V view);
+
+    void write(V view, DataOutput out) throws IOException;
+
+    V read(DataInput in) throws IOException;
+
+    /**
+     * Write a string as its UTF-8 length and bytes; unlike {@link DataOutput#writeUTF} it has no length limit
+     */
+    static void writeString(String value, DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,243 @@
+package app.toysocialnetwork.repository.durable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the changes of a {@link DurableStore}, split into numbered generation files;
+ * a new generation is started at every snapshot, so the older ones can be removed.
+ * Each record is a header (payload length, CRC32 of the payload) followed by the payload.
+ * <p>
+ * Positions count the bytes appended since the log was opened; a writer waits for the position
+ * of its record with {@link #awaitDurable}, which forces the log according to the {@link FsyncPolicy}.
+ */
+class WriteAheadLog implements AutoCloseable {
+    static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final FsyncPolicy policy;
+
+    /**
+     * Held while forcing or switching the file, so a force never runs on a closed file
+     */
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private final Object syncMonitor = new Object();
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long generation;
+    private long written;
+    private long synced;
+    private boolean syncing;
+
+    /**
+     * Constructor for WriteAheadLog; starts a new generation file
+     * @param directory the directory of the generation files
+     * @param policy when the records are forced to the disk
+     * @param generation the number of the first generation, greater than the existing ones
+     */
+    WriteAheadLog(Path directory, FsyncPolicy policy, long generation) throws IOException {
+        this.directory = directory;
+        this.policy = policy;
+        this.generation = generation;
+        this.channel = open(directory, generation);
+    }
+
+    static String fileName(long generation) {
+        return String.format("wal-%016d.log", generation);
+    }
+
+    /**
+     * @param directory the directory of the log
+     * @return the numbers of the generation files in the directory, in order
+     */
+    static List<Long> generations(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("wal-\\d{16}\\.log"))
+                    .map(name -> Long.parseLong(name.substring("wal-".length(), name.length() - ".log".length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Read the records of a generation file in order, stopping at the first one that is torn
+     * @param directory the directory of the log
+     * @param generation the number of the generation
+     * @param visitor called with the payload of each record
+     * @return the number of bytes of the valid records
+     */
+    static long replay(Path directory, long generation, Consumer<ByteBuffer> visitor) throws IOException {
+        try (FileChannel file = FileChannel.open(directory.resolve(fileName(generation)), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            CRC32 checksum = new CRC32();
+            int offset = 0;
+            while (offset + HEADER_BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()) {
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(offset + HEADER_BYTES, length);
+                checksum.reset();
+                checksum.update(payload.duplicate());
+                if (buffer.getInt(offset + Integer.BYTES) != (int) checksum.getValue()) {
+                    break;
+                }
+                visitor.accept(payload);
+                offset += HEADER_BYTES + length;
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Append a record; with {@link FsyncPolicy#PER_WRITE} it is forced before this returns
+     * @param payload the payload of the record
+     * @return the position of the end of the record
+     * @throws UncheckedIOException if the record cannot be written
+     */
+    synchronized long append(byte[] payload) {
+        crc.reset();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            written += record.capacity();
+            if (policy == FsyncPolicy.PER_WRITE) {
+                channel.force(false);
+                markSynced(written);
+            }
+            return written;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the position of the end of the last record
+     */
+    synchronized long written() {
+        return written;
+    }
+
+    /**
+     * Wait until the records up to a position are forced, if the policy makes writers wait.
+     * With {@link FsyncPolicy#GROUP}, the first waiter forces everything written so far
+     * while the others wait for it, then the next waiter forces what was written meanwhile.
+     * @param position a position returned by {@link #append}
+     */
+    void awaitDurable(long position) {
+        if (policy != FsyncPolicy.GROUP) {
+            return;
+        }
+        while (true) {
+            synchronized (syncMonitor) {
+                if (synced >= position) {
+                    return;
+                }
+                if (syncing) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for the log to be forced.", e);
+                    }
+                    continue;
+                }
+                syncing = true;
+            }
+            try {
+                sync();
+            } finally {
+                synchronized (syncMonitor) {
+                    syncing = false;
+                    syncMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Force everything written so far to the disk
+     * @throws UncheckedIOException if the log cannot be forced
+     */
+    void sync() {
+        forceLock.lock();
+        try {
+            FileChannel current;
+            long target;
+            synchronized (this) {
+                current = channel;
+                target = written;
+            }
+            current.force(false);
+            markSynced(target);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * Force the current generation and start the next one
+     * @return the number of the new generation
+     */
+    long rotate() throws IOException {
+        forceLock.lock();
+        try {
+            synchronized (this) {
+                channel.force(false);
+                channel.close();
+                markSynced(written);
+                channel = open(directory, ++generation);
+                return generation;
+            }
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * Force and close the current generation
+     */
+    @Override
+    public void close() throws IOException {
+        forceLock.lock();
+        try {
+            synchronized (this) {
+                channel.force(false);
+                channel.close();
+                markSynced(written);
+            }
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    private void markSynced(long position) {
+        synchronized (syncMonitor) {
+            synced = Math.max(synced, position);
+            syncMonitor.notifyAll();
+        }
+    }
+
+    private static FileChannel open(Path directory, long generation) throws IOException {
+        return FileChannel.open(directory.resolve(fileName(generation)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+}
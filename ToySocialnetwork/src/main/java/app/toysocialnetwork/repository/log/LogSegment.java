@@ -0,0 +1,160 @@
+package app.toysocialnetwork.repository.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * One memory-mapped file of a {@link MessageLogRepository}. Records are appended one after the other,
+ * each as a header (payload length, CRC32 of the payload) followed by the payload; the rest of the file
+ * is zeros, so the first record whose length is 0 or whose checksum does not match marks the end of the
+ * data, which is how a record torn by a crash is dropped on recovery.
+ */
+class LogSegment {
+    static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final int number;
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int end;
+    private long liveBytes;
+
+    private LogSegment(int number, Path file, FileChannel channel, MappedByteBuffer buffer) {
+        this.number = number;
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static String fileName(int number) {
+        return String.format("messages-%08d.log", number);
+    }
+
+    /**
+     * Map a segment file, creating it with the given size if it does not exist
+     * @param directory the directory of the log
+     * @param number the number of the segment
+     * @param capacity the size of a new segment file
+     * @return the segment; its end is found by {@link #recover}
+     */
+    static LogSegment map(Path directory, int number, int capacity) throws IOException {
+        Path file = directory.resolve(fileName(number));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size() > 0 ? channel.size() : capacity;
+            return new LogSegment(number, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int number() {
+        return number;
+    }
+
+    int end() {
+        return end;
+    }
+
+    long liveBytes() {
+        return liveBytes;
+    }
+
+    void addLiveBytes(long bytes) {
+        liveBytes += bytes;
+    }
+
+    /**
+     * Find the end of the valid records, calling the visitor for each of them in order
+     * @param visitor called with the offset of each record
+     */
+    void recover(RecordVisitor visitor) {
+        int offset = 0;
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()
+                    || buffer.getInt(offset + Integer.BYTES) != checksum(offset + HEADER_BYTES, length)) {
+                break;
+            }
+            visitor.visit(offset);
+            offset += HEADER_BYTES + length;
+        }
+        end = offset;
+    }
+
+    boolean fits(int payloadLength) {
+        return end + HEADER_BYTES + payloadLength <= buffer.capacity();
+    }
+
+    /**
+     * Append a record; the payload is written straight into the mapped file
+     * @param payloadLength the length of the payload
+     * @param writer writes the payload at the given offset of the buffer
+     * @return the offset of the record
+     */
+    int append(int payloadLength, PayloadWriter writer) {
+        int offset = end;
+        writer.write(buffer, offset + HEADER_BYTES);
+        buffer.putInt(offset + Integer.BYTES, checksum(offset + HEADER_BYTES, payloadLength));
+        // the length goes last: until it is written, the record does not exist for recovery
+        buffer.putInt(offset, payloadLength);
+        end = offset + HEADER_BYTES + payloadLength;
+        return offset;
+    }
+
+    /**
+     * @param offset the offset of a record
+     * @return the length of the record, header included
+     */
+    int recordLength(int offset) {
+        return HEADER_BYTES + buffer.getInt(offset);
+    }
+
+    /**
+     * @param offset the offset of a record
+     * @return a view of the payload of the record, sharing the mapped memory
+     */
+    ByteBuffer payload(int offset) {
+        return buffer.slice(offset + HEADER_BYTES, buffer.getInt(offset)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Write the appended records to the disk
+     */
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Close and remove the segment; the mapping itself is released once the buffer is garbage collected
+     */
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    private int checksum(int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    interface RecordVisitor {
+        void visit(int offset);
+    }
+
+    interface PayloadWriter {
+        void write(ByteBuffer buffer, int offset);
+    }
+}
@@ -0,0 +1,501 @@
+package app.toysocialnetwork.repository.log;
+
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.compact.EpochMillis;
+import app.toysocialnetwork.domain.validators.ValidationException;
+import app.toysocialnetwork.domain.validators.Validator;
+import app.toysocialnetwork.repository.MessageRepository;
+import app.toysocialnetwork.repository.MessageSearch;
+import app.toysocialnetwork.utils.collections.LongList;
+import app.toysocialnetwork.utils.collections.LongLongMap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Message repository for embedded deployments, without a database: messages are appended to a log
+ * of memory-mapped segment files in a directory, and only an index of where each message is kept in memory.
+ * <p>
+ * Every save, update and delete is one record appended to the newest segment, written straight into the
+ * mapped file: there is no transaction and no round trip, and the operating system writes the pages back.
+ * {@link #sync()} forces them to disk, which the background task also does every interval. Updates append
+ * the new version, and deletes append a tombstone; a segment that is full is sealed and a new one started.
+ * <p>
+ * The background task also compacts sealed segments that are mostly dead records: their live messages are
+ * appended again to the newest segment and the segment file is removed. On startup the segments are replayed
+ * in order to rebuild the index; a record torn by a crash fails its checksum and ends the replay of its segment.
+ * <p>
+ * Record payloads: a type byte, the message id, then for a message its from, to and date (epoch milliseconds)
+ * followed by the UTF-8 text. A tombstone is kept through compactions for as long as an older segment,
+ * which may hold a version of the deleted message, is left.
+ */
+public class MessageLogRepository implements MessageRepository, AutoCloseable {
+    private static final byte MESSAGE = 1;
+    private static final byte TOMBSTONE = 2;
+    private static final int MESSAGE_FIXED_BYTES = 1 + 4 * Long.BYTES;
+    private static final int TOMBSTONE_BYTES = 1 + Long.BYTES;
+
+    /**
+     * A sealed segment is compacted when less than this fraction of it is live messages
+     */
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    private record Conversation(long low, long high) {
+        static Conversation of(long userId1, long userId2) {
+            return new Conversation(Math.min(userId1, userId2), Math.max(userId1, userId2));
+        }
+    }
+
+    private final Validator<Message> validator;
+    private final Path directory;
+    private final int segmentBytes;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, LogSegment> segments = new TreeMap<>();
+    private ScheduledExecutorService maintenance;
+    private LogSegment active;
+
+    /**
+     * Where each live message is: the segment number in the high 32 bits, the record offset in the low ones
+     */
+    private final LongLongMap locations = new LongLongMap();
+    private final Map<Conversation, LongList> conversations = new HashMap<>();
+    private long nextId = 1;
+
+    /**
+     * Constructor for MessageLogRepository; opens the log in a directory, creating it if needed, and replays it
+     * @param validator
+     * validator must not be null
+     * @param directory the directory of the segment files
+     * @param segmentBytes the size of a segment file
+     * @throws UncheckedIOException if the log cannot be opened
+     */
+    public MessageLogRepository(Validator<Message> validator, Path directory, int segmentBytes) {
+        this.validator = validator;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.filter(f -> f.getFileName().toString().matches("messages-\\d{8}\\.log")).sorted().toList()) {
+                    String name = file.getFileName().toString();
+                    int number = Integer.parseInt(name.substring("messages-".length(), name.length() - ".log".length()));
+                    replay(LogSegment.map(directory, number, segmentBytes));
+                }
+            }
+            active = segments.isEmpty() ? roll() : segments.lastEntry().getValue();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Open the log in a directory and start its background task
+     * @param validator
+     * validator must not be null
+     * @param directory the directory of the segment files
+     * @param segmentBytes the size of a segment file
+     * @param maintenanceSeconds how often the log is forced to disk and compacted; 0 to do neither in the background
+     * @return the repository
+     * @throws UncheckedIOException if the log cannot be opened
+     */
+    public static MessageLogRepository open(Validator<Message> validator, Path directory, int segmentBytes, long maintenanceSeconds) {
+        MessageLogRepository repository = new MessageLogRepository(validator, directory, segmentBytes);
+        if (maintenanceSeconds > 0) {
+            repository.startMaintenance(maintenanceSeconds);
+        }
+        return repository;
+    }
+
+    private synchronized void startMaintenance(long intervalSeconds) {
+        maintenance = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "message-log-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Long nextId() {
+        lock.writeLock().lock();
+        try {
+            return nextId++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Message> findOne(Long id) {
+        lock.readLock().lock();
+        try {
+            long location = locations.get(id, -1);
+            return location < 0 ? Optional.empty() : Optional.of(read(location));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Message> findAll() {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>(locations.size());
+            for (long id : locations.keys()) {
+                messages.add(read(locations.get(id, -1)));
+            }
+            messages.sort(Comparator.comparing(Message::getId));
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the records of a conversation without decoding or copying them
+     * @param userId1 the id of the first user
+     * @param userId2 the id of the second user
+     * @return read-only views of the record payloads in the mapped segments, in the order they were written;
+     * they stay valid until the segments holding them are compacted
+     */
+    public List<ByteBuffer> conversationRecords(Long userId1, Long userId2) {
+        lock.readLock().lock();
+        try {
+            LongList ids = conversations.get(Conversation.of(userId1, userId2));
+            List<ByteBuffer> records = new ArrayList<>(ids == null ? 0 : ids.size());
+            for (int i = 0; ids != null && i < ids.size(); i++) {
+                long location = locations.get(ids.get(i), -1);
+                records.add(segments.get(segmentOf(location)).payload(offsetOf(location)));
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> findBetween(Long userId1, Long userId2) {
+        List<Message> messages = new ArrayList<>();
+        for (ByteBuffer record : conversationRecords(userId1, userId2)) {
+            messages.add(decode(record));
+        }
+        messages.sort(Comparator.comparing(Message::getDate).thenComparing(Message::getId));
+        return messages;
+    }
+
+    /**
+     * Search by scanning the log for the user's messages containing every word of the query,
+     * ranked by {@link MessageSearch}: by occurrences of the query words, then newest first
+     */
+    @Override
+    public List<Message> search(Long userId, String query, int limit, int offset) {
+        if (MessageSearch.distinctWords(query).isEmpty()) {
+            return new ArrayList<>();
+        }
+        return MessageSearch.rank(((List<Message>) findAll()).stream()
+                        .filter(m -> m.getFrom().equals(userId) || m.getTo().equals(userId)),
+                query, Message::getText, m -> EpochMillis.of(m.getDate()), limit, offset);
+    }
+
+    /**
+     * Append a message to the log
+     * @param message
+     * entity must not be null
+     * @return an {@code Optional} encapsulating the saved message, with its id set
+     * @throws ValidationException
+     * if the entity is not valid
+     */
+    @Override
+    public Optional<Message> save(Message message) throws ValidationException {
+        validator.validate(message);
+        lock.writeLock().lock();
+        try {
+            appendMessage(message);
+            return Optional.of(message);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> saveAll(List<Message> messages) throws ValidationException {
+        validator.validateAll(messages);
+        lock.writeLock().lock();
+        try {
+            messages.forEach(this::appendMessage);
+            return messages;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append a new version of a message; the old one becomes dead
+     * @param message
+     * entity must not be null
+     * @return an {@code Optional}
+     * - the updated message
+     * - empty if there is no message with its id
+     * @throws ValidationException
+     * if the entity is not valid
+     */
+    @Override
+    public Optional<Message> update(Message message) throws ValidationException {
+        validator.validate(message);
+        lock.writeLock().lock();
+        try {
+            long location = locations.get(message.getId(), -1);
+            if (location < 0) {
+                return Optional.empty();
+            }
+            appendMessage(message);
+            return Optional.of(message);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append a tombstone for a message
+     * @param id
+     * id must not be null
+     * @return an {@code Optional} encapsulating the deleted message
+     */
+    @Override
+    public Optional<Message> delete(Long id) {
+        lock.writeLock().lock();
+        try {
+            long location = locations.get(id, -1);
+            if (location < 0) {
+                return Optional.empty();
+            }
+            Message deleted = read(location);
+            append(TOMBSTONE_BYTES, (buffer, at) -> {
+                buffer.put(at, TOMBSTONE);
+                buffer.putLong(at + 1, id);
+            });
+            unindex(id, location, deleted.getFrom(), deleted.getTo());
+            return Optional.of(deleted);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Force the appended records to disk
+     */
+    public void sync() {
+        lock.readLock().lock();
+        try {
+            active.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stop the background task, force the log to disk and close the segment files
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (maintenance != null) {
+                maintenance.shutdown();
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            active.force();
+            for (LogSegment segment : segments.values()) {
+                segment.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void maintain() {
+        try {
+            sync();
+            compact();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Compact the sealed segments that are mostly dead records
+     */
+    void compact() {
+        lock.writeLock().lock();
+        try {
+            for (LogSegment segment : new ArrayList<>(segments.headMap(active.number()).values())) {
+                if (segment.liveBytes() < segment.end() * COMPACTION_THRESHOLD) {
+                    compact(segment);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compact(LogSegment segment) throws IOException {
+        segment.recover(offset -> {
+            ByteBuffer payload = segment.payload(offset);
+            long id = payload.getLong(1);
+            if (payload.get(0) == MESSAGE) {
+                long location = location(segment.number(), offset);
+                if (locations.get(id, -1) == location) {
+                    // still the live version: copy it as is
+                    int copied = append(payload.remaining(), (buffer, at) -> buffer.put(at, payload, 0, payload.remaining()));
+                    locations.put(id, location(active.number(), copied));
+                    active.addLiveBytes(segment.recordLength(offset));
+                }
+            } else if (segments.firstKey() < segment.number()) {
+                // an older segment may still hold a version of the deleted message: the tombstone must outlive it
+                append(payload.remaining(), (buffer, at) -> buffer.put(at, payload, 0, payload.remaining()));
+            }
+        });
+        // the copies must be on the disk before their source is gone; rolling forced any earlier segment
+        active.force();
+        segments.remove(segment.number());
+        segment.delete();
+    }
+
+    private void replay(LogSegment segment) {
+        segments.put(segment.number(), segment);
+        segment.recover(offset -> {
+            ByteBuffer payload = segment.payload(offset);
+            long id = payload.getLong(1);
+            nextId = Math.max(nextId, id + 1);
+            long old = locations.get(id, -1);
+            if (payload.get(0) == MESSAGE) {
+                indexed(id, location(segment.number(), offset), Conversation.of(payload.getLong(9), payload.getLong(17)));
+            } else if (old >= 0) {
+                Message deleted = read(old);
+                unindex(id, old, deleted.getFrom(), deleted.getTo());
+            }
+        });
+    }
+
+    private void appendMessage(Message message) {
+        if (message.getId() == null) {
+            message.setId(nextId++);
+        } else {
+            nextId = Math.max(nextId, message.getId() + 1);
+        }
+        byte[] text = message.getText().getBytes(StandardCharsets.UTF_8);
+        long id = message.getId();
+        int offset = append(MESSAGE_FIXED_BYTES + text.length, (buffer, at) -> {
+            buffer.put(at, MESSAGE);
+            buffer.putLong(at + 1, id);
+            buffer.putLong(at + 9, message.getFrom());
+            buffer.putLong(at + 17, message.getTo());
+            buffer.putLong(at + 25, EpochMillis.of(message.getDate()));
+            buffer.put(at + MESSAGE_FIXED_BYTES, text);
+        });
+        indexed(id, location(active.number(), offset), Conversation.of(message.getFrom(), message.getTo()));
+    }
+
+    /**
+     * Point the index at the newest version of a message, moving it to its conversation if it is new or changed
+     */
+    private void indexed(long id, long location, Conversation conversation) {
+        long old = locations.get(id, -1);
+        if (old < 0) {
+            conversations.computeIfAbsent(conversation, c -> new LongList()).add(id);
+        } else {
+            LogSegment oldSegment = segments.get(segmentOf(old));
+            oldSegment.addLiveBytes(-oldSegment.recordLength(offsetOf(old)));
+            ByteBuffer previous = oldSegment.payload(offsetOf(old));
+            Conversation oldConversation = Conversation.of(previous.getLong(9), previous.getLong(17));
+            if (!oldConversation.equals(conversation)) {
+                conversations.get(oldConversation).removeValue(id);
+                conversations.computeIfAbsent(conversation, c -> new LongList()).add(id);
+            }
+        }
+        locations.put(id, location);
+        LogSegment segment = segments.get(segmentOf(location));
+        segment.addLiveBytes(segment.recordLength(offsetOf(location)));
+    }
+
+    /**
+     * Append a record to the active segment, starting a new segment if it does not fit
+     * @return the offset of the record in the active segment
+     */
+    private int append(int payloadLength, LogSegment.PayloadWriter writer) {
+        if (!active.fits(payloadLength)) {
+            if (payloadLength + LogSegment.HEADER_BYTES > segmentBytes) {
+                throw new IllegalArgumentException("A record of " + payloadLength + " bytes does not fit in a segment");
+            }
+            try {
+                active.force();
+                active = roll();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return active.append(payloadLength, writer);
+    }
+
+    private LogSegment roll() throws IOException {
+        int number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        LogSegment segment = LogSegment.map(directory, number, segmentBytes);
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private void unindex(long id, long location, long from, long to) {
+        locations.remove(id);
+        LogSegment segment = segments.get(segmentOf(location));
+        segment.addLiveBytes(-segment.recordLength(offsetOf(location)));
+        LongList conversation = conversations.get(Conversation.of(from, to));
+        if (conversation != null) {
+            conversation.removeValue(id);
+        }
+    }
+
+    private Message read(long location) {
+        return decode(segments.get(segmentOf(location)).payload(offsetOf(location)));
+    }
+
+    private static Message decode(ByteBuffer payload) {
+        String text = StandardCharsets.UTF_8.decode(payload.slice(MESSAGE_FIXED_BYTES, payload.remaining() - MESSAGE_FIXED_BYTES)).toString();
+        Message message = new Message(payload.getLong(9), payload.getLong(17), text, EpochMillis.toLocalDateTime(payload.getLong(25)));
+        message.setId(payload.getLong(1));
+        return message;
+    }
+
+    private static long location(int segment, int offset) {
+        return (long) segment << 32 | offset;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+}
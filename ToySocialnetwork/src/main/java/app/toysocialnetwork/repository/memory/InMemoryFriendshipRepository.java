@@ -0,0 +1,87 @@
+package app.toysocialnetwork.repository.memory;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.compact.FriendshipView;
+import app.toysocialnetwork.domain.validators.Validator;
+import app.toysocialnetwork.repository.FriendshipRepository;
+import app.toysocialnetwork.utils.collections.LongObjectMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class InMemoryFriendshipRepository extends InMemoryRepository<Friendship, FriendshipView> implements FriendshipRepository {
+    private final Map<UserPair, FriendshipView> byPair = new HashMap<>();
+    private final LongObjectMap<List<FriendshipView>> byUser = new LongObjectMap<>();
+
+    /**
+     * Constructor that creates a new InMemoryFriendshipRepository
+     * @param validator
+     * validator must not be null
+     */
+    public InMemoryFriendshipRepository(Validator<Friendship> validator) {
+        super(validator);
+    }
+
+    @Override
+    public synchronized List<Friendship> findByUser(Long userId) {
+        List<FriendshipView> friendships = byUser.get(userId);
+        return friendships == null ? new ArrayList<>() : expandAll(friendships);
+    }
+
+    @Override
+    public synchronized Optional<Friendship> findBetween(Long userId1, Long userId2) {
+        return Optional.ofNullable(byPair.get(UserPair.of(userId1, userId2))).map(FriendshipView::toFriendship);
+    }
+
+    /**
+     * Check whether two users are friends, without building the friendship
+     * @param userId1 the id of one user
+     * @param userId2 the id of the other user
+     * @return true if they are friends
+     */
+    public synchronized boolean areFriends(long userId1, long userId2) {
+        return byPair.containsKey(UserPair.of(userId1, userId2));
+    }
+
+    @Override
+    protected FriendshipView compact(Friendship friendship) {
+        return FriendshipView.of(friendship);
+    }
+
+    @Override
+    protected Friendship expand(FriendshipView view) {
+        return view.toFriendship();
+    }
+
+    @Override
+    protected boolean conflicts(Friendship friendship) {
+        return byPair.containsKey(UserPair.of(friendship.getUser1Id(), friendship.getUser2Id()));
+    }
+
+    @Override
+    protected void indexed(FriendshipView friendship) {
+        byPair.put(UserPair.of(friendship.user1Id(), friendship.user2Id()), friendship);
+        byUser.computeIfAbsent(friendship.user1Id(), id -> new ArrayList<>()).add(friendship);
+        byUser.computeIfAbsent(friendship.user2Id(), id -> new ArrayList<>()).add(friendship);
+    }
+
+    @Override
+    protected void unindexed(FriendshipView friendship) {
+        byPair.remove(UserPair.of(friendship.user1Id(), friendship.user2Id()));
+        removeFrom(friendship.user1Id(), friendship.id());
+        removeFrom(friendship.user2Id(), friendship.id());
+    }
+
+    private void removeFrom(long userId, long friendshipId) {
+        List<FriendshipView> friendships = byUser.get(userId);
+        if (friendships != null) {
+            friendships.removeIf(friendship -> friendship.id() == friendshipId);
+            if (friendships.isEmpty()) {
+                byUser.remove(userId);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package app.toysocialnetwork.repository.memory;
+
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.compact.MessageView;
+import app.toysocialnetwork.domain.validators.ValidationException;
+import app.toysocialnetwork.domain.validators.Validator;
+import app.toysocialnetwork.repository.MessageRepository;
+import app.toysocialnetwork.repository.MessageSearch;
+import app.toysocialnetwork.utils.collections.LongList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class InMemoryMessageRepository extends InMemoryRepository<Message, MessageView> implements MessageRepository {
+    private final Map<UserPair, List<MessageView>> byConversation = new HashMap<>();
+
+    /**
+     * Ids of the messages containing each word
+     */
+    private final Map<String, LongList> byWord = new HashMap<>();
+
+    /**
+     * Constructor that creates a new InMemoryMessageRepository
+     * @param validator
+     * validator must not be null
+     */
+    public InMemoryMessageRepository(Validator<Message> validator) {
+        super(validator);
+    }
+
+    @Override
+    public Long nextId() {
+        return reserveId();
+    }
+
+    /**
+     * Keep the id of a message that was given one through {@link #nextId()}
+     */
+    @Override
+    protected long idFor(Message message) {
+        return message.getId() != null ? message.getId() : reserveId();
+    }
+
+    @Override
+    public synchronized List<Message> findBetween(Long userId1, Long userId2) {
+        List<MessageView> messages = new ArrayList<>(byConversation.getOrDefault(UserPair.of(userId1, userId2), List.of()));
+        messages.sort(Comparator.comparingLong(MessageView::date).thenComparingLong(MessageView::id));
+        return expandAll(messages);
+    }
+
+    /**
+     * Save the messages, waiting for the journal once for the whole batch
+     */
+    @Override
+    public List<Message> saveAll(List<Message> messages) throws ValidationException {
+        validator.validateAll(messages);
+        long position = 0;
+        synchronized (this) {
+            for (Message message : messages) {
+                position = Math.max(position, insert(message));
+            }
+        }
+        journal().awaitDurable(position);
+        return messages;
+    }
+
+    /**
+     * Search through the word index: only the messages containing the rarest word of the query are scored.
+     * Ranked by the number of occurrences of the query words, like ts_rank, then newest first.
+     * A query without words matches nothing, as plainto_tsquery does.
+     */
+    @Override
+    public synchronized List<Message> search(Long userId, String query, int limit, int offset) {
+        Set<String> words = MessageSearch.distinctWords(query);
+        if (words.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long user = userId;
+        LongList rarest = null;
+        for (String word : words) {
+            LongList posting = byWord.get(word);
+            if (posting == null) {
+                return new ArrayList<>();
+            }
+            if (rarest == null || posting.size() < rarest.size()) {
+                rarest = posting;
+            }
+        }
+        Stream<MessageView> candidates = Arrays.stream(rarest.toArray()).mapToObj(entities::get);
+        return MessageSearch.rank(candidates.filter(m -> m.involves(user)), query, MessageView::text, MessageView::date, limit, offset)
+                .stream()
+                .map(MessageView::toMessage)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    protected MessageView compact(Message message) {
+        return MessageView.of(message);
+    }
+
+    @Override
+    protected Message expand(MessageView view) {
+        return view.toMessage();
+    }
+
+    @Override
+    protected void indexed(MessageView message) {
+        byConversation.computeIfAbsent(UserPair.of(message.from(), message.to()), pair -> new ArrayList<>()).add(message);
+        for (String word : MessageSearch.distinctWords(message.text())) {
+            byWord.computeIfAbsent(word, w -> new LongList(4)).add(message.id());
+        }
+    }
+
+    @Override
+    protected void unindexed(MessageView message) {
+        List<MessageView> conversation = byConversation.get(UserPair.of(message.from(), message.to()));
+        if (conversation != null) {
+            conversation.removeIf(m -> m.id() == message.id());
+        }
+        for (String word : MessageSearch.distinctWords(message.text())) {
+            LongList posting = byWord.get(word);
+            if (posting != null) {
+                posting.removeValue(message.id());
+                if (posting.isEmpty()) {
+                    byWord.remove(word);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package app.toysocialnetwork.repository.memory;
+
+import app.toysocialnetwork.domain.Entity;
+import app.toysocialnetwork.domain.validators.ValidationException;
+import app.toysocialnetwork.domain.validators.Validator;
+import app.toysocialnetwork.repository.AbstractRepository;
+import app.toysocialnetwork.utils.collections.LongObjectMap;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * CRUD repository that keeps its entities in memory.
+ * Ids are generated on save, like the identity columns of the database tables,
+ * and the methods are synchronized so the repository can be shared between threads.
+ * <p>
+ * Entities are stored as compact, immutable views keyed by primitive id, and every read returns
+ * a new entity built from its view, so callers can no longer change the stored data behind the
+ * repository's back. Subclasses convert between the two through {@link #compact} and {@link #expand},
+ * and keep their secondary indexes of views up to date through {@link #indexed} and {@link #unindexed}.
+ * <p>
+ * Every change is recorded in the repository's {@link Journal} before it is applied, and the caller waits
+ * for the record to be durable after the lock is released, so writers waiting on the disk do not block
+ * each other. By default the journal records nothing; {@link #restore} applies recorded changes back.
+ * @param <E> - type of entities saved in repository
+ * @param <V> - type of the views the entities are stored as
+ */
+public abstract class InMemoryRepository<E extends Entity<Long>, V> implements AbstractRepository<Long, E> {
+    protected final Validator<E> validator;
+    protected final LongObjectMap<V> entities = new LongObjectMap<>();
+    private long nextId = 1;
+    private Journal<V> journal = Journal.none();
+
+    /**
+     * Constructor for InMemoryRepository
+     * @param validator
+     * validator must not be null
+     */
+    protected InMemoryRepository(Validator<E> validator) {
+        this.validator = validator;
+    }
+
+    @Override
+    public synchronized Optional<E> findOne(Long id) {
+        return Optional.ofNullable(entities.get(id)).map(this::expand);
+    }
+
+    @Override
+    public synchronized Iterable<E> findAll() {
+        return expandAll(entities.values());
+    }
+
+    /**
+     * Save the entity, giving it a new id
+     * @param entity
+     * entity must not be null
+     * @return an {@code Optional}
+     * - the saved entity, with its generated id
+     * - empty if the entity conflicts with one already saved
+     * @throws ValidationException
+     * if the entity is not valid
+     */
+    @Override
+    public Optional<E> save(E entity) throws ValidationException {
+        validator.validate(entity);
+        long position = insert(entity);
+        if (position < 0) {
+            return Optional.empty();
+        }
+        journal.awaitDurable(position);
+        return Optional.of(entity);
+    }
+
+    @Override
+    public Optional<E> delete(Long id) {
+        V removed;
+        long position;
+        synchronized (this) {
+            removed = entities.get(id);
+            if (removed == null) {
+                return Optional.empty();
+            }
+            position = journal.removed(id);
+            detach(id, removed);
+        }
+        journal.awaitDurable(position);
+        return Optional.of(expand(removed));
+    }
+
+    @Override
+    public Optional<E> update(E entity) throws ValidationException {
+        validator.validate(entity);
+        long position;
+        synchronized (this) {
+            V old = entities.get(entity.getId());
+            if (old == null) {
+                return Optional.empty();
+            }
+            unindexed(old);
+            if (conflicts(entity)) {
+                indexed(old);
+                return Optional.empty();
+            }
+            V view = compact(entity);
+            try {
+                position = journal.stored(view);
+            } catch (RuntimeException e) {
+                indexed(old);
+                throw e;
+            }
+            entities.put(entity.getId(), view);
+            indexed(view);
+        }
+        journal.awaitDurable(position);
+        return Optional.of(entity);
+    }
+
+    /**
+     * Save a validated entity, giving it its id, without waiting for the journal
+     * @param entity the entity
+     * @return the journal position of the save, or -1 if the entity conflicts with one already saved
+     */
+    protected synchronized long insert(E entity) {
+        if (conflicts(entity)) {
+            return -1;
+        }
+        entity.setId(idFor(entity));
+        V view = compact(entity);
+        long position = journal.stored(view);
+        attach(entity.getId(), view);
+        return position;
+    }
+
+    /**
+     * Add a saved entity whose save is already recorded; the caller holds the lock
+     * @param id the id of the entity
+     * @param view the view of the entity
+     */
+    protected void attach(long id, V view) {
+        entities.put(id, view);
+        indexed(view);
+    }
+
+    /**
+     * Remove a saved entity whose deletion is already recorded; the caller holds the lock
+     * @param id the id of the entity
+     * @param view the view of the entity
+     */
+    protected void detach(long id, V view) {
+        entities.remove(id);
+        unindexed(view);
+    }
+
+    /**
+     * Record the changes made from now on in a journal
+     * @param journal the journal
+     * journal must not be null
+     */
+    public synchronized void journalTo(Journal<V> journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return the journal the changes are recorded in
+     */
+    protected Journal<V> journal() {
+        return journal;
+    }
+
+    /**
+     * Apply a recorded change, without validating or journaling it again
+     * @param id the id of the entity
+     * @param view the new view of the entity, or null if it was deleted
+     */
+    public synchronized void restore(long id, V view) {
+        V old = view == null ? entities.remove(id) : entities.put(id, view);
+        if (old != null) {
+            unindexed(old);
+        }
+        if (view != null) {
+            indexed(view);
+        }
+        nextId = Math.max(nextId, id + 1);
+    }
+
+    /**
+     * @return the views of all saved entities, e.g. to write them to a snapshot
+     */
+    public synchronized List<V> views() {
+        return entities.values();
+    }
+
+    /**
+     * Convert a saved entity, with its id set, to the view it is stored as
+     * @param entity the entity
+     * @return the view
+     */
+    protected abstract V compact(E entity);
+
+    /**
+     * Build a new entity from a stored view
+     * @param view the view
+     * @return the entity
+     */
+    protected abstract E expand(V view);
+
+    /**
+     * @param views stored views
+     * @return new entities built from the views, in the same order
+     */
+    protected List<E> expandAll(List<V> views) {
+        return views.stream().map(this::expand).collect(Collectors.toList());
+    }
+
+    /**
+     * Reserve a new id, for entities whose id is set before they are saved
+     * @return an id no entity has or will be given
+     */
+    protected synchronized long reserveId() {
+        return nextId++;
+    }
+
+    /**
+     * Get the id an entity is saved with; a new one unless a subclass keeps reserved ids
+     * @param entity the entity about to be saved
+     * @return the id
+     */
+    protected long idFor(E entity) {
+        return nextId++;
+    }
+
+    /**
+     * Check the uniqueness constraints of the entity against the saved ones
+     * @param entity the entity about to be saved
+     * @return true if saving it would violate a uniqueness constraint
+     */
+    protected boolean conflicts(E entity) {
+        return false;
+    }
+
+    /**
+     * Add a saved entity to the secondary indexes
+     * @param view the view of the entity
+     */
+    protected void indexed(V view) {
+    }
+
+    /**
+     * Remove a deleted entity from the secondary indexes
+     * @param view the view of the entity
+     */
+    protected void unindexed(V view) {
+    }
+}
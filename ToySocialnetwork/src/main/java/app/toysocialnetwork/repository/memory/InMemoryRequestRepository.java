@@ -0,0 +1,156 @@
+package app.toysocialnetwork.repository.memory;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.compact.FriendshipView;
+import app.toysocialnetwork.domain.compact.RequestView;
+import app.toysocialnetwork.domain.validators.ValidationException;
+import app.toysocialnetwork.domain.validators.Validator;
+import app.toysocialnetwork.repository.RequestRepository;
+import app.toysocialnetwork.utils.collections.LongObjectMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class InMemoryRequestRepository extends InMemoryRepository<Request, RequestView> implements RequestRepository {
+    private final InMemoryFriendshipRepository friendshipRepo;
+    private final Map<UserPair, RequestView> byPair = new HashMap<>();
+    private final LongObjectMap<List<RequestView>> bySender = new LongObjectMap<>();
+    private final LongObjectMap<List<RequestView>> byReceiver = new LongObjectMap<>();
+
+    /**
+     * Constructor that creates a new InMemoryRequestRepository
+     * @param validator
+     * validator must not be null
+     * @param friendshipRepo the friendships checked and created by the atomic operations;
+     * it is locked before this repository, never after
+     * friendshipRepo must not be null
+     */
+    public InMemoryRequestRepository(Validator<Request> validator, InMemoryFriendshipRepository friendshipRepo) {
+        super(validator);
+        this.friendshipRepo = friendshipRepo;
+    }
+
+    @Override
+    public synchronized List<Request> findBySender(Long senderId) {
+        return find(bySender, senderId);
+    }
+
+    @Override
+    public synchronized List<Request> findByReceiver(Long receiverId) {
+        return find(byReceiver, receiverId);
+    }
+
+    @Override
+    public synchronized Optional<Request> findBetween(Long senderId, Long receiverId) {
+        long sender = senderId;
+        return Optional.ofNullable(byPair.get(UserPair.of(senderId, receiverId)))
+                .filter(request -> request.senderId() == sender)
+                .map(RequestView::toRequest);
+    }
+
+    @Override
+    public Optional<Request> saveIfNotFriends(Request request) throws ValidationException {
+        validator.validate(request);
+        long position;
+        synchronized (friendshipRepo) {
+            if (friendshipRepo.areFriends(request.getSenderId(), request.getReceiverId())) {
+                return Optional.empty();
+            }
+            position = insert(request);
+        }
+        if (position < 0) {
+            return Optional.empty();
+        }
+        journal().awaitDurable(position);
+        return Optional.of(request);
+    }
+
+    /**
+     * Delete the request and save the friendship as one change: both are journaled as a single record,
+     * which is atomic when both repositories journal to the same store, and the caller waits for it
+     * only after both locks are released
+     */
+    @Override
+    public Optional<Request> acceptRequest(Friendship friendship) throws ValidationException {
+        friendshipRepo.validator.validate(friendship);
+        RequestView accepted;
+        long position;
+        synchronized (friendshipRepo) {
+            synchronized (this) {
+                RequestView request = byPair.get(UserPair.of(friendship.getUser1Id(), friendship.getUser2Id()));
+                if (request == null || request.senderId() != friendship.getUser1Id()) {
+                    return Optional.empty();
+                }
+                FriendshipView created = null;
+                if (friendshipRepo.conflicts(friendship)) {
+                    friendship.setId(null);
+                } else {
+                    friendship.setId(friendshipRepo.idFor(friendship));
+                    created = friendshipRepo.compact(friendship);
+                }
+                FriendshipView saved = created;
+                position = journal().grouped(() -> {
+                    journal().removed(request.id());
+                    if (saved != null) {
+                        friendshipRepo.journal().stored(saved);
+                    }
+                });
+                detach(request.id(), request);
+                if (saved != null) {
+                    friendshipRepo.attach(saved.id(), saved);
+                }
+                accepted = request;
+            }
+        }
+        journal().awaitDurable(position);
+        return Optional.of(expand(accepted));
+    }
+
+    @Override
+    protected RequestView compact(Request request) {
+        return RequestView.of(request);
+    }
+
+    @Override
+    protected Request expand(RequestView view) {
+        return view.toRequest();
+    }
+
+    @Override
+    protected boolean conflicts(Request request) {
+        return byPair.containsKey(UserPair.of(request.getSenderId(), request.getReceiverId()));
+    }
+
+    @Override
+    protected void indexed(RequestView request) {
+        byPair.put(UserPair.of(request.senderId(), request.receiverId()), request);
+        bySender.computeIfAbsent(request.senderId(), id -> new ArrayList<>()).add(request);
+        byReceiver.computeIfAbsent(request.receiverId(), id -> new ArrayList<>()).add(request);
+    }
+
+    @Override
+    protected void unindexed(RequestView request) {
+        byPair.remove(UserPair.of(request.senderId(), request.receiverId()));
+        removeFrom(bySender, request.senderId(), request.id());
+        removeFrom(byReceiver, request.receiverId(), request.id());
+    }
+
+    private List<Request> find(LongObjectMap<List<RequestView>> index, long userId) {
+        List<RequestView> requests = index.get(userId);
+        return requests == null ? new ArrayList<>() : expandAll(requests);
+    }
+
+    private static void removeFrom(LongObjectMap<List<RequestView>> index, long userId, long requestId) {
+        List<RequestView> requests = index.get(userId);
+        if (requests != null) {
+            requests.removeIf(request -> request.id() == requestId);
+            if (requests.isEmpty()) {
+                index.remove(userId);
+            }
+        }
+    }
+}
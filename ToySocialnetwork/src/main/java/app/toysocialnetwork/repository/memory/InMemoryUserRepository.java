@@ -0,0 +1,53 @@
+package app.toysocialnetwork.repository.memory;
+
+import app.toysocialnetwork.domain.User;
+import app.toysocialnetwork.domain.compact.UserView;
+import app.toysocialnetwork.domain.validators.Validator;
+import app.toysocialnetwork.repository.UserRepository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class InMemoryUserRepository extends InMemoryRepository<User, UserView> implements UserRepository {
+    private final Map<String, UserView> byUsername = new HashMap<>();
+
+    /**
+     * Constructor that creates a new InMemoryUserRepository
+     * @param validator
+     * validator must not be null
+     */
+    public InMemoryUserRepository(Validator<User> validator) {
+        super(validator);
+    }
+
+    @Override
+    public synchronized Optional<User> findByUsername(String username) {
+        return Optional.ofNullable(byUsername.get(username)).map(UserView::toUser);
+    }
+
+    @Override
+    protected UserView compact(User user) {
+        return UserView.of(user);
+    }
+
+    @Override
+    protected User expand(UserView view) {
+        return view.toUser();
+    }
+
+    @Override
+    protected boolean conflicts(User user) {
+        return byUsername.containsKey(user.getUsername());
+    }
+
+    @Override
+    protected void indexed(UserView user) {
+        byUsername.put(user.username(), user);
+    }
+
+    @Override
+    protected void unindexed(UserView user) {
+        byUsername.remove(user.username());
+    }
+}
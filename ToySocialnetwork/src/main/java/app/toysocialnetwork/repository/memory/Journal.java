@@ -0,0 +1,68 @@
+package app.toysocialnetwork.repository.memory;
+
+/**
+ * Where an {@link InMemoryRepository} records its changes, so they can be replayed after a restart.
+ * Changes are recorded while the repository is locked, in the order they are made,
+ * and the repository waits for them to be durable only after releasing the lock.
+ * @param <V> - type of the views the repository stores
+ */
+public interface Journal<V> {
+    /**
+     * Journal that records nothing, for repositories that only live as long as the process
+     */
+    Journal<Object> NONE = new Journal<>() {
+        @Override
+        public long stored(Object view) {
+            return 0;
+        }
+
+        @Override
+        public long removed(long id) {
+            return 0;
+        }
+
+        @Override
+        public long grouped(Runnable records) {
+            records.run();
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(long position) {
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    static <V> Journal<V> none() {
+        return (Journal<V>) NONE;
+    }
+
+    /**
+     * Record that a view was saved or replaced
+     * @param view the new view
+     * @return the position of the record, to wait for with {@link #awaitDurable}
+     */
+    long stored(V view);
+
+    /**
+     * Record that an entity was deleted
+     * @param id the id of the entity
+     * @return the position of the record, to wait for with {@link #awaitDurable}
+     */
+    long removed(long id);
+
+    /**
+     * Record several changes as one record, so after a crash either all of them are replayed or none.
+     * The records the current thread makes while the changes are recorded, through this journal or another one
+     * of the same store, are grouped; the positions they return are not to be waited for.
+     * @param records makes the records, through {@link #stored} and {@link #removed}
+     * @return the position of the grouped record, to wait for with {@link #awaitDurable}
+     */
+    long grouped(Runnable records);
+
+    /**
+     * Wait until the records up to a position are as durable as the journal promises
+     * @param position a position returned by {@link #stored} or {@link #removed}
+     */
+    void awaitDurable(long position);
+}
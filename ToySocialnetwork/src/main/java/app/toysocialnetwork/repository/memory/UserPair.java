@@ -0,0 +1,12 @@
+package app.toysocialnetwork.repository.memory;
+
+/**
+ * Two user ids in normalized (least, greatest) order, so a pair is the same in either direction
+ * @param low the smaller id
+ * @param high the greater id
+ */
+record UserPair(long low, long high) {
+    static UserPair of(long userId1, long userId2) {
+        return new UserPair(Math.min(userId1, userId2), Math.max(userId1, userId2));
+    }
+}
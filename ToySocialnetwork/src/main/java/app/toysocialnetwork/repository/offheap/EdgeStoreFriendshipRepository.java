@@ -0,0 +1,402 @@
+package app.toysocialnetwork.repository.offheap;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.compact.FriendshipView;
+import app.toysocialnetwork.domain.validators.ValidationException;
+import app.toysocialnetwork.repository.FriendshipRepository;
+import app.toysocialnetwork.utils.collections.LongObjectMap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Friendship repository that answers the per-user lookups, {@link #findByUser} and {@link #findBetween},
+ * from an off-heap {@link FriendshipEdgeStore} snapshot instead of the underlying repository.
+ * Everything else, and every write, goes to the underlying repository; writes made after the snapshot
+ * was taken are also kept in a small on-heap overlay that is merged into the lookups, so they stay current.
+ * <p>
+ * Once the overlay holds compactAfter changes, the snapshot file is rewritten in the background with the
+ * overlay merged in, and the new snapshot replaces the old one, so the overlay does not grow without bound.
+ * <p>
+ * The snapshot is only as fresh as its file: when it is reused across restarts, the changes made to the
+ * underlying repository while the application was down are not in it, and it should be rebuilt instead.
+ */
+public class EdgeStoreFriendshipRepository implements FriendshipRepository, AutoCloseable {
+    private static final System.Logger LOGGER = System.getLogger("app.toysocialnetwork.offheap");
+
+    private final FriendshipRepository delegate;
+    private final Path file;
+    private final int compactAfter;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private FriendshipEdgeStore store;
+
+    /**
+     * Friendships saved after the snapshot, by user
+     */
+    private final LongObjectMap<List<FriendshipView>> added = new LongObjectMap<>();
+
+    /**
+     * Snapshot friendships deleted or updated since, by id
+     */
+    private final LongObjectMap<FriendshipView> removed = new LongObjectMap<>();
+
+    /**
+     * Number of friendships in the overlay, added or removed
+     */
+    private int changes;
+
+    /**
+     * Number of changes after which a failed compaction is retried, 0 if none failed
+     */
+    private int retryAt;
+    private boolean compacting;
+    private boolean closed;
+
+    /**
+     * Constructor for EdgeStoreFriendshipRepository; the snapshot is never compacted
+     * @param delegate the repository the writes and the other reads go to
+     * delegate must not be null
+     * @param store a snapshot of the friendships of the delegate
+     * store must not be null; it is closed with this repository
+     */
+    public EdgeStoreFriendshipRepository(FriendshipRepository delegate, FriendshipEdgeStore store) {
+        this(delegate, store, null, 0);
+    }
+
+    /**
+     * Constructor for EdgeStoreFriendshipRepository
+     * @param delegate the repository the writes and the other reads go to
+     * delegate must not be null
+     * @param store a snapshot of the friendships of the delegate
+     * store must not be null; it is closed with this repository
+     * @param file the file the snapshot was opened from, rewritten when it is compacted
+     * @param compactAfter the number of changes in the overlay that triggers a compaction, 0 to never compact
+     */
+    public EdgeStoreFriendshipRepository(FriendshipRepository delegate, FriendshipEdgeStore store, Path file, int compactAfter) {
+        if (compactAfter < 0 || compactAfter > 0 && file == null) {
+            throw new IllegalArgumentException("Invalid edge store compaction settings: file " + file
+                    + ", compact after " + compactAfter + " changes");
+        }
+        this.delegate = delegate;
+        this.store = store;
+        this.file = file;
+        this.compactAfter = compactAfter;
+    }
+
+    /**
+     * Open the snapshot file of a repository, writing it from the repository first if it is missing or stale
+     * @param delegate the repository
+     * @param file the snapshot file
+     * @param rebuild whether to write the snapshot even if the file exists
+     * @param compactAfter the number of changes in the overlay that triggers a compaction, 0 to never compact
+     * @return the repository reading from the snapshot
+     * @throws IOException if the snapshot cannot be written or read
+     */
+    public static EdgeStoreFriendshipRepository open(FriendshipRepository delegate, Path file, boolean rebuild,
+                                                     int compactAfter) throws IOException {
+        if (rebuild || !Files.exists(file)) {
+            try (Stream<Friendship> friendships = delegate.streamAll()) {
+                FriendshipEdgeStore.write(file, friendships.iterator());
+            }
+        }
+        return new EdgeStoreFriendshipRepository(delegate, FriendshipEdgeStore.open(file), file, compactAfter);
+    }
+
+    @Override
+    public List<Friendship> findByUser(Long userId) {
+        lock.readLock().lock();
+        try {
+            List<Friendship> friendships = new ArrayList<>();
+            for (FriendshipView friendship : store.friendshipsOf(userId)) {
+                if (!removed.containsKey(friendship.id())) {
+                    friendships.add(friendship.toFriendship());
+                }
+            }
+            List<FriendshipView> recent = added.get(userId);
+            if (recent != null) {
+                recent.forEach(friendship -> friendships.add(friendship.toFriendship()));
+            }
+            return friendships;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Friendship> findBetween(Long userId1, Long userId2) {
+        lock.readLock().lock();
+        try {
+            FriendshipView friendship = store.friendshipBetween(userId1, userId2);
+            if (friendship != null && !removed.containsKey(friendship.id())) {
+                return Optional.of(friendship.toFriendship());
+            }
+            long friendId = userId2;
+            List<FriendshipView> recent = added.get(userId1);
+            return recent == null ? Optional.empty() : recent.stream()
+                    .filter(f -> f.friendOf(userId1) == friendId)
+                    .findFirst()
+                    .map(FriendshipView::toFriendship);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Friendship> save(Friendship friendship) throws ValidationException {
+        Optional<Friendship> saved = delegate.save(friendship);
+        saved.ifPresent(this::added);
+        return saved;
+    }
+
+    @Override
+    public Optional<Friendship> delete(Long id) {
+        Optional<Friendship> deleted = delegate.delete(id);
+        deleted.ifPresent(this::removed);
+        return deleted;
+    }
+
+    @Override
+    public Optional<Friendship> update(Friendship friendship) throws ValidationException {
+        Optional<Friendship> old = delegate.findOne(friendship.getId());
+        Optional<Friendship> updated = delegate.update(friendship);
+        if (updated.isPresent() && old.isPresent()) {
+            removed(old.get());
+            added(updated.get());
+        }
+        return updated;
+    }
+
+    @Override
+    public Optional<Friendship> findOne(Long id) {
+        return delegate.findOne(id);
+    }
+
+    @Override
+    public Iterable<Friendship> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public Stream<Friendship> streamAll() {
+        return delegate.streamAll();
+    }
+
+    /**
+     * Unmap the snapshot; if it is being compacted, the compaction unmaps it once it stops reading it
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            if (!compacting) {
+                store.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of friendships in the overlay, added or removed since the snapshot
+     */
+    int overlaySize() {
+        lock.readLock().lock();
+        try {
+            return changes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the snapshot file with the overlay merged in, then replace the snapshot with it.
+     * Lookups and writes go on while the file is written, against the old snapshot; the changes made meanwhile
+     * are carried over to the overlay of the new one.
+     * @return whether the snapshot was replaced; false if it is already being compacted or the repository is closed
+     * @throws IOException if the file cannot be written or read
+     */
+    boolean compact() throws IOException {
+        FriendshipEdgeStore old;
+        Set<FriendshipView> merged;
+        LongObjectMap<FriendshipView> dropped = new LongObjectMap<>();
+        lock.writeLock().lock();
+        try {
+            if (compacting || closed || file == null) {
+                return false;
+            }
+            compacting = true;
+            old = store;
+            merged = recent();
+            removed.values().forEach(friendship -> dropped.put(friendship.id(), friendship));
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        FriendshipEdgeStore compacted = null;
+        boolean swapped = false;
+        try {
+            // the old snapshot is only closed under the write lock with compacting cleared, so it stays mapped here
+            try (Stream<FriendshipView> kept = old.friendships().filter(friendship -> !dropped.containsKey(friendship.id()))) {
+                FriendshipEdgeStore.write(file, Stream.concat(kept, merged.stream()).map(FriendshipView::toFriendship).iterator());
+            }
+            compacted = FriendshipEdgeStore.open(file);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                compacting = false;
+                if (closed) {
+                    old.close();
+                    if (compacted != null) {
+                        compacted.close();
+                    }
+                } else if (compacted != null) {
+                    swap(compacted, merged, dropped);
+                    old.close();
+                    swapped = true;
+                } else {
+                    retryAt = changes + compactAfter;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return swapped;
+    }
+
+    /**
+     * Take into account a friendship the underlying repository got without going through this one,
+     * e.g. created by the database when a request is accepted
+     * @param friendship the saved friendship, with its id
+     */
+    void recordSaved(Friendship friendship) {
+        added(friendship);
+    }
+
+    private void added(Friendship friendship) {
+        FriendshipView view = FriendshipView.of(friendship);
+        boolean compact;
+        lock.writeLock().lock();
+        try {
+            add(view);
+            compact = compactionDue();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (compact) {
+            compactInBackground();
+        }
+    }
+
+    private void removed(Friendship friendship) {
+        FriendshipView view = FriendshipView.of(friendship);
+        long id = view.id();
+        boolean compact;
+        lock.writeLock().lock();
+        try {
+            boolean recent = removeRecent(view.user1Id(), id);
+            removeRecent(view.user2Id(), id);
+            if (recent) {
+                changes--;
+            } else if (removed.put(id, view) == null) {
+                changes++;
+            }
+            compact = compactionDue();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (compact) {
+            compactInBackground();
+        }
+    }
+
+    private void add(FriendshipView view) {
+        added.computeIfAbsent(view.user1Id(), id -> new ArrayList<>()).add(view);
+        added.computeIfAbsent(view.user2Id(), id -> new ArrayList<>()).add(view);
+        changes++;
+    }
+
+    /**
+     * Remove a friendship from the overlay list of one of its users, dropping the list once it is empty
+     * @return whether the friendship was in the list
+     */
+    private boolean removeRecent(long userId, long id) {
+        List<FriendshipView> recent = added.get(userId);
+        if (recent == null || !recent.removeIf(f -> f.id() == id)) {
+            return false;
+        }
+        if (recent.isEmpty()) {
+            added.remove(userId);
+        }
+        return true;
+    }
+
+    /**
+     * @return the friendships added to the overlay, each once
+     */
+    private Set<FriendshipView> recent() {
+        Set<FriendshipView> recent = new HashSet<>();
+        added.values().forEach(recent::addAll);
+        return recent;
+    }
+
+    private boolean compactionDue() {
+        return compactAfter > 0 && changes >= Math.max(compactAfter, retryAt) && !compacting && !closed;
+    }
+
+    private void compactInBackground() {
+        Thread compaction = new Thread(() -> {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Could not compact the friendship edge store " + file
+                        + ", keeping the overlay", e);
+            }
+        }, "edge-store-compaction");
+        compaction.setDaemon(true);
+        compaction.start();
+    }
+
+    /**
+     * Replace the snapshot with its compacted copy, keeping in the overlay only the changes made since the copy
+     * was started; called with the write lock held
+     * @param compacted the new snapshot
+     * @param merged the friendships added to the overlay when the copy was started, now in the new snapshot
+     * @param dropped the friendships removed in the overlay when the copy was started, now out of the new snapshot
+     */
+    private void swap(FriendshipEdgeStore compacted, Set<FriendshipView> merged, LongObjectMap<FriendshipView> dropped) {
+        Set<FriendshipView> recent = recent();
+        List<FriendshipView> gone = removed.values();
+        store = compacted;
+        added.clear();
+        removed.clear();
+        changes = 0;
+        retryAt = 0;
+        for (FriendshipView friendship : recent) {
+            if (!merged.contains(friendship)) {
+                add(friendship);
+            }
+        }
+        for (FriendshipView friendship : gone) {
+            if (!dropped.containsKey(friendship.id())) {
+                removed.put(friendship.id(), friendship);
+                changes++;
+            }
+        }
+        // merged friendships deleted or updated during the copy are in the new snapshot, but no longer current
+        for (FriendshipView friendship : merged) {
+            if (!recent.contains(friendship) && removed.put(friendship.id(), friendship) == null) {
+                changes++;
+            }
+        }
+    }
+}
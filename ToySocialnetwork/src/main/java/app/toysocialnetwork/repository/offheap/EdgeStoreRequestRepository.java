@@ -0,0 +1,95 @@
+package app.toysocialnetwork.repository.offheap;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.validators.ValidationException;
+import app.toysocialnetwork.repository.RequestRepository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Requests whose accepted friendships are created by the request repository itself, like the single
+ * statement of the database repository, while the friendships are read through an
+ * {@link EdgeStoreFriendshipRepository}. The friendship of an accepted request is passed on to its overlay,
+ * so the lookups see it without waiting for the snapshot to be rebuilt.
+ */
+public class EdgeStoreRequestRepository implements RequestRepository {
+    private final RequestRepository requests;
+    private final EdgeStoreFriendshipRepository friendships;
+
+    /**
+     * Constructor for EdgeStoreRequestRepository
+     * @param requests the repository holding the requests
+     * requests must not be null
+     * @param friendships the friendships, read from the edge store
+     * friendships must not be null
+     */
+    public EdgeStoreRequestRepository(RequestRepository requests, EdgeStoreFriendshipRepository friendships) {
+        this.requests = requests;
+        this.friendships = friendships;
+    }
+
+    @Override
+    public Optional<Request> findOne(Long id) {
+        return requests.findOne(id);
+    }
+
+    @Override
+    public Iterable<Request> findAll() {
+        return requests.findAll();
+    }
+
+    @Override
+    public Stream<Request> streamAll() {
+        return requests.streamAll();
+    }
+
+    @Override
+    public List<Request> findBySender(Long senderId) {
+        return requests.findBySender(senderId);
+    }
+
+    @Override
+    public List<Request> findByReceiver(Long receiverId) {
+        return requests.findByReceiver(receiverId);
+    }
+
+    @Override
+    public Optional<Request> findBetween(Long senderId, Long receiverId) {
+        return requests.findBetween(senderId, receiverId);
+    }
+
+    @Override
+    public Optional<Request> saveIfNotFriends(Request request) throws ValidationException {
+        return requests.saveIfNotFriends(request);
+    }
+
+    /**
+     * Accept the request in the underlying repository, then add the friendship it created to the overlay
+     */
+    @Override
+    public Optional<Request> acceptRequest(Friendship friendship) {
+        Optional<Request> accepted = requests.acceptRequest(friendship);
+        if (accepted.isPresent() && friendship.getId() != null) {
+            friendships.recordSaved(friendship);
+        }
+        return accepted;
+    }
+
+    @Override
+    public Optional<Request> save(Request request) throws ValidationException {
+        return requests.save(request);
+    }
+
+    @Override
+    public Optional<Request> delete(Long id) {
+        return requests.delete(id);
+    }
+
+    @Override
+    public Optional<Request> update(Request request) throws ValidationException {
+        return requests.update(request);
+    }
+}
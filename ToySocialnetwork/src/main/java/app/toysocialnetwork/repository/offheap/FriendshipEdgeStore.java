@@ -0,0 +1,389 @@
+package app.toysocialnetwork.repository.offheap;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.compact.EpochMillis;
+import app.toysocialnetwork.domain.compact.FriendshipView;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read-only friendship graph kept off the heap, in a memory-mapped file, in compressed sparse row form:
+ * every friendship is stored once per user, and the edges of a user are contiguous and sorted by friend id.
+ * <pre>
+ * header      8 longs: magic, version, user count (n), edge count (m), 4 reserved
+ * users       n longs: the user ids, sorted
+ * offsets     n + 1 longs: the edges of users[i] are at [offsets[i], offsets[i + 1])
+ * friends     m longs: the friend on the other end of each edge
+ * ids         m longs: the friendship id shifted left by one, the low bit set if the user is its user2
+ * dates       m longs: the friendship date in epoch milliseconds
+ * </pre>
+ * All values are little-endian longs. Opening a store maps the file and reads the header, nothing else;
+ * lookups binary-search the mapped columns, so the graph costs no heap and no deserialization,
+ * and the garbage collector never sees it. A store must be closed to unmap the file.
+ */
+public class FriendshipEdgeStore implements AutoCloseable {
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final long MAGIC = 0x314547444E535454L; // "TTSNDGE1" read as a little-endian long
+    private static final long VERSION = 1;
+    private static final long HEADER_LONGS = 8;
+
+    /**
+     * Edges being sorted by the writer: four longs each (user, friend, id, date)
+     */
+    private static final int EDGE_LONGS = 4;
+
+    private final Arena arena;
+    private final MemorySegment users;
+    private final MemorySegment offsets;
+    private final MemorySegment friends;
+    private final MemorySegment ids;
+    private final MemorySegment dates;
+    private final long userCount;
+    private final long edgeCount;
+
+    private FriendshipEdgeStore(Arena arena, MemorySegment file) throws IOException {
+        this.arena = arena;
+        if (file.byteSize() < HEADER_LONGS * Long.BYTES || file.getAtIndex(LONG, 0) != MAGIC) {
+            throw new IOException("Not a friendship edge store");
+        }
+        if (file.getAtIndex(LONG, 1) != VERSION) {
+            throw new IOException("Unsupported friendship edge store version " + file.getAtIndex(LONG, 1));
+        }
+        userCount = file.getAtIndex(LONG, 2);
+        edgeCount = file.getAtIndex(LONG, 3);
+        if (file.byteSize() != size(userCount, edgeCount)) {
+            throw new IOException("Truncated friendship edge store");
+        }
+        long offset = HEADER_LONGS * Long.BYTES;
+        users = file.asSlice(offset, userCount * Long.BYTES);
+        offset += users.byteSize();
+        offsets = file.asSlice(offset, (userCount + 1) * Long.BYTES);
+        offset += offsets.byteSize();
+        friends = file.asSlice(offset, edgeCount * Long.BYTES);
+        offset += friends.byteSize();
+        ids = file.asSlice(offset, edgeCount * Long.BYTES);
+        offset += ids.byteSize();
+        dates = file.asSlice(offset, edgeCount * Long.BYTES);
+    }
+
+    /**
+     * Map a store written by {@link #write}
+     * @param file the store file
+     * @return the store, to be closed when no longer used
+     * @throws IOException if the file cannot be read or is not a store
+     */
+    public static FriendshipEdgeStore open(Path file) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new FriendshipEdgeStore(arena, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena));
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write a store file from a sequence of friendships.
+     * The edges are collected and sorted off the heap, so the heap used does not grow with the graph.
+     * The file is written next to the target and moved into place once complete.
+     * @param file the store file
+     * @param friendships the friendships, each once
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, Iterator<Friendship> friendships) throws IOException {
+        // every growth step gets its own arena, so the outgrown buffer is freed as soon as it is copied
+        Arena scratch = Arena.ofConfined();
+        try {
+            MemorySegment edges = scratch.allocate(1024L * EDGE_LONGS * Long.BYTES, Long.BYTES);
+            long count = 0;
+            while (friendships.hasNext()) {
+                Friendship friendship = friendships.next();
+                if (count + 2 > edges.byteSize() / (EDGE_LONGS * Long.BYTES)) {
+                    Arena grownScratch = Arena.ofConfined();
+                    MemorySegment grown;
+                    try {
+                        grown = grownScratch.allocate(edges.byteSize() * 2, Long.BYTES);
+                        grown.copyFrom(edges);
+                    } catch (RuntimeException | OutOfMemoryError e) {
+                        grownScratch.close();
+                        throw e;
+                    }
+                    scratch.close();
+                    scratch = grownScratch;
+                    edges = grown;
+                }
+                long id = friendship.getId();
+                long date = EpochMillis.of(friendship.getFriendsFrom());
+                setEdge(edges, count++, friendship.getUser1Id(), friendship.getUser2Id(), id << 1, date);
+                setEdge(edges, count++, friendship.getUser2Id(), friendship.getUser1Id(), id << 1 | 1, date);
+            }
+            sort(edges, 0, count - 1);
+
+            long users = 0;
+            for (long e = 0; e < count; e++) {
+                if (e == 0 || edge(edges, e, 0) != edge(edges, e - 1, 0)) {
+                    users++;
+                }
+            }
+
+            Path partial = file.resolveSibling(file.getFileName() + ".partial");
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 Arena arena = Arena.ofConfined()) {
+                MemorySegment out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size(users, count), arena);
+                out.setAtIndex(LONG, 0, MAGIC);
+                out.setAtIndex(LONG, 1, VERSION);
+                out.setAtIndex(LONG, 2, users);
+                out.setAtIndex(LONG, 3, count);
+                long usersAt = HEADER_LONGS;
+                long offsetsAt = usersAt + users;
+                long friendsAt = offsetsAt + users + 1;
+                long idsAt = friendsAt + count;
+                long datesAt = idsAt + count;
+                long user = 0;
+                for (long e = 0; e < count; e++) {
+                    if (e == 0 || edge(edges, e, 0) != edge(edges, e - 1, 0)) {
+                        out.setAtIndex(LONG, usersAt + user, edge(edges, e, 0));
+                        out.setAtIndex(LONG, offsetsAt + user, e);
+                        user++;
+                    }
+                    out.setAtIndex(LONG, friendsAt + e, edge(edges, e, 1));
+                    out.setAtIndex(LONG, idsAt + e, edge(edges, e, 2));
+                    out.setAtIndex(LONG, datesAt + e, edge(edges, e, 3));
+                }
+                out.setAtIndex(LONG, offsetsAt + users, count);
+                out.force();
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            scratch.close();
+        }
+    }
+
+    public long userCount() {
+        return userCount;
+    }
+
+    /**
+     * @return the number of friendships in the store
+     */
+    public long friendshipCount() {
+        return edgeCount / 2;
+    }
+
+    /**
+     * @param userId the id of a user
+     * @return the number of friends of the user
+     */
+    public long degree(long userId) {
+        long user = indexOf(userId);
+        return user < 0 ? 0 : offsets.getAtIndex(LONG, user + 1) - offsets.getAtIndex(LONG, user);
+    }
+
+    /**
+     * Find the friendships of a user
+     * @param userId the id of the user
+     * @return the friendships, ordered by the id of the friend
+     */
+    public List<FriendshipView> friendshipsOf(long userId) {
+        long user = indexOf(userId);
+        if (user < 0) {
+            return new ArrayList<>();
+        }
+        long from = offsets.getAtIndex(LONG, user);
+        long to = offsets.getAtIndex(LONG, user + 1);
+        List<FriendshipView> friendships = new ArrayList<>((int) (to - from));
+        for (long e = from; e < to; e++) {
+            friendships.add(view(userId, e));
+        }
+        return friendships;
+    }
+
+    /**
+     * Stream the friendships of the store, each once; the store must stay open until the stream is consumed
+     * @return the friendships, ordered by the id of their user1, then of their user2
+     */
+    public Stream<FriendshipView> friendships() {
+        Iterator<FriendshipView> iterator = new Iterator<>() {
+            private long user;
+            private long edge = nextUser1Edge(0);
+
+            @Override
+            public boolean hasNext() {
+                return edge < edgeCount;
+            }
+
+            @Override
+            public FriendshipView next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                while (offsets.getAtIndex(LONG, user + 1) <= edge) {
+                    user++;
+                }
+                FriendshipView friendship = view(users.getAtIndex(LONG, user), edge);
+                edge = nextUser1Edge(edge + 1);
+                return friendship;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliterator(iterator, friendshipCount(),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     * Find the friendship between two users
+     * @param userId1 the id of one user
+     * @param userId2 the id of the other user
+     * @return the friendship, or null if they are not friends
+     */
+    public FriendshipView friendshipBetween(long userId1, long userId2) {
+        long edge = edgeBetween(userId1, userId2);
+        return edge < 0 ? null : view(userId1, edge);
+    }
+
+    /**
+     * @param userId1 the id of one user
+     * @param userId2 the id of the other user
+     * @return whether the two users are friends
+     */
+    public boolean areFriends(long userId1, long userId2) {
+        return edgeBetween(userId1, userId2) >= 0;
+    }
+
+    /**
+     * Unmap the file; the store must not be used afterwards
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private FriendshipView view(long userId, long edge) {
+        long id = ids.getAtIndex(LONG, edge);
+        long friendId = friends.getAtIndex(LONG, edge);
+        boolean user2 = (id & 1) != 0;
+        return new FriendshipView(id >>> 1, user2 ? friendId : userId, user2 ? userId : friendId, dates.getAtIndex(LONG, edge));
+    }
+
+    private long edgeBetween(long userId1, long userId2) {
+        long user = indexOf(userId1);
+        if (user < 0) {
+            return -1;
+        }
+        return binarySearch(friends, offsets.getAtIndex(LONG, user), offsets.getAtIndex(LONG, user + 1) - 1, userId2);
+    }
+
+    /**
+     * @return the first edge from edge on that is stored with the user1 of its friendship, or the edge count
+     */
+    private long nextUser1Edge(long edge) {
+        while (edge < edgeCount && (ids.getAtIndex(LONG, edge) & 1) != 0) {
+            edge++;
+        }
+        return edge;
+    }
+
+    private long indexOf(long userId) {
+        return binarySearch(users, 0, userCount - 1, userId);
+    }
+
+    private static long binarySearch(MemorySegment column, long low, long high, long value) {
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            long current = column.getAtIndex(LONG, mid);
+            if (current < value) {
+                low = mid + 1;
+            } else if (current > value) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static long size(long users, long edges) {
+        return (HEADER_LONGS + users + users + 1 + 3 * edges) * Long.BYTES;
+    }
+
+    private static long edge(MemorySegment edges, long edge, int field) {
+        return edges.getAtIndex(ValueLayout.JAVA_LONG, edge * EDGE_LONGS + field);
+    }
+
+    private static void setEdge(MemorySegment edges, long edge, long user, long friend, long id, long date) {
+        long at = edge * EDGE_LONGS;
+        edges.setAtIndex(ValueLayout.JAVA_LONG, at, user);
+        edges.setAtIndex(ValueLayout.JAVA_LONG, at + 1, friend);
+        edges.setAtIndex(ValueLayout.JAVA_LONG, at + 2, id);
+        edges.setAtIndex(ValueLayout.JAVA_LONG, at + 3, date);
+    }
+
+    private static int compare(MemorySegment edges, long a, long b) {
+        int byUser = Long.compare(edge(edges, a, 0), edge(edges, b, 0));
+        return byUser != 0 ? byUser : Long.compare(edge(edges, a, 1), edge(edges, b, 1));
+    }
+
+    private static void swap(MemorySegment edges, long a, long b) {
+        for (int field = 0; field < EDGE_LONGS; field++) {
+            long value = edge(edges, a, field);
+            edges.setAtIndex(ValueLayout.JAVA_LONG, a * EDGE_LONGS + field, edge(edges, b, field));
+            edges.setAtIndex(ValueLayout.JAVA_LONG, b * EDGE_LONGS + field, value);
+        }
+    }
+
+    /**
+     * Sort the edges in [low, high] by user, then friend: quicksort on the smaller side,
+     * looping on the larger one, so the recursion stays shallow
+     */
+    private static void sort(MemorySegment edges, long low, long high) {
+        while (high - low > 16) {
+            long mid = (low + high) >>> 1;
+            // median of three as the pivot, moved to high
+            if (compare(edges, mid, low) < 0) {
+                swap(edges, mid, low);
+            }
+            if (compare(edges, high, low) < 0) {
+                swap(edges, high, low);
+            }
+            if (compare(edges, mid, high) < 0) {
+                swap(edges, mid, high);
+            }
+            long store = low;
+            for (long e = low; e < high; e++) {
+                if (compare(edges, e, high) < 0) {
+                    swap(edges, e, store++);
+                }
+            }
+            swap(edges, store, high);
+            if (store - low < high - store) {
+                sort(edges, low, store - 1);
+                low = store + 1;
+            } else {
+                sort(edges, store + 1, high);
+                high = store - 1;
+            }
+        }
+        for (long i = low + 1; i <= high; i++) {
+            for (long j = i; j > low && compare(edges, j, j - 1) < 0; j--) {
+                swap(edges, j, j - 1);
+            }
+        }
+    }
+}
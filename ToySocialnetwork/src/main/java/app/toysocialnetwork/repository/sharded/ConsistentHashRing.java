@@ -0,0 +1,126 @@
+package app.toysocialnetwork.repository.sharded;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of long keys onto named shards. Every shard owns several points of a 64-bit ring,
+ * its virtual nodes, and a key belongs to the shard owning the first point at or after the key's hash.
+ * Adding or removing a shard only moves the keys of the ring segments it gains or gives up,
+ * about 1/N of them, instead of reshuffling every key as a modulo would.
+ * <p>
+ * Lookups read an immutable copy of the ring, so they need no lock; changes replace the copy.
+ * @param <S> - type of the shards
+ */
+public class ConsistentHashRing<S> {
+    private final int virtualNodes;
+    private final Map<String, S> shards = new LinkedHashMap<>();
+    private volatile NavigableMap<Long, S> ring = new TreeMap<>();
+    private volatile List<S> shardList = List.of();
+
+    /**
+     * Constructor for ConsistentHashRing
+     * @param virtualNodes the number of points each shard owns on the ring; more spread the keys more evenly
+     */
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("A shard needs at least one virtual node, not " + virtualNodes);
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * Add a shard; its position on the ring depends only on its name, so it is the same on every restart
+     * @param name the name of the shard, e.g. the url of its database
+     * @param shard the shard
+     * @throws IllegalArgumentException if there is already a shard with that name
+     */
+    public synchronized void add(String name, S shard) throws IllegalArgumentException {
+        if (shards.containsKey(name)) {
+            throw new IllegalArgumentException("There is already a shard named " + name);
+        }
+        shards.put(name, shard);
+        rebuild();
+    }
+
+    /**
+     * Remove a shard; its keys now belong to the shards following its points on the ring
+     * @param name the name of the shard
+     * @return the removed shard, or null if there was none with that name
+     */
+    public synchronized S remove(String name) {
+        S removed = shards.remove(name);
+        if (removed != null) {
+            rebuild();
+        }
+        return removed;
+    }
+
+    /**
+     * @param name the name of a shard
+     * @return the shard, or null if there is none with that name
+     */
+    public synchronized S get(String name) {
+        return shards.get(name);
+    }
+
+    /**
+     * @param key a key
+     * @return the shard the key belongs to
+     * @throws IllegalStateException if there are no shards
+     */
+    public S shardFor(long key) throws IllegalStateException {
+        NavigableMap<Long, S> current = ring;
+        if (current.isEmpty()) {
+            throw new IllegalStateException("There are no shards.");
+        }
+        Map.Entry<Long, S> owner = current.ceilingEntry(mix(key));
+        return owner != null ? owner.getValue() : current.firstEntry().getValue();
+    }
+
+    /**
+     * @return all shards, in the order they were added
+     */
+    public List<S> shards() {
+        return shardList;
+    }
+
+    private void rebuild() {
+        NavigableMap<Long, S> points = new TreeMap<>();
+        shards.forEach((name, shard) -> {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(hash(name + "#" + i), shard);
+            }
+        });
+        ring = points;
+        shardList = List.copyOf(new ArrayList<>(shards.values()));
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, then mixed, so similar names land far apart
+     */
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The finalizer of MurmurHash3: spreads consecutive keys, like user ids, over the whole ring
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB93FE1A85EC5L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
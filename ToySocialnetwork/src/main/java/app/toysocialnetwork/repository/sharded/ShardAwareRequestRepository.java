@@ -0,0 +1,112 @@
+package app.toysocialnetwork.repository.sharded;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.validators.ValidationException;
+import app.toysocialnetwork.repository.FriendshipRepository;
+import app.toysocialnetwork.repository.RequestRepository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Requests kept on the main database while the friendships are sharded.
+ * The single-statement {@link RequestRepository#saveIfNotFriends} and {@link RequestRepository#acceptRequest}
+ * of the database repository look at the friendships table of the same database, so here they are done
+ * in two steps against the sharded friendships instead. They are no longer atomic: two requests
+ * crossing each other may both be accepted, and the second friendship is then rejected by its shard.
+ */
+public class ShardAwareRequestRepository implements RequestRepository {
+    private final RequestRepository requests;
+    private final FriendshipRepository friendships;
+
+    /**
+     * Constructor for ShardAwareRequestRepository
+     * @param requests the repository holding the requests
+     * requests must not be null
+     * @param friendships the sharded friendships
+     * friendships must not be null
+     */
+    public ShardAwareRequestRepository(RequestRepository requests, FriendshipRepository friendships) {
+        this.requests = requests;
+        this.friendships = friendships;
+    }
+
+    @Override
+    public Optional<Request> findOne(Long id) {
+        return requests.findOne(id);
+    }
+
+    @Override
+    public Iterable<Request> findAll() {
+        return requests.findAll();
+    }
+
+    @Override
+    public Stream<Request> streamAll() {
+        return requests.streamAll();
+    }
+
+    @Override
+    public List<Request> findBySender(Long senderId) {
+        return requests.findBySender(senderId);
+    }
+
+    @Override
+    public List<Request> findByReceiver(Long receiverId) {
+        return requests.findByReceiver(receiverId);
+    }
+
+    @Override
+    public Optional<Request> findBetween(Long senderId, Long receiverId) {
+        return requests.findBetween(senderId, receiverId);
+    }
+
+    @Override
+    public Optional<Request> saveIfNotFriends(Request request) throws ValidationException {
+        if (friendships.findBetween(request.getSenderId(), request.getReceiverId()).isPresent()) {
+            return Optional.empty();
+        }
+        return requests.save(request);
+    }
+
+    /**
+     * Delete the request, then create the friendship on its shard.
+     * If the friendship cannot be saved because of an error, the request is put back.
+     */
+    @Override
+    public Optional<Request> acceptRequest(Friendship friendship) {
+        Optional<Request> accepted = requests.findBetween(friendship.getUser1Id(), friendship.getUser2Id())
+                .flatMap(request -> requests.delete(request.getId()));
+        if (accepted.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            if (friendships.save(friendship).isEmpty()) {
+                friendship.setId(null);
+            }
+        } catch (RuntimeException e) {
+            Request request = accepted.get();
+            request.setId(null);
+            requests.save(request);
+            throw e;
+        }
+        return accepted;
+    }
+
+    @Override
+    public Optional<Request> save(Request request) throws ValidationException {
+        return requests.save(request);
+    }
+
+    @Override
+    public Optional<Request> delete(Long id) {
+        return requests.delete(id);
+    }
+
+    @Override
+    public Optional<Request> update(Request request) throws ValidationException {
+        return requests.update(request);
+    }
+}
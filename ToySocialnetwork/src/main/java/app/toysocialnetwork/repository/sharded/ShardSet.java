@@ -0,0 +1,101 @@
+package app.toysocialnetwork.repository.sharded;
+
+import app.toysocialnetwork.domain.validators.FriendshipValidation;
+import app.toysocialnetwork.domain.validators.MessageValidation;
+import app.toysocialnetwork.repository.FriendshipRepository;
+import app.toysocialnetwork.repository.MessageRepository;
+import app.toysocialnetwork.repository.database.FriendshipDBRepository;
+import app.toysocialnetwork.repository.database.MessageDBRepository;
+import app.toysocialnetwork.repository.database.SequenceIdAllocator;
+import app.toysocialnetwork.utils.Config;
+import app.toysocialnetwork.utils.DataBase;
+import app.toysocialnetwork.utils.SchemaMigrator;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The shard databases of the friendships and messages, from the {@code db.shards.urls} setting.
+ * Every shard has the full schema; users and requests stay on the main database,
+ * which also hands out the ids of the sharded tables, so they are unique across shards.
+ */
+public class ShardSet {
+    private final DataBase main;
+    private final Map<String, DataBase> shards = new LinkedHashMap<>();
+    private final int virtualNodes;
+
+    /**
+     * Constructor for ShardSet
+     * @param main the main database, which hands out the ids
+     * @param urls the urls of the shard databases
+     * @param virtualNodes the number of points of each shard on the hash ring
+     */
+    public ShardSet(DataBase main, List<String> urls, int virtualNodes) {
+        this.main = main;
+        this.virtualNodes = virtualNodes;
+        for (String url : urls) {
+            shards.put(url, new DataBase(url,
+                    Config.getString("db.username"),
+                    Config.getString("db.password"),
+                    Config.getInt("db.pool.size"),
+                    Config.getLong("db.pool.timeout"),
+                    Config.getProperty("db.prepareThreshold")));
+        }
+    }
+
+    /**
+     * Build the shard set from the configuration
+     * @param main the main database
+     * @return the shard set, empty if sharding is not configured
+     */
+    public static ShardSet fromConfig(DataBase main) {
+        return new ShardSet(main, Config.getList("db.shards.urls"), Config.getInt("db.shards.virtualNodes"));
+    }
+
+    /**
+     * @return whether no shards are configured
+     */
+    public boolean isEmpty() {
+        return shards.isEmpty();
+    }
+
+    /**
+     * @return the shard databases
+     */
+    public List<DataBase> databases() {
+        return List.copyOf(shards.values());
+    }
+
+    /**
+     * Bring the schema of every shard up to date
+     */
+    public void migrate() {
+        shards.values().forEach(shard -> new SchemaMigrator(shard).migrate());
+    }
+
+    /**
+     * @return the friendships, spread over the shards
+     */
+    public ShardedFriendshipRepository friendships() {
+        ConsistentHashRing<FriendshipRepository> ring = new ConsistentHashRing<>(virtualNodes);
+        shards.forEach((url, shard) -> ring.add(url, new FriendshipDBRepository(new FriendshipValidation(), shard)));
+        return new ShardedFriendshipRepository(ring, new SequenceIdAllocator(main, "friendships")::nextId);
+    }
+
+    /**
+     * @return the messages, spread over the shards
+     */
+    public ShardedMessageRepository messages() {
+        ConsistentHashRing<MessageRepository> ring = new ConsistentHashRing<>(virtualNodes);
+        shards.forEach((url, shard) -> ring.add(url, new MessageDBRepository(new MessageValidation(), shard)));
+        return new ShardedMessageRepository(ring, new SequenceIdAllocator(main, "messages")::nextId);
+    }
+
+    /**
+     * Close the connections to the shard databases
+     */
+    public void close() {
+        shards.values().forEach(DataBase::close);
+    }
+}
@@ -0,0 +1,44 @@
+package app.toysocialnetwork.repository.sharded;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.repository.FriendshipRepository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Friendships spread over several databases by the smaller of the two user ids,
+ * so the friendship between two users, whichever way it is asked for, is on a single shard.
+ * A user's friendships are on the shards of their friends' ids too, so {@link #findByUser} asks all of them.
+ */
+public class ShardedFriendshipRepository extends ShardedRepository<Friendship, FriendshipRepository> implements FriendshipRepository {
+    /**
+     * Constructor for ShardedFriendshipRepository
+     * @param ring the shards
+     * ring must not be null
+     * @param ids the source of the ids of new friendships, shared by all shards
+     * ids must not be null
+     */
+    public ShardedFriendshipRepository(ConsistentHashRing<FriendshipRepository> ring, LongSupplier ids) {
+        super(ring, ids);
+    }
+
+    @Override
+    protected long shardKey(Friendship friendship) {
+        return Math.min(friendship.getUser1Id(), friendship.getUser2Id());
+    }
+
+    @Override
+    public List<Friendship> findByUser(Long userId) {
+        return gather(shard -> shard.findByUser(userId));
+    }
+
+    @Override
+    public Optional<Friendship> findBetween(Long userId1, Long userId2) {
+        if (isRebalancing()) {
+            return scatter(shard -> shard.findBetween(userId1, userId2)).stream().flatMap(Optional::stream).findFirst();
+        }
+        return ring.shardFor(Math.min(userId1, userId2)).findBetween(userId1, userId2);
+    }
+}
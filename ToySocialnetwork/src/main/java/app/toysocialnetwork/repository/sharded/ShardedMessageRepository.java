@@ -0,0 +1,97 @@
+package app.toysocialnetwork.repository.sharded;
+
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.compact.EpochMillis;
+import app.toysocialnetwork.domain.validators.ValidationException;
+import app.toysocialnetwork.repository.MessageRepository;
+import app.toysocialnetwork.repository.MessageSearch;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Messages spread over several databases by conversation: the key is built from the unordered pair
+ * of users, so a whole conversation is on one shard and {@link #findBetween} asks only that one.
+ * <p>
+ * A search covers all of a user's conversations, so it asks every shard for its best
+ * {@code offset + limit} matches and ranks the gathered ones again with {@link MessageSearch}:
+ * by the number of query words in the text, then newest first. This approximates the database's
+ * own ranking, which cannot be compared across shards.
+ */
+public class ShardedMessageRepository extends ShardedRepository<Message, MessageRepository> implements MessageRepository {
+    /**
+     * Constructor for ShardedMessageRepository
+     * @param ring the shards
+     * ring must not be null
+     * @param ids the source of the ids of new messages, shared by all shards
+     * ids must not be null
+     */
+    public ShardedMessageRepository(ConsistentHashRing<MessageRepository> ring, LongSupplier ids) {
+        super(ring, ids);
+    }
+
+    @Override
+    protected long shardKey(Message message) {
+        return conversationKey(message.getFrom(), message.getTo());
+    }
+
+    private static long conversationKey(long userId1, long userId2) {
+        return Math.min(userId1, userId2) * 0x9E3779B97F4A7C15L + Math.max(userId1, userId2);
+    }
+
+    @Override
+    public Long nextId() {
+        return newId();
+    }
+
+    @Override
+    public List<Message> findBetween(Long userId1, Long userId2) {
+        if (isRebalancing()) {
+            return gather(shard -> shard.findBetween(userId1, userId2)).stream()
+                    .sorted(Comparator.comparing(Message::getDate))
+                    .collect(Collectors.toList());
+        }
+        return ring.shardFor(conversationKey(userId1, userId2)).findBetween(userId1, userId2);
+    }
+
+    @Override
+    public List<Message> findBetween(Long userId1, Long userId2, LocalDateTime since) {
+        if (isRebalancing()) {
+            return gather(shard -> shard.findBetween(userId1, userId2, since)).stream()
+                    .sorted(Comparator.comparing(Message::getDate))
+                    .collect(Collectors.toList());
+        }
+        return ring.shardFor(conversationKey(userId1, userId2)).findBetween(userId1, userId2, since);
+    }
+
+    @Override
+    public List<Message> search(Long userId, String query, int limit, int offset) {
+        return MessageSearch.rank(gather(shard -> shard.search(userId, query, offset + limit, 0)).stream(),
+                query, Message::getText, m -> EpochMillis.of(m.getDate()), limit, offset);
+    }
+
+    /**
+     * Save the messages in one batch per shard. Each shard's batch is atomic, the whole list is not:
+     * if a shard rejects its batch, invalid messages included, the batches already saved on other shards stay saved.
+     */
+    @Override
+    public List<Message> saveAll(List<Message> messages) throws ValidationException {
+        Map<MessageRepository, List<Message>> byShard = new IdentityHashMap<>();
+        for (Message message : messages) {
+            if (message.getId() == null) {
+                message.setId(newId());
+            }
+            byShard.computeIfAbsent(ring.shardFor(shardKey(message)), shard -> new ArrayList<>()).add(message);
+        }
+        for (Map.Entry<MessageRepository, List<Message>> batch : byShard.entrySet()) {
+            batch.getKey().saveAll(batch.getValue());
+        }
+        return messages;
+    }
+}
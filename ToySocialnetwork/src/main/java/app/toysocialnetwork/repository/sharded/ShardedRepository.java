@@ -0,0 +1,301 @@
+package app.toysocialnetwork.repository.sharded;
+
+import app.toysocialnetwork.domain.Entity;
+import app.toysocialnetwork.domain.validators.ValidationException;
+import app.toysocialnetwork.repository.AbstractRepository;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Repository that spreads its entities over several shard repositories, one per database,
+ * placing each entity on the shard its shard key maps to on a {@link ConsistentHashRing}.
+ * <p>
+ * Ids come from a single source shared by all shards, so they stay unique and an entity keeps its id
+ * when it moves. An id says nothing about where the entity is, so the lookups by id ask every shard
+ * at the same time and keep the answer of the one that has it (scatter-gather), as do the queries
+ * that span shards; subclasses route the queries that have the shard key to a single shard.
+ * <p>
+ * After a shard is added, {@link #rebalance()} moves the entities whose key now maps to another shard.
+ * While it runs, single-shard queries are scattered too, so an entity in transit is still found.
+ * @param <E> - type of entities saved in repository
+ * @param <R> - type of the shard repositories
+ */
+public abstract class ShardedRepository<E extends Entity<Long>, R extends AbstractRepository<Long, E>> implements AbstractRepository<Long, E> {
+    private static final ExecutorService SCATTER = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "shard-scatter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int DRAIN_CHUNK = 500;
+
+    protected final ConsistentHashRing<R> ring;
+    private final LongSupplier ids;
+    private volatile boolean rebalancing;
+
+    /**
+     * The shard being removed, read along with the ring's until its entities are moved
+     */
+    private volatile R draining;
+
+    /**
+     * Constructor for ShardedRepository
+     * @param ring the shards
+     * ring must not be null
+     * @param ids the source of the ids of new entities, shared by all shards
+     * ids must not be null
+     */
+    protected ShardedRepository(ConsistentHashRing<R> ring, LongSupplier ids) {
+        this.ring = ring;
+        this.ids = ids;
+    }
+
+    /**
+     * @param entity an entity
+     * @return the key the shard of the entity is picked by
+     */
+    protected abstract long shardKey(E entity);
+
+    /**
+     * @return a new id, unique across all shards
+     */
+    protected long newId() {
+        return ids.getAsLong();
+    }
+
+    /**
+     * @return whether entities are being moved between shards, so a key may not be on its shard yet
+     */
+    protected boolean isRebalancing() {
+        return rebalancing;
+    }
+
+    /**
+     * @return the shards to read from: those of the ring, and the one being removed if there is one
+     */
+    protected List<R> shards() {
+        R removed = draining;
+        if (removed == null) {
+            return ring.shards();
+        }
+        List<R> shards = new ArrayList<>(ring.shards());
+        shards.add(removed);
+        return shards;
+    }
+
+    /**
+     * Run a call on every shard at the same time
+     * @param call the call
+     * @return the results, in the order of the shards
+     */
+    protected <T> List<T> scatter(Function<R, T> call) {
+        List<R> shards = shards();
+        if (shards.size() == 1) {
+            return List.of(call.apply(shards.get(0)));
+        }
+        List<CompletableFuture<T>> results = new ArrayList<>(shards.size());
+        for (R shard : shards) {
+            results.add(CompletableFuture.supplyAsync(() -> call.apply(shard), SCATTER));
+        }
+        List<T> gathered = new ArrayList<>(shards.size());
+        try {
+            for (CompletableFuture<T> result : results) {
+                gathered.add(result.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return gathered;
+    }
+
+    /**
+     * Run a call on every shard and concatenate the lists they return
+     */
+    protected <T> List<T> gather(Function<R, List<T>> call) {
+        List<T> gathered = new ArrayList<>();
+        scatter(call).forEach(gathered::addAll);
+        return gathered;
+    }
+
+    @Override
+    public Optional<E> findOne(Long id) {
+        return scatter(shard -> shard.findOne(id)).stream().flatMap(Optional::stream).findFirst();
+    }
+
+    @Override
+    public Iterable<E> findAll() {
+        return gather(shard -> {
+            List<E> entities = new ArrayList<>();
+            shard.findAll().forEach(entities::add);
+            return entities;
+        });
+    }
+
+    /**
+     * Stream the entities of one shard after the other, so only one shard's cursor is open at a time
+     */
+    @Override
+    public Stream<E> streamAll() {
+        return shards().stream().flatMap(AbstractRepository::streamAll);
+    }
+
+    /**
+     * Save the entity on its shard, giving it a new id first if it has none
+     */
+    @Override
+    public Optional<E> save(E entity) throws ValidationException {
+        if (entity.getId() == null) {
+            entity.setId(newId());
+        }
+        return ring.shardFor(shardKey(entity)).save(entity);
+    }
+
+    @Override
+    public Optional<E> delete(Long id) {
+        return scatter(shard -> shard.delete(id)).stream().flatMap(Optional::stream).findFirst();
+    }
+
+    /**
+     * Update the entity where it is; if the change gives it another shard key, move it to its new shard
+     */
+    @Override
+    public Optional<E> update(E entity) throws ValidationException {
+        R target = ring.shardFor(shardKey(entity));
+        List<R> shards = shards();
+        List<Optional<E>> found = scatter(shard -> shard.findOne(entity.getId()));
+        for (int i = 0; i < shards.size(); i++) {
+            if (found.get(i).isEmpty()) {
+                continue;
+            }
+            R current = shards.get(i);
+            if (current == target) {
+                return target.update(entity);
+            }
+            Optional<E> moved = target.save(entity);
+            moved.ifPresent(saved -> current.delete(saved.getId()));
+            return moved;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Add a shard and move to it the entities it now owns
+     * @param name the name of the shard, which places it on the ring
+     * @param shard the shard
+     * @return the number of entities moved
+     */
+    public synchronized int addShard(String name, R shard) {
+        // set before the ring changes, so no read trusts the new owner of a key before the key is moved
+        rebalancing = true;
+        try {
+            ring.add(name, shard);
+            return rebalance();
+        } finally {
+            rebalancing = false;
+        }
+    }
+
+    /**
+     * Remove a shard, moving its entities to the shards that now own them
+     * @param name the name of the shard
+     * @return the number of entities moved
+     */
+    public synchronized int removeShard(String name) {
+        R removed = ring.get(name);
+        if (removed == null) {
+            return 0;
+        }
+        rebalancing = true;
+        draining = removed;
+        try {
+            ring.remove(name);
+            return drain(removed);
+        } finally {
+            draining = null;
+            rebalancing = false;
+        }
+    }
+
+    /**
+     * Move every entity that is not on the shard its key maps to; safe to run again if it was interrupted
+     * @return the number of entities moved
+     */
+    public synchronized int rebalance() {
+        rebalancing = true;
+        try {
+            int moved = 0;
+            for (R shard : ring.shards()) {
+                moved += drain(shard);
+            }
+            return moved;
+        } finally {
+            rebalancing = false;
+        }
+    }
+
+    /**
+     * Move the entities of a shard that belong to other shards, DRAIN_CHUNK ids at a time as they are streamed,
+     * so a large shard is never held in memory
+     */
+    private int drain(R shard) {
+        List<Long> chunk = new ArrayList<>(DRAIN_CHUNK);
+        int moved = 0;
+        try (Stream<E> entities = shard.streamAll()) {
+            Iterator<E> iterator = entities.iterator();
+            while (iterator.hasNext()) {
+                E entity = iterator.next();
+                if (ring.shardFor(shardKey(entity)) != shard) {
+                    chunk.add(entity.getId());
+                }
+                if (chunk.size() == DRAIN_CHUNK || (!iterator.hasNext() && !chunk.isEmpty())) {
+                    moved += move(shard, chunk);
+                    chunk.clear();
+                }
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Copy entities to the shards that own them, then delete them from their shard.
+     * Each entity is read again just before it is copied, so the copy is its latest version and one deleted
+     * since it was streamed is not brought back; if it is deleted while being copied, the copy is deleted too.
+     * A copy left by an interrupted move is kept.
+     * @return the number of entities moved
+     */
+    private int move(R shard, List<Long> ids) {
+        int moved = 0;
+        for (Long id : ids) {
+            Optional<E> current = shard.findOne(id);
+            if (current.isEmpty()) {
+                continue;
+            }
+            R owner = ring.shardFor(shardKey(current.get()));
+            if (owner == shard) {
+                continue;
+            }
+            // copied first and deleted after, so an entity is never missing
+            if (owner.save(current.get()).isEmpty() && owner.findOne(id).isEmpty()) {
+                continue;
+            }
+            if (shard.delete(id).isPresent()) {
+                moved++;
+            } else {
+                owner.delete(id);
+            }
+        }
+        return moved;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,490 @@
+package app.toysocialnetwork.repository.snapshot;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.User;
+import app.toysocialnetwork.domain.compact.FriendshipView;
+import app.toysocialnetwork.domain.compact.MessageView;
+import app.toysocialnetwork.domain.compact.RequestView;
+import app.toysocialnetwork.domain.compact.UserView;
+import app.toysocialnetwork.repository.memory.InMemoryFriendshipRepository;
+import app.toysocialnetwork.repository.memory.InMemoryMessageRepository;
+import app.toysocialnetwork.repository.memory.InMemoryRequestRepository;
+import app.toysocialnetwork.repository.memory.InMemoryUserRepository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Binary snapshot of the whole social network, laid out by column: one array per field of every table,
+ * so the ids, user ids and timestamps are flat arrays of longs. Names, usernames and passwords are stored
+ * once each in a string table the user columns point into, and message texts in a table of their own.
+ * <p>
+ * Opening a snapshot only maps the file and reads its directory; a row is decoded when it is read,
+ * and each string of the name table at most once. The columns are mapped separately, in chunks,
+ * so a table may be larger than a single mapping allows.
+ * <p>
+ * File layout, little-endian: the magic number, the format version and the number of columns,
+ * then the offset and length in bytes of every column in the order of {@link Column}, then the columns,
+ * each starting at a multiple of 8. A newer version may only add columns at the end.
+ */
+public class ColumnarSnapshot {
+    private static final long MAGIC = 0x31504E53544E5354L;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = Long.BYTES + 2 * Integer.BYTES;
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    /**
+     * The columns of the format, in the order of the directory
+     */
+    private enum Column {
+        USER_ID, USER_FIRST_NAME, USER_LAST_NAME, USER_USERNAME, USER_PASSWORD,
+        FRIENDSHIP_ID, FRIENDSHIP_USER1, FRIENDSHIP_USER2, FRIENDSHIP_FROM,
+        REQUEST_ID, REQUEST_SENDER, REQUEST_RECEIVER,
+        MESSAGE_ID, MESSAGE_FROM, MESSAGE_TO, MESSAGE_DATE,
+        NAME_OFFSETS, NAME_BYTES, TEXT_OFFSETS, TEXT_BYTES
+    }
+
+    private final Map<Column, MappedColumn> columns = new EnumMap<>(Column.class);
+    private final String[] names;
+    private final int users;
+    private final int friendships;
+    private final int requests;
+    private final int messages;
+
+    private ColumnarSnapshot(Map<Column, MappedColumn> columns) throws IOException {
+        this.columns.putAll(columns);
+        this.users = rows(Column.USER_ID);
+        this.friendships = rows(Column.FRIENDSHIP_ID);
+        this.requests = rows(Column.REQUEST_ID);
+        this.messages = rows(Column.MESSAGE_ID);
+        this.names = new String[Math.max(0, rows(Column.NAME_OFFSETS) - 1)];
+    }
+
+    /**
+     * Map a snapshot file
+     * @param file the file
+     * @return the snapshot; nothing is decoded yet
+     * @throws IOException if the file cannot be read, or is not a snapshot of a supported version
+     */
+    public static ColumnarSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            int count = header.getInt(Long.BYTES + Integer.BYTES);
+            if (header.getLong(0) != MAGIC || header.getInt(Long.BYTES) != VERSION || count < Column.values().length) {
+                throw new IOException(file + " is not a snapshot of a supported version");
+            }
+            ByteBuffer directory = ByteBuffer.allocate(count * 2 * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, directory, HEADER_BYTES);
+            Map<Column, MappedColumn> columns = new EnumMap<>(Column.class);
+            for (Column column : Column.values()) {
+                long offset = directory.getLong(column.ordinal() * 2 * Long.BYTES);
+                long length = directory.getLong(column.ordinal() * 2 * Long.BYTES + Long.BYTES);
+                if (offset < 0 || length < 0 || offset + length > channel.size()) {
+                    throw new IOException(file + " is truncated: column " + column + " is past its end");
+                }
+                columns.put(column, MappedColumn.map(channel, offset, length));
+            }
+            // the mappings stay valid once the channel is closed
+            return new ColumnarSnapshot(columns);
+        }
+    }
+
+    /**
+     * Write a snapshot of the given entities; the file is replaced only once the new one is complete
+     * @param file the file
+     * @param users the users
+     * @param friendships the friendships
+     * @param requests the requests
+     * @param messages the messages
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, Stream<User> users, Stream<Friendship> friendships,
+                             Stream<Request> requests, Stream<Message> messages) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Map<Column, ColumnFile> columns = new EnumMap<>(Column.class);
+        try {
+            for (Column column : Column.values()) {
+                columns.put(column, new ColumnFile(Files.createTempFile(directory, "snapshot-column-", ".tmp")));
+            }
+            NameTable names = new NameTable(columns.get(Column.NAME_OFFSETS), columns.get(Column.NAME_BYTES));
+            for (User user : (Iterable<User>) users::iterator) {
+                UserView view = UserView.of(user);
+                columns.get(Column.USER_ID).writeLong(view.id());
+                columns.get(Column.USER_FIRST_NAME).writeInt(names.index(view.firstName()));
+                columns.get(Column.USER_LAST_NAME).writeInt(names.index(view.lastName()));
+                columns.get(Column.USER_USERNAME).writeInt(names.index(view.username()));
+                columns.get(Column.USER_PASSWORD).writeInt(names.index(view.password()));
+            }
+            for (Friendship friendship : (Iterable<Friendship>) friendships::iterator) {
+                FriendshipView view = FriendshipView.of(friendship);
+                columns.get(Column.FRIENDSHIP_ID).writeLong(view.id());
+                columns.get(Column.FRIENDSHIP_USER1).writeLong(view.user1Id());
+                columns.get(Column.FRIENDSHIP_USER2).writeLong(view.user2Id());
+                columns.get(Column.FRIENDSHIP_FROM).writeLong(view.friendsFrom());
+            }
+            for (Request request : (Iterable<Request>) requests::iterator) {
+                RequestView view = RequestView.of(request);
+                columns.get(Column.REQUEST_ID).writeLong(view.id());
+                columns.get(Column.REQUEST_SENDER).writeLong(view.senderId());
+                columns.get(Column.REQUEST_RECEIVER).writeLong(view.receiverId());
+            }
+            ColumnFile textOffsets = columns.get(Column.TEXT_OFFSETS);
+            ColumnFile textBytes = columns.get(Column.TEXT_BYTES);
+            textOffsets.writeLong(0);
+            for (Message message : (Iterable<Message>) messages::iterator) {
+                MessageView view = MessageView.of(message);
+                columns.get(Column.MESSAGE_ID).writeLong(view.id());
+                columns.get(Column.MESSAGE_FROM).writeLong(view.from());
+                columns.get(Column.MESSAGE_TO).writeLong(view.to());
+                columns.get(Column.MESSAGE_DATE).writeLong(view.date());
+                textBytes.write(view.text().getBytes(StandardCharsets.UTF_8));
+                textOffsets.writeLong(textBytes.length());
+            }
+            assemble(file, columns);
+        } finally {
+            for (ColumnFile column : columns.values()) {
+                column.delete();
+            }
+        }
+    }
+
+    public int userCount() {
+        return users;
+    }
+
+    public int friendshipCount() {
+        return friendships;
+    }
+
+    public int requestCount() {
+        return requests;
+    }
+
+    public int messageCount() {
+        return messages;
+    }
+
+    public long userId(int row) {
+        return columns.get(Column.USER_ID).getLong(row);
+    }
+
+    public String username(int row) {
+        return name(columns.get(Column.USER_USERNAME).getInt(row));
+    }
+
+    public UserView user(int row) {
+        return new UserView(userId(row),
+                name(columns.get(Column.USER_FIRST_NAME).getInt(row)),
+                name(columns.get(Column.USER_LAST_NAME).getInt(row)),
+                username(row),
+                name(columns.get(Column.USER_PASSWORD).getInt(row)));
+    }
+
+    public long friendshipUser1Id(int row) {
+        return columns.get(Column.FRIENDSHIP_USER1).getLong(row);
+    }
+
+    public long friendshipUser2Id(int row) {
+        return columns.get(Column.FRIENDSHIP_USER2).getLong(row);
+    }
+
+    public FriendshipView friendship(int row) {
+        return new FriendshipView(columns.get(Column.FRIENDSHIP_ID).getLong(row),
+                friendshipUser1Id(row), friendshipUser2Id(row), columns.get(Column.FRIENDSHIP_FROM).getLong(row));
+    }
+
+    public RequestView request(int row) {
+        return new RequestView(columns.get(Column.REQUEST_ID).getLong(row),
+                columns.get(Column.REQUEST_SENDER).getLong(row), columns.get(Column.REQUEST_RECEIVER).getLong(row));
+    }
+
+    public MessageView message(int row) {
+        MappedColumn offsets = columns.get(Column.TEXT_OFFSETS);
+        long start = offsets.getLong(row);
+        String text = new String(columns.get(Column.TEXT_BYTES).bytes(start, (int) (offsets.getLong(row + 1) - start)),
+                StandardCharsets.UTF_8);
+        return new MessageView(columns.get(Column.MESSAGE_ID).getLong(row),
+                columns.get(Column.MESSAGE_FROM).getLong(row), columns.get(Column.MESSAGE_TO).getLong(row),
+                text, columns.get(Column.MESSAGE_DATE).getLong(row));
+    }
+
+    /**
+     * @return the usernames, in the order of the user rows, decoded as they are read
+     */
+    public List<String> usernames() {
+        return new AbstractList<>() {
+            @Override
+            public String get(int row) {
+                return username(row);
+            }
+
+            @Override
+            public int size() {
+                return users;
+            }
+        };
+    }
+
+    /**
+     * Load the snapshot into empty in-memory repositories; the entities are restored as they were,
+     * with their ids, without validating them again. Every row is decoded here: the lazy decoding only
+     * applies to reads through the table views.
+     */
+    public void restoreInto(InMemoryUserRepository userRepo, InMemoryFriendshipRepository friendshipRepo,
+                            InMemoryRequestRepository requestRepo, InMemoryMessageRepository messageRepo) {
+        for (int row = 0; row < users; row++) {
+            UserView user = user(row);
+            userRepo.restore(user.id(), user);
+        }
+        for (int row = 0; row < friendships; row++) {
+            FriendshipView friendship = friendship(row);
+            friendshipRepo.restore(friendship.id(), friendship);
+        }
+        for (int row = 0; row < requests; row++) {
+            RequestView request = request(row);
+            requestRepo.restore(request.id(), request);
+        }
+        for (int row = 0; row < messages; row++) {
+            MessageView message = message(row);
+            messageRepo.restore(message.id(), message);
+        }
+    }
+
+    /**
+     * Decode a string of the name table, once: the same name is the same {@code String} for every user
+     */
+    private String name(int index) {
+        String name = names[index];
+        if (name == null) {
+            MappedColumn offsets = columns.get(Column.NAME_OFFSETS);
+            long start = offsets.getLong(index);
+            name = new String(columns.get(Column.NAME_BYTES).bytes(start, (int) (offsets.getLong(index + 1) - start)),
+                    StandardCharsets.UTF_8);
+            // a race only decodes the same string twice
+            names[index] = name;
+        }
+        return name;
+    }
+
+    private int rows(Column column) throws IOException {
+        long rows = columns.get(column).length() / Long.BYTES;
+        if (rows > Integer.MAX_VALUE) {
+            throw new IOException("Column " + column + " has more rows than are supported: " + rows);
+        }
+        return (int) rows;
+    }
+
+    private static void assemble(Path file, Map<Column, ColumnFile> columns) throws IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        try (FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            int count = Column.values().length;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + count * 2 * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC).putInt(VERSION).putInt(count);
+            long offset = align(header.capacity());
+            for (Column column : Column.values()) {
+                long length = columns.get(column).finish();
+                header.putLong(offset).putLong(length);
+                offset = align(offset + length);
+            }
+            header.flip();
+            out.write(header, 0);
+            offset = align(header.capacity());
+            for (Column column : Column.values()) {
+                ColumnFile source = columns.get(column);
+                try (FileChannel in = FileChannel.open(source.file, StandardOpenOption.READ)) {
+                    long copied = 0;
+                    while (copied < source.length()) {
+                        copied += in.transferTo(copied, source.length() - copied, out.position(offset + copied));
+                    }
+                }
+                offset = align(offset + source.length());
+            }
+            out.force(true);
+        }
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static long align(long offset) {
+        return (offset + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("The snapshot is truncated");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * The string table being written: every distinct string is written once, and referred to by its index
+     */
+    private static class NameTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final ColumnFile offsets;
+        private final ColumnFile bytes;
+
+        NameTable(ColumnFile offsets, ColumnFile bytes) throws IOException {
+            this.offsets = offsets;
+            this.bytes = bytes;
+            offsets.writeLong(0);
+        }
+
+        int index(String name) throws IOException {
+            Integer index = indexes.get(name);
+            if (index == null) {
+                index = indexes.size();
+                indexes.put(name, index);
+                bytes.write(name.getBytes(StandardCharsets.UTF_8));
+                offsets.writeLong(bytes.length());
+            }
+            return index;
+        }
+    }
+
+    /**
+     * A column being written: buffered in memory and spilled to a temporary file, so a snapshot of any size
+     * is written with a bounded amount of memory
+     */
+    private static class ColumnFile {
+        private final Path file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long length;
+
+        ColumnFile(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        }
+
+        long length() {
+            return length;
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+            length += Long.BYTES;
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+            length += Integer.BYTES;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            int written = 0;
+            while (written < bytes.length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, chunk);
+                written += chunk;
+            }
+            length += bytes.length;
+        }
+
+        /**
+         * Flush and close the file
+         * @return the length of the column
+         */
+        long finish() throws IOException {
+            flush();
+            channel.close();
+            return length;
+        }
+
+        void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * A read-only column of the file, mapped in chunks; longs and ints never straddle two chunks
+     */
+    private static class MappedColumn {
+        private final MappedByteBuffer[] chunks;
+        private final long length;
+
+        private MappedColumn(MappedByteBuffer[] chunks, long length) {
+            this.chunks = chunks;
+            this.length = length;
+        }
+
+        static MappedColumn map(FileChannel channel, long offset, long length) throws IOException {
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((length + CHUNK_BYTES - 1) / CHUNK_BYTES)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i * CHUNK_BYTES;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, Math.min(CHUNK_BYTES, length - start));
+                chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedColumn(chunks, length);
+        }
+
+        long length() {
+            return length;
+        }
+
+        long getLong(long index) {
+            long position = index * Long.BYTES;
+            return chunks[(int) (position / CHUNK_BYTES)].getLong((int) (position % CHUNK_BYTES));
+        }
+
+        int getInt(long index) {
+            long position = index * Integer.BYTES;
+            return chunks[(int) (position / CHUNK_BYTES)].getInt((int) (position % CHUNK_BYTES));
+        }
+
+        byte[] bytes(long position, int count) {
+            byte[] bytes = new byte[count];
+            int copied = 0;
+            while (copied < count) {
+                long at = position + copied;
+                MappedByteBuffer chunk = chunks[(int) (at / CHUNK_BYTES)];
+                int within = (int) (at % CHUNK_BYTES);
+                int length = Math.min(count - copied, chunk.capacity() - within);
+                chunk.get(within, bytes, copied, length);
+                copied += length;
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package app.toysocialnetwork.server;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.User;
+import app.toysocialnetwork.domain.validators.ValidationException;
+import app.toysocialnetwork.service.Service;
+import app.toysocialnetwork.utils.DataBase;
+import app.toysocialnetwork.utils.OperationScope;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Routes the JSON API requests to the service.
+ * <pre>
+ * GET    /api/users/{id}                          one user
+ * GET    /api/users?username={username}           one user, by username
+ * POST   /api/users                               {firstName, lastName, username, password}
+ * DELETE /api/users/{id}
+ * GET    /api/users/{id}/friendships
+ * GET    /api/users/{id}/requests                 requests received by the user
+ * GET    /api/users/{id}/pendings                 requests sent by the user
+ * GET    /api/users/{id}/messages?with={userId}   the recent messages of the conversation with another user
+ * GET    /api/users/{id}/messages?with={userId}&amp;since={date}   its messages since an ISO date-time
+ * GET    /api/users/{id}/messages?with={userId}&amp;history=all    all of its messages
+ * GET    /api/users/{id}/messages/search?q={words}&amp;limit={n}&amp;offset={n}
+ * POST   /api/friendships                         {userId1, userId2}
+ * DELETE /api/friendships/{id}
+ * POST   /api/requests                            {senderId, receiverId}
+ * POST   /api/requests/accept                     {senderId, receiverId}
+ * DELETE /api/requests/{id}
+ * POST   /api/messages                            {from, to, text}
+ * DELETE /api/messages/{id}
+ * </pre>
+ * Invalid input is answered with 400, a missing entity with 404 and a conflicting one
+ * (already friends, duplicate request) with 409; error bodies are {@code {"error": "..."}}.
+ * <p>
+ * A client that reads back its own writes from replicas sends the same X-Session header with its requests;
+ * clients that do not are told apart by their address.
+ */
+public class ApiHandler implements HttpHandler {
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final String SESSION_HEADER = "X-Session";
+
+    private final Service service;
+
+    /**
+     * Constructor for ApiHandler
+     * @param service the service the requests are delegated to
+     * service must not be null
+     */
+    public ApiHandler(Service service) {
+        this.service = service;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        DataBase.Session session = DataBase.session(session(exchange));
+        try (exchange) {
+            Response response;
+            OperationScope scope = OperationScope.open(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            try {
+                response = route(exchange);
+            } catch (ValidationException | IllegalArgumentException e) {
+                response = new Response(400, Json.error(e.getMessage()));
+            } catch (NoSuchElementException e) {
+                response = new Response(404, Json.error(e.getMessage()));
+            } catch (IllegalStateException e) {
+                response = new Response(409, Json.error(e.getMessage()));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                response = new Response(500, Json.error("Internal server error"));
+            } finally {
+                scope.close();
+            }
+            send(exchange, response);
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * The client a request is made for, so its reads see its writes: the X-Session header if it has one,
+     * its address otherwise
+     */
+    private static String session(HttpExchange exchange) {
+        String session = exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+        return session != null && !session.isBlank() ? session : exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    private Response route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("^/api/?|/$", "").split("/");
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+
+        switch (path[0]) {
+            case "users" -> {
+                if (path.length == 1 && method.equals("GET") && query.containsKey("username")) {
+                    return ok(Json.user(found(service.findUserByUsername(query.get("username")), "user")));
+                }
+                if (path.length == 1 && method.equals("POST")) {
+                    Map<String, String> body = body(exchange);
+                    User user = new User(body.get("firstName"), body.get("lastName"), body.get("username"), body.get("password"));
+                    // the unique index on username is what rejects a taken username
+                    User saved = service.addUser(user)
+                            .orElseThrow(() -> new IllegalStateException("The username is already taken."));
+                    return new Response(201, Json.user(saved));
+                }
+                if (path.length < 2) {
+                    break;
+                }
+                Long userId = id(path[1]);
+                if (path.length == 2 && method.equals("GET")) {
+                    return ok(Json.user(found(service.getUserById(userId), "user")));
+                }
+                if (path.length == 2 && method.equals("DELETE")) {
+                    return ok(Json.user(found(service.deleteUser(userId), "user")));
+                }
+                if (path.length == 3 && method.equals("GET")) {
+                    switch (path[2]) {
+                        case "friendships" -> {
+                            return ok(Json.array(service.getFriendshipsOfUser(userId), Json::friendship));
+                        }
+                        case "requests" -> {
+                            return ok(Json.array(service.getRequestsByReceiver(userId), Json::request));
+                        }
+                        case "pendings" -> {
+                            return ok(Json.array(service.getRequestsToUser(userId), Json::request));
+                        }
+                        case "messages" -> {
+                            Long otherId = id(required(query, "with"));
+                            if (query.containsKey("since")) {
+                                LocalDateTime since = date(query.get("since"));
+                                return ok(Json.array(service.getMessagesBetweenUsers(userId, otherId, since), Json::message));
+                            }
+                            if (query.getOrDefault("history", "").equals("all")) {
+                                return ok(Json.array(service.getMessagesBetweenUsers(userId, otherId), Json::message));
+                            }
+                            return ok(Json.array(service.getRecentMessagesBetweenUsers(userId, otherId), Json::message));
+                        }
+                    }
+                }
+                if (path.length == 4 && method.equals("GET") && path[2].equals("messages") && path[3].equals("search")) {
+                    int limit = number(query.getOrDefault("limit", String.valueOf(DEFAULT_SEARCH_LIMIT)));
+                    int offset = number(query.getOrDefault("offset", "0"));
+                    return ok(Json.array(service.searchMessages(userId, query.get("q"), limit, offset), Json::message));
+                }
+            }
+            case "friendships" -> {
+                if (path.length == 1 && method.equals("POST")) {
+                    Map<String, String> body = body(exchange);
+                    Friendship friendship = service.addFriendship(id(required(body, "userId1")), id(required(body, "userId2")))
+                            .orElseThrow(() -> new IllegalStateException("The friendship could not be saved."));
+                    return new Response(201, Json.friendship(friendship));
+                }
+                if (path.length == 2 && method.equals("DELETE")) {
+                    return ok(Json.friendship(found(service.deleteFriendship(id(path[1])), "friendship")));
+                }
+            }
+            case "requests" -> {
+                if (path.length == 1 && method.equals("POST")) {
+                    Map<String, String> body = body(exchange);
+                    Optional<Request> request = service.addRequest(id(required(body, "senderId")), id(required(body, "receiverId")));
+                    // an empty result means a crossing request was accepted instead
+                    return request.map(r -> new Response(201, Json.request(r)))
+                            .orElseGet(() -> ok("{\"accepted\":true}"));
+                }
+                if (path.length == 2 && method.equals("POST") && path[1].equals("accept")) {
+                    Map<String, String> body = body(exchange);
+                    if (!service.acceptRequest(id(required(body, "senderId")), id(required(body, "receiverId")))) {
+                        throw new NoSuchElementException("No such request.");
+                    }
+                    return ok("{\"accepted\":true}");
+                }
+                if (path.length == 2 && method.equals("DELETE")) {
+                    return ok(Json.request(found(service.deleteRequest(id(path[1])), "request")));
+                }
+            }
+            case "messages" -> {
+                if (path.length == 1 && method.equals("POST")) {
+                    Map<String, String> body = body(exchange);
+                    Message message = await(service.addMessageAsync(id(required(body, "from")), id(required(body, "to")), body.get("text")));
+                    return new Response(201, Json.message(message));
+                }
+                if (path.length == 2 && method.equals("DELETE")) {
+                    return ok(Json.message(found(service.deleteMessage(id(path[1])), "message")));
+                }
+            }
+        }
+        return new Response(404, Json.error("No route for " + method + " " + exchange.getRequestURI().getPath()));
+    }
+
+    private static Response ok(String body) {
+        return new Response(200, body);
+    }
+
+    private static <T> T found(Optional<T> entity, String name) throws NoSuchElementException {
+        return entity.orElseThrow(() -> new NoSuchElementException("No such " + name + "."));
+    }
+
+    /**
+     * Wait for an asynchronous call, rethrowing its failure as is so it maps to the right status
+     */
+    private static <T> T await(CompletableFuture<T> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Long id(String value) throws IllegalArgumentException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid id: " + value);
+        }
+    }
+
+    private static int number(String value) throws IllegalArgumentException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + value);
+        }
+    }
+
+    private static LocalDateTime date(String value) throws IllegalArgumentException {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value);
+        }
+    }
+
+    private static String required(Map<String, String> values, String key) throws IllegalArgumentException {
+        String value = values.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + key + ".");
+        }
+        return value;
+    }
+
+    private static Map<String, String> body(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return Json.parseObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> values = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return values;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            values.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        byte[] bytes = response.body().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status(), bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private record Response(int status, String body) {
+    }
+}
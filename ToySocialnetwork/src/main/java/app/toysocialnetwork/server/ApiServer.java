@@ -0,0 +1,79 @@
+package app.toysocialnetwork.server;
+
+import app.toysocialnetwork.service.Service;
+import app.toysocialnetwork.service.ServiceFactory;
+import app.toysocialnetwork.utils.Config;
+import app.toysocialnetwork.utils.metrics.MetricsRegistry;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Headless entry point: serves the social network as a JSON HTTP API instead of the JavaFX GUI.
+ * Every request runs on its own virtual thread, so a request blocked on the database
+ * does not hold a platform thread; the connection pool bounds the actual database concurrency.
+ */
+public class ApiServer {
+    private static final System.Logger LOGGER = System.getLogger("app.toysocialnetwork.server");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for ApiServer
+     * @param port the port to listen on
+     * @param service the service the API is served from
+     * service must not be null
+     * @throws IOException if the port cannot be bound
+     */
+    public ApiServer(int port, Service service) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api", new ApiHandler(service));
+    }
+
+    /**
+     * Start accepting requests
+     */
+    public void start() {
+        server.start();
+        LOGGER.log(System.Logger.Level.INFO, "API server listening on port {0,number,#}", server.getAddress().getPort());
+    }
+
+    /**
+     * Stop accepting requests, giving the ones in progress a moment to finish
+     */
+    public void stop() {
+        server.stop(1);
+        executor.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Config.getInt("server.port");
+
+        MetricsRegistry.getInstance().start(Config.getLong("metrics.dump.interval"));
+        ServiceFactory.Backend backend = ServiceFactory.fromConfig();
+        Service service = backend.service();
+        service.startMessageIngestion(
+                Config.getInt("messages.ingest.capacity"),
+                Config.getInt("messages.ingest.batchSize"),
+                Config.getLong("messages.ingest.flushMillis"));
+        for (String key : List.of("messages.ingest.batchSize", "messages.ingest.flushMillis")) {
+            Config.onChange(key, value -> service.tuneMessageIngestion(
+                    Config.getInt("messages.ingest.batchSize"), Config.getLong("messages.ingest.flushMillis")));
+        }
+        Config.startReloading(Config.getLong("config.reloadSeconds"));
+
+        ApiServer apiServer = new ApiServer(port, service);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            apiServer.stop();
+            backend.close();
+        }));
+        apiServer.start();
+    }
+}
@@ -0,0 +1,231 @@
+package app.toysocialnetwork.server;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.User;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the HTTP API: serializing the domain entities
+ * and parsing the flat request bodies the API accepts.
+ */
+public class Json {
+    private Json() {
+    }
+
+    public static String user(User user) {
+        // the password never leaves the server
+        return "{\"id\":" + user.getId()
+                + ",\"firstName\":" + string(user.getFirstName())
+                + ",\"lastName\":" + string(user.getLastName())
+                + ",\"username\":" + string(user.getUsername()) + "}";
+    }
+
+    public static String friendship(Friendship friendship) {
+        return "{\"id\":" + friendship.getId()
+                + ",\"userId1\":" + friendship.getUser1Id()
+                + ",\"userId2\":" + friendship.getUser2Id()
+                + ",\"friendsFrom\":" + string(String.valueOf(friendship.getFriendsFrom())) + "}";
+    }
+
+    public static String request(Request request) {
+        return "{\"id\":" + request.getId()
+                + ",\"senderId\":" + request.getSenderId()
+                + ",\"receiverId\":" + request.getReceiverId() + "}";
+    }
+
+    public static String message(Message message) {
+        return "{\"id\":" + message.getId()
+                + ",\"from\":" + message.getFrom()
+                + ",\"to\":" + message.getTo()
+                + ",\"text\":" + string(message.getText())
+                + ",\"date\":" + string(String.valueOf(message.getDate())) + "}";
+    }
+
+    /**
+     * Serialize a sequence of entities as a JSON array
+     * @param items the entities
+     * @param writer serializes one entity
+     * @return the JSON array
+     */
+    public static <T> String array(Iterable<T> items, java.util.function.Function<T, String> writer) {
+        StringBuilder json = new StringBuilder("[");
+        Iterator<T> iterator = items.iterator();
+        while (iterator.hasNext()) {
+            json.append(writer.apply(iterator.next()));
+            if (iterator.hasNext()) {
+                json.append(',');
+            }
+        }
+        return json.append(']').toString();
+    }
+
+    public static String error(String message) {
+        return "{\"error\":" + string(message) + "}";
+    }
+
+    /**
+     * Quote and escape a string value
+     * @param value the value, may be null
+     * @return the JSON string literal, or null
+     */
+    public static String string(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Parse a flat JSON object whose values are strings, numbers, booleans or null
+     * @param json the JSON text
+     * @return the values by key; numbers and booleans are kept as their literal text
+     * @throws IllegalArgumentException if the text is not such an object
+     */
+    public static Map<String, String> parseObject(String json) throws IllegalArgumentException {
+        Parser parser = new Parser(json);
+        parser.skipWhitespace();
+        Map<String, String> values = parser.object();
+        parser.skipWhitespace();
+        if (!parser.atEnd()) {
+            throw new IllegalArgumentException("Unexpected content after the JSON object");
+        }
+        return values;
+    }
+
+    private static class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> object() {
+            Map<String, String> values = new LinkedHashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return values;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                values.put(key, value());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    return values;
+                }
+                if (c != ',') {
+                    throw new IllegalArgumentException("Expected ',' or '}' at position " + (pos - 1));
+                }
+            }
+        }
+
+        String value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            int start = pos;
+            while (!atEnd() && ",} \t\r\n".indexOf(peek()) < 0) {
+                pos++;
+            }
+            String literal = text.substring(start, pos);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+                throw new IllegalArgumentException("Only flat JSON objects are supported");
+            }
+            return literal;
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("Truncated unicode escape");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    }
+                    default -> value.append(escaped);
+                }
+            }
+        }
+
+        void skipWhitespace() {
+            while (!atEnd() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean atEnd() {
+            return pos >= text.length();
+        }
+
+        private char peek() {
+            if (atEnd()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            return text.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at position " + (pos - 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package app.toysocialnetwork.service;
+
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.repository.MessageRepository;
+import app.toysocialnetwork.utils.DataBase;
+import app.toysocialnetwork.utils.metrics.MetricsRegistry;
+import app.toysocialnetwork.utils.metrics.OperationMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind ingestion of messages: senders queue their messages and a single writer thread
+ * saves them in batches, one transaction per batch, so many messages share the cost of a commit.
+ * <p>
+ * A batch is flushed once it holds batchSize messages or flushMillis after its first message,
+ * whichever comes first; with flushMillis 0 the writer flushes whatever has queued up while
+ * the previous batch was being committed. The queue is bounded: when it is full, senders wait,
+ * which pushes back on them instead of letting the backlog grow without limit.
+ * <p>
+ * The future returned for a message completes once its batch is committed, on the writer thread,
+ * so callbacks attached to it should be short. If a batch fails, its messages are retried one by one,
+ * so only the messages that cannot be saved (e.g. invalid ones) complete exceptionally.
+ */
+public class MessageIngestor implements AutoCloseable {
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * A queued message, with the database session of its sender so its reads see it once it is saved
+     */
+    private record Pending(Message message, CompletableFuture<Message> result, String session) {
+        void saved(Message saved) {
+            DataBase.sessionWrote(session);
+            result.complete(saved);
+        }
+    }
+
+    private final MessageRepository messageRepo;
+    private final BlockingQueue<Pending> queue;
+    private volatile int batchSize;
+    private volatile long flushNanos;
+    private final Thread writer;
+    private final OperationMetrics flushes = MetricsRegistry.getInstance().operation("ingest.messages.flush");
+    private volatile boolean closed;
+
+    /**
+     * Constructor for MessageIngestor; starts the writer thread
+     * @param messageRepo the repository the messages are saved to
+     * messageRepo must not be null
+     * @param capacity the maximum number of queued messages
+     * @param batchSize the maximum number of messages saved in one transaction
+     * @param flushMillis how long a batch waits for more messages before it is flushed
+     */
+    public MessageIngestor(MessageRepository messageRepo, int capacity, int batchSize, long flushMillis) {
+        if (capacity < 1 || batchSize < 1 || flushMillis < 0) {
+            throw new IllegalArgumentException("Invalid message ingestion settings: capacity " + capacity
+                    + ", batch size " + batchSize + ", flush interval " + flushMillis + " ms");
+        }
+        this.messageRepo = messageRepo;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.writer = new Thread(this::run, "message-ingestor");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Change the batching while messages are being ingested; it applies from the next batch on
+     * @param batchSize the maximum number of messages saved in one transaction
+     * @param flushMillis how long a batch waits for more messages before it is flushed
+     */
+    public void tune(int batchSize, long flushMillis) {
+        if (batchSize < 1 || flushMillis < 0) {
+            throw new IllegalArgumentException("Invalid message ingestion settings: batch size " + batchSize
+                    + ", flush interval " + flushMillis + " ms");
+        }
+        this.batchSize = batchSize;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+    }
+
+    /**
+     * Queue a message to be saved, waiting for room in the queue if it is full
+     * @param message the message
+     * message must not be null
+     * @return a future completed with the saved message once it is committed
+     * @throws IllegalStateException if the ingestor is closed
+     */
+    public CompletableFuture<Message> submit(Message message) throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("The message ingestor is closed.");
+        }
+        CompletableFuture<Message> result = new CompletableFuture<>();
+        try {
+            queue.put(new Pending(message, result, DataBase.currentSession()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+        }
+        if (closed && !writer.isAlive()) {
+            // closed while this message was being queued: nobody is left to save it
+            failQueued();
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of messages waiting to be saved
+     */
+    public int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Stop accepting messages and wait until the queued ones are saved;
+     * a batch that is still filling up is flushed without waiting for the rest of its interval
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failQueued();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int batchSize = this.batchSize;
+                long deadline = System.nanoTime() + flushNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || closed) {
+                        break;
+                    }
+                    // wake up at least every POLL_MILLIS, so a close does not wait for the whole interval
+                    Pending next = queue.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS)),
+                            TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // keep going: the ingestor only stops once it is closed and the queue is drained
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Save a batch in one transaction, or message by message if the batch fails
+     */
+    private void flush(List<Pending> batch) {
+        long start = System.nanoTime();
+        try {
+            messageRepo.saveAll(batch.stream().map(Pending::message).toList());
+            flushes.record(System.nanoTime() - start, batch.size(), false);
+            batch.forEach(pending -> pending.saved(pending.message()));
+        } catch (RuntimeException e) {
+            flushes.record(System.nanoTime() - start, 0, true);
+            batch.forEach(this::saveOne);
+        }
+    }
+
+    private void saveOne(Pending pending) {
+        try {
+            messageRepo.save(pending.message()).ifPresentOrElse(
+                    pending::saved,
+                    () -> pending.result().completeExceptionally(new IllegalStateException("The message could not be saved.")));
+        } catch (RuntimeException e) {
+            pending.result().completeExceptionally(e);
+        }
+    }
+
+    private void failQueued() {
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().completeExceptionally(new IllegalStateException("The message ingestor is closed."));
+        }
+    }
+}
@@ -4,35 +4,48 @@ import app.toysocialnetwork.domain.Message;
 import app.toysocialnetwork.domain.Friendship;
 import app.toysocialnetwork.domain.Request;
 import app.toysocialnetwork.domain.User;
-import app.toysocialnetwork.repository.database.*;
+import app.toysocialnetwork.repository.FriendshipRepository;
+import app.toysocialnetwork.repository.MessageRepository;
+import app.toysocialnetwork.repository.RequestRepository;
+import app.toysocialnetwork.repository.UserRepository;
+import app.toysocialnetwork.repository.snapshot.ColumnarSnapshot;
+import app.toysocialnetwork.utils.Config;
 import app.toysocialnetwork.utils.event.*;
 import app.toysocialnetwork.utils.observer.FriendshipObservable;
 import app.toysocialnetwork.utils.observer.Observer;
+import app.toysocialnetwork.utils.observer.ObserverRegistry;
 import app.toysocialnetwork.utils.observer.RequestObservable;
 import app.toysocialnetwork.utils.observer.UserObservable;
 import app.toysocialnetwork.utils.observer.MessageObservable;
+import app.toysocialnetwork.utils.observer.Subscription;
+import app.toysocialnetwork.utils.metrics.MetricsRegistry;
+import app.toysocialnetwork.utils.metrics.OperationMetrics;
+import app.toysocialnetwork.utils.jfr.ObserverNotificationEvent;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 public class Service implements UserObservable, FriendshipObservable, RequestObservable, MessageObservable {
-    private final UserDBRepository userRepo;
-    private final FriendshipDBRepository friendshipRepo;
-    private final RequestDBRepository requestRepo;
-    private final MessageDBRepository messageRepo;
+    private final UserRepository userRepo;
+    private final FriendshipRepository friendshipRepo;
+    private final RequestRepository requestRepo;
+    private final MessageRepository messageRepo;
 
-    private final List<Observer<UserEvent>> userObserver;
-    private final List<Observer<FriendshipEvent>> friendshipObserver;
-    private final List<Observer<RequestEvent>> requestObserver;
-    private final List<Observer<MessageEvent>> messageObserver;
+    private final ObserverRegistry<UserEvent> userObserver;
+    private final ObserverRegistry<FriendshipEvent> friendshipObserver;
+    private final ObserverRegistry<RequestEvent> requestObserver;
+    private final ObserverRegistry<MessageEvent> messageObserver;
+
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    private MessageIngestor messageIngestor;
 
     private Long currentUserId;
     private Long selectedUserId;
-    private Long userIdCounter = 1L;
-    private Long friendshipIdCounter = 1L;
-    private Long requestIdCounter = 1L;
 
     /**
      * Constructor that creates a new Service
@@ -45,28 +58,47 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @param messageRepo - the repository for messages
      * messageRepo must not be null
      */
-    public Service(UserDBRepository repositoryUser, FriendshipDBRepository repositoryFriendship, RequestDBRepository repositoryRequest, MessageDBRepository messageRepo) {
+    public Service(UserRepository repositoryUser, FriendshipRepository repositoryFriendship, RequestRepository repositoryRequest, MessageRepository messageRepo) {
         this.userRepo = repositoryUser;
         this.friendshipRepo = repositoryFriendship;
         this.requestRepo = repositoryRequest;
         this.messageRepo = messageRepo;
 
-        this.userObserver = new ArrayList<>();
-        this.friendshipObserver = new ArrayList<>();
-        this.requestObserver = new ArrayList<>();
-        this.messageObserver = new ArrayList<>();
+        this.userObserver = new ObserverRegistry<>();
+        this.friendshipObserver = new ObserverRegistry<>();
+        this.requestObserver = new ObserverRegistry<>();
+        this.messageObserver = new ObserverRegistry<>();
+    }
 
-        initializeCounters();
+    /**
+     * Run a service call and record its latency and whether it failed
+     * @param operation - the name of the operation in the metrics
+     * @param call - the call
+     * @return the result of the call
+     */
+    private <T> T timed(String operation, Supplier<T> call) {
+        OperationMetrics operationMetrics = metrics.operation(operation);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = false;
+            return result;
+        } finally {
+            operationMetrics.record(System.nanoTime() - start, -1, failed);
+        }
     }
 
     /**
-     * Initialize the counters for the ids of the entities
+     * Run a service call that returns nothing and record its latency and whether it failed
+     * @param operation - the name of the operation in the metrics
+     * @param call - the call
      */
-    private void initializeCounters() {
-        userRepo.findAll().forEach(user -> userIdCounter = Math.max(userIdCounter, user.getId() + 1));
-        friendshipRepo.findAll().forEach(friendship -> friendshipIdCounter = Math.max(friendshipIdCounter, friendship.getId() + 1));
-        requestRepo.findAll().forEach(request -> requestIdCounter = Math.max(requestIdCounter, request.getId() + 1));
-        messageRepo.findAll().forEach(message -> message.setId(message.getId() + 1));
+    private void timed(String operation, Runnable call) {
+        timed(operation, () -> {
+            call.run();
+            return null;
+        });
     }
 
     /**
@@ -114,7 +146,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Iterable} encapsulating all users
      */
     public Iterable<User> getUsers() {
-        return userRepo.findAll();
+        return timed("service.getUsers", () -> userRepo.findAll());
     }
 
     /**
@@ -124,7 +156,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the user with the given id
      */
     public Optional<User> getUserById(Long userId) {
-        return userRepo.findOne(userId);
+        return timed("service.getUserById", () -> userRepo.findOne(userId));
     }
 
     /**
@@ -134,10 +166,11 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the added user
      */
     public Optional<User> addUser(User user) {
-        user.setId(userIdCounter++);
-        Optional<User> savedUser = userRepo.save(user);
-        notifyUserObservers(new UserEvent(EventEnum.ADD, user));
-        return savedUser;
+        return timed("service.addUser", () -> {
+            Optional<User> savedUser = userRepo.save(user);
+            notifyUserObservers(new UserEvent(EventEnum.ADD, user));
+            return savedUser;
+        });
     }
 
     /**
@@ -147,9 +180,11 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the updated user
      */
     public Optional<User> updateUser(User user) {
-        Optional<User> updatedUser = userRepo.update(user);
-        updatedUser.ifPresent(u -> notifyUserObservers(new UserEvent(EventEnum.UPDATE, u)));
-        return updatedUser;
+        return timed("service.updateUser", () -> {
+            Optional<User> updatedUser = userRepo.update(user);
+            updatedUser.ifPresent(u -> notifyUserObservers(new UserEvent(EventEnum.UPDATE, u)));
+            return updatedUser;
+        });
     }
 
     /**
@@ -159,11 +194,13 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the deleted user
      */
     public Optional<User> deleteUser(Long userId) {
-        deleteFriendshipsOfUser(userId);
-        deleteRequestsOfUser(userId);
-        Optional<User> deletedUser = userRepo.delete(userId);
-        deletedUser.ifPresent(user -> notifyUserObservers(new UserEvent(EventEnum.DELETE, user)));
-        return deletedUser;
+        return timed("service.deleteUser", () -> {
+            deleteFriendshipsOfUser(userId);
+            deleteRequestsOfUser(userId);
+            Optional<User> deletedUser = userRepo.delete(userId);
+            deletedUser.ifPresent(user -> notifyUserObservers(new UserEvent(EventEnum.DELETE, user)));
+            return deletedUser;
+        });
     }
 
     /**
@@ -173,9 +210,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the user with the given username
      */
     public Optional<User> findUserByUsername(String username) {
-        return StreamSupport.stream(getUsers().spliterator(), false)
-                .filter(user -> user.getUsername().equals(username))
-                .findFirst();
+        return timed("service.findUserByUsername", () -> userRepo.findByUsername(username));
     }
 
 
@@ -189,7 +224,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Iterable} encapsulating all friendships
      */
     public Iterable<Friendship> getFriendships() {
-        return friendshipRepo.findAll();
+        return timed("service.getFriendships", () -> friendshipRepo.findAll());
     }
 
     /**
@@ -199,9 +234,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Iterable} encapsulating all friendships of the user
      */
     public Iterable<Friendship> getFriendshipsOfUser(Long userId) {
-        return StreamSupport.stream(getFriendships().spliterator(), false)
-                .filter(friendship -> friendship.getUser1Id().equals(userId) || friendship.getUser2Id().equals(userId))
-                .collect(Collectors.toList());
+        return timed("service.getFriendshipsOfUser", () -> friendshipRepo.findByUser(userId));
     }
 
     /**
@@ -213,21 +246,19 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the added friendship
      */
     public Optional<Friendship> addFriendship(Long userId1, Long userId2) {
-        boolean friendshipExists = StreamSupport.stream(getFriendships().spliterator(), false)
-                .anyMatch(friendship -> (friendship.getUser1Id().equals(userId1) && friendship.getUser2Id().equals(userId2)) ||
-                        (friendship.getUser1Id().equals(userId2) && friendship.getUser2Id().equals(userId1)));
-
-        if (friendshipExists) {
-            throw new IllegalStateException("A friendship already exists between these users.");
-        }
+        return timed("service.addFriendship", () -> {
+            Friendship friendship = new Friendship(userId1, userId2, LocalDateTime.now());
+            Optional<Friendship> savedFriendship = friendshipRepo.save(friendship);
 
-        Friendship friendship = new Friendship(userId1, userId2, LocalDateTime.now());
-        friendship.setId(friendshipIdCounter++);
-        Optional<Friendship> savedFriendship = friendshipRepo.save(friendship);
+            // the database rejects duplicates; only look up why when nothing was inserted
+            if (savedFriendship.isEmpty() && friendshipRepo.findBetween(userId1, userId2).isPresent()) {
+                throw new IllegalStateException("A friendship already exists between these users.");
+            }
 
-        savedFriendship.ifPresent(f -> notifyFriendshipObservers(new FriendshipEvent(EventEnum.ADD, f)));
+            savedFriendship.ifPresent(f -> notifyFriendshipObservers(new FriendshipEvent(EventEnum.ADD, f)));
 
-        return savedFriendship;
+            return savedFriendship;
+        });
     }
 
     /**
@@ -237,24 +268,26 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the updated friendship
      */
     public Optional<Friendship> deleteFriendship(Long friendshipId) {
-        Optional<Friendship> deletedFriendship = friendshipRepo.findOne(friendshipId);
+        return timed("service.deleteFriendship", () -> {
+            Optional<Friendship> deletedFriendship = friendshipRepo.findOne(friendshipId);
 
-        deletedFriendship.ifPresent(f -> {
-            // Retrieve the users involved in the friendship
-            Long userId1 = f.getUser1Id(); // Assuming Friendship has user1 and user2 as references
-            Long userId2 = f.getUser2Id(); // Assuming Friendship has user2 as references
+            deletedFriendship.ifPresent(f -> {
+                // Retrieve the users involved in the friendship
+                Long userId1 = f.getUser1Id(); // Assuming Friendship has user1 and user2 as references
+                Long userId2 = f.getUser2Id(); // Assuming Friendship has user2 as references
 
-            // Delete all messages between the two users
-            deleteMessagesBetweenUsers(userId1, userId2);
+                // Delete all messages between the two users
+                deleteMessagesBetweenUsers(userId1, userId2);
 
-            // Proceed with deleting the friendship
-            friendshipRepo.delete(friendshipId);
+                // Proceed with deleting the friendship
+                friendshipRepo.delete(friendshipId);
 
-            // Notify observers about the friendship deletion
-            notifyFriendshipObservers(new FriendshipEvent(EventEnum.DELETE, f));
-        });
+                // Notify observers about the friendship deletion
+                notifyFriendshipObservers(new FriendshipEvent(EventEnum.DELETE, f));
+            });
 
-        return deletedFriendship;
+            return deletedFriendship;
+        });
     }
 
     /**
@@ -263,10 +296,8 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * userId must not be null
      */
     public void deleteFriendshipsOfUser(Long userId) {
-        getFriendships().forEach(friendship -> {
-            if (friendship.getUser1Id().equals(userId) || friendship.getUser2Id().equals(userId)) {
-                deleteFriendship(friendship.getId());
-            }
+        timed("service.deleteFriendshipsOfUser", () -> {
+            friendshipRepo.findByUser(userId).forEach(friendship -> deleteFriendship(friendship.getId()));
         });
     }
 
@@ -281,7 +312,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Iterable} encapsulating all requests
      */
     public Iterable<Request> getRequests() {
-        return requestRepo.findAll();
+        return timed("service.getRequests", () -> requestRepo.findAll());
     }
 
     /**
@@ -291,9 +322,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Iterable} encapsulating all requests received by the user
      */
     public Iterable<Request> getRequestsByReceiver(Long receiverId) {
-        return StreamSupport.stream(getRequests().spliterator(), false)
-                .filter(request -> request.getReceiverId().equals(receiverId))
-                .collect(Collectors.toList());
+        return timed("service.getRequestsByReceiver", () -> requestRepo.findByReceiver(receiverId));
     }
 
     /**
@@ -303,9 +332,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Iterable} encapsulating all requests sent by the user
      */
     public Iterable<Request> getRequestsToUser(Long userId) {
-        return StreamSupport.stream(getRequests().spliterator(), false)
-                .filter(request -> request.getSenderId().equals(userId))
-                .collect(Collectors.toList());
+        return timed("service.getRequestsToUser", () -> requestRepo.findBySender(userId));
     }
 
     /**
@@ -317,37 +344,51 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the added request
      */
     public Optional<Request> addRequest(Long senderId, Long receiverId) {
-        boolean friendshipExists = StreamSupport.stream(getFriendships().spliterator(), false)
-                .anyMatch(friendship -> (friendship.getUser1Id().equals(senderId) && friendship.getUser2Id().equals(receiverId)) ||
-                        (friendship.getUser1Id().equals(receiverId) && friendship.getUser2Id().equals(senderId)));
-
-        if (friendshipExists) {
-            throw new IllegalStateException("A friendship already exists between these users.");
-        }
+        return timed("service.addRequest", () -> {
+            // a request in the other direction means both users want the friendship
+            if (acceptRequest(receiverId, senderId)) {
+                return Optional.empty();
+            }
 
-        boolean requestExists = StreamSupport.stream(getRequests().spliterator(), false)
-                .anyMatch(request -> request.getSenderId().equals(senderId) && request.getReceiverId().equals(receiverId));
+            Request request = new Request(senderId, receiverId);
+            Optional<Request> savedRequest = requestRepo.saveIfNotFriends(request);
+            if (savedRequest.isPresent()) {
+                notifyRequestObservers(new RequestEvent(EventEnum.ADD, savedRequest.get()));
+                return savedRequest;
+            }
 
-        if (requestExists) {
+            // nothing was inserted; only now find out why
+            if (friendshipRepo.findBetween(senderId, receiverId).isPresent()) {
+                throw new IllegalStateException("A friendship already exists between these users.");
+            }
+            // a crossing request sent at the same time may have been inserted first
+            if (acceptRequest(receiverId, senderId)) {
+                return Optional.empty();
+            }
             throw new IllegalStateException("A request already exists from user " + senderId + " to user " + receiverId);
-        }
-
-        Optional<Request> reciprocalRequest = StreamSupport.stream(getRequests().spliterator(), false)
-                .filter(request -> request.getSenderId().equals(receiverId) && request.getReceiverId().equals(senderId))
-                .findFirst();
-
-        if (reciprocalRequest.isPresent()) {
-            addFriendship(senderId, receiverId);
-            requestRepo.delete(reciprocalRequest.get().getId());
-            notifyRequestObservers(new RequestEvent(EventEnum.DELETE, reciprocalRequest.get()));
-            return Optional.empty();
-        }
+        });
+    }
 
-        Request request = new Request(senderId, receiverId);
-        request.setId(requestIdCounter++);
-        Optional<Request> savedRequest = requestRepo.save(request);
-        savedRequest.ifPresent(r -> notifyRequestObservers(new RequestEvent(EventEnum.ADD, r)));
-        return savedRequest;
+    /**
+     * Accept a request: delete it and create the friendship in one transaction
+     * @param senderId - the id of the user who sent the request
+     * senderId must not be null
+     * @param receiverId - the id of the user who received the request
+     * receiverId must not be null
+     * @return true if there was such a request and it was accepted
+     */
+    public boolean acceptRequest(Long senderId, Long receiverId) {
+        return timed("service.acceptRequest", () -> {
+            Friendship friendship = new Friendship(senderId, receiverId, LocalDateTime.now());
+            Optional<Request> acceptedRequest = requestRepo.acceptRequest(friendship);
+            acceptedRequest.ifPresent(r -> {
+                notifyRequestObservers(new RequestEvent(EventEnum.DELETE, r));
+                if (friendship.getId() != null) {
+                    notifyFriendshipObservers(new FriendshipEvent(EventEnum.ADD, friendship));
+                }
+            });
+            return acceptedRequest.isPresent();
+        });
     }
 
     /**
@@ -357,9 +398,11 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the updated request
      */
     public Optional<Request> updateRequest(Request request) {
-        Optional<Request> updatedRequest = requestRepo.update(request);
-        updatedRequest.ifPresent(r -> notifyRequestObservers(new RequestEvent(EventEnum.UPDATE, r)));
-        return updatedRequest;
+        return timed("service.updateRequest", () -> {
+            Optional<Request> updatedRequest = requestRepo.update(request);
+            updatedRequest.ifPresent(r -> notifyRequestObservers(new RequestEvent(EventEnum.UPDATE, r)));
+            return updatedRequest;
+        });
     }
 
     /**
@@ -369,9 +412,11 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the deleted request
      */
     public Optional<Request> deleteRequest(Long requestId) {
-        Optional<Request> deletedRequest = requestRepo.delete(requestId);
-        deletedRequest.ifPresent(r -> notifyRequestObservers(new RequestEvent(EventEnum.DELETE, r)));
-        return deletedRequest;
+        return timed("service.deleteRequest", () -> {
+            Optional<Request> deletedRequest = requestRepo.delete(requestId);
+            deletedRequest.ifPresent(r -> notifyRequestObservers(new RequestEvent(EventEnum.DELETE, r)));
+            return deletedRequest;
+        });
     }
 
     /**
@@ -380,10 +425,9 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * userId must not be null
      */
     public void deleteRequestsOfUser(Long userId) {
-        getRequests().forEach(request -> {
-            if (request.getSenderId().equals(userId) || request.getReceiverId().equals(userId)) {
-                deleteRequest(request.getId());
-            }
+        timed("service.deleteRequestsOfUser", () -> {
+            requestRepo.findBySender(userId).forEach(request -> deleteRequest(request.getId()));
+            requestRepo.findByReceiver(userId).forEach(request -> deleteRequest(request.getId()));
         });
     }
 
@@ -398,18 +442,93 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Iterable} encapsulating all messages
      */
     public Iterable<Message> getMessages() {
-        return messageRepo.findAll();
+        return timed("service.getMessages", () -> messageRepo.findAll());
     }
 
     /**
-     * Get all messages between two users
-     *
+     * Stream all messages without loading the whole table into memory.
+     * Intended for maintenance jobs over the full messages table.
+     * @return a {@code Stream} of all messages, which must be closed after use
+     */
+    public Stream<Message> streamMessages() {
+        return timed("service.streamMessages", () -> messageRepo.streamAll());
+    }
+
+    /**
+     * Get all messages between two users, e.g. when the user asks for the older ones; this reads every
+     * monthly partition, so conversations are opened with {@link #getRecentMessagesBetweenUsers} instead
+     * @param userId1 - the id of the first user
+     * userId1 must not be null
+     * @param userId2 - the id of the second user
+     * userId2 must not be null
+     * @return an {@code Iterable} encapsulating the conversation, oldest message first
      */
     public Iterable<Message> getMessagesBetweenUsers(Long userId1, Long userId2) {
-        return StreamSupport.stream(getMessages().spliterator(), false)
-                .filter(message -> (message.getFrom().equals(userId1) && message.getTo().equals(userId2)) ||
-                        (message.getFrom().equals(userId2) && message.getTo().equals(userId1)))
-                .collect(Collectors.toList());
+        return timed("service.getMessagesBetweenUsers", () -> messageRepo.findBetween(userId1, userId2));
+    }
+
+    /**
+     * Get the messages of the last messages.conversation.recentDays days between two users: what a conversation
+     * shows when it is opened, read from the recent monthly partitions only, however long the conversation is
+     * @param userId1 - the id of the first user
+     * userId1 must not be null
+     * @param userId2 - the id of the second user
+     * userId2 must not be null
+     * @return an {@code Iterable} encapsulating the recent messages, oldest message first
+     */
+    public Iterable<Message> getRecentMessagesBetweenUsers(Long userId1, Long userId2) {
+        LocalDateTime since = LocalDateTime.now().minusDays(Config.getInt("messages.conversation.recentDays"));
+        return timed("service.getRecentMessagesBetweenUsers", () -> messageRepo.findBetween(userId1, userId2, since));
+    }
+
+    /**
+     * Get the recent messages between two users; cheaper than the whole conversation when it is long
+     * @param userId1 - the id of the first user
+     * userId1 must not be null
+     * @param userId2 - the id of the second user
+     * userId2 must not be null
+     * @param since - the date of the oldest message to return
+     * since must not be null
+     * @return an {@code Iterable} encapsulating the messages since the date, oldest message first
+     */
+    public Iterable<Message> getMessagesBetweenUsers(Long userId1, Long userId2, LocalDateTime since) {
+        return timed("service.getMessagesBetweenUsers", () -> messageRepo.findBetween(userId1, userId2, since));
+    }
+
+    /**
+     * Search the messages of the conversations a user is part of
+     * @param userId - the id of the user whose conversations are searched
+     * userId must not be null
+     * @param query - the words to search for
+     * @param limit - the maximum number of messages to return
+     * limit must be positive
+     * @return the matching messages, most relevant and most recent first
+     */
+    public List<Message> searchMessages(Long userId, String query, int limit) {
+        return searchMessages(userId, query, limit, 0);
+    }
+
+    /**
+     * Search the messages of the conversations a user is part of, one page at a time
+     * @param userId - the id of the user whose conversations are searched
+     * userId must not be null
+     * @param query - the words to search for
+     * @param limit - the maximum number of messages to return
+     * limit must be positive
+     * @param offset - the number of matching messages to skip
+     * offset must not be negative
+     * @return the matching messages, most relevant and most recent first
+     */
+    public List<Message> searchMessages(Long userId, String query, int limit, int offset) {
+        return timed("service.searchMessages", () -> {
+            if (limit <= 0 || offset < 0) {
+                throw new IllegalArgumentException("Limit must be positive and offset must not be negative.");
+            }
+            if (query == null || query.isBlank()) {
+                return Collections.emptyList();
+            }
+            return messageRepo.search(userId, query, limit, offset);
+        });
     }
 
     /**
@@ -423,11 +542,98 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the added message
      */
     public Optional<Message> addMessage(Long from, Long to, String text) {
-        Message message = new Message(from, to, text, LocalDateTime.now());
-        message.setId(messageRepo.findAll().spliterator().getExactSizeIfKnown() + 1);
-        Optional<Message> savedMessage = messageRepo.save(message);
-        savedMessage.ifPresent(m -> notifyMessageObservers(new MessageEvent(EventEnum.ADD, m)));
-        return savedMessage;
+        return timed("service.addMessage", () -> {
+            Message message = new Message(from, to, text, LocalDateTime.now());
+            message.setId(messageRepo.nextId());
+            Optional<Message> savedMessage = messageRepo.save(message);
+            savedMessage.ifPresent(m -> notifyMessageObservers(new MessageEvent(EventEnum.ADD, m)));
+            return savedMessage;
+        });
+    }
+
+    /**
+     * Add a message through the write-behind ingestion path, if it is started, instead of saving it right away.
+     * Observers are notified once the message is saved, on the ingestion thread.
+     * @param from - the id of the user who sent the message
+     * from must not be null
+     * @param to - the id of the user who received the message
+     * to must not be null
+     * @param text - the text of the message
+     * text must not be null
+     * @return a future completed with the added message once it is saved
+     */
+    public CompletableFuture<Message> addMessageAsync(Long from, Long to, String text) {
+        return timed("service.addMessageAsync", () -> {
+            if (messageIngestor == null) {
+                return addMessage(from, to, text)
+                        .map(CompletableFuture::completedFuture)
+                        .orElseGet(() -> CompletableFuture.failedFuture(new IllegalStateException("The message could not be saved.")));
+            }
+            Message message = new Message(from, to, text, LocalDateTime.now());
+            message.setId(messageRepo.nextId());
+            return messageIngestor.submit(message)
+                    .thenApply(saved -> {
+                        notifyMessageObservers(new MessageEvent(EventEnum.ADD, saved));
+                        return saved;
+                    });
+        });
+    }
+
+    /**
+     * Start saving the messages added with {@link #addMessageAsync} in batches
+     * @param capacity - the maximum number of messages waiting to be saved
+     * @param batchSize - the maximum number of messages saved in one transaction
+     * @param flushMillis - how long a batch waits for more messages before it is saved
+     */
+    public void startMessageIngestion(int capacity, int batchSize, long flushMillis) {
+        if (messageIngestor != null) {
+            throw new IllegalStateException("Message ingestion is already started.");
+        }
+        messageIngestor = new MessageIngestor(messageRepo, capacity, batchSize, flushMillis);
+    }
+
+    /**
+     * Change the batching of the write-behind ingestion path while it runs
+     * @param batchSize - the maximum number of messages saved in one transaction
+     * @param flushMillis - how long a batch waits for more messages before it is flushed
+     * @throws IllegalStateException if message ingestion is not started
+     */
+    public void tuneMessageIngestion(int batchSize, long flushMillis) {
+        if (messageIngestor == null) {
+            throw new IllegalStateException("Message ingestion is not started.");
+        }
+        messageIngestor.tune(batchSize, flushMillis);
+    }
+
+    /**
+     * Stop the write-behind ingestion path, waiting until the queued messages are saved
+     */
+    public void stopMessageIngestion() {
+        if (messageIngestor != null) {
+            messageIngestor.close();
+            messageIngestor = null;
+        }
+    }
+
+    /**
+     * Write all users, friendships, requests and messages to a {@link ColumnarSnapshot},
+     * which an in-memory backend can be restored from instead of reading everything again
+     * @param file - the snapshot file
+     * file must not be null
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void dumpSnapshot(Path file) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (Stream<User> users = userRepo.streamAll();
+             Stream<Friendship> friendships = friendshipRepo.streamAll();
+             Stream<Request> requests = requestRepo.streamAll();
+             Stream<Message> messages = messageRepo.streamAll()) {
+            ColumnarSnapshot.write(file, users, friendships, requests, messages);
+            failed = false;
+        } finally {
+            metrics.operation("service.dumpSnapshot").record(System.nanoTime() - start, -1, failed);
+        }
     }
 
     /**
@@ -437,9 +643,11 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the updated message
      */
     public Optional<Message> updateMessage(Message message) {
-        Optional<Message> updatedMessage = messageRepo.update(message);
-        updatedMessage.ifPresent(m -> notifyMessageObservers(new MessageEvent(EventEnum.UPDATE, m)));
-        return updatedMessage;
+        return timed("service.updateMessage", () -> {
+            Optional<Message> updatedMessage = messageRepo.update(message);
+            updatedMessage.ifPresent(m -> notifyMessageObservers(new MessageEvent(EventEnum.UPDATE, m)));
+            return updatedMessage;
+        });
     }
 
     /**
@@ -449,9 +657,11 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * @return an {@code Optional} encapsulating the deleted message
      */
     public Optional<Message> deleteMessage(Long messageId) {
-        Optional<Message> deletedMessage = messageRepo.delete(messageId);
-        deletedMessage.ifPresent(m -> notifyMessageObservers(new MessageEvent(EventEnum.DELETE, m)));
-        return deletedMessage;
+        return timed("service.deleteMessage", () -> {
+            Optional<Message> deletedMessage = messageRepo.delete(messageId);
+            deletedMessage.ifPresent(m -> notifyMessageObservers(new MessageEvent(EventEnum.DELETE, m)));
+            return deletedMessage;
+        });
     }
 
     /**
@@ -462,11 +672,8 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      * userId2 must not be null
      */
     public void deleteMessagesBetweenUsers(Long userId1, Long userId2) {
-        getMessages().forEach(message -> {
-            if ((message.getFrom().equals(userId1) && message.getTo().equals(userId2)) ||
-                    (message.getFrom().equals(userId2) && message.getTo().equals(userId1))) {
-                deleteMessage(message.getId());
-            }
+        timed("service.deleteMessagesBetweenUsers", () -> {
+            messageRepo.findBetween(userId1, userId2).forEach(message -> deleteMessage(message.getId()));
         });
     }
 
@@ -479,11 +686,12 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
     /**
      * Add an observer for users
      * @param observer - the observer to be added
-     * observer must not be null
+     * observer must not be null; it is held weakly, so it is dropped once nothing else refers to it
+     * @return the subscription, which removes the observer when cancelled
      */
     @Override
-    public void addUserObserver(Observer<UserEvent> observer) {
-        userObserver.add(observer);
+    public Subscription addUserObserver(Observer<UserEvent> observer) {
+        return userObserver.subscribe(observer);
     }
 
     /**
@@ -493,7 +701,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      */
     @Override
     public void removeUserObserver(Observer<UserEvent> observer) {
-        userObserver.remove(observer);
+        userObserver.unsubscribe(observer);
     }
 
     /**
@@ -503,7 +711,10 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      */
     @Override
     public void notifyUserObservers(UserEvent event) {
-        userObserver.forEach(observer -> observer.update(event));
+        ObserverNotificationEvent notification = new ObserverNotificationEvent();
+        notification.begin();
+        int notified = userObserver.notify(event);
+        notification.finish("UserEvent", event.getType(), notified);
     }
 
     // Observer-related methods for friendships
@@ -511,11 +722,12 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
     /**
      * Add an observer for friendships
      * @param observer - the observer to be added
-     * observer must not be null
+     * observer must not be null; it is held weakly, so it is dropped once nothing else refers to it
+     * @return the subscription, which removes the observer when cancelled
      */
     @Override
-    public void addFriendshipObserver(Observer<FriendshipEvent> observer) {
-        friendshipObserver.add(observer);
+    public Subscription addFriendshipObserver(Observer<FriendshipEvent> observer) {
+        return friendshipObserver.subscribe(observer);
     }
 
     /**
@@ -525,7 +737,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      */
     @Override
     public void removeFriendshipObserver(Observer<FriendshipEvent> observer) {
-        friendshipObserver.remove(observer);
+        friendshipObserver.unsubscribe(observer);
     }
 
     /**
@@ -535,7 +747,10 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      */
     @Override
     public void notifyFriendshipObservers(FriendshipEvent event) {
-        friendshipObserver.forEach(observer -> observer.update(event));
+        ObserverNotificationEvent notification = new ObserverNotificationEvent();
+        notification.begin();
+        int notified = friendshipObserver.notify(event);
+        notification.finish("FriendshipEvent", event.getType(), notified);
     }
 
     // Observer-related methods for requests
@@ -543,11 +758,12 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
     /**
      * Add an observer for requests
      * @param observer - the observer to be added
-     * observer must not be null
+     * observer must not be null; it is held weakly, so it is dropped once nothing else refers to it
+     * @return the subscription, which removes the observer when cancelled
      */
     @Override
-    public void addRequestObserver(Observer<RequestEvent> observer) {
-        requestObserver.add(observer);
+    public Subscription addRequestObserver(Observer<RequestEvent> observer) {
+        return requestObserver.subscribe(observer);
     }
 
     /**
@@ -557,7 +773,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      */
     @Override
     public void removeRequestObserver(Observer<RequestEvent> observer) {
-        requestObserver.remove(observer);
+        requestObserver.unsubscribe(observer);
     }
 
     /**
@@ -567,7 +783,10 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      */
     @Override
     public void notifyRequestObservers(RequestEvent event) {
-        requestObserver.forEach(observer -> observer.update(event));
+        ObserverNotificationEvent notification = new ObserverNotificationEvent();
+        notification.begin();
+        int notified = requestObserver.notify(event);
+        notification.finish("RequestEvent", event.getType(), notified);
     }
 
     // Observer-related methods for messages
@@ -575,11 +794,12 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
     /**
      * Add an observer for messages
      * @param observer - the observer to be added
-     * observer must not be null
+     * observer must not be null; it is held weakly, so it is dropped once nothing else refers to it
+     * @return the subscription, which removes the observer when cancelled
      */
     @Override
-    public void addMessageObserver(Observer<MessageEvent> observer) {
-        messageObserver.add(observer);
+    public Subscription addMessageObserver(Observer<MessageEvent> observer) {
+        return messageObserver.subscribe(observer);
     }
 
     /**
@@ -589,7 +809,7 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      */
     @Override
     public void removeMessageObserver(Observer<MessageEvent> observer) {
-        messageObserver.remove(observer);
+        messageObserver.unsubscribe(observer);
     }
 
     /**
@@ -599,6 +819,9 @@ public class Service implements UserObservable, FriendshipObservable, RequestObs
      */
     @Override
     public void notifyMessageObservers(MessageEvent event) {
-        messageObserver.forEach(observer -> observer.update(event));
+        ObserverNotificationEvent notification = new ObserverNotificationEvent();
+        notification.begin();
+        int notified = messageObserver.notify(event);
+        notification.finish("MessageEvent", event.getType(), notified);
     }
 }
@@ -0,0 +1,195 @@
+package app.toysocialnetwork.service;
+
+import app.toysocialnetwork.domain.validators.FriendshipValidation;
+import app.toysocialnetwork.domain.validators.MessageValidation;
+import app.toysocialnetwork.domain.validators.RequestValidation;
+import app.toysocialnetwork.domain.validators.UserValidation;
+import app.toysocialnetwork.repository.FriendshipRepository;
+import app.toysocialnetwork.repository.InstrumentedRepository;
+import app.toysocialnetwork.repository.MessageRepository;
+import app.toysocialnetwork.repository.RequestRepository;
+import app.toysocialnetwork.repository.UserRepository;
+import app.toysocialnetwork.repository.database.FriendshipDBRepository;
+import app.toysocialnetwork.repository.database.MessageDBRepository;
+import app.toysocialnetwork.repository.database.MessagePartitionMaintenance;
+import app.toysocialnetwork.repository.database.RequestDBRepository;
+import app.toysocialnetwork.repository.database.UserDBRepository;
+import app.toysocialnetwork.repository.durable.DurableStore;
+import app.toysocialnetwork.repository.durable.ViewCodec;
+import app.toysocialnetwork.repository.log.MessageLogRepository;
+import app.toysocialnetwork.repository.memory.InMemoryFriendshipRepository;
+import app.toysocialnetwork.repository.memory.InMemoryMessageRepository;
+import app.toysocialnetwork.repository.memory.InMemoryRequestRepository;
+import app.toysocialnetwork.repository.memory.InMemoryUserRepository;
+import app.toysocialnetwork.repository.offheap.EdgeStoreFriendshipRepository;
+import app.toysocialnetwork.repository.offheap.EdgeStoreRequestRepository;
+import app.toysocialnetwork.repository.sharded.ShardAwareRequestRepository;
+import app.toysocialnetwork.repository.sharded.ShardSet;
+import app.toysocialnetwork.repository.snapshot.ColumnarSnapshot;
+import app.toysocialnetwork.utils.Config;
+import app.toysocialnetwork.utils.DataBase;
+import app.toysocialnetwork.utils.NetworkDB;
+import app.toysocialnetwork.utils.SchemaMigrator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wires a {@link Service} to its repositories, so the API server, the load generator and the tests
+ * run the same setup. The repositories are instrumented, so the metrics break the latency of an operation
+ * down by query.
+ */
+public final class ServiceFactory {
+    private ServiceFactory() {
+    }
+
+    /**
+     * A service over the database, and the subsystems around its repositories that must be closed with it
+     */
+    public static final class Backend implements AutoCloseable {
+        private final Service service;
+        private final List<Runnable> closers;
+
+        private Backend(Service service, List<Runnable> closers) {
+            this.service = service;
+            this.closers = closers;
+        }
+
+        /**
+         * @return the service
+         */
+        public Service service() {
+            return service;
+        }
+
+        /**
+         * Stop the message ingestion, then close the subsystems, the last opened first
+         */
+        @Override
+        public void close() {
+            service.stopMessageIngestion();
+            for (int i = closers.size() - 1; i >= 0; i--) {
+                closers.get(i).run();
+            }
+        }
+    }
+
+    /**
+     * Create a service whose repository calls are recorded in the metrics
+     * @param userRepo the users
+     * @param friendshipRepo the friendships
+     * @param requestRepo the requests
+     * @param messageRepo the messages
+     * @return the service
+     */
+    public static Service instrumented(UserRepository userRepo, FriendshipRepository friendshipRepo,
+                                       RequestRepository requestRepo, MessageRepository messageRepo) {
+        return new Service(
+                InstrumentedRepository.of(UserRepository.class, userRepo, "users"),
+                InstrumentedRepository.of(FriendshipRepository.class, friendshipRepo, "friendships"),
+                InstrumentedRepository.of(RequestRepository.class, requestRepo, "requests"),
+                InstrumentedRepository.of(MessageRepository.class, messageRepo, "messages"));
+    }
+
+    /**
+     * Create a service over in-memory repositories, empty or restored from a snapshot or a durable store
+     * @param snapshot the snapshot the repositories are restored from, or null
+     * @param durableStore the store the repositories are restored from and logged to, or null;
+     *                     the caller closes it after the service
+     * @return the service
+     * @throws IllegalArgumentException if both a snapshot and a durable store are given
+     * @throws UncheckedIOException if the durable store cannot be opened
+     */
+    public static Service memory(ColumnarSnapshot snapshot, DurableStore durableStore) throws IllegalArgumentException {
+        if (durableStore != null && snapshot != null) {
+            throw new IllegalArgumentException("A durable backend is restored from its own directory, not from a snapshot");
+        }
+        InMemoryUserRepository userRepo = new InMemoryUserRepository(new UserValidation());
+        InMemoryFriendshipRepository friendshipRepo = new InMemoryFriendshipRepository(new FriendshipValidation());
+        InMemoryRequestRepository requestRepo = new InMemoryRequestRepository(new RequestValidation(), friendshipRepo);
+        InMemoryMessageRepository messageRepo = new InMemoryMessageRepository(new MessageValidation());
+        if (snapshot != null) {
+            snapshot.restoreInto(userRepo, friendshipRepo, requestRepo, messageRepo);
+        }
+        if (durableStore != null) {
+            try {
+                durableStore.attach(userRepo, ViewCodec.USERS)
+                        .attach(friendshipRepo, ViewCodec.FRIENDSHIPS)
+                        .attach(requestRepo, ViewCodec.REQUESTS)
+                        .attach(messageRepo, ViewCodec.MESSAGES)
+                        .open();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return instrumented(userRepo, friendshipRepo, requestRepo, messageRepo);
+    }
+
+    /**
+     * Create a service over the database of {@link NetworkDB}, set up as the configuration says:
+     * the schemas are migrated, the message partitions maintained, and the shards, the off-heap
+     * friendship store and the message log used if they are configured
+     * @return the service and what must be closed with it
+     * @throws UncheckedIOException if the off-heap friendship store cannot be opened
+     */
+    public static Backend fromConfig() throws UncheckedIOException {
+        DataBase main = NetworkDB.getInstance();
+        List<Runnable> closers = new ArrayList<>();
+        closers.add(main::close);
+
+        new SchemaMigrator(main).migrate();
+        ShardSet shards = ShardSet.fromConfig(main);
+        closers.add(shards::close);
+        shards.migrate();
+        for (DataBase dataBase : shards.isEmpty() ? List.of(main) : shards.databases()) {
+            MessagePartitionMaintenance maintenance = new MessagePartitionMaintenance(dataBase,
+                    Config.getInt("messages.partitions.monthsAhead"),
+                    Config.getInt("messages.partitions.retentionMonths"));
+            maintenance.start(Config.getLong("messages.partitions.maintenanceMinutes"));
+            closers.add(maintenance::close);
+        }
+
+        UserRepository userRepo = new UserDBRepository(new UserValidation());
+        FriendshipRepository friendshipRepo = shards.isEmpty()
+                ? new FriendshipDBRepository(new FriendshipValidation())
+                : shards.friendships();
+        String edgeStore = Config.getProperty("friendships.edgeStore.path");
+        EdgeStoreFriendshipRepository offHeapFriendships = null;
+        if (edgeStore != null && !edgeStore.isBlank()) {
+            try {
+                offHeapFriendships = EdgeStoreFriendshipRepository.open(friendshipRepo, Path.of(edgeStore),
+                        Config.getBoolean("friendships.edgeStore.rebuild"),
+                        Config.getInt("friendships.edgeStore.compactAfter"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            closers.add(offHeapFriendships::close);
+            friendshipRepo = offHeapFriendships;
+        }
+        RequestRepository requestRepo = new RequestDBRepository(new RequestValidation());
+        if (!shards.isEmpty()) {
+            requestRepo = new ShardAwareRequestRepository(requestRepo, friendshipRepo);
+        } else if (offHeapFriendships != null) {
+            // the database creates the friendship of an accepted request itself, out of sight of the overlay
+            requestRepo = new EdgeStoreRequestRepository(requestRepo, offHeapFriendships);
+        }
+        String messageLog = Config.getProperty("messages.log.dir");
+        MessageRepository messageRepo;
+        if (messageLog != null && !messageLog.isBlank()) {
+            MessageLogRepository logMessages = MessageLogRepository.open(new MessageValidation(), Path.of(messageLog),
+                    Config.getInt("messages.log.segmentBytes"),
+                    Config.getLong("messages.log.maintenanceSeconds"));
+            closers.add(logMessages::close);
+            messageRepo = logMessages;
+        } else if (!shards.isEmpty()) {
+            messageRepo = shards.messages();
+        } else {
+            messageRepo = new MessageDBRepository(new MessageValidation());
+        }
+
+        return new Backend(instrumented(userRepo, friendshipRepo, requestRepo, messageRepo), closers);
+    }
+}
@@ -1,34 +1,278 @@
 package app.toysocialnetwork.utils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
+/**
+ * The application's configuration, read once and kept as an immutable snapshot.
+ * A property is looked up, from the highest priority to the lowest, in:
+ * <ol>
+ * <li>the system properties, e.g. {@code -Ddb.pool.size=20};</li>
+ * <li>the environment, under the key in upper case with every other character than letters and digits
+ * replaced by an underscore and prefixed by TSN_, e.g. {@code TSN_DB_POOL_SIZE=20};</li>
+ * <li>the external properties file named by the config.file system property or the TSN_CONFIG_FILE
+ * environment variable, if there is one;</li>
+ * <li>/db.properties on the classpath, which holds the defaults.</li>
+ * </ol>
+ * The overrides apply to the properties that have a default.
+ * {@link #reload()} reads them all again and tells the listeners of the properties that changed,
+ * so tunables like pool limits or log thresholds can be changed in production without a restart;
+ * {@link #startReloading(long)} does it periodically. Settings read only at startup still need one.
+ */
 public class Config {
+    private static final System.Logger LOGGER = System.getLogger("app.toysocialnetwork.config");
+    private static final String DEFAULTS = "/db.properties";
+    private static final String ENVIRONMENT_PREFIX = "TSN_";
+
+    private static volatile Map<String, String> values;
+    private static final Map<String, List<Consumer<String>>> listeners = new HashMap<>();
+    private static ScheduledExecutorService reloader;
+
     /**
-     * Get the properties from the db.properties file
-     * @return Properties
-     * @throws RuntimeException if the file is not found
+     * Get the properties, with the overrides applied
+     * @return a copy of all properties
+     * @throws RuntimeException if the defaults cannot be read
      */
     public static Properties getProperties() throws RuntimeException {
-        try {
-            Properties properties = new Properties();
-            properties.load(Config.class.getResourceAsStream("/db.properties"));
-            return properties;
+        Properties properties = new Properties();
+        properties.putAll(values());
+        return properties;
+    }
+
+    /**
+     * Get the value of a property
+     * @param key the property key
+     * @return the property value, or null if it is not set
+     */
+    public static String getProperty(String key) {
+        return values().get(key);
+    }
+
+    /**
+     * Get the value of a property that must be set
+     * @param key the property key
+     * @return the property value, trimmed
+     * @throws IllegalStateException if it is not set
+     */
+    public static String getString(String key) throws IllegalStateException {
+        String value = getProperty(key);
+        if (value == null) {
+            throw new IllegalStateException("Missing configuration property " + key);
+        }
+        return value.trim();
+    }
+
+    /**
+     * @param key the property key
+     * @return the property value, as an int
+     * @throws IllegalStateException if it is not set or not a number
+     */
+    public static int getInt(String key) throws IllegalStateException {
+        return parse(key, getString(key), Integer::parseInt);
+    }
+
+    /**
+     * @param key the property key
+     * @return the property value, as a long
+     * @throws IllegalStateException if it is not set or not a number
+     */
+    public static long getLong(String key) throws IllegalStateException {
+        return parse(key, getString(key), Long::parseLong);
+    }
+
+    /**
+     * @param key the property key
+     * @return the property value, as a boolean
+     * @throws IllegalStateException if it is not set or neither true nor false
+     */
+    public static boolean getBoolean(String key) throws IllegalStateException {
+        String value = getString(key);
+        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+            throw new IllegalStateException("Invalid value for configuration property " + key + ": " + value);
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @param key the property key
+     * @return the comma-separated values of the property, trimmed, without the empty ones;
+     * an empty list if it is not set
+     */
+    public static List<String> getList(String key) {
+        String value = getProperty(key);
+        if (value == null) {
+            return List.of();
+        }
+        return Arrays.stream(value.split(",")).map(String::trim).filter(item -> !item.isEmpty()).toList();
+    }
+
+    /**
+     * Call a listener with the new value of a property each time a reload changes it
+     * @param key the property key
+     * @param listener the listener; it gets null if the property was removed
+     */
+    public static void onChange(String key, Consumer<String> listener) {
+        synchronized (listeners) {
+            listeners.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(listener);
+        }
+    }
+
+    /**
+     * Read the configuration again and notify the listeners of the properties that changed
+     * @return the keys of the properties that changed
+     * @throws RuntimeException if the defaults cannot be read; the current configuration is kept
+     */
+    public static synchronized List<String> reload() throws RuntimeException {
+        Map<String, String> previous = values();
+        Map<String, String> current = load();
+        values = current;
+        List<String> changed = new ArrayList<>();
+        for (String key : union(previous, current)) {
+            if (!Objects.equals(previous.get(key), current.get(key))) {
+                changed.add(key);
+            }
+        }
+        for (String key : changed) {
+            List<Consumer<String>> keyListeners;
+            synchronized (listeners) {
+                keyListeners = listeners.getOrDefault(key, List.of());
+            }
+            for (Consumer<String> listener : keyListeners) {
+                try {
+                    listener.accept(current.get(key));
+                } catch (RuntimeException e) {
+                    LOGGER.log(System.Logger.Level.WARNING, "Listener of configuration property " + key + " failed", e);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Reload the configuration periodically, on a background thread
+     * @param intervalSeconds the time between two reloads; 0 does nothing
+     */
+    public static synchronized void startReloading(long intervalSeconds) {
+        if (intervalSeconds <= 0 || reloader != null) {
+            return;
+        }
+        reloader = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "config-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloader.scheduleWithFixedDelay(() -> {
+            try {
+                List<String> changed = reload();
+                if (!changed.isEmpty()) {
+                    LOGGER.log(System.Logger.Level.INFO, "Reloaded configuration, changed: {0}", String.join(", ", changed));
+                }
+            } catch (RuntimeException e) {
+                String external = externalFile(System::getenv);
+                LOGGER.log(System.Logger.Level.WARNING, "Could not reload the configuration from "
+                        + (external != null ? external : DEFAULTS) + ", keeping the current one", e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private static Map<String, String> values() {
+        Map<String, String> current = values;
+        if (current == null) {
+            synchronized (Config.class) {
+                if (values == null) {
+                    values = load();
+                }
+                current = values;
+            }
+        }
+        return current;
+    }
+
+    private static Map<String, String> load() throws RuntimeException {
+        return load(System::getenv);
+    }
+
+    /**
+     * Read every source, the lower priorities first so the higher ones overwrite them
+     * @param environment looks up an environment variable by name
+     * @return the properties, with the overrides applied
+     * @throws RuntimeException if the defaults or the external file cannot be read
+     */
+    static Map<String, String> load(UnaryOperator<String> environment) throws RuntimeException {
+        Properties properties = new Properties();
+        try (InputStream in = Config.class.getResourceAsStream(DEFAULTS)) {
+            if (in == null) {
+                throw new RuntimeException("Configuration not found: " + DEFAULTS);
+            }
+            properties.load(in);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        String external = externalFile(environment);
+        if (external != null) {
+            try (InputStream in = Files.newInputStream(Path.of(external))) {
+                properties.load(in);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        Map<String, String> loaded = new HashMap<>();
+        properties.stringPropertyNames().forEach(key -> loaded.put(key, properties.getProperty(key)));
+        for (String key : List.copyOf(loaded.keySet())) {
+            String variable = environment.apply(environmentName(key));
+            if (variable != null) {
+                loaded.put(key, variable);
+            }
+            String system = System.getProperty(key);
+            if (system != null) {
+                loaded.put(key, system);
+            }
+        }
+        return Map.copyOf(loaded);
     }
 
     /**
-     * Get the property value from the db.properties file
-     * @param key the property key
-     * @return the property value
+     * @return the path of the external properties file, or null if there is none
      */
-    public static String getProperty(String key) {
+    private static String externalFile(UnaryOperator<String> environment) {
+        String external = System.getProperty("config.file", environment.apply(ENVIRONMENT_PREFIX + "CONFIG_FILE"));
+        return external == null || external.isBlank() ? null : external;
+    }
+
+    private static String environmentName(String key) {
+        return ENVIRONMENT_PREFIX + key.toUpperCase().replaceAll("[^A-Z0-9]", "_");
+    }
+
+    private static List<String> union(Map<String, String> first, Map<String, String> second) {
+        List<String> keys = new ArrayList<>(first.keySet());
+        second.keySet().stream().filter(key -> !first.containsKey(key)).forEach(keys::add);
+        return keys;
+    }
+
+    private interface Parser<T> {
+        T parse(String value) throws NumberFormatException;
+    }
+
+    private static <T> T parse(String key, String value, Parser<T> parser) throws IllegalStateException {
         try {
-            return getProperties().getProperty(key);
-        } catch (RuntimeException e) {
-            throw new RuntimeException(e);
+            return parser.parse(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid value for configuration property " + key + ": " + value);
         }
     }
 }
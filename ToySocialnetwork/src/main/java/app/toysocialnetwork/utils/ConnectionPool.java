@@ -0,0 +1,224 @@
+package app.toysocialnetwork.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of physical connections.
+ * Connections handed out by the pool return to it when closed, so the driver's per-connection
+ * prepared statement cache survives between repository calls and frequently used queries are
+ * parsed and planned once on the server instead of on every call.
+ */
+public class ConnectionPool {
+    /**
+     * Opens a new physical connection
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    /**
+     * A semaphore whose number of permits can also be reduced, for shrinking the pool
+     */
+    private static class Permits extends Semaphore {
+        Permits(int permits) {
+            super(permits, true);
+        }
+
+        void reduce(int reduction) {
+            reducePermits(reduction);
+        }
+    }
+
+    private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+    private final Permits permits;
+    private volatile long timeoutMillis;
+    private int maxSize;
+
+    /**
+     * Constructor for ConnectionPool
+     * @param factory opens the physical connections
+     * @param maxSize the maximum number of connections open at the same time
+     * @param timeoutMillis how long to wait for a free connection before giving up
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxSize, long timeoutMillis) {
+        this.factory = factory;
+        this.permits = new Permits(maxSize);
+        this.timeoutMillis = timeoutMillis;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Borrow a connection from the pool
+     * @return a connection that goes back to the pool when it is closed
+     * @throws SQLException if no connection becomes free in time or a new one cannot be opened
+     */
+    public Connection getConnection() throws SQLException {
+        return getConnection(null);
+    }
+
+    /**
+     * Borrow a connection from the pool, and be told when it is done with
+     * @param onDone called each time the connection commits, and once when it goes back to the pool;
+     * null to not be told
+     * @return a connection that goes back to the pool when it is closed
+     * @throws SQLException if no connection becomes free in time or a new one cannot be opened
+     */
+    public Connection getConnection(Runnable onDone) throws SQLException {
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a free database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        try {
+            Connection physical = idle.poll();
+            while (physical != null && physical.isClosed()) {
+                physical = idle.poll();
+            }
+            if (physical == null) {
+                physical = factory.create();
+            }
+            return wrap(physical, onDone);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of connections currently borrowed from the pool
+     */
+    public synchronized int borrowed() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * Change the limits of the pool while it is in use.
+     * When it shrinks, borrowed connections are not taken back: new borrowers wait until enough
+     * of them are returned, and the idle connections above the new size are closed.
+     * @param maxSize the maximum number of connections open at the same time
+     * @param timeoutMillis how long to wait for a free connection before giving up
+     */
+    public synchronized void resize(int maxSize, long timeoutMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid pool size " + maxSize);
+        }
+        if (maxSize > this.maxSize) {
+            permits.release(maxSize - this.maxSize);
+        } else if (maxSize < this.maxSize) {
+            permits.reduce(this.maxSize - maxSize);
+        }
+        this.maxSize = maxSize;
+        this.timeoutMillis = timeoutMillis;
+        while (idle.size() > maxSize) {
+            Connection physical = idle.poll();
+            if (physical != null) {
+                try {
+                    physical.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Close all idle connections
+     */
+    public void close() {
+        Connection physical;
+        while ((physical = idle.poll()) != null) {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Put a connection back into the pool, leaving it in auto-commit mode as the next borrower expects
+     */
+    private void release(Connection physical) {
+        try {
+            if (!physical.isClosed()) {
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                if (idle.size() >= maxSize || !idle.offer(physical)) {
+                    physical.close();
+                }
+            }
+        } catch (SQLException e) {
+            try {
+                physical.close();
+            } catch (SQLException ignored) {
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Wrap a physical connection so that close() returns it to the pool instead of closing it
+     */
+    private Connection wrap(Connection physical, Runnable onDone) {
+        boolean[] closed = {false};
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!closed[0]) {
+                                closed[0] = true;
+                                release(physical);
+                                if (onDone != null) {
+                                    onDone.run();
+                                }
+                            }
+                            return null;
+                        case "isClosed":
+                            return closed[0] || physical.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Pooled" + physical;
+                        default:
+                            if (closed[0]) {
+                                throw new SQLException("Connection has already been returned to the pool");
+                            }
+                            try {
+                                Object result = method.invoke(physical, args);
+                                if (onDone != null && method.getName().equals("commit")) {
+                                    onDone.run();
+                                }
+                                if (method.getName().equals("prepareStatement")) {
+                                    return StatementTracer.trace((Statement) result, (String) args[0]);
+                                }
+                                if (method.getName().equals("createStatement")) {
+                                    return StatementTracer.trace((Statement) result, null);
+                                }
+                                return result;
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+}
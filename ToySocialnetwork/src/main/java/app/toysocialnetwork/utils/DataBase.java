@@ -3,11 +3,76 @@ package app.toysocialnetwork.utils;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A primary database and, optionally, read replicas of it.
+ * Writes, and reads that must see them, use {@link #getConnection()}, which always goes to the primary;
+ * reads that can tolerate replication lag use {@link #getReadConnection()}, which is spread over the replicas.
+ * <p>
+ * Read-your-writes: after a write, the same caller keeps reading from the primary for a while,
+ * long enough for the replicas to catch up, so it never misses its own changes. The caller is the
+ * {@link #session session} the thread works for, e.g. the client of an API request, which lasts across
+ * requests served by different threads; without one, it is the thread itself. The window starts when the
+ * primary connection commits or goes back to the pool, so a long transaction does not use it up.
+ */
 public class DataBase {
-    private final String url;
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final long DEFAULT_POOL_TIMEOUT_MILLIS = 30_000;
+    private static final System.Logger LOGGER = System.getLogger("app.toysocialnetwork.sql");
+
     private final String username;
     private final String password;
+    private final String prepareThreshold;
+    private final ConnectionPool pool;
+    private final List<String> replicaUrls;
+    private final List<ConnectionPool> replicas = new ArrayList<>();
+    private final ReplicaSelection selection;
+    private final long stickyNanos;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ThreadLocal<Long> lastPrimaryUse = new ThreadLocal<>();
+
+    /**
+     * When each session last wrote, to any of the databases
+     */
+    private static final Map<String, Long> lastSessionWrites = new ConcurrentHashMap<>();
+    private static final ThreadLocal<String> currentSession = new ThreadLocal<>();
+    private static final int SESSIONS_BEFORE_PURGE = 10_000;
+    private static volatile long longestStickyNanos;
+    /**
+     * When the expired sessions were last purged; a purge scans every session, so it runs at most once a window
+     */
+    private static final AtomicLong lastPurge = new AtomicLong(System.nanoTime());
+
+    /**
+     * The session the current thread works for, from {@link #session} until it is closed
+     */
+    public static final class Session implements AutoCloseable {
+        private final String previous;
+
+        private Session(String previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * Go back to the session the thread worked for before
+         */
+        @Override
+        public void close() {
+            if (previous == null) {
+                currentSession.remove();
+            } else {
+                currentSession.set(previous);
+            }
+        }
+    }
 
     /**
      * Constructor for DataBase class
@@ -16,21 +81,217 @@ public class DataBase {
      * @param password the password of the database
      */
     public DataBase(String url, String username, String password) {
-        this.url = url;
+        this(url, username, password, DEFAULT_POOL_SIZE, DEFAULT_POOL_TIMEOUT_MILLIS, null);
+    }
+
+    /**
+     * Constructor for DataBase class
+     * @param url the url of the database
+     * @param username the username of the database
+     * @param password the password of the database
+     * @param poolSize the maximum number of open connections
+     * @param poolTimeoutMillis how long to wait for a free connection
+     * @param prepareThreshold the number of executions after which the driver switches a statement
+     *                         to a server-side prepared statement, or null for the driver default
+     */
+    public DataBase(String url, String username, String password, int poolSize, long poolTimeoutMillis, String prepareThreshold) {
+        this(url, username, password, poolSize, poolTimeoutMillis, prepareThreshold, List.of(), ReplicaSelection.ROUND_ROBIN, 0);
+    }
+
+    /**
+     * Constructor for DataBase class
+     * @param url the url of the primary database
+     * @param username the username of the databases
+     * @param password the password of the databases
+     * @param poolSize the maximum number of open connections to each database
+     * @param poolTimeoutMillis how long to wait for a free connection
+     * @param prepareThreshold the number of executions after which the driver switches a statement
+     *                         to a server-side prepared statement, or null for the driver default
+     * @param replicaUrls the urls of the read replicas; reads go to the primary if there are none
+     * @param selection how the replica of a read is picked
+     * @param stickyMillis how long a thread keeps reading from the primary after using it
+     */
+    public DataBase(String url, String username, String password, int poolSize, long poolTimeoutMillis, String prepareThreshold,
+                    List<String> replicaUrls, ReplicaSelection selection, long stickyMillis) {
         this.username = username;
         this.password = password;
+        this.prepareThreshold = prepareThreshold;
+        this.pool = new ConnectionPool(() -> openConnection(url), poolSize, poolTimeoutMillis);
+        this.replicaUrls = List.copyOf(replicaUrls);
+        for (String replicaUrl : this.replicaUrls) {
+            replicas.add(new ConnectionPool(() -> openConnection(replicaUrl), poolSize, poolTimeoutMillis));
+        }
+        this.selection = selection;
+        this.stickyNanos = TimeUnit.MILLISECONDS.toNanos(stickyMillis);
+        synchronized (DataBase.class) {
+            longestStickyNanos = Math.max(longestStickyNanos, stickyNanos);
+        }
     }
 
     /**
-     * Method to get a connection to the database
+     * Method to get a connection to the primary database, for writes and the reads that must see them.
+     * The connection is borrowed from a pool and must be closed to give it back.
      * @return a connection to the database
      * @throws RuntimeException if there is an error getting the connection
      */
     public Connection getConnection() throws RuntimeException {
+        if (replicas.isEmpty()) {
+            return primaryConnection();
+        }
+        String session = currentSession.get();
+        try {
+            Connection connection = pool.getConnection(() -> wrote(session));
+            wrote(session);
+            return connection;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Method to get a connection for reads that may lag slightly behind the writes of other threads.
+     * It goes to a read replica, unless there is none, the current session (or thread) wrote recently,
+     * or no replica can be reached; then it goes to the primary.
+     * The connection is borrowed from a pool and must be closed to give it back.
+     * @return a connection to a replica or to the primary database
+     * @throws RuntimeException if there is an error getting the connection
+     */
+    public Connection getReadConnection() throws RuntimeException {
+        if (replicas.isEmpty() || wroteRecently(currentSession.get())) {
+            return primaryConnection();
+        }
+        int replica = pickReplica();
+        try {
+            return replicas.get(replica).getConnection();
+        } catch (SQLException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "Read replica " + replicaUrls.get(replica)
+                    + " is unavailable, reading from the primary: " + e.getMessage());
+            return primaryConnection();
+        }
+    }
+
+    /**
+     * Make the database calls of the current thread on behalf of a session until the returned scope is closed,
+     * so the reads of the session see its writes even when they are made by other threads
+     * @param key identifies the session, e.g. a client of the API
+     * key must not be null
+     * @return the scope, to close when the thread is done working for the session
+     */
+    public static Session session(String key) {
+        Session scope = new Session(currentSession.get());
+        currentSession.set(key);
+        return scope;
+    }
+
+    /**
+     * @return the session the current thread works for, or null if there is none
+     */
+    public static String currentSession() {
+        return currentSession.get();
+    }
+
+    /**
+     * Start the read-your-writes window of a session that wrote through another thread,
+     * e.g. one that saved the writes of several sessions in a batch
+     * @param session the session, or null to do nothing
+     */
+    public static void sessionWrote(String session) {
+        if (session == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        lastSessionWrites.put(session, now);
+        if (lastSessionWrites.size() > SESSIONS_BEFORE_PURGE) {
+            long sticky = longestStickyNanos;
+            long purged = lastPurge.get();
+            // only the thread that wins the exchange purges; the others carry on without scanning
+            if (now - purged >= sticky && lastPurge.compareAndSet(purged, now)) {
+                lastSessionWrites.values().removeIf(time -> now - time >= sticky);
+            }
+        }
+    }
+
+    /**
+     * Change the pool limits of the primary and of every replica while the database is in use
+     * @param poolSize the maximum number of open connections to each database
+     * @param poolTimeoutMillis how long to wait for a free connection
+     */
+    public void resizePools(int poolSize, long poolTimeoutMillis) {
+        pool.resize(poolSize, poolTimeoutMillis);
+        replicas.forEach(replica -> replica.resize(poolSize, poolTimeoutMillis));
+    }
+
+    /**
+     * @return the number of read replicas
+     */
+    public int replicaCount() {
+        return replicas.size();
+    }
+
+    /**
+     * Close the idle pooled connections; borrowed ones are closed when they are given back
+     */
+    public void close() {
+        pool.close();
+        replicas.forEach(ConnectionPool::close);
+    }
+
+    /**
+     * Borrow a primary connection without starting a read-your-writes window
+     */
+    private Connection primaryConnection() {
         try {
-            return DriverManager.getConnection(url, username, password);
+            return pool.getConnection();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Start the read-your-writes window of a session, or of the current thread if there is none
+     */
+    private void wrote(String session) {
+        if (session == null) {
+            lastPrimaryUse.set(System.nanoTime());
+        } else {
+            sessionWrote(session);
+        }
+    }
+
+    private boolean wroteRecently(String session) {
+        Long lastWrite = session == null ? lastPrimaryUse.get() : lastSessionWrites.get(session);
+        return lastWrite != null && System.nanoTime() - lastWrite < stickyNanos;
+    }
+
+    private int pickReplica() {
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        if (selection == ReplicaSelection.ROUND_ROBIN) {
+            return start;
+        }
+        // least loaded, starting from the next one in turn so ties are spread too
+        int best = start;
+        for (int i = 1; i < replicas.size(); i++) {
+            int candidate = (start + i) % replicas.size();
+            if (replicas.get(candidate).borrowed() < replicas.get(best).borrowed()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Open a new physical connection to one of the databases
+     * @param url the url of the database
+     * @return the connection
+     * @throws SQLException if the connection cannot be opened
+     */
+    private Connection openConnection(String url) throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", username);
+        properties.setProperty("password", password);
+        if (prepareThreshold != null) {
+            properties.setProperty("prepareThreshold", prepareThreshold);
+        }
+        return DriverManager.getConnection(url, properties);
+    }
 }
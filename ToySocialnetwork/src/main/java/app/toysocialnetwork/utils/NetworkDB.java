@@ -4,13 +4,21 @@ public class NetworkDB extends DataBase {
     private final static NetworkDB instance = new NetworkDB();
 
     /**
-     * Constructor for NetworkDB
+     * Constructor for NetworkDB; the pool limits follow the configuration when it is reloaded
      */
     private NetworkDB() {
         super(
-                Config.getProperty("db.url"),
-                Config.getProperty("db.username"),
-                Config.getProperty("db.password"));
+                Config.getString("db.url"),
+                Config.getString("db.username"),
+                Config.getString("db.password"),
+                Config.getInt("db.pool.size"),
+                Config.getLong("db.pool.timeout"),
+                Config.getProperty("db.prepareThreshold"),
+                Config.getList("db.replicas.urls"),
+                ReplicaSelection.fromKey(Config.getString("db.replicas.selection")),
+                Config.getLong("db.replicas.stickyMillis"));
+        Config.onChange("db.pool.size", value -> resizePools(Config.getInt("db.pool.size"), Config.getLong("db.pool.timeout")));
+        Config.onChange("db.pool.timeout", value -> resizePools(Config.getInt("db.pool.size"), Config.getLong("db.pool.timeout")));
     }
 
     /**
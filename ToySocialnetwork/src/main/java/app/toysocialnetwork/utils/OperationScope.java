@@ -0,0 +1,88 @@
+package app.toysocialnetwork.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A logical operation, such as an API request or a user action, that the statements executed
+ * by the current thread are attributed to. The {@link QueryLog} counts the executions of each
+ * statement per operation to spot N+1 patterns: the same query run once per item of a list.
+ * <p>
+ * Opening a scope inside another one joins the outer scope. Statements executed outside any
+ * scope are grouped into bursts instead: statements following each other closely on the same
+ * thread, like the queries of one GUI layout pass filling a table cell by cell. A burst lasts at most
+ * {@value #MAX_BURST_MILLIS} ms, so a thread that never pauses does not grow one forever; statements of
+ * background (daemon) threads outside a scope, like the batches of a writer thread, are not grouped at all.
+ */
+public class OperationScope implements AutoCloseable {
+    private static final ThreadLocal<OperationScope> current = new ThreadLocal<>();
+    private static final OperationScope JOINED = new OperationScope("joined", false);
+    private static final long MAX_BURST_MILLIS = 1000;
+    private static final long MAX_BURST_NANOS = MAX_BURST_MILLIS * 1_000_000;
+
+    private final String name;
+    private final boolean burst;
+    private final Map<String, Integer> executions = new HashMap<>();
+    private long firstExecution;
+    private long lastExecution;
+
+    private OperationScope(String name, boolean burst) {
+        this.name = name;
+        this.burst = burst;
+    }
+
+    /**
+     * Start a logical operation on the current thread
+     * @param name the name of the operation, e.g. "GET /api/users/42/friendships"
+     * @return the scope, to be closed when the operation ends (e.g. in a try-with-resources block)
+     */
+    public static OperationScope open(String name) {
+        OperationScope active = current.get();
+        if (active != null && !active.burst) {
+            return JOINED;
+        }
+        OperationScope scope = new OperationScope(name, false);
+        current.set(scope);
+        return scope;
+    }
+
+    @Override
+    public void close() {
+        if (this != JOINED && current.get() == this) {
+            current.remove();
+        }
+    }
+
+    /**
+     * Get the operation a statement executed now on the current thread belongs to
+     * @param now the current time, from {@link System#nanoTime()}
+     * @param burstGapNanos the longest pause between two statements of the same burst
+     * @return the open scope, the current burst of statements, or null if the statement belongs to neither
+     */
+    static OperationScope forStatement(long now, long burstGapNanos) {
+        OperationScope scope = current.get();
+        if (scope == null && Thread.currentThread().isDaemon()) {
+            return null;
+        }
+        if (scope == null || (scope.burst && (now - scope.lastExecution > burstGapNanos || now - scope.firstExecution > MAX_BURST_NANOS))) {
+            scope = new OperationScope("statements on thread " + Thread.currentThread().getName(), true);
+            scope.firstExecution = now;
+            current.set(scope);
+        }
+        scope.lastExecution = now;
+        return scope;
+    }
+
+    /**
+     * Count one more execution of a statement in this operation
+     * @param sql the statement
+     * @return how many times the statement has been executed in this operation
+     */
+    int executed(String sql) {
+        return executions.merge(sql, 1, Integer::sum);
+    }
+
+    String name() {
+        return name;
+    }
+}
@@ -0,0 +1,177 @@
+package app.toysocialnetwork.utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Warns about queries that are likely to hurt in production:
+ * <ul>
+ * <li>slow queries, slower than db.log.slowQueryMillis;</li>
+ * <li>queries reading more than db.log.rowLimit rows, usually a missing WHERE clause or a full scan;</li>
+ * <li>the same statement executed more than db.log.repeatLimit times in one {@link OperationScope},
+ * the N+1 pattern of querying once per item of a list.</li>
+ * </ul>
+ * A limit of 0 turns its check off. Queries read through a cursor (with a fetch size) are whole-table
+ * reads on purpose and are not checked for time or rows. Failed queries are logged with their parameters.
+ * Parameters of statements that mention a password are not logged.
+ */
+public final class QueryLog {
+    private static final int MAX_PARAMETER_LENGTH = 100;
+
+    private static final List<String> KEYS = List.of(
+            "db.log.slowQueryMillis", "db.log.rowLimit", "db.log.repeatLimit", "db.log.burstGapMillis");
+
+    private static final QueryLog instance = new QueryLog(
+            property("db.log.slowQueryMillis"),
+            property("db.log.rowLimit"),
+            property("db.log.repeatLimit"),
+            property("db.log.burstGapMillis"));
+
+    static {
+        KEYS.forEach(key -> Config.onChange(key, value -> instance.setLimits(
+                property("db.log.slowQueryMillis"),
+                property("db.log.rowLimit"),
+                property("db.log.repeatLimit"),
+                property("db.log.burstGapMillis"))));
+    }
+
+    private final System.Logger logger;
+    private volatile long slowQueryNanos;
+    private volatile long rowLimit;
+    private volatile long repeatLimit;
+    private volatile long burstGapNanos;
+
+    /**
+     * Constructor for QueryLog
+     * @param slowQueryMillis the duration above which a query is logged as slow, or 0
+     * @param rowLimit the number of rows above which a query is logged, or 0
+     * @param repeatLimit the number of executions of one statement per operation above which it is logged, or 0
+     * @param burstGapMillis the longest pause between statements executed outside an operation scope
+     *                       for them to count as one operation
+     */
+    public QueryLog(long slowQueryMillis, long rowLimit, long repeatLimit, long burstGapMillis) {
+        this(slowQueryMillis, rowLimit, repeatLimit, burstGapMillis, System.getLogger("app.toysocialnetwork.sql"));
+    }
+
+    /**
+     * Constructor for QueryLog writing its warnings to the given logger
+     * @param logger where the warnings are written
+     */
+    QueryLog(long slowQueryMillis, long rowLimit, long repeatLimit, long burstGapMillis, System.Logger logger) {
+        this.logger = logger;
+        setLimits(slowQueryMillis, rowLimit, repeatLimit, burstGapMillis);
+    }
+
+    /**
+     * Change the limits of the checks; the queries running at the time may be checked against either
+     * @param slowQueryMillis the duration above which a query is logged as slow, or 0
+     * @param rowLimit the number of rows above which a query is logged, or 0
+     * @param repeatLimit the number of executions of one statement per operation above which it is logged, or 0
+     * @param burstGapMillis the longest pause between statements executed outside an operation scope
+     *                       for them to count as one operation
+     */
+    public void setLimits(long slowQueryMillis, long rowLimit, long repeatLimit, long burstGapMillis) {
+        this.slowQueryNanos = slowQueryMillis * 1_000_000;
+        this.rowLimit = rowLimit;
+        this.repeatLimit = repeatLimit;
+        this.burstGapNanos = burstGapMillis * 1_000_000;
+    }
+
+    /**
+     * Get the query log configured in db.properties, which follows the configuration when it is reloaded
+     * @return the instance of QueryLog
+     */
+    public static QueryLog getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return whether any check is on
+     */
+    public boolean isEnabled() {
+        return slowQueryNanos > 0 || rowLimit > 0 || repeatLimit > 0;
+    }
+
+    /**
+     * Count a statement execution in the current operation; warns once when it crosses the repeat limit
+     * @param sql the statement
+     */
+    void started(String sql) {
+        if (repeatLimit <= 0) {
+            return;
+        }
+        OperationScope scope = OperationScope.forStatement(System.nanoTime(), burstGapNanos);
+        if (scope != null && scope.executed(sql) == repeatLimit + 1) {
+            logger.log(System.Logger.Level.WARNING, "Possible N+1: executed more than {0} times in {1}, from {2}: {3}",
+                    repeatLimit, scope.name(), caller(), sql);
+        }
+    }
+
+    /**
+     * Check a finished execution against the time and row limits
+     * @param sql the statement
+     * @param parameters the parameters bound to the statement, by index
+     * @param nanos how long the execution took, including reading its rows
+     * @param rows the number of rows read or changed
+     * @param cursor whether the rows were read through a cursor
+     */
+    void finished(String sql, Map<Integer, Object> parameters, long nanos, long rows, boolean cursor) {
+        if (cursor) {
+            return;
+        }
+        if (slowQueryNanos > 0 && nanos > slowQueryNanos) {
+            logger.log(System.Logger.Level.WARNING, "Slow query: {0} ms, {1} rows, from {2}: {3} {4}",
+                    nanos / 1_000_000, rows, caller(), sql, format(sql, parameters));
+        }
+        if (rowLimit > 0 && rows > rowLimit) {
+            logger.log(System.Logger.Level.WARNING, "Query read {0} rows, more than {1}, from {2}: {3} {4}",
+                    rows, rowLimit, caller(), sql, format(sql, parameters));
+        }
+    }
+
+    /**
+     * Log a failed execution with the parameters it was run with
+     * @param sql the statement
+     * @param parameters the parameters bound to the statement, by index
+     * @param error why it failed
+     */
+    void failed(String sql, Map<Integer, Object> parameters, Throwable error) {
+        logger.log(System.Logger.Level.ERROR, "Query failed from " + caller() + ": " + sql + " " + format(sql, parameters), error);
+    }
+
+    private static String format(String sql, Map<Integer, Object> parameters) {
+        if (sql != null && sql.toLowerCase().contains("password")) {
+            return "[parameters hidden]";
+        }
+        StringJoiner joiner = new StringJoiner(", ", "[", "]");
+        parameters.forEach((index, value) -> {
+            String text = String.valueOf(value);
+            if (text.length() > MAX_PARAMETER_LENGTH) {
+                text = text.substring(0, MAX_PARAMETER_LENGTH) + "...";
+            }
+            joiner.add(index + "=" + text);
+        });
+        return joiner.toString();
+    }
+
+    /**
+     * Find the application code that issued the statement: the first frame above the service and repository layers
+     */
+    private static String caller() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith("app.toysocialnetwork.")
+                        && !frame.getClassName().startsWith("app.toysocialnetwork.utils.")
+                        && !frame.getClassName().startsWith("app.toysocialnetwork.repository.")
+                        && !frame.getClassName().startsWith("app.toysocialnetwork.service."))
+                .findFirst()
+                .map(frame -> frame.getClassName().substring(frame.getClassName().lastIndexOf('.') + 1)
+                        + "." + frame.getMethodName() + ":" + frame.getLineNumber())
+                .orElse("unknown"));
+    }
+
+    private static long property(String key) {
+        String value = Config.getProperty(key);
+        return value == null || value.isBlank() ? 0 : Long.parseLong(value.trim());
+    }
+}
@@ -0,0 +1,39 @@
+package app.toysocialnetwork.utils;
+
+/**
+ * How {@link DataBase} picks the read replica a read goes to
+ */
+public enum ReplicaSelection {
+    /**
+     * Each replica in turn
+     */
+    ROUND_ROBIN("round-robin"),
+    /**
+     * The replica with the fewest borrowed connections
+     */
+    LEAST_LOADED("least-loaded");
+
+    private final String key;
+
+    ReplicaSelection(String key) {
+        this.key = key;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    /**
+     * @param key the name of a selection, as in db.properties
+     * @return the selection with that name
+     * @throws IllegalArgumentException if there is no selection with that name
+     */
+    public static ReplicaSelection fromKey(String key) throws IllegalArgumentException {
+        for (ReplicaSelection selection : values()) {
+            if (selection.key.equals(key)) {
+                return selection;
+            }
+        }
+        throw new IllegalArgumentException("Unknown replica selection " + key + ", expected round-robin or least-loaded");
+    }
+}
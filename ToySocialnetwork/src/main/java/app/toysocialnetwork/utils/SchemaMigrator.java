@@ -0,0 +1,120 @@
+package app.toysocialnetwork.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Brings the database schema up to date at startup.
+ * Migrations are SQL scripts under /db/migration named V{version}__{description}.sql.
+ * Each one runs once, in version order and in its own transaction, and is recorded in the schema_version table.
+ */
+public class SchemaMigrator {
+    private static final System.Logger LOGGER = System.getLogger("app.toysocialnetwork.sql");
+    private static final String LOCATION = "/db/migration/";
+
+    /**
+     * The migration scripts, in the order they must be applied
+     */
+    private static final List<String> MIGRATIONS = List.of(
+            "V1__create_tables.sql",
+            "V2__create_indexes.sql",
+            "V3__normalized_pair_uniqueness.sql",
+            "V4__message_id_blocks.sql",
+            "V5__partition_messages_by_month.sql"
+    );
+
+    private final DataBase dataBase;
+
+    /**
+     * Constructor for SchemaMigrator
+     * @param dataBase the database to migrate
+     */
+    public SchemaMigrator(DataBase dataBase) {
+        this.dataBase = dataBase;
+    }
+
+    /**
+     * Apply every migration that has not been applied yet
+     * @throws RuntimeException if a migration fails; the failing migration is rolled back
+     */
+    public void migrate() throws RuntimeException {
+        try (Connection conn = dataBase.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                        "version INT PRIMARY KEY, " +
+                        "script VARCHAR(255) NOT NULL, " +
+                        "applied_on TIMESTAMP NOT NULL DEFAULT now())");
+            }
+            for (String script : MIGRATIONS) {
+                apply(conn, version(script), script);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Apply one migration unless it is already recorded.
+     * The schema_version table is locked for the transaction, so instances starting
+     * at the same time do not run the same migration twice.
+     */
+    private void apply(Connection conn, int version, String script) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("LOCK TABLE schema_version IN EXCLUSIVE MODE");
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM schema_version WHERE version = ?")) {
+                stmt.setInt(1, version);
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next()) {
+                    conn.commit();
+                    return;
+                }
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(read(script));
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO schema_version (version, script) VALUES (?, ?)")) {
+                stmt.setInt(1, version);
+                stmt.setString(2, script);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+            LOGGER.log(System.Logger.Level.INFO, "Applied schema migration {0}", script);
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw new SQLException("Schema migration " + script + " failed", e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Get the version number from a script name of the form V{version}__{description}.sql
+     */
+    private static int version(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+
+    /**
+     * Read a migration script from the classpath
+     */
+    private static String read(String script) {
+        try (InputStream in = SchemaMigrator.class.getResourceAsStream(LOCATION + script)) {
+            if (in == null) {
+                throw new RuntimeException("Migration script not found: " + script);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
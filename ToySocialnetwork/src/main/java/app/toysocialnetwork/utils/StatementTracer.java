@@ -0,0 +1,161 @@
+package app.toysocialnetwork.utils;
+
+import app.toysocialnetwork.utils.jfr.QueryEvent;
+import jdk.jfr.EventType;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Wraps the statements handed out by the connection pool so each execution is timed, recorded
+ * as a {@link QueryEvent} and checked by the {@link QueryLog}. A query's execution lasts until its
+ * result set or statement is closed, so it includes fetching the rows, and counts the rows read.
+ * Statements are only wrapped while a Flight Recorder recording has the event enabled or the query log is on.
+ */
+class StatementTracer implements InvocationHandler {
+    private static final EventType QUERY_EVENT = EventType.getEventType(QueryEvent.class);
+
+    private final Statement statement;
+    private final String sql;
+    private final QueryLog queryLog;
+    private final Map<Integer, Object> parameters = new TreeMap<>();
+    private boolean cursor;
+
+    private boolean executing;
+    private QueryEvent event;
+    private String executedSql;
+    private long start;
+    private long rows;
+
+    private StatementTracer(Statement statement, String sql, QueryLog queryLog) {
+        this.statement = statement;
+        this.sql = sql;
+        this.queryLog = queryLog;
+    }
+
+    /**
+     * Trace a statement if query events are being recorded or the query log is on
+     * @param statement the statement
+     * @param sql the SQL of a prepared statement, or null for a plain statement
+     * @return the statement to hand out
+     */
+    static Statement trace(Statement statement, String sql) {
+        QueryLog queryLog = QueryLog.getInstance();
+        if (!QUERY_EVENT.isEnabled() && !queryLog.isEnabled()) {
+            return statement;
+        }
+        Class<?> type = statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                new StatementTracer(statement, sql, queryLog));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.startsWith("execute")) {
+            finish();
+            begin(args);
+        } else if (name.equals("close")) {
+            finish();
+        } else if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+            parameters.put(index, name.equals("setNull") ? null : args[1]);
+        } else if (name.equals("clearParameters")) {
+            parameters.clear();
+        } else if (name.equals("setFetchSize") && (Integer) args[0] > 0) {
+            // reading through a cursor is how whole tables are meant to be read
+            cursor = true;
+        }
+
+        Object result;
+        try {
+            result = method.invoke(statement, args);
+        } catch (InvocationTargetException e) {
+            if (executing) {
+                queryLog.failed(executedSql, parameters, e.getCause());
+                executing = false;
+                event = null;
+            }
+            throw e.getCause();
+        }
+
+        switch (name) {
+            case "executeQuery" -> {
+                return countRows((ResultSet) result);
+            }
+            case "executeUpdate", "executeLargeUpdate" -> {
+                rows = ((Number) result).longValue();
+                finish();
+            }
+            case "executeBatch" -> {
+                rows = Arrays.stream((int[]) result).filter(count -> count > 0).sum();
+                finish();
+            }
+            case "execute" -> {
+                rows = statement.getUpdateCount();
+                finish();
+            }
+        }
+        return result;
+    }
+
+    private void begin(Object[] args) {
+        executing = true;
+        // a plain statement gets its SQL with each execution
+        executedSql = args != null && args.length > 0 && args[0] instanceof String text ? text : sql;
+        rows = 0;
+        queryLog.started(executedSql);
+        if (QUERY_EVENT.isEnabled()) {
+            event = new QueryEvent();
+            event.begin();
+        }
+        start = System.nanoTime();
+    }
+
+    /**
+     * Count the rows read through a result set; the execution ends when the result set is closed
+     */
+    private ResultSet countRows(ResultSet resultSet) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    try {
+                        Object result = method.invoke(resultSet, args);
+                        if (method.getName().equals("next") && (Boolean) result) {
+                            rows++;
+                        } else if (method.getName().equals("close")) {
+                            finish();
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /**
+     * End the current execution, if there is one
+     */
+    private void finish() {
+        if (!executing) {
+            return;
+        }
+        executing = false;
+        queryLog.finished(executedSql, parameters, System.nanoTime() - start, rows, cursor);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.sql = executedSql;
+                event.rows = rows;
+                event.commit();
+            }
+            event = null;
+        }
+    }
+}
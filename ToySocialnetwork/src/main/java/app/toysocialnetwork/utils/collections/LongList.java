@@ -0,0 +1,68 @@
+package app.toysocialnetwork.utils.collections;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive longs, backed by a single array. Not thread-safe.
+ */
+public class LongList {
+    private long[] elements;
+    private int size;
+
+    public LongList() {
+        this(8);
+    }
+
+    /**
+     * Constructor for LongList
+     * @param capacity the number of elements the list holds without growing
+     */
+    public LongList(int capacity) {
+        elements = new long[Math.max(1, capacity)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return elements[index];
+    }
+
+    public void add(long value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        elements[size++] = value;
+    }
+
+    /**
+     * Remove the first occurrence of a value, moving the following elements down
+     * @param value the value
+     * @return whether the value was in the list
+     */
+    public boolean removeValue(long value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                System.arraycopy(elements, i + 1, elements, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a copy of the elements, trimmed to the size of the list
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+}
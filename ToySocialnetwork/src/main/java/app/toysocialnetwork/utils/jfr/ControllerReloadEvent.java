@@ -0,0 +1,42 @@
+package app.toysocialnetwork.utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a controller reloading its view from the service, usually on the FX thread
+ */
+@Name("app.toysocialnetwork.ControllerReload")
+@Label("Controller Reload")
+@Category({"Toy Social Network", "GUI"})
+@Description("A controller reloading the data shown by its view")
+public class ControllerReloadEvent extends Event {
+    @Label("Controller")
+    public String controller;
+
+    @Label("Method")
+    public String method;
+
+    @Label("Items")
+    @Description("The number of items shown after the reload")
+    public int items;
+
+    /**
+     * End the event and commit it if it is being recorded
+     * @param controller the controller class
+     * @param method the reloading method, e.g. "loadFriendships"
+     * @param items the number of items shown after the reload
+     */
+    public void finish(Class<?> controller, String method, int items) {
+        end();
+        if (shouldCommit()) {
+            this.controller = controller.getSimpleName();
+            this.method = method;
+            this.items = items;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package app.toysocialnetwork.utils.jfr;
+
+import app.toysocialnetwork.utils.event.EventEnum;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for delivering one service event to all of its observers
+ */
+@Name("app.toysocialnetwork.ObserverNotification")
+@Label("Observer Notification")
+@Category({"Toy Social Network", "Events"})
+@Description("A service event delivered to its observers, which usually reload part of the GUI")
+public class ObserverNotificationEvent extends Event {
+    @Label("Event Type")
+    @Description("The event class and kind, e.g. FriendshipEvent.ADD")
+    public String eventType;
+
+    @Label("Observers")
+    public int observerCount;
+
+    /**
+     * End the event and commit it if it is being recorded
+     * @param eventClass the simple name of the event class, e.g. "FriendshipEvent"
+     * @param type the kind of event
+     * @param observerCount the number of observers notified
+     */
+    public void finish(String eventClass, EventEnum type, int observerCount) {
+        end();
+        if (shouldCommit()) {
+            this.eventType = eventClass + "." + type;
+            this.observerCount = observerCount;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package app.toysocialnetwork.utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one SQL statement, from its execution until its results are closed
+ */
+@Name("app.toysocialnetwork.Query")
+@Label("Database Query")
+@Category({"Toy Social Network", "Database"})
+@Description("An SQL statement executed through the connection pool, including reading its rows")
+public class QueryEvent extends Event {
+    @Label("SQL")
+    public String sql;
+
+    @Label("Rows")
+    @Description("Rows read from the result, or rows changed by an update; -1 if unknown")
+    public long rows;
+}
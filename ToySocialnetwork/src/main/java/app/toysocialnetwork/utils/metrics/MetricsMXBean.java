@@ -0,0 +1,23 @@
+package app.toysocialnetwork.utils.metrics;
+
+import java.util.List;
+
+/**
+ * JMX view of the operation metrics, registered as app.toysocialnetwork:type=Metrics
+ */
+public interface MetricsMXBean {
+    /**
+     * @return the counters of every operation that was called, ordered by name
+     */
+    List<OperationSnapshot> getOperations();
+
+    /**
+     * @return the counters of every operation as a text table
+     */
+    String getDump();
+
+    /**
+     * Clear the counters of every operation
+     */
+    void reset();
+}
@@ -0,0 +1,108 @@
+package app.toysocialnetwork.utils.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of every instrumented operation of the application.
+ * Operations are named by layer, e.g. "service.addRequest" or "repository.requests.findByReceiver".
+ */
+public class MetricsRegistry implements MetricsMXBean {
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    private final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private ScheduledExecutorService dumper;
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * Get the instance of MetricsRegistry
+     * @return the instance of MetricsRegistry
+     */
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the metrics of an operation, creating them on first use
+     * @param name the name of the operation
+     * @return the metrics of the operation
+     */
+    public OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name);
+        return metrics != null ? metrics : operations.computeIfAbsent(name, OperationMetrics::new);
+    }
+
+    @Override
+    public List<OperationSnapshot> getOperations() {
+        return operations.values().stream()
+                .map(OperationMetrics::snapshot)
+                .sorted(Comparator.comparing(OperationSnapshot::getName))
+                .toList();
+    }
+
+    @Override
+    public String getDump() {
+        StringBuilder dump = new StringBuilder(String.format("%-45s %9s %7s %9s %9s %9s %9s %9s %10s %9s%n",
+                "operation", "calls", "errors", "mean ms", "p50 ms", "p99 ms", "p999 ms", "max ms", "rows/call", "max rows"));
+        for (OperationSnapshot op : getOperations()) {
+            dump.append(String.format("%-45s %9d %7d %9.3f %9.3f %9.3f %9.3f %9.3f %10.1f %9d%n",
+                    op.getName(), op.getCalls(), op.getErrors(), op.getMeanMillis(), op.getP50Millis(),
+                    op.getP99Millis(), op.getP999Millis(), op.getMaxMillis(), op.getRowsPerCall(), op.getMaxRows()));
+        }
+        return dump.toString();
+    }
+
+    @Override
+    public void reset() {
+        operations.values().forEach(OperationMetrics::reset);
+    }
+
+    /**
+     * Register the metrics with the platform MBean server, so they can be read with JConsole or any JMX client
+     * @throws RuntimeException if the registration fails
+     */
+    public synchronized void registerMBean() throws RuntimeException {
+        try {
+            ObjectName name = new ObjectName("app.toysocialnetwork:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Print the metrics to standard output at a fixed interval, from a daemon thread
+     * @param intervalSeconds the interval; 0 or less disables the dump
+     */
+    public synchronized void startDump(long intervalSeconds) {
+        if (intervalSeconds <= 0 || dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> System.out.print(getDump()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Register the MBean and start the periodic dump
+     * @param dumpIntervalSeconds the dump interval in seconds; 0 or less disables the dump
+     */
+    public void start(long dumpIntervalSeconds) {
+        registerMBean();
+        startDump(dumpIntervalSeconds);
+    }
+}
@@ -0,0 +1,82 @@
+package app.toysocialnetwork.utils.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters of one instrumented operation: calls, failures, latency and rows read.
+ * Recording allocates nothing and is safe from any number of threads.
+ */
+public class OperationMetrics {
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final AtomicLong maxRows = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Constructor for OperationMetrics
+     * @param name the name of the operation, e.g. "repository.users.findAll"
+     */
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Record one call
+     * @param nanos how long the call took
+     * @param rowCount the number of rows the call read, or a negative number if it does not read rows
+     * @param failed whether the call threw
+     */
+    public void record(long nanos, long rowCount, boolean failed) {
+        calls.increment();
+        latency.record(nanos);
+        if (failed) {
+            errors.increment();
+        }
+        if (rowCount >= 0) {
+            rows.add(rowCount);
+            maxRows.accumulateAndGet(rowCount, Math::max);
+        }
+    }
+
+    /**
+     * Record rows read after the call returned, e.g. by a stream consumed later
+     * @param rowCount the number of rows
+     */
+    public void recordRows(long rowCount) {
+        rows.add(rowCount);
+        maxRows.accumulateAndGet(rowCount, Math::max);
+    }
+
+    /**
+     * @return the current values of the counters
+     */
+    public OperationSnapshot snapshot() {
+        long callCount = calls.sum();
+        return new OperationSnapshot(name, callCount, errors.sum(),
+                millis(latency.mean()), millis(latency.percentile(50)), millis(latency.percentile(99)),
+                millis(latency.percentile(99.9)), millis(latency.max()),
+                callCount == 0 ? 0 : (double) rows.sum() / callCount, maxRows.get());
+    }
+
+    /**
+     * Clear all counters
+     */
+    public void reset() {
+        calls.reset();
+        errors.reset();
+        rows.reset();
+        maxRows.set(0);
+        latency.reset();
+    }
+
+    private static double millis(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
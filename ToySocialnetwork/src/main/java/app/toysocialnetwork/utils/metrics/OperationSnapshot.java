@@ -0,0 +1,78 @@
+package app.toysocialnetwork.utils.metrics;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * The values of the counters of an operation at one point in time, as exposed over JMX
+ */
+public class OperationSnapshot {
+    private final String name;
+    private final long calls;
+    private final long errors;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p99Millis;
+    private final double p999Millis;
+    private final double maxMillis;
+    private final double rowsPerCall;
+    private final long maxRows;
+
+    @ConstructorParameters({"name", "calls", "errors", "meanMillis", "p50Millis", "p99Millis", "p999Millis",
+            "maxMillis", "rowsPerCall", "maxRows"})
+    public OperationSnapshot(String name, long calls, long errors, double meanMillis, double p50Millis, double p99Millis,
+                             double p999Millis, double maxMillis, double rowsPerCall, long maxRows) {
+        this.name = name;
+        this.calls = calls;
+        this.errors = errors;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p99Millis = p99Millis;
+        this.p999Millis = p999Millis;
+        this.maxMillis = maxMillis;
+        this.rowsPerCall = rowsPerCall;
+        this.maxRows = maxRows;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getP999Millis() {
+        return p999Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * @return the mean number of rows read per call; a growing value points at a full scan
+     */
+    public double getRowsPerCall() {
+        return rowsPerCall;
+    }
+
+    public long getMaxRows() {
+        return maxRows;
+    }
+}
@@ -3,7 +3,12 @@ package app.toysocialnetwork.utils.observer;
 import app.toysocialnetwork.utils.event.FriendshipEvent;
 
 public interface FriendshipObservable {
-    void addFriendshipObserver(Observer<FriendshipEvent> observer);
+    /**
+     * Add an observer, held weakly: it is dropped once nothing else refers to it
+     * @param observer the observer
+     * @return the subscription, which removes the observer when cancelled
+     */
+    Subscription addFriendshipObserver(Observer<FriendshipEvent> observer);
     void removeFriendshipObserver(Observer<FriendshipEvent> observer);
     void notifyFriendshipObservers(FriendshipEvent event);
 }
@@ -3,7 +3,12 @@ package app.toysocialnetwork.utils.observer;
 import app.toysocialnetwork.utils.event.MessageEvent;
 
 public interface MessageObservable {
-    void addMessageObserver(Observer<MessageEvent> observer);
+    /**
+     * Add an observer, held weakly: it is dropped once nothing else refers to it
+     * @param observer the observer
+     * @return the subscription, which removes the observer when cancelled
+     */
+    Subscription addMessageObserver(Observer<MessageEvent> observer);
     void removeMessageObserver(Observer<MessageEvent> observer);
     void notifyMessageObservers(MessageEvent event);
 }
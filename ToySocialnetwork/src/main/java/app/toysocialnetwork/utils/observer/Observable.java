@@ -3,7 +3,12 @@ package app.toysocialnetwork.utils.observer;
 import app.toysocialnetwork.utils.event.Event;
 
 public interface Observable<E extends Event> {
-    void addObserver(Observer<E> observer);
+    /**
+     * Add an observer, held weakly: it is dropped once nothing else refers to it
+     * @param observer the observer
+     * @return the subscription, which removes the observer when cancelled
+     */
+    Subscription addObserver(Observer<E> observer);
     void removeObserver(Observer<E> observer);
     void notifyObservers(E event);
 }
@@ -0,0 +1,89 @@
+package app.toysocialnetwork.utils.observer;
+
+import app.toysocialnetwork.utils.event.Event;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The observers of one kind of event, held through weak references:
+ * an observer nobody else refers to any more, like the controller of a view that was closed without
+ * unsubscribing, is collected and dropped from the registry instead of being notified forever.
+ * Observers that must outlive their last reference need another reference kept to them.
+ * <p>
+ * Subscribing, unsubscribing and notifying can happen on different threads; an event is delivered to
+ * the observers subscribed when its notification starts.
+ * @param <E> - type of the events
+ */
+public class ObserverRegistry<E extends Event> {
+    private final CopyOnWriteArrayList<Entry<E>> entries = new CopyOnWriteArrayList<>();
+    private final ReferenceQueue<Observer<E>> collected = new ReferenceQueue<>();
+
+    private static class Entry<E extends Event> extends WeakReference<Observer<E>> {
+        Entry(Observer<E> observer, ReferenceQueue<Observer<E>> queue) {
+            super(observer, queue);
+        }
+    }
+
+    /**
+     * Add an observer
+     * @param observer the observer
+     * observer must not be null
+     * @return the subscription, which removes the observer when cancelled
+     */
+    public Subscription subscribe(Observer<E> observer) {
+        purge();
+        Entry<E> entry = new Entry<>(observer, collected);
+        entries.add(entry);
+        return () -> entries.remove(entry);
+    }
+
+    /**
+     * Remove an observer
+     * @param observer the observer
+     */
+    public void unsubscribe(Observer<E> observer) {
+        entries.removeIf(entry -> {
+            Observer<E> current = entry.get();
+            return current == null || current == observer;
+        });
+    }
+
+    /**
+     * Send an event to every live observer
+     * @param event the event
+     * @return the number of observers notified
+     */
+    public int notify(E event) {
+        purge();
+        int notified = 0;
+        for (Entry<E> entry : entries) {
+            Observer<E> observer = entry.get();
+            if (observer != null) {
+                observer.update(event);
+                notified++;
+            }
+        }
+        return notified;
+    }
+
+    /**
+     * @return the number of observers, not counting the collected ones still waiting to be dropped
+     */
+    public int size() {
+        purge();
+        return entries.size();
+    }
+
+    /**
+     * Drop the entries of the observers that were collected
+     */
+    private void purge() {
+        Reference<? extends Observer<E>> reference;
+        while ((reference = collected.poll()) != null) {
+            entries.remove(reference);
+        }
+    }
+}
@@ -3,7 +3,12 @@ package app.toysocialnetwork.utils.observer;
 import app.toysocialnetwork.utils.event.RequestEvent;
 
 public interface RequestObservable {
-    void addRequestObserver(Observer<RequestEvent> observer);
+    /**
+     * Add an observer, held weakly: it is dropped once nothing else refers to it
+     * @param observer the observer
+     * @return the subscription, which removes the observer when cancelled
+     */
+    Subscription addRequestObserver(Observer<RequestEvent> observer);
     void removeRequestObserver(Observer<RequestEvent> observer);
     void notifyRequestObservers(RequestEvent event);
 }
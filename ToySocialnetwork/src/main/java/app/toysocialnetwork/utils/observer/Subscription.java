@@ -0,0 +1,12 @@
+package app.toysocialnetwork.utils.observer;
+
+/**
+ * The registration of an observer; cancelling it stops the notifications
+ */
+@FunctionalInterface
+public interface Subscription {
+    /**
+     * Stop notifying the observer; does nothing if it is already cancelled
+     */
+    void unsubscribe();
+}
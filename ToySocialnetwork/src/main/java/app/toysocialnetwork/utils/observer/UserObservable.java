@@ -3,7 +3,12 @@ package app.toysocialnetwork.utils.observer;
 import app.toysocialnetwork.utils.event.UserEvent;
 
 public interface UserObservable {
-    void addUserObserver(Observer<UserEvent> observer);
+    /**
+     * Add an observer, held weakly: it is dropped once nothing else refers to it
+     * @param observer the observer
+     * @return the subscription, which removes the observer when cancelled
+     */
+    Subscription addUserObserver(Observer<UserEvent> observer);
     void removeUserObserver(Observer<UserEvent> observer);
     void notifyUserObservers(UserEvent event);
 }
@@ -6,7 +6,13 @@ module app.toysocialnetwork {
     requires com.dlsc.formsfx;
     requires org.kordamp.bootstrapfx.core;
     requires java.sql;
+    requires java.management;
+    requires jdk.jfr;
+    requires jdk.httpserver;
+    requires org.postgresql.jdbc;
 
     exports app.toysocialnetwork.gui;
+    // the JMX introspector reads the MetricsMXBean interface and the OperationSnapshot getters reflectively
+    exports app.toysocialnetwork.utils.metrics;
     opens app.toysocialnetwork.gui to javafx.fxml;
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+CREATE TABLE IF NOT EXISTS users (
+    id         BIGSERIAL PRIMARY KEY,
+    first_name VARCHAR(20) NOT NULL,
+    last_name  VARCHAR(20) NOT NULL,
+    username   VARCHAR(20) NOT NULL,
+    password   VARCHAR(20) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS friendships (
+    id           BIGSERIAL PRIMARY KEY,
+    user_id1     BIGINT    NOT NULL,
+    user_id2     BIGINT    NOT NULL,
+    friends_from TIMESTAMP NOT NULL,
+    CONSTRAINT friendships_distinct_users CHECK (user_id1 <> user_id2)
+);
+
+CREATE TABLE IF NOT EXISTS requests (
+    id          BIGSERIAL PRIMARY KEY,
+    sender_id   BIGINT NOT NULL,
+    receiver_id BIGINT NOT NULL,
+    CONSTRAINT requests_distinct_users CHECK (sender_id <> receiver_id)
+);
+
+CREATE TABLE IF NOT EXISTS messages (
+    id     BIGSERIAL PRIMARY KEY,
+    "from" BIGINT       NOT NULL,
+    "to"   BIGINT       NOT NULL,
+    text   VARCHAR(255) NOT NULL,
+    date   TIMESTAMP    NOT NULL
+);
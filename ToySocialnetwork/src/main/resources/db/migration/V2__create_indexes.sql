@@ -0,0 +1,16 @@
+-- login and registration look users up by username
+CREATE UNIQUE INDEX IF NOT EXISTS users_username_key ON users (username);
+
+-- friendships are looked up from either side; both indexes cover the whole row
+CREATE UNIQUE INDEX IF NOT EXISTS friendships_users_key ON friendships (user_id1, user_id2) INCLUDE (id, friends_from);
+CREATE INDEX IF NOT EXISTS friendships_user_id2_idx ON friendships (user_id2, user_id1) INCLUDE (id, friends_from);
+
+-- pending requests are listed by sender, received requests by receiver
+CREATE UNIQUE INDEX IF NOT EXISTS requests_sender_receiver_key ON requests (sender_id, receiver_id) INCLUDE (id);
+CREATE INDEX IF NOT EXISTS requests_receiver_id_idx ON requests (receiver_id, sender_id) INCLUDE (id);
+
+-- conversations are loaded in date order for one direction at a time
+CREATE INDEX IF NOT EXISTS messages_conversation_idx ON messages ("from", "to", date) INCLUDE (id);
+
+-- full-text search over message text
+CREATE INDEX IF NOT EXISTS messages_text_search_idx ON messages USING GIN (to_tsvector('simple', text));
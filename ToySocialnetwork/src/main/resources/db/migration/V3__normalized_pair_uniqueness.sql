@@ -0,0 +1,10 @@
+-- a friendship or a pending request between two users is unique regardless of direction
+DROP INDEX IF EXISTS friendships_users_key;
+CREATE UNIQUE INDEX IF NOT EXISTS friendships_pair_key
+    ON friendships (LEAST(user_id1, user_id2), GREATEST(user_id1, user_id2));
+CREATE INDEX IF NOT EXISTS friendships_user_id1_idx ON friendships (user_id1, user_id2) INCLUDE (id, friends_from);
+
+DROP INDEX IF EXISTS requests_sender_receiver_key;
+CREATE UNIQUE INDEX IF NOT EXISTS requests_pair_key
+    ON requests (LEAST(sender_id, receiver_id), GREATEST(sender_id, receiver_id));
+CREATE INDEX IF NOT EXISTS requests_sender_id_idx ON requests (sender_id, receiver_id) INCLUDE (id);
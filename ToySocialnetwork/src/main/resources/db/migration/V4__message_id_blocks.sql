@@ -0,0 +1,6 @@
+-- message ids are reserved by the application in blocks of 1000: one nextval reserves the block [value, value + 1000)
+DO $$
+BEGIN
+    EXECUTE format('ALTER SEQUENCE %s INCREMENT BY 1000', pg_get_serial_sequence('messages', 'id'));
+END
+$$;
@@ -0,0 +1,86 @@
+-- messages are range partitioned by the month of their date, so queries bounded by date only read
+-- the recent partitions and old months can be detached whole instead of deleted row by row
+ALTER TABLE messages RENAME TO messages_unpartitioned;
+ALTER INDEX messages_pkey RENAME TO messages_unpartitioned_pkey;
+ALTER INDEX messages_conversation_idx RENAME TO messages_unpartitioned_conversation_idx;
+ALTER INDEX messages_text_search_idx RENAME TO messages_unpartitioned_text_search_idx;
+
+-- the primary key of a partitioned table must contain the partition key
+CREATE TABLE messages (
+    id     BIGINT       NOT NULL,
+    "from" BIGINT       NOT NULL,
+    "to"   BIGINT       NOT NULL,
+    text   VARCHAR(255) NOT NULL,
+    date   TIMESTAMP    NOT NULL,
+    PRIMARY KEY (id, date)
+) PARTITION BY RANGE (date);
+
+-- catches the dates no monthly partition exists for yet
+CREATE TABLE messages_default PARTITION OF messages DEFAULT;
+
+-- created on every partition, present and future
+CREATE INDEX messages_conversation_idx ON messages ("from", "to", date) INCLUDE (id);
+CREATE INDEX messages_text_search_idx ON messages USING GIN (to_tsvector('simple', text));
+
+-- detached partitions are kept here until they are dumped or dropped
+CREATE SCHEMA IF NOT EXISTS message_archive;
+
+-- create the partition of the month a date falls in, named messages_yYYYYmMM, unless it exists;
+-- the month's rows that landed in the default partition are moved into it
+CREATE OR REPLACE FUNCTION create_message_partition(month_start DATE) RETURNS TEXT
+LANGUAGE plpgsql AS $$
+DECLARE
+    low  DATE := date_trunc('month', month_start)::DATE;
+    high DATE := (date_trunc('month', month_start) + INTERVAL '1 month')::DATE;
+    name TEXT := 'messages_y' || to_char(low, 'YYYY') || 'm' || to_char(low, 'MM');
+BEGIN
+    IF to_regclass(name) IS NOT NULL THEN
+        RETURN name;
+    END IF;
+    EXECUTE format('CREATE TABLE %I (LIKE messages INCLUDING DEFAULTS)', name);
+    EXECUTE format('WITH moved AS (DELETE FROM messages_default WHERE date >= %L AND date < %L RETURNING *) '
+                   'INSERT INTO %I SELECT * FROM moved', low, high, name);
+    EXECUTE format('ALTER TABLE messages ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', name, low, high);
+    RETURN name;
+END
+$$;
+
+-- detach the monthly partitions of the months before a date and move them to the archive schema
+CREATE OR REPLACE FUNCTION archive_message_partitions(before DATE) RETURNS SETOF TEXT
+LANGUAGE plpgsql AS $$
+DECLARE
+    part TEXT;
+BEGIN
+    FOR part IN
+        SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'messages'::REGCLASS
+          AND c.relname ~ '^messages_y[0-9]{4}m[0-9]{2}$'
+          AND (to_date(substr(c.relname, 11), 'YYYY"m"MM') + INTERVAL '1 month') <= before
+        ORDER BY c.relname
+    LOOP
+        EXECUTE format('ALTER TABLE messages DETACH PARTITION %I', part);
+        EXECUTE format('ALTER TABLE %I SET SCHEMA message_archive', part);
+        RETURN NEXT part;
+    END LOOP;
+END
+$$;
+
+-- the id sequence moves to the new table, so the application keeps reserving ids from it
+DO $$
+DECLARE
+    seq             TEXT := pg_get_serial_sequence('messages_unpartitioned', 'id');
+    partition_month DATE;
+BEGIN
+    EXECUTE format('ALTER TABLE messages ALTER COLUMN id SET DEFAULT nextval(%L)', seq);
+    EXECUTE format('ALTER SEQUENCE %s OWNED BY messages.id', seq);
+    FOR partition_month IN
+        SELECT generate_series(first_month, date_trunc('month', now()) + INTERVAL '3 months', INTERVAL '1 month')::DATE
+        FROM (SELECT date_trunc('month', COALESCE(min(date), now())) AS first_month FROM messages_unpartitioned) bounds
+    LOOP
+        PERFORM create_message_partition(partition_month);
+    END LOOP;
+END
+$$;
+
+INSERT INTO messages SELECT id, "from", "to", text, date FROM messages_unpartitioned;
+DROP TABLE messages_unpartitioned;
@@ -0,0 +1,95 @@
+package app.toysocialnetwork.bench;
+
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.User;
+import app.toysocialnetwork.service.Service;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationTest {
+    private final Service service = SocialGraphGeneratorTest.memoryService();
+
+    private long user(String username) {
+        return service.addUser(new User("Load", "Tester", username, "password")).orElseThrow().getId();
+    }
+
+    @Test
+    void everyOperationIsFoundByItsKey() {
+        for (Operation operation : Operation.values()) {
+            assertEquals(operation, Operation.fromKey(operation.key()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> Operation.fromKey("logout"));
+    }
+
+    @Test
+    void acceptRequestTurnsTheReceivedRequestIntoAFriendship() {
+        long sender = user("sender");
+        long receiver = user("receiver");
+        service.addRequest(sender, receiver);
+        // the receiver is the only user the operation can pick
+        SocialGraph graph = new SocialGraph(new long[]{receiver}, List.of("receiver"), new long[0]);
+
+        Operation.ACCEPT_REQUEST.run(service, graph, new Random(1));
+
+        assertFalse(service.getRequestsByReceiver(receiver).iterator().hasNext());
+        assertTrue(service.getFriendshipsOfUser(sender).iterator().hasNext());
+    }
+
+    @Test
+    void chatBurstSendsMessagesBothWays() {
+        long first = user("first");
+        long second = user("second");
+        service.addFriendship(first, second);
+        SocialGraph graph = new SocialGraph(new long[]{first, second}, List.of("first", "second"), new long[]{first, second});
+
+        for (int i = 0; i < 10; i++) {
+            Operation.CHAT_BURST.run(service, graph, new Random(i));
+        }
+
+        List<Message> messages = new ArrayList<>();
+        service.getMessagesBetweenUsers(first, second).forEach(messages::add);
+        assertTrue(messages.size() >= 10 && messages.size() <= 50, messages.size() + " messages");
+        assertTrue(messages.stream().anyMatch(message -> message.getFrom() == second));
+    }
+
+    @Test
+    void operationsSkipWhatTheGraphLacks() {
+        long loner = user("loner");
+        SocialGraph graph = new SocialGraph(new long[]{loner}, List.of("loner"), new long[0]);
+
+        for (Operation operation : Operation.values()) {
+            operation.run(service, graph, new Random(1));
+        }
+
+        assertFalse(service.getRequestsByReceiver(loner).iterator().hasNext());
+        assertFalse(service.getMessages().iterator().hasNext());
+    }
+
+    @Test
+    void everyOperationRunsAgainstAGeneratedGraph() {
+        SocialGraph graph = new SocialGraphGenerator(service, new Random(42)).generate(100, 2.5, 1, 20, 100);
+        Random random = new Random(7);
+
+        for (int i = 0; i < 50; i++) {
+            for (Operation operation : Operation.values()) {
+                operation.run(service, graph, random);
+            }
+        }
+    }
+
+    @Test
+    void anEmptyMixIsRejected() {
+        SocialGraph graph = new SocialGraph(new long[]{user("loner")}, List.of("loner"), new long[0]);
+
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator(service, graph, Map.of()).run(1, 0, 1, 42));
+    }
+}
@@ -0,0 +1,94 @@
+package app.toysocialnetwork.bench;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.service.Service;
+import app.toysocialnetwork.service.ServiceFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SocialGraphGeneratorTest {
+    static Service memoryService() {
+        return ServiceFactory.memory(null, null);
+    }
+
+    private static int count(Iterable<?> items) {
+        int count = 0;
+        for (Object ignored : items) {
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean areFriends(Service service, long userId, long friendId) {
+        for (Friendship friendship : service.getFriendshipsOfUser(userId)) {
+            if (friendship.getUser1Id() == friendId || friendship.getUser2Id() == friendId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    void everythingGeneratedIsSavedThroughTheService() {
+        Service service = memoryService();
+
+        SocialGraph graph = new SocialGraphGenerator(service, new Random(42)).generate(200, 2.5, 1, 20, 300);
+
+        assertEquals(200, graph.userCount());
+        assertEquals(200, count(service.getUsers()));
+        assertEquals(graph.friendshipCount(), count(service.getFriendships()));
+        assertTrue(graph.friendshipCount() >= 150, graph.friendshipCount() + " friendships");
+        assertEquals(300, count(service.getMessages()));
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            long[] pair = graph.randomFriendPair(random);
+            assertNotEquals(pair[0], pair[1]);
+            assertTrue(areFriends(service, pair[0], pair[1]), pair[0] + " and " + pair[1] + " are not friends");
+            assertTrue(service.getUserById(graph.randomUserId(random)).isPresent());
+            assertTrue(service.findUserByUsername(graph.randomUsername(random)).isPresent());
+        }
+    }
+
+    @Test
+    void degreesArePowerLawSkewed() {
+        Service service = memoryService();
+        new SocialGraphGenerator(service, new Random(42)).generate(1000, 2.5, 1, 200, 0);
+
+        Map<Long, Integer> degrees = new HashMap<>();
+        for (Friendship friendship : service.getFriendships()) {
+            degrees.merge(friendship.getUser1Id(), 1, Integer::sum);
+            degrees.merge(friendship.getUser2Id(), 1, Integer::sum);
+        }
+        int[] sorted = degrees.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+
+        int median = sorted[sorted.length / 2];
+        int max = sorted[sorted.length - 1];
+        assertTrue(max >= 10 * median, "max degree " + max + ", median " + median);
+    }
+
+    @Test
+    void theSameSeedGeneratesTheSameGraph() {
+        List<List<Long>> pairs = new ArrayList<>();
+        for (int run = 0; run < 2; run++) {
+            SocialGraph graph = new SocialGraphGenerator(memoryService(), new Random(7)).generate(100, 2.5, 1, 20, 0);
+            List<Long> sampled = new ArrayList<>();
+            Random random = new Random(3);
+            for (int i = 0; i < 20; i++) {
+                Arrays.stream(graph.randomFriendPair(random)).forEach(sampled::add);
+            }
+            pairs.add(sampled);
+        }
+
+        assertEquals(pairs.get(0), pairs.get(1));
+    }
+}
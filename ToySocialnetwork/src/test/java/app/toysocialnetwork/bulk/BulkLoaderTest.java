@@ -0,0 +1,109 @@
+package app.toysocialnetwork.bulk;
+
+import app.toysocialnetwork.domain.User;
+import app.toysocialnetwork.domain.validators.UserValidation;
+import app.toysocialnetwork.repository.database.UserDBRepository;
+import app.toysocialnetwork.utils.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkLoaderTest {
+    private TestDatabase database;
+
+    @BeforeEach
+    void createSchema() {
+        database = TestDatabase.create("bulk_loader_test", 4);
+    }
+
+    @AfterEach
+    void dropSchema() throws SQLException {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    @Test
+    void importIntoThePartitionedMessagesTableLeavesEveryIndexValid() throws SQLException, IOException {
+        // this month has its own partition, the old date lands in the default one
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        String csv = "id,from,to,text,date\n"
+                + "1,1,2,hello," + now + "\n"
+                + "2,2,1,\"hi, there\"," + now.plusSeconds(1) + "\n"
+                + "3,1,2,,\n"
+                + "4,1,2,old news,2001-01-01 10:00:00\n";
+
+        BulkLoader.ImportResult result = new BulkLoader(database.dataBase(), 2, 2, true, null)
+                .importTable(BulkTable.MESSAGES, new StringReader(csv));
+
+        assertEquals(3, result.loaded());
+        assertEquals(1, result.rejected());
+        try (Connection conn = database.dataBase().getConnection(); Statement stmt = conn.createStatement()) {
+            ResultSet rows = stmt.executeQuery("SELECT count(*), max(id) FROM messages");
+            rows.next();
+            assertEquals(3, rows.getLong(1));
+            assertEquals(4, rows.getLong(2));
+
+            ResultSet partitions = stmt.executeQuery("SELECT count(*) FROM pg_inherits WHERE inhparent = 'messages'::regclass");
+            partitions.next();
+            long tables = partitions.getLong(1) + 1;
+
+            // the conversation and text search indexes, on the parent and on each partition
+            ResultSet indexes = stmt.executeQuery("SELECT count(*), bool_and(i.indisvalid) FROM pg_index i "
+                    + "JOIN pg_class t ON t.oid = i.indrelid "
+                    + "WHERE t.relnamespace = current_schema()::regnamespace AND t.relname LIKE 'messages%' "
+                    + "AND NOT i.indisprimary");
+            indexes.next();
+            assertEquals(2 * tables, indexes.getLong(1));
+            assertTrue(indexes.getBoolean(2), "an index was left invalid");
+
+            ResultSet next = stmt.executeQuery("SELECT nextval(pg_get_serial_sequence('messages', 'id'))");
+            next.next();
+            assertEquals(5, next.getLong(1));
+        }
+    }
+
+    @Test
+    void anExportImportsBackIntoAnEmptyTable() throws SQLException, IOException {
+        database.execute("INSERT INTO users (first_name, last_name, username, password) "
+                + "SELECT 'First', 'O''Brien, Jr', 'user' || n, 'pass\"word' FROM generate_series(1, 250) n");
+        BulkLoader loader = new BulkLoader(database.dataBase(), 2, 100, true, "64MB");
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+
+        assertEquals(250, loader.exportTable(BulkTable.USERS, exported));
+        database.execute("TRUNCATE users");
+        BulkLoader.ImportResult result = loader.importTable(BulkTable.USERS,
+                new StringReader(exported.toString(StandardCharsets.UTF_8)));
+
+        assertEquals(250, result.loaded());
+        assertEquals(0, result.rejected());
+        UserDBRepository users = new UserDBRepository(new UserValidation(), database.dataBase());
+        User user = users.findByUsername("user42").orElseThrow();
+        assertEquals(42L, user.getId());
+        assertEquals("O'Brien, Jr", user.getLastName());
+        assertEquals("pass\"word", user.getPassword());
+        assertEquals(251L, users.save(new User("Ana", "Pop", "anapop", "secret")).orElseThrow().getId());
+    }
+
+    @Test
+    void aHeaderThatDoesNotMatchTheTableLoadsNothing() {
+        BulkLoader loader = new BulkLoader(database.dataBase(), 1, 10, true, null);
+
+        assertThrows(IOException.class, () -> loader.importTable(BulkTable.REQUESTS, new StringReader("id,receiver_id,sender_id\n1,2,3\n")));
+        assertThrows(IllegalArgumentException.class, () -> new BulkLoader(database.dataBase(), 1, 10, true, "lots"));
+    }
+}
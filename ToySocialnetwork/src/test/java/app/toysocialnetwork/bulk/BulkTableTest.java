@@ -0,0 +1,45 @@
+package app.toysocialnetwork.bulk;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkTableTest {
+    @Test
+    void headersNameTheColumnsWithoutQuotes() {
+        assertEquals(List.of("id", "first_name", "last_name", "username", "password"), BulkTable.USERS.header());
+        assertEquals(List.of("id", "from", "to", "text", "date"), BulkTable.MESSAGES.header());
+        assertTrue(BulkTable.MESSAGES.columns().contains("\"from\""));
+    }
+
+    @Test
+    void tablesAreFoundByName() {
+        for (BulkTable<?> table : BulkTable.ALL) {
+            assertSame(table, BulkTable.named(table.name()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> BulkTable.named("sessions"));
+    }
+
+    @Test
+    void validRecordsPass() {
+        assertNull(BulkTable.USERS.check(new String[]{"1", "Ana", "Pop", "anapop", "secret"}));
+        assertNull(BulkTable.FRIENDSHIPS.check(new String[]{"1", "1", "2", "2024-01-31 12:00:00.123456"}));
+        assertNull(BulkTable.REQUESTS.check(new String[]{"1", "1", "2"}));
+        assertNull(BulkTable.MESSAGES.check(new String[]{"1", "1", "2", "hi", "2024-01-31T12:00"}));
+    }
+
+    @Test
+    void malformedRecordsAreRejectedWithTheReason() {
+        assertEquals("Expected 3 fields but found 2", BulkTable.REQUESTS.check(new String[]{"1", "2"}));
+        assertTrue(BulkTable.REQUESTS.check(new String[]{"x", "1", "2"}).startsWith("Malformed field"));
+        assertTrue(BulkTable.MESSAGES.check(new String[]{"1", "1", "2", "hi", "yesterday"}).startsWith("Malformed field"));
+        assertTrue(BulkTable.MESSAGES.check(new String[]{"1", "1", "2", "", "2024-01-31 12:00:00"}).contains("Text cannot be empty"));
+        assertTrue(BulkTable.REQUESTS.check(new String[]{"1", "2", "2"}).contains("SenderId and ReceiverId cannot be the same"));
+    }
+}
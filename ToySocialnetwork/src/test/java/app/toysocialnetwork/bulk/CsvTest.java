@@ -0,0 +1,105 @@
+package app.toysocialnetwork.bulk;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvTest {
+    private static List<String[]> readAll(Reader in) throws IOException {
+        Csv csv = new Csv(in);
+        List<String[]> records = new ArrayList<>();
+        String[] record;
+        while ((record = csv.read()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Test
+    void quotedFieldsMayHoldSeparatorsQuotesAndLineBreaks() throws IOException {
+        List<String[]> records = readAll(new StringReader(
+                "1,plain,\"a, b\"\n2,\"say \"\"hi\"\"\",\"two\nlines\"\r\n3,\"\",\n"));
+
+        assertEquals(3, records.size());
+        assertArrayEquals(new String[]{"1", "plain", "a, b"}, records.get(0));
+        assertArrayEquals(new String[]{"2", "say \"hi\"", "two\nlines"}, records.get(1));
+        assertArrayEquals(new String[]{"3", "", ""}, records.get(2));
+    }
+
+    @Test
+    void theLastLineNeedsNoLineBreak() throws IOException {
+        List<String[]> records = readAll(new StringReader("a,b\r\nc,d"));
+
+        assertArrayEquals(new String[]{"c", "d"}, records.get(1));
+        assertTrue(readAll(new StringReader("")).isEmpty());
+    }
+
+    @Test
+    void anUnterminatedQuoteIsAnError() {
+        assertThrows(IOException.class, () -> readAll(new StringReader("1,\"never closed\n2,x\n")));
+    }
+
+    @Test
+    void readReturnsAtMostTheRequestedNumberOfRecords() throws IOException {
+        Csv csv = new Csv(new StringReader("1\n2\n3\n4\n5\n"));
+
+        assertEquals(2, csv.read(2).size());
+        assertEquals(2, csv.read(2).size());
+        assertEquals(1, csv.read(2).size());
+        assertTrue(csv.read(2).isEmpty());
+        assertNull(csv.read());
+    }
+
+    @Test
+    void writtenRecordsReadBackUnchanged() throws IOException {
+        String[][] records = {
+                {"1", "plain", "with, comma"},
+                {"2", "\"quoted\"", "line\nbreak"},
+                {"3", "", "carriage\rreturn"},
+                {"4", "\u0219\u021b \uD83D\uDC4B", "x"}};
+        StringBuilder out = new StringBuilder();
+        for (String[] record : records) {
+            Csv.write(out, record);
+        }
+
+        List<String[]> read = readAll(new StringReader(out.toString()));
+
+        assertEquals(records.length, read.size());
+        for (int i = 0; i < records.length; i++) {
+            assertArrayEquals(records[i], read.get(i));
+        }
+        // an unquoted empty field is NULL to COPY
+        assertTrue(out.toString().contains("3,\"\","));
+    }
+
+    @Test
+    void recordsMayStraddleTheReadBuffer() throws IOException {
+        String longField = "y".repeat(100_000);
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            Csv.write(out, new String[]{Integer.toString(i), longField + ",\"" + i});
+        }
+        // a reader that hands out a few thousand characters at a time, so fields cross the 64K buffer
+        Reader trickle = new StringReader(out.toString()) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 4093));
+            }
+        };
+
+        List<String[]> read = readAll(trickle);
+
+        assertEquals(5, read.size());
+        assertEquals(longField + ",\"4", read.get(4)[1]);
+    }
+}
@@ -0,0 +1,98 @@
+package app.toysocialnetwork.domain.validators;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The messages, and their order, are the ones the validators reported before they were rewritten,
+ * since they are shown to the users as they are
+ */
+class ValidationTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 1, 31, 12, 0);
+
+    private final UserValidation users = new UserValidation();
+    private final MessageValidation messages = new MessageValidation();
+
+    private static String message(Runnable validation) {
+        return assertThrows(ValidationException.class, validation::run).getMessage();
+    }
+
+    @Test
+    void validEntitiesPass() {
+        assertNull(users.check(new User("Ana", "Pop", "anapop", "secret")));
+        assertNull(messages.check(new Message(1L, 2L, "x".repeat(255), DATE)));
+        assertNull(new FriendshipValidation().check(new Friendship(1L, 2L, DATE)));
+        assertNull(new RequestValidation().check(new Request(1L, 2L)));
+        assertDoesNotThrow(() -> users.validate(new User("Ana", "Pop", "anapop", "secret")));
+    }
+
+    @Test
+    void userErrorsListEmptyFieldsThenDigitsThenLengths() {
+        User user = new User("Ana1" + "a".repeat(20), "", "ana", "p".repeat(21));
+
+        assertEquals("Last name cannot be empty\n"
+                + "Username must be at least 5 characters long\n"
+                + "First name can only contain letters\n"
+                + "First name cannot be longer than 20 characters\n"
+                + "Password cannot be longer than 20 characters\n", message(() -> users.validate(user)));
+    }
+
+    @Test
+    void userErrorsForEveryRule() {
+        assertEquals("First name cannot be empty\n"
+                + "Last name cannot be empty\n"
+                + "Username must be at least 5 characters long\n"
+                + "Password must be at least 5 characters long\n", users.check(new User("", "", "", "")));
+        assertEquals("First name can only contain letters\n"
+                + "Last name can only contain letters\n", users.check(new User("Ana2", "Pop3", "anapop", "secret")));
+        assertEquals("Last name cannot be longer than 20 characters\n"
+                + "Username cannot be longer than 20 characters\n",
+                users.check(new User("Ana", "p".repeat(21), "u".repeat(21), "secret")));
+    }
+
+    @Test
+    void messageErrorsReportTheDateBeforeTheLength() {
+        assertEquals("Date cannot be null\n"
+                + "Text cannot be longer than 255 characters\n",
+                message(() -> messages.validate(new Message(1L, 2L, "x".repeat(256), null))));
+        assertEquals("From cannot be null\n"
+                + "To cannot be null\n"
+                + "Text cannot be empty\n", messages.check(new Message(null, null, "", DATE)));
+    }
+
+    @Test
+    void friendshipAndRequestErrors() {
+        assertEquals("User1Id and User2Id cannot be the same\n",
+                new FriendshipValidation().check(new Friendship(3L, 3L, DATE)));
+        assertEquals("User1Id cannot be null\n", new FriendshipValidation().check(new Friendship(null, 3L, DATE)));
+        assertEquals("SenderId cannot be null\n"
+                + "ReceiverId cannot be null\n"
+                + "SenderId and ReceiverId cannot be the same\n", new RequestValidation().check(new Request(null, null)));
+    }
+
+    @Test
+    void validateAllPrefixesEachErrorWithTheIndexOfItsEntity() {
+        List<Message> batch = List.of(
+                new Message(1L, 2L, "fine", DATE),
+                new Message(1L, 2L, "", DATE),
+                new Message(1L, 2L, "fine again", DATE),
+                new Message(null, 2L, "x".repeat(256), DATE));
+
+        assertEquals("#1: Text cannot be empty\n"
+                + "#3: From cannot be null\n"
+                + "#3: Text cannot be longer than 255 characters\n", message(() -> messages.validateAll(batch)));
+        assertDoesNotThrow(() -> messages.validateAll(List.of(batch.get(0), batch.get(2))));
+        assertDoesNotThrow(() -> messages.validateAll(List.of()));
+    }
+}
@@ -0,0 +1,20 @@
+package app.toysocialnetwork.gui;
+
+import app.toysocialnetwork.controller.Disposable;
+
+/**
+ * The controller of recording-view.fxml, which counts how often it is set up and disposed
+ */
+public class RecordingController implements Disposable {
+    int setUps;
+    int disposals;
+
+    void setUp() {
+        setUps++;
+    }
+
+    @Override
+    public void dispose() {
+        disposals++;
+    }
+}
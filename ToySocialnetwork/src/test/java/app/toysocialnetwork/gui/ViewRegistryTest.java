@@ -0,0 +1,172 @@
+package app.toysocialnetwork.gui;
+
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ViewRegistryTest {
+    private static final String FXML = "recording-view.fxml";
+
+    private static boolean toolkit;
+
+    private TabPane tabPane;
+    private ViewRegistry views;
+    private final List<RecordingController> setUp = new ArrayList<>();
+
+    @BeforeAll
+    static void startToolkit() {
+        try {
+            Platform.startup(() -> {
+            });
+            Platform.setImplicitExit(false);
+            toolkit = true;
+        } catch (IllegalStateException e) {
+            // already started
+            toolkit = true;
+        } catch (RuntimeException | Error e) {
+            // no display to run on
+            toolkit = false;
+        }
+    }
+
+    @BeforeEach
+    void createRegistry() throws Throwable {
+        assumeTrue(toolkit, "No JavaFX toolkit");
+        onFxThread(() -> {
+            tabPane = new TabPane();
+            views = new ViewRegistry(tabPane);
+        });
+    }
+
+    /**
+     * Run a step on the JavaFX application thread and wait for it
+     */
+    private static void onFxThread(Executable step) throws Throwable {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            try {
+                step.execute();
+            } catch (Throwable e) {
+                failure.set(e);
+            } finally {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS), "The JavaFX thread did not run the step");
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private void open(String key, boolean keepWhenClosed) throws Exception {
+        views.open(key, key, FXML, keepWhenClosed, (RecordingController controller) -> {
+            controller.setUp();
+            setUp.add(controller);
+        });
+    }
+
+    /**
+     * Close a tab as its close button does
+     */
+    private void close(Tab tab) {
+        tabPane.getTabs().remove(tab);
+        Event.fireEvent(tab, new Event(Tab.CLOSED_EVENT));
+    }
+
+    private Tab selected() {
+        return tabPane.getSelectionModel().getSelectedItem();
+    }
+
+    @Test
+    void openingAnOpenViewSelectsItsTab() throws Throwable {
+        onFxThread(() -> {
+            open("users", true);
+            Tab users = selected();
+            open("profile:1", false);
+            assertEquals(2, tabPane.getTabs().size());
+
+            open("users", true);
+
+            assertEquals(2, tabPane.getTabs().size());
+            assertSame(users, selected());
+            assertEquals(2, setUp.size());
+        });
+    }
+
+    @Test
+    void closingATabDisposesItsController() throws Throwable {
+        onFxThread(() -> {
+            open("profile:1", false);
+            RecordingController controller = setUp.get(0);
+
+            close(selected());
+
+            assertEquals(1, controller.disposals);
+            assertTrue(tabPane.getTabs().isEmpty());
+        });
+    }
+
+    @Test
+    void aKeptViewIsSetUpAgainWhenReopened() throws Throwable {
+        onFxThread(() -> {
+            open("users", true);
+            Tab first = selected();
+            close(first);
+
+            open("users", true);
+
+            assertNotSame(first, selected());
+            assertSame(first.getContent(), selected().getContent());
+            assertSame(setUp.get(0), setUp.get(1));
+            assertEquals(2, setUp.get(1).setUps);
+            assertEquals(1, tabPane.getTabs().size());
+        });
+    }
+
+    @Test
+    void aDroppedViewIsLoadedAgainWhenReopened() throws Throwable {
+        onFxThread(() -> {
+            open("profile:1", false);
+            close(selected());
+
+            open("profile:1", false);
+
+            assertNotSame(setUp.get(0), setUp.get(1));
+            assertEquals(1, setUp.get(1).setUps);
+        });
+    }
+
+    @Test
+    void closeAllDisposesEveryViewAndForgetsTheKeptOnes() throws Throwable {
+        onFxThread(() -> {
+            open("users", true);
+            open("profile:1", false);
+
+            views.closeAll();
+
+            assertTrue(tabPane.getTabs().isEmpty());
+            assertEquals(1, setUp.get(0).disposals);
+            assertEquals(1, setUp.get(1).disposals);
+            open("users", true);
+            assertNotSame(setUp.get(0), setUp.get(2));
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package app.toysocialnetwork.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageSearchTest {
+    private record Text(String text, long date) {
+    }
+
+    private static List<String> rank(String query, int limit, int offset, Text... texts) {
+        return MessageSearch.rank(Stream.of(texts), query, Text::text, Text::date, limit, offset).stream()
+                .map(Text::text)
+                .toList();
+    }
+
+    @Test
+    void wordsAreLowerCaseAndSplitOnPunctuation() {
+        assertEquals(List.of("hi", "there", "hi", "it_s", "42"), MessageSearch.words("Hi, THERE -- hi! it_s 42."));
+        assertEquals(List.of(), MessageSearch.words(" ?! "));
+        assertEquals(Set.of("hi", "there"), MessageSearch.distinctWords("hi there HI"));
+    }
+
+    @Test
+    void scoreCountsOccurrencesOnlyWhenEveryWordIsPresent() {
+        Set<String> query = Set.of("coffee", "tomorrow");
+
+        assertEquals(4, MessageSearch.score("coffee coffee tomorrow, COFFEE", query));
+        assertEquals(2, MessageSearch.score("tomorrow coffee", query));
+        assertEquals(-1, MessageSearch.score("coffee coffee", query));
+        assertEquals(-1, MessageSearch.score("", query));
+    }
+
+    @Test
+    void rankOrdersByScoreThenNewestFirstAndPages() {
+        Text[] texts = {
+                new Text("coffee", 1),
+                new Text("coffee coffee", 2),
+                new Text("tea", 3),
+                new Text("coffee", 4),
+                new Text("coffee coffee coffee", 0)};
+
+        assertEquals(List.of("coffee coffee coffee", "coffee coffee", "coffee", "coffee"), rank("coffee", 10, 0, texts));
+        assertEquals(List.of("coffee coffee", "coffee"), rank("Coffee!", 2, 1, texts));
+        assertEquals(List.of(), rank("coffee", 10, 4, texts));
+    }
+
+    @Test
+    void rankMatchesNothingWithoutQueryWords() {
+        Function<String, List<String>> search = query -> rank(query, 10, 0, new Text("anything at all", 1), new Text("!!!", 2));
+
+        assertTrue(search.apply("").isEmpty());
+        assertTrue(search.apply("!!!").isEmpty());
+        assertEquals(List.of("anything at all"), search.apply("ALL"));
+    }
+}
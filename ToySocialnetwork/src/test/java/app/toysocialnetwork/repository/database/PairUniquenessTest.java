@@ -0,0 +1,126 @@
+package app.toysocialnetwork.repository.database;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.validators.FriendshipValidation;
+import app.toysocialnetwork.domain.validators.RequestValidation;
+import app.toysocialnetwork.utils.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PairUniquenessTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 1, 31, 12, 0);
+    private static final int THREADS = 8;
+
+    private TestDatabase database;
+    private FriendshipDBRepository friendships;
+    private RequestDBRepository requests;
+
+    @BeforeEach
+    void createSchema() {
+        database = TestDatabase.create("pair_uniqueness_test", THREADS);
+        friendships = new FriendshipDBRepository(new FriendshipValidation(), database.dataBase());
+        requests = new RequestDBRepository(new RequestValidation(), database.dataBase());
+    }
+
+    @AfterEach
+    void dropSchema() throws SQLException {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    @Test
+    void aSecondFriendshipBetweenTheSameUsersIsRefusedInEitherDirection() {
+        assertTrue(friendships.save(new Friendship(1L, 2L, DATE)).isPresent());
+
+        assertTrue(friendships.save(new Friendship(1L, 2L, DATE)).isEmpty());
+        assertTrue(friendships.save(new Friendship(2L, 1L, DATE)).isEmpty());
+        assertTrue(friendships.findBetween(2L, 1L).isPresent());
+    }
+
+    @Test
+    void racingSavesCreateOneFriendship() throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Optional<Friendship>>> saves = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            long from = i % 2 == 0 ? 1L : 2L;
+            saves.add(executor.submit(() -> {
+                start.await();
+                return friendships.save(new Friendship(from, 3L - from, DATE));
+            }));
+        }
+        start.countDown();
+
+        int saved = 0;
+        for (Future<Optional<Friendship>> save : saves) {
+            saved += save.get().isPresent() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertEquals(1, saved);
+        assertEquals(1, friendships.findByUser(1L).size());
+    }
+
+    @Test
+    void crossingAndDuplicateRequestsAreRefused() {
+        assertTrue(requests.save(new Request(1L, 2L)).isPresent());
+
+        assertTrue(requests.save(new Request(1L, 2L)).isEmpty());
+        assertTrue(requests.save(new Request(2L, 1L)).isEmpty());
+        assertTrue(requests.saveIfNotFriends(new Request(2L, 1L)).isEmpty());
+    }
+
+    @Test
+    void requestsBetweenFriendsAreRefused() {
+        friendships.save(new Friendship(1L, 2L, DATE));
+
+        assertTrue(requests.saveIfNotFriends(new Request(2L, 1L)).isEmpty());
+        assertTrue(requests.saveIfNotFriends(new Request(1L, 3L)).isPresent());
+    }
+
+    @Test
+    void acceptingARequestReplacesItWithAFriendship() {
+        Request sent = requests.save(new Request(1L, 2L)).orElseThrow();
+        Friendship friendship = new Friendship(1L, 2L, DATE);
+
+        Request accepted = requests.acceptRequest(friendship).orElseThrow();
+
+        assertEquals(sent.getId(), accepted.getId());
+        assertNotNull(friendship.getId());
+        assertTrue(requests.findOne(sent.getId()).isEmpty());
+        assertEquals(DATE, friendships.findBetween(2L, 1L).orElseThrow().getFriendsFrom());
+        assertTrue(requests.acceptRequest(new Friendship(1L, 2L, DATE)).isEmpty());
+    }
+
+    @Test
+    void acceptingARequestBetweenFriendsOnlyDeletesIt() {
+        Friendship existing = friendships.save(new Friendship(2L, 1L, DATE)).orElseThrow();
+        Request sent = new Request(1L, 2L);
+        requests.save(sent);
+        Friendship friendship = new Friendship(1L, 2L, DATE.plusDays(1));
+
+        assertTrue(requests.acceptRequest(friendship).isPresent());
+
+        assertNull(friendship.getId());
+        assertEquals(existing.getId(), friendships.findBetween(1L, 2L).orElseThrow().getId());
+    }
+}
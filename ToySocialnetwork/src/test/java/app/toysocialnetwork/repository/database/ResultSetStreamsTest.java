@@ -0,0 +1,72 @@
+package app.toysocialnetwork.repository.database;
+
+import app.toysocialnetwork.domain.User;
+import app.toysocialnetwork.domain.validators.UserValidation;
+import app.toysocialnetwork.repository.database.mapper.UserRowMapper;
+import app.toysocialnetwork.utils.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultSetStreamsTest {
+    private static final int USERS = 2500;
+
+    private TestDatabase database;
+    private UserDBRepository users;
+
+    @BeforeEach
+    void createUsers() throws SQLException {
+        // a single connection, so a stream that kept its connection would starve the next query
+        database = TestDatabase.create("result_set_streams_test", 1);
+        database.execute("INSERT INTO users (first_name, last_name, username, password) "
+                + "SELECT 'First', 'Last', 'user' || n, 'secret' FROM generate_series(1, " + USERS + ") n");
+        users = new UserDBRepository(new UserValidation(), database.dataBase());
+    }
+
+    @AfterEach
+    void dropSchema() throws SQLException {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    @Test
+    void streamReadsEveryRowAcrossFetches() {
+        try (Stream<User> stream = ResultSetStreams.stream(database.dataBase().getConnection(),
+                "SELECT " + new UserRowMapper().columns() + " FROM users ORDER BY id", 100, new UserRowMapper())) {
+            List<Long> ids = stream.map(User::getId).toList();
+
+            assertEquals(LongStream.rangeClosed(1, USERS).boxed().toList(), ids);
+        }
+    }
+
+    @Test
+    void streamAllMapsEveryUser() {
+        try (Stream<User> stream = users.streamAll()) {
+            assertEquals(USERS, stream.filter(user -> user.getUsername().startsWith("user")).count());
+        }
+    }
+
+    @Test
+    void closingAPartlyReadStreamReleasesTheConnection() {
+        try (Stream<User> stream = users.streamAll()) {
+            assertEquals(3, stream.limit(3).count());
+        }
+
+        assertTrue(users.findOne(1L).isPresent());
+        // the connection is back in auto-commit mode, so the save is visible to the next read
+        User saved = users.save(new User("Ana", "Pop", "anapop", "secret")).orElseThrow();
+        try (Stream<User> stream = users.streamAll()) {
+            assertEquals(USERS + 1, stream.count());
+        }
+        assertEquals("anapop", users.findOne(saved.getId()).orElseThrow().getUsername());
+    }
+}
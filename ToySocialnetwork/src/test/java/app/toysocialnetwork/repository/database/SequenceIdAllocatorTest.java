@@ -0,0 +1,129 @@
+package app.toysocialnetwork.repository.database;
+
+import app.toysocialnetwork.utils.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SequenceIdAllocatorTest {
+    private static final int BLOCK = 1000;
+    private static final int THREADS = 8;
+
+    private TestDatabase database;
+
+    @BeforeEach
+    void createSchema() {
+        database = TestDatabase.create("sequence_id_allocator_test", THREADS);
+    }
+
+    @AfterEach
+    void dropSchema() throws SQLException {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    private long queryLong(String query) throws SQLException {
+        try (Connection conn = database.dataBase().getConnection(); Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery(query);
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private long lastReserved() throws SQLException {
+        return queryLong("SELECT pg_sequence_last_value(pg_get_serial_sequence('messages', 'id')::regclass)");
+    }
+
+    @Test
+    void idsAreTakenFromOneBlockBeforeTheNext() throws SQLException {
+        SequenceIdAllocator ids = new SequenceIdAllocator(database.dataBase(), "messages");
+
+        long first = ids.nextId();
+        for (int i = 1; i < BLOCK; i++) {
+            assertEquals(first + i, ids.nextId());
+        }
+        assertEquals(first, lastReserved());
+
+        assertEquals(first + BLOCK, ids.nextId());
+        assertEquals(first + BLOCK, lastReserved());
+    }
+
+    @Test
+    void concurrentAllocatorsNeverHandOutTheSameId() throws InterruptedException, ExecutionException, SQLException {
+        SequenceIdAllocator first = new SequenceIdAllocator(database.dataBase(), "messages");
+        SequenceIdAllocator second = new SequenceIdAllocator(database.dataBase(), "messages");
+        int perThread = 2 * BLOCK + 17;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Long>>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            SequenceIdAllocator ids = i % 2 == 0 ? first : second;
+            results.add(executor.submit(() -> {
+                start.await();
+                List<Long> taken = new ArrayList<>();
+                for (int j = 0; j < perThread; j++) {
+                    taken.add(ids.nextId());
+                }
+                return taken;
+            }));
+        }
+        start.countDown();
+
+        Set<Long> all = new HashSet<>();
+        Set<Long> blocks = new HashSet<>();
+        for (Future<List<Long>> result : results) {
+            for (long id : result.get()) {
+                assertTrue(all.add(id), "id " + id + " handed out twice");
+                blocks.add((id - 1) / BLOCK);
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(THREADS * perThread, all.size());
+        // each allocator wastes at most the rest of its last block
+        long reserved = (lastReserved() - 1) / BLOCK + 1;
+        assertEquals(reserved, blocks.size());
+        assertTrue(reserved * BLOCK - all.size() < 2L * BLOCK, reserved + " blocks for " + all.size() + " ids");
+    }
+
+    @Test
+    void rowsInsertedWithTheColumnDefaultDoNotCollide() throws SQLException {
+        SequenceIdAllocator ids = new SequenceIdAllocator(database.dataBase(), "messages");
+        long allocated = ids.nextId();
+
+        database.execute("INSERT INTO messages (\"from\", \"to\", text, date) VALUES (1, 2, 'default id', now())");
+        long byDefault = queryLong("SELECT id FROM messages WHERE text = 'default id'");
+
+        assertFalse(byDefault >= allocated && byDefault < allocated + BLOCK, byDefault + " is in the allocated block");
+    }
+
+    @Test
+    void aSequenceIncrementedByOneGivesBlocksOfOne() throws SQLException {
+        SequenceIdAllocator ids = new SequenceIdAllocator(database.dataBase(), "friendships");
+
+        long first = ids.nextId();
+        long second = ids.nextId();
+
+        assertEquals(first + 1, second);
+        assertEquals(second, queryLong("SELECT pg_sequence_last_value(pg_get_serial_sequence('friendships', 'id')::regclass)"));
+    }
+}
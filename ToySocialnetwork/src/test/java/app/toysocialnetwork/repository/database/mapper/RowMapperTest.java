@@ -0,0 +1,102 @@
+package app.toysocialnetwork.repository.database.mapper;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.User;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The mappers read columns by position; each test row is laid out in the order the mapper's columns() names them,
+ * so a position constant that disagrees with columns() reads the wrong value
+ */
+class RowMapperTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 1, 31, 12, 0, 0, 123_000_000);
+
+    /**
+     * A result set positioned on one row, which only supports reading columns by position
+     */
+    private static ResultSet row(RowMapper<?> mapper, Map<String, Object> values) {
+        List<String> columns = Arrays.stream(mapper.columns().split(","))
+                .map(column -> column.trim().replace("\"", ""))
+                .toList();
+        assertEquals(values.keySet(), Set.copyOf(columns));
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    if (args == null || args.length != 1 || !(args[0] instanceof Integer index)) {
+                        throw new SQLException(method.getName() + " is not supported");
+                    }
+                    Object value = values.get(columns.get(index - 1));
+                    return switch (method.getName()) {
+                        case "getLong" -> (Long) value;
+                        case "getString" -> (String) value;
+                        case "getTimestamp" -> Timestamp.valueOf((LocalDateTime) value);
+                        default -> throw new SQLException(method.getName() + " is not supported");
+                    };
+                });
+    }
+
+    @Test
+    void userRowMapperReadsEveryColumn() throws SQLException {
+        UserRowMapper mapper = new UserRowMapper();
+
+        User user = mapper.map(row(mapper, Map.of(
+                "id", 7L, "first_name", "Ana", "last_name", "Pop", "username", "anapop", "password", "secret")));
+
+        assertEquals(7L, user.getId());
+        assertEquals("Ana", user.getFirstName());
+        assertEquals("Pop", user.getLastName());
+        assertEquals("anapop", user.getUsername());
+        assertEquals("secret", user.getPassword());
+    }
+
+    @Test
+    void friendshipRowMapperReadsEveryColumn() throws SQLException {
+        FriendshipRowMapper mapper = new FriendshipRowMapper();
+
+        Friendship friendship = mapper.map(row(mapper, Map.of(
+                "id", 8L, "user_id1", 1L, "user_id2", 2L, "friends_from", DATE)));
+
+        assertEquals(8L, friendship.getId());
+        assertEquals(1L, friendship.getUser1Id());
+        assertEquals(2L, friendship.getUser2Id());
+        assertEquals(DATE, friendship.getFriendsFrom());
+    }
+
+    @Test
+    void requestRowMapperReadsEveryColumn() throws SQLException {
+        RequestRowMapper mapper = new RequestRowMapper();
+
+        Request request = mapper.map(row(mapper, Map.of("id", 3L, "sender_id", 2L, "receiver_id", 5L)));
+
+        assertEquals(3L, request.getId());
+        assertEquals(2L, request.getSenderId());
+        assertEquals(5L, request.getReceiverId());
+    }
+
+    @Test
+    void messageRowMapperReadsEveryColumn() throws SQLException {
+        MessageRowMapper mapper = new MessageRowMapper();
+
+        Message message = mapper.map(row(mapper, Map.of(
+                "id", 10L, "from", 1L, "to", 2L, "text", "Salut!", "date", DATE)));
+
+        assertEquals(10L, message.getId());
+        assertEquals(1L, message.getFrom());
+        assertEquals(2L, message.getTo());
+        assertEquals("Salut!", message.getText());
+        assertEquals(DATE, message.getDate());
+    }
+}
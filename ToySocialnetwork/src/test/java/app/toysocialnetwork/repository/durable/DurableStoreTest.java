@@ -0,0 +1,169 @@
+package app.toysocialnetwork.repository.durable;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.User;
+import app.toysocialnetwork.domain.validators.FriendshipValidation;
+import app.toysocialnetwork.domain.validators.RequestValidation;
+import app.toysocialnetwork.domain.validators.UserValidation;
+import app.toysocialnetwork.repository.memory.InMemoryFriendshipRepository;
+import app.toysocialnetwork.repository.memory.InMemoryRequestRepository;
+import app.toysocialnetwork.repository.memory.InMemoryUserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DurableStoreTest {
+    @TempDir
+    Path directory;
+
+    /**
+     * The repositories of one run of the application, attached to a store in a fixed order
+     */
+    private record Run(DurableStore store, InMemoryUserRepository users,
+                       InMemoryFriendshipRepository friendships, InMemoryRequestRepository requests) {
+    }
+
+    private Run open() throws IOException {
+        InMemoryUserRepository users = new InMemoryUserRepository(new UserValidation());
+        InMemoryFriendshipRepository friendships = new InMemoryFriendshipRepository(new FriendshipValidation());
+        InMemoryRequestRepository requests = new InMemoryRequestRepository(new RequestValidation(), friendships);
+        DurableStore store = new DurableStore(directory, FsyncPolicy.PER_WRITE, 0, 0)
+                .attach(users, ViewCodec.USERS)
+                .attach(friendships, ViewCodec.FRIENDSHIPS)
+                .attach(requests, ViewCodec.REQUESTS);
+        store.open();
+        return new Run(store, users, friendships, requests);
+    }
+
+    private static User user(String username) {
+        return new User("Ana", "Pop", username, "secret");
+    }
+
+    @Test
+    void restartReplaysTheLog() throws IOException {
+        Run first = open();
+        long ana = first.users().save(user("anapop")).orElseThrow().getId();
+        long ion = first.users().save(user("ionpop")).orElseThrow().getId();
+        first.users().delete(ana);
+        first.store().close();
+
+        Run second = open();
+
+        assertFalse(second.users().findOne(ana).isPresent());
+        assertEquals("ionpop", second.users().findOne(ion).orElseThrow().getUsername());
+        long next = second.users().save(user("mariapop")).orElseThrow().getId();
+        assertTrue(next > ion, "a restored id was handed out again");
+        second.store().close();
+    }
+
+    @Test
+    void restartStopsAtATornRecord() throws IOException {
+        Run first = open();
+        long ana = first.users().save(user("anapop")).orElseThrow().getId();
+        long ion = first.users().save(user("ionpop")).orElseThrow().getId();
+        first.store().close();
+        // a crash in the middle of the second record
+        truncateLatestLog(3);
+
+        Run second = open();
+
+        assertTrue(second.users().findOne(ana).isPresent());
+        assertFalse(second.users().findOne(ion).isPresent());
+        long maria = second.users().save(user("mariapop")).orElseThrow().getId();
+        second.store().close();
+
+        Run third = open();
+        assertTrue(third.users().findOne(ana).isPresent());
+        assertTrue(third.users().findOne(maria).isPresent());
+        third.store().close();
+    }
+
+    @Test
+    void restartIgnoresGarbageAfterTheLastRecord() throws IOException {
+        Run first = open();
+        long ana = first.users().save(user("anapop")).orElseThrow().getId();
+        first.store().close();
+        Path log = latestLog();
+        Files.write(log, new byte[]{0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        Run second = open();
+
+        assertEquals(1, second.users().views().size());
+        assertTrue(second.users().findOne(ana).isPresent());
+        second.store().close();
+    }
+
+    @Test
+    void tornAcceptKeepsNeitherHalf() throws IOException {
+        Run first = open();
+        long ana = first.users().save(user("anapop")).orElseThrow().getId();
+        long ion = first.users().save(user("ionpop")).orElseThrow().getId();
+        first.requests().saveIfNotFriends(new Request(ana, ion)).orElseThrow();
+        first.requests().acceptRequest(new Friendship(ana, ion, LocalDateTime.now())).orElseThrow();
+        first.store().close();
+
+        Run accepted = open();
+        assertTrue(accepted.requests().findBetween(ana, ion).isEmpty());
+        assertTrue(accepted.friendships().findBetween(ana, ion).isPresent());
+        accepted.store().close();
+
+        // cut the accept, the last record of the log; the reopened store wrote an empty generation after it
+        Files.delete(latestLog());
+        truncateLatestLog(1);
+        Run torn = open();
+
+        assertTrue(torn.requests().findBetween(ana, ion).isPresent());
+        assertTrue(torn.friendships().findBetween(ana, ion).isEmpty());
+        torn.store().close();
+    }
+
+    @Test
+    void snapshotRotatesTheLogAndRestartRestoresIt() throws IOException {
+        Run first = open();
+        long ana = first.users().save(user("anapop")).orElseThrow().getId();
+        long ion = first.users().save(user("ionpop")).orElseThrow().getId();
+        List<Long> before = WriteAheadLog.generations(directory);
+
+        first.store().snapshot();
+
+        List<Long> after = WriteAheadLog.generations(directory);
+        assertEquals(1, after.size());
+        assertTrue(after.get(0) > before.get(before.size() - 1), "the log did not move to a new generation");
+        assertEquals(0, first.store().unsnapshottedBytes());
+
+        long maria = first.users().save(user("mariapop")).orElseThrow().getId();
+        first.users().delete(ana);
+        first.store().close();
+
+        Run second = open();
+
+        assertFalse(second.users().findOne(ana).isPresent());
+        assertTrue(second.users().findOne(ion).isPresent());
+        assertTrue(second.users().findOne(maria).isPresent());
+        assertEquals(2, second.users().views().size());
+        second.store().close();
+    }
+
+    private Path latestLog() throws IOException {
+        List<Long> generations = WriteAheadLog.generations(directory);
+        return directory.resolve(WriteAheadLog.fileName(generations.get(generations.size() - 1)));
+    }
+
+    private void truncateLatestLog(int bytes) throws IOException {
+        try (FileChannel log = FileChannel.open(latestLog(), StandardOpenOption.WRITE)) {
+            log.truncate(log.size() - bytes);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package app.toysocialnetwork.repository.log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogSegmentTest {
+    private static final int CAPACITY = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoverFindsTheAppendedRecords() throws IOException {
+        LogSegment segment = LogSegment.map(directory, 1, CAPACITY);
+        segment.recover(offset -> {
+        });
+        List<Integer> appended = new ArrayList<>();
+        for (String text : List.of("first", "second", "third")) {
+            appended.add(append(segment, text));
+        }
+        int end = segment.end();
+        segment.force();
+        segment.close();
+
+        LogSegment reopened = LogSegment.map(directory, 1, CAPACITY);
+        List<Integer> recovered = new ArrayList<>();
+        reopened.recover(recovered::add);
+
+        assertEquals(appended, recovered);
+        assertEquals(end, reopened.end());
+        assertEquals("second", text(reopened, recovered.get(1)));
+        reopened.close();
+    }
+
+    @Test
+    void recoverStopsAtATornPayload() throws IOException {
+        LogSegment segment = LogSegment.map(directory, 1, CAPACITY);
+        segment.recover(offset -> {
+        });
+        append(segment, "kept");
+        int torn = append(segment, "torn");
+        segment.force();
+        segment.close();
+        // the length reached the disk but the last byte of the payload did not
+        corrupt(torn + LogSegment.HEADER_BYTES + "torn".length() - 1);
+
+        LogSegment reopened = LogSegment.map(directory, 1, CAPACITY);
+        List<Integer> recovered = new ArrayList<>();
+        reopened.recover(recovered::add);
+
+        assertEquals(List.of(0), recovered);
+        assertEquals(torn, reopened.end());
+        reopened.close();
+    }
+
+    @Test
+    void appendAfterRecoveryOverwritesTheTornRecord() throws IOException {
+        LogSegment segment = LogSegment.map(directory, 1, CAPACITY);
+        segment.recover(offset -> {
+        });
+        append(segment, "kept");
+        int torn = append(segment, "torn");
+        segment.force();
+        segment.close();
+        corrupt(torn + Integer.BYTES);
+
+        LogSegment reopened = LogSegment.map(directory, 1, CAPACITY);
+        reopened.recover(offset -> {
+        });
+        int replacement = append(reopened, "replacement");
+        List<Integer> recovered = new ArrayList<>();
+        reopened.recover(recovered::add);
+
+        assertEquals(torn, replacement);
+        assertEquals(List.of(0, torn), recovered);
+        assertEquals("replacement", text(reopened, torn));
+        reopened.close();
+    }
+
+    @Test
+    void fitsOnlyWhatIsLeftOfTheFile() throws IOException {
+        LogSegment segment = LogSegment.map(directory, 1, 64);
+        segment.recover(offset -> {
+        });
+
+        assertTrue(segment.fits(64 - LogSegment.HEADER_BYTES));
+        assertFalse(segment.fits(64 - LogSegment.HEADER_BYTES + 1));
+        append(segment, "0123456789");
+        assertFalse(segment.fits(64 - LogSegment.HEADER_BYTES));
+        segment.delete();
+
+        assertFalse(Files.exists(directory.resolve(LogSegment.fileName(1))));
+    }
+
+    private static int append(LogSegment segment, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return segment.append(bytes.length, (buffer, at) -> buffer.put(at, bytes));
+    }
+
+    private static String text(LogSegment segment, int offset) {
+        ByteBuffer payload = segment.payload(offset);
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Flip the bits of one byte of the first segment file
+     */
+    private void corrupt(int position) throws IOException {
+        try (FileChannel file = FileChannel.open(directory.resolve(LogSegment.fileName(1)), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            file.read(value, position);
+            value.put(0, (byte) ~value.get(0));
+            file.write(value.rewind(), position);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package app.toysocialnetwork.repository.log;
+
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.validators.MessageValidation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageLogRepositoryTest {
+    private static final int SEGMENT_BYTES = 4096;
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 1, 31, 12, 0);
+
+    @TempDir
+    Path directory;
+
+    private MessageLogRepository open() {
+        return new MessageLogRepository(new MessageValidation(), directory, SEGMENT_BYTES);
+    }
+
+    @Test
+    void restartReplaysMessagesAndDeletions() {
+        MessageLogRepository log = open();
+        long kept = log.save(new Message(1L, 2L, "kept", DATE)).orElseThrow().getId();
+        long deleted = log.save(new Message(2L, 1L, "deleted", DATE)).orElseThrow().getId();
+        log.delete(deleted);
+        log.close();
+
+        MessageLogRepository reopened = open();
+
+        assertEquals("kept", reopened.findOne(kept).orElseThrow().getText());
+        assertFalse(reopened.findOne(deleted).isPresent());
+        assertEquals(1, reopened.findBetween(2L, 1L).size());
+        assertTrue(reopened.save(new Message(1L, 2L, "next", DATE)).orElseThrow().getId() > deleted);
+        reopened.close();
+    }
+
+    @Test
+    void compactionRemovesMostlyDeadSegmentsAndKeepsTheLiveMessages() {
+        MessageLogRepository log = open();
+        List<Long> ids = new ArrayList<>();
+        while (!Files.exists(directory.resolve(LogSegment.fileName(3)))) {
+            ids.add(log.save(new Message(1L, 2L, "message " + ids.size(), DATE)).orElseThrow().getId());
+        }
+        // every message of the first segments but one in ten is deleted
+        List<Long> live = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 10 == 0) {
+                live.add(ids.get(i));
+            } else {
+                log.delete(ids.get(i));
+            }
+        }
+
+        log.compact();
+
+        assertFalse(Files.exists(directory.resolve(LogSegment.fileName(1))));
+        for (long id : live) {
+            assertTrue(log.findOne(id).isPresent(), "message " + id + " lost by the compaction");
+        }
+        assertEquals(live.size(), log.findBetween(1L, 2L).size());
+        log.close();
+
+        MessageLogRepository reopened = open();
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i % 10 == 0, reopened.findOne(ids.get(i)).isPresent(), "message " + ids.get(i) + " after a restart");
+        }
+        assertEquals(live.size(), reopened.findBetween(1L, 2L).size());
+        reopened.close();
+    }
+}
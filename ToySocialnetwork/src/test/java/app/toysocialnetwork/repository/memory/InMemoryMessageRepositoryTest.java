@@ -0,0 +1,71 @@
+package app.toysocialnetwork.repository.memory;
+
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.validators.MessageValidation;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryMessageRepositoryTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 1, 31, 12, 0);
+
+    private final InMemoryMessageRepository repository = new InMemoryMessageRepository(new MessageValidation());
+
+    private Message save(long from, long to, String text, int minute) {
+        return repository.save(new Message(from, to, text, DATE.plusMinutes(minute))).orElseThrow();
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    @Test
+    void queriesWithoutWordsMatchNothing() {
+        save(1, 2, "hello there", 0);
+        save(2, 1, "!!!", 1);
+
+        assertTrue(repository.search(1L, "", 10, 0).isEmpty());
+        assertTrue(repository.search(1L, "   ", 10, 0).isEmpty());
+        assertTrue(repository.search(1L, "!!!", 10, 0).isEmpty());
+    }
+
+    @Test
+    void searchNeedsEveryWordAndRanksByOccurrencesThenDate() {
+        save(1, 2, "Coffee tomorrow?", 0);
+        save(2, 1, "coffee, coffee and more COFFEE tomorrow", 1);
+        save(1, 3, "tomorrow, coffee", 2);
+        save(1, 2, "just coffee", 3);
+
+        assertEquals(List.of("coffee, coffee and more COFFEE tomorrow", "tomorrow, coffee", "Coffee tomorrow?"),
+                texts(repository.search(1L, "coffee TOMORROW", 10, 0)));
+        assertEquals(List.of("tomorrow, coffee", "Coffee tomorrow?"), texts(repository.search(1L, "coffee tomorrow", 2, 1)));
+        assertTrue(repository.search(1L, "coffee tea", 10, 0).isEmpty());
+    }
+
+    @Test
+    void searchOnlyFindsTheUsersMessages() {
+        save(1, 2, "secret plan", 0);
+        save(3, 4, "secret plan", 1);
+
+        assertEquals(1, repository.search(2L, "secret", 10, 0).size());
+        assertTrue(repository.search(5L, "secret", 10, 0).isEmpty());
+    }
+
+    @Test
+    void deletedAndUpdatedMessagesLeaveTheWordIndex() {
+        Message deleted = save(1, 2, "old words", 0);
+        Message updated = save(1, 2, "first draft", 1);
+
+        repository.delete(deleted.getId());
+        updated.setText("second draft");
+        repository.update(updated);
+
+        assertTrue(repository.search(1L, "old", 10, 0).isEmpty());
+        assertTrue(repository.search(1L, "first", 10, 0).isEmpty());
+        assertEquals(List.of("second draft"), texts(repository.search(1L, "draft", 10, 0)));
+    }
+}
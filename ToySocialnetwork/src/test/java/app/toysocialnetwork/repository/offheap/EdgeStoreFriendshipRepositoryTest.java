@@ -0,0 +1,134 @@
+package app.toysocialnetwork.repository.offheap;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.compact.FriendshipView;
+import app.toysocialnetwork.domain.validators.FriendshipValidation;
+import app.toysocialnetwork.repository.memory.InMemoryFriendshipRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EdgeStoreFriendshipRepositoryTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 1, 31, 12, 0);
+
+    @TempDir
+    Path directory;
+
+    private InMemoryFriendshipRepository delegate;
+    private EdgeStoreFriendshipRepository repository;
+
+    @BeforeEach
+    void saveSnapshotFriendships() {
+        delegate = new InMemoryFriendshipRepository(new FriendshipValidation());
+        delegate.save(new Friendship(1L, 2L, DATE));
+        delegate.save(new Friendship(1L, 3L, DATE));
+        delegate.save(new Friendship(2L, 3L, DATE));
+    }
+
+    @AfterEach
+    void closeRepository() {
+        if (repository != null) {
+            repository.close();
+        }
+    }
+
+    private Path file() {
+        return directory.resolve("friendships.edges");
+    }
+
+    private static List<FriendshipView> views(List<Friendship> friendships) {
+        return friendships.stream().map(FriendshipView::of).sorted(Comparator.comparingLong(FriendshipView::id)).toList();
+    }
+
+    private void assertSameAsDelegate() {
+        for (long user = 1; user <= 5; user++) {
+            assertEquals(views(delegate.findByUser(user)), views(repository.findByUser(user)), "friendships of " + user);
+            for (long friend = 1; friend <= 5; friend++) {
+                assertEquals(delegate.findBetween(user, friend).map(FriendshipView::of),
+                        repository.findBetween(user, friend).map(FriendshipView::of));
+            }
+        }
+    }
+
+    @Test
+    void theOverlayKeepsTheLookupsCurrent() throws IOException {
+        repository = EdgeStoreFriendshipRepository.open(delegate, file(), true, 0);
+
+        repository.save(new Friendship(4L, 1L, DATE));
+        repository.delete(delegate.findBetween(2L, 3L).orElseThrow().getId());
+        Friendship updated = delegate.findBetween(1L, 3L).orElseThrow();
+        updated.setFriendsFrom(DATE.plusDays(1));
+        repository.update(updated);
+
+        assertSameAsDelegate();
+        assertEquals(4, repository.overlaySize());
+    }
+
+    @Test
+    void compactionMergesTheOverlayIntoTheSnapshot() throws IOException {
+        repository = EdgeStoreFriendshipRepository.open(delegate, file(), true, 0);
+        Friendship added = repository.save(new Friendship(4L, 5L, DATE)).orElseThrow();
+        repository.delete(delegate.findBetween(1L, 2L).orElseThrow().getId());
+
+        assertTrue(repository.compact());
+
+        assertEquals(0, repository.overlaySize());
+        assertSameAsDelegate();
+        try (FriendshipEdgeStore store = FriendshipEdgeStore.open(file())) {
+            assertEquals(3, store.friendshipCount());
+            assertTrue(store.areFriends(5L, 4L));
+            assertFalse(store.areFriends(1L, 2L));
+        }
+
+        repository.delete(added.getId());
+        assertEquals(1, repository.overlaySize());
+        assertSameAsDelegate();
+    }
+
+    @Test
+    void aFullOverlayIsCompactedInTheBackground() throws IOException, InterruptedException {
+        repository = EdgeStoreFriendshipRepository.open(delegate, file(), true, 3);
+
+        repository.save(new Friendship(4L, 1L, DATE));
+        repository.save(new Friendship(4L, 2L, DATE));
+        assertEquals(2, repository.overlaySize());
+        repository.save(new Friendship(4L, 3L, DATE));
+
+        for (int i = 0; i < 500 && repository.overlaySize() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, repository.overlaySize());
+        assertSameAsDelegate();
+    }
+
+    @Test
+    void aClosedRepositoryIsNotCompacted() throws IOException {
+        repository = EdgeStoreFriendshipRepository.open(delegate, file(), true, 0);
+        repository.save(new Friendship(4L, 1L, DATE));
+        repository.close();
+
+        assertFalse(repository.compact());
+        repository = null;
+    }
+
+    @Test
+    void compactionNeedsTheSnapshotFile() throws IOException {
+        FriendshipEdgeStore.write(file(), delegate.streamAll().iterator());
+        try (FriendshipEdgeStore store = FriendshipEdgeStore.open(file())) {
+            assertThrows(IllegalArgumentException.class, () -> new EdgeStoreFriendshipRepository(delegate, store, null, 10));
+            assertFalse(new EdgeStoreFriendshipRepository(delegate, store).compact());
+        }
+    }
+}
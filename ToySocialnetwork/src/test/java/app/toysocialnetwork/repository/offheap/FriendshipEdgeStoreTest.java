@@ -0,0 +1,155 @@
+package app.toysocialnetwork.repository.offheap;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.compact.FriendshipView;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FriendshipEdgeStoreTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 1, 31, 12, 0, 0, 123_000_000);
+
+    @TempDir
+    Path directory;
+
+    private static Friendship friendship(long id, long user1Id, long user2Id) {
+        Friendship friendship = new Friendship(user1Id, user2Id, DATE.plusDays(id));
+        friendship.setId(id);
+        return friendship;
+    }
+
+    @Test
+    void writeThenOpenKeepsEveryFriendship() throws IOException {
+        List<Friendship> friendships = List.of(friendship(1, 10, 20), friendship(2, 30, 10), friendship(3, 20, 30));
+        Path file = directory.resolve("friendships.edges");
+
+        FriendshipEdgeStore.write(file, friendships.iterator());
+
+        try (FriendshipEdgeStore store = FriendshipEdgeStore.open(file)) {
+            assertEquals(3, store.userCount());
+            assertEquals(3, store.friendshipCount());
+            for (Friendship friendship : friendships) {
+                FriendshipView expected = FriendshipView.of(friendship);
+                assertEquals(expected, store.friendshipBetween(friendship.getUser1Id(), friendship.getUser2Id()));
+                assertEquals(expected, store.friendshipBetween(friendship.getUser2Id(), friendship.getUser1Id()));
+            }
+            assertEquals(DATE.plusDays(2), store.friendshipBetween(10, 30).toFriendship().getFriendsFrom());
+            assertEquals(List.of(FriendshipView.of(friendships.get(0)), FriendshipView.of(friendships.get(1))),
+                    store.friendshipsOf(10));
+            assertEquals(2, store.degree(30));
+        }
+    }
+
+    @Test
+    void unknownUsersHaveNoFriends() throws IOException {
+        Path file = directory.resolve("friendships.edges");
+        FriendshipEdgeStore.write(file, List.of(friendship(1, 10, 20)).iterator());
+
+        try (FriendshipEdgeStore store = FriendshipEdgeStore.open(file)) {
+            assertTrue(store.friendshipsOf(5).isEmpty());
+            assertTrue(store.friendshipsOf(15).isEmpty());
+            assertTrue(store.friendshipsOf(25).isEmpty());
+            assertEquals(0, store.degree(15));
+            assertNull(store.friendshipBetween(10, 15));
+            assertFalse(store.areFriends(20, 25));
+        }
+    }
+
+    @Test
+    void emptyGraphRoundTrips() throws IOException {
+        Path file = directory.resolve("friendships.edges");
+        FriendshipEdgeStore.write(file, Collections.emptyIterator());
+
+        try (FriendshipEdgeStore store = FriendshipEdgeStore.open(file)) {
+            assertEquals(0, store.userCount());
+            assertEquals(0, store.friendshipCount());
+            assertFalse(store.areFriends(1, 2));
+        }
+    }
+
+    @Test
+    void largeGraphRoundTripsSortedByFriend() throws IOException {
+        // more edges than the writer's first scratch buffer holds, written in no particular order
+        List<Friendship> friendships = new ArrayList<>();
+        long id = 1;
+        for (long user = 100; user >= 1; user--) {
+            for (long friend = user + 1; friend <= 100; friend += 7) {
+                friendships.add(friendship(id++, friend, user));
+            }
+        }
+        Path file = directory.resolve("friendships.edges");
+
+        FriendshipEdgeStore.write(file, friendships.iterator());
+
+        try (FriendshipEdgeStore store = FriendshipEdgeStore.open(file)) {
+            assertEquals(friendships.size(), store.friendshipCount());
+            long degrees = 0;
+            for (long user = 1; user <= 100; user++) {
+                List<FriendshipView> of = store.friendshipsOf(user);
+                assertEquals(of.size(), store.degree(user));
+                degrees += of.size();
+                for (int i = 1; i < of.size(); i++) {
+                    assertTrue(of.get(i - 1).friendOf(user) < of.get(i).friendOf(user), "friends of " + user + " out of order");
+                }
+            }
+            assertEquals(2L * friendships.size(), degrees);
+            for (Friendship friendship : friendships) {
+                assertEquals(FriendshipView.of(friendship), store.friendshipBetween(friendship.getUser1Id(), friendship.getUser2Id()));
+            }
+        }
+    }
+
+    @Test
+    void friendshipsAreStreamedOnceEach() throws IOException {
+        List<Friendship> friendships = List.of(friendship(3, 20, 30), friendship(1, 10, 20), friendship(2, 30, 10));
+        Path file = directory.resolve("friendships.edges");
+        FriendshipEdgeStore.write(file, friendships.iterator());
+
+        try (FriendshipEdgeStore store = FriendshipEdgeStore.open(file)) {
+            assertEquals(List.of(FriendshipView.of(friendships.get(1)), FriendshipView.of(friendships.get(0)),
+                    FriendshipView.of(friendships.get(2))), store.friendships().toList());
+        }
+    }
+
+    @Test
+    void rewriteReplacesTheFile() throws IOException {
+        Path file = directory.resolve("friendships.edges");
+        FriendshipEdgeStore.write(file, List.of(friendship(1, 10, 20)).iterator());
+        FriendshipEdgeStore.write(file, List.of(friendship(2, 30, 40)).iterator());
+
+        try (FriendshipEdgeStore store = FriendshipEdgeStore.open(file)) {
+            assertFalse(store.areFriends(10, 20));
+            assertTrue(store.areFriends(30, 40));
+        }
+        assertFalse(Files.exists(directory.resolve("friendships.edges.partial")));
+    }
+
+    @Test
+    void openRejectsFilesThatAreNotStores() throws IOException {
+        Path garbage = directory.resolve("garbage.edges");
+        Files.write(garbage, new byte[128]);
+        Path truncated = directory.resolve("truncated.edges");
+        FriendshipEdgeStore.write(truncated, List.of(friendship(1, 10, 20)).iterator());
+        try (FileChannel channel = FileChannel.open(truncated, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - Long.BYTES);
+        }
+
+        assertThrows(IOException.class, () -> FriendshipEdgeStore.open(garbage));
+        assertThrows(IOException.class, () -> FriendshipEdgeStore.open(truncated));
+    }
+}
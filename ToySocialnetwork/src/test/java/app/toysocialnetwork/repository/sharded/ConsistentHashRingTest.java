@@ -0,0 +1,108 @@
+package app.toysocialnetwork.repository.sharded;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashRingTest {
+    private static final int KEYS = 20_000;
+    private static final int VIRTUAL_NODES = 128;
+
+    private static ConsistentHashRing<String> ring(String... shards) {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(VIRTUAL_NODES);
+        for (String shard : shards) {
+            ring.add(shard, shard);
+        }
+        return ring;
+    }
+
+    private static String[] owners(ConsistentHashRing<String> ring) {
+        String[] owners = new String[KEYS];
+        for (int key = 0; key < KEYS; key++) {
+            owners[key] = ring.shardFor(key);
+        }
+        return owners;
+    }
+
+    @Test
+    void addingAShardOnlyMovesKeysToIt() {
+        ConsistentHashRing<String> ring = ring("db1", "db2", "db3");
+        String[] before = owners(ring);
+
+        ring.add("db4", "db4");
+        String[] after = owners(ring);
+
+        int moved = 0;
+        for (int key = 0; key < KEYS; key++) {
+            if (!before[key].equals(after[key])) {
+                assertEquals("db4", after[key], "key " + key + " moved between two old shards");
+                moved++;
+            }
+        }
+        // about a quarter of the keys, the share of the new shard
+        assertTrue(moved > KEYS * 0.15 && moved < KEYS * 0.35, moved + " keys moved");
+    }
+
+    @Test
+    void removingAShardOnlyMovesItsKeys() {
+        ConsistentHashRing<String> ring = ring("db1", "db2", "db3", "db4");
+        String[] before = owners(ring);
+
+        assertEquals("db2", ring.remove("db2"));
+        String[] after = owners(ring);
+
+        for (int key = 0; key < KEYS; key++) {
+            if (before[key].equals("db2")) {
+                assertNotEquals("db2", after[key], "key " + key + " still on the removed shard");
+            } else {
+                assertEquals(before[key], after[key], "key " + key + " moved off a remaining shard");
+            }
+        }
+        assertEquals(List.of("db1", "db3", "db4"), ring.shards());
+    }
+
+    @Test
+    void addThenRemoveRestoresEveryOwner() {
+        ConsistentHashRing<String> ring = ring("db1", "db2", "db3");
+        String[] before = owners(ring);
+
+        ring.add("db4", "db4");
+        ring.remove("db4");
+
+        assertArrayEquals(before, owners(ring));
+    }
+
+    @Test
+    void placementDependsOnlyOnTheNames() {
+        assertArrayEquals(owners(ring("db1", "db2", "db3")), owners(ring("db3", "db1", "db2")));
+    }
+
+    @Test
+    void shardsShareTheKeysEvenly() {
+        String[] owners = owners(ring("db1", "db2", "db3", "db4"));
+
+        for (String shard : List.of("db1", "db2", "db3", "db4")) {
+            long owned = Arrays.stream(owners).filter(shard::equals).count();
+            assertTrue(owned > KEYS * 0.15 && owned < KEYS * 0.35, shard + " owns " + owned + " keys");
+        }
+    }
+
+    @Test
+    void invalidChangesAreRejected() {
+        ConsistentHashRing<String> ring = ring("db1");
+
+        assertThrows(IllegalArgumentException.class, () -> ring.add("db1", "other"));
+        assertNull(ring.remove("db9"));
+        assertEquals("db1", ring.remove("db1"));
+        assertThrows(IllegalStateException.class, () -> ring.shardFor(1));
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing<String>(0));
+    }
+}
@@ -0,0 +1,152 @@
+package app.toysocialnetwork.repository.sharded;
+
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.validators.MessageValidation;
+import app.toysocialnetwork.repository.MessageRepository;
+import app.toysocialnetwork.repository.memory.InMemoryMessageRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedRepositoryTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 1, 31, 12, 0);
+    private static final int MESSAGES = 3000;
+
+    /**
+     * An in-memory shard that can run a step of a concurrent caller while it is being drained or filled
+     */
+    private static class Shard extends InMemoryMessageRepository {
+        volatile Runnable onStream = () -> {
+        };
+        volatile LongConsumer onSave = id -> {
+        };
+
+        Shard() {
+            super(new MessageValidation());
+        }
+
+        @Override
+        public Stream<Message> streamAll() {
+            Stream<Message> entities = super.streamAll();
+            onStream.run();
+            return entities;
+        }
+
+        @Override
+        public Optional<Message> save(Message message) {
+            Optional<Message> saved = super.save(message);
+            onSave.accept(message.getId());
+            return saved;
+        }
+    }
+
+    private final ConsistentHashRing<MessageRepository> ring = new ConsistentHashRing<>(64);
+    private final AtomicLong ids = new AtomicLong();
+    private final ShardedMessageRepository repository = new ShardedMessageRepository(ring, ids::incrementAndGet);
+
+    private List<Long> saveMessages() {
+        List<Long> saved = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            saved.add(repository.save(new Message((long) i, (long) i + MESSAGES, "message " + i, DATE)).orElseThrow().getId());
+        }
+        return saved;
+    }
+
+    private static long count(MessageRepository shard) {
+        try (Stream<Message> messages = shard.streamAll()) {
+            return messages.count();
+        }
+    }
+
+    private void assertEveryMessageIsOnItsShard() {
+        for (MessageRepository shard : ring.shards()) {
+            try (Stream<Message> messages = shard.streamAll()) {
+                messages.forEach(message -> assertSame(shard, ring.shardFor(repository.shardKey(message))));
+            }
+        }
+    }
+
+    @Test
+    void addingAShardMovesItTheMessagesItOwns() {
+        ring.add("db1", new Shard());
+        ring.add("db2", new Shard());
+        List<Long> saved = saveMessages();
+        Shard added = new Shard();
+
+        int moved = repository.addShard("db3", added);
+
+        // more than one chunk of moves
+        assertTrue(moved > 500, moved + " moved");
+        assertEquals(moved, count(added));
+        assertEveryMessageIsOnItsShard();
+        assertEquals(MESSAGES, count(repository));
+        saved.forEach(id -> assertTrue(repository.findOne(id).isPresent(), "message " + id + " lost"));
+    }
+
+    @Test
+    void removingAShardMovesAwayAllItsMessages() {
+        Shard removed = new Shard();
+        ring.add("db1", removed);
+        ring.add("db2", new Shard());
+        List<Long> saved = saveMessages();
+        long onRemoved = count(removed);
+
+        assertEquals(onRemoved, repository.removeShard("db1"));
+
+        assertEquals(0, count(removed));
+        assertEquals(MESSAGES, count(repository));
+        saved.forEach(id -> assertTrue(repository.findOne(id).isPresent(), "message " + id + " lost"));
+    }
+
+    @Test
+    void aMessageDeletedAfterItWasStreamedIsNotMovedBack() {
+        Shard source = new Shard();
+        ring.add("db1", source);
+        List<Long> saved = saveMessages();
+        source.onStream = () -> saved.stream().filter(id -> id % 2 == 0).forEach(repository::delete);
+
+        repository.addShard("db2", new Shard());
+
+        for (Long id : saved) {
+            assertEquals(id % 2 != 0, repository.findOne(id).isPresent(), "message " + id);
+        }
+        assertEveryMessageIsOnItsShard();
+    }
+
+    @Test
+    void aMessageDeletedWhileItWasCopiedIsDeletedFromItsNewShard() {
+        Shard source = new Shard();
+        ring.add("db1", source);
+        List<Long> saved = saveMessages();
+        Shard added = new Shard();
+        Set<Long> deleted = ConcurrentHashMap.newKeySet();
+        // a delete that reached the new shard before the copy and the old one after it
+        added.onSave = id -> {
+            if (id % 2 == 0) {
+                source.delete(id);
+                deleted.add(id);
+            }
+        };
+
+        int moved = repository.addShard("db2", added);
+
+        assertTrue(deleted.size() > 100, deleted.size() + " deleted");
+        for (Long id : saved) {
+            assertEquals(!deleted.contains(id), repository.findOne(id).isPresent(), "message " + id);
+        }
+        assertEquals(moved, count(added));
+        assertEveryMessageIsOnItsShard();
+    }
+}
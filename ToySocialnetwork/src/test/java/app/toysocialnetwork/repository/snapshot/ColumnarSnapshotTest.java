@@ -0,0 +1,164 @@
+package app.toysocialnetwork.repository.snapshot;
+
+import app.toysocialnetwork.domain.Friendship;
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.Request;
+import app.toysocialnetwork.domain.User;
+import app.toysocialnetwork.domain.compact.FriendshipView;
+import app.toysocialnetwork.domain.compact.MessageView;
+import app.toysocialnetwork.domain.compact.RequestView;
+import app.toysocialnetwork.domain.compact.UserView;
+import app.toysocialnetwork.domain.validators.FriendshipValidation;
+import app.toysocialnetwork.domain.validators.MessageValidation;
+import app.toysocialnetwork.domain.validators.RequestValidation;
+import app.toysocialnetwork.domain.validators.UserValidation;
+import app.toysocialnetwork.repository.memory.InMemoryFriendshipRepository;
+import app.toysocialnetwork.repository.memory.InMemoryMessageRepository;
+import app.toysocialnetwork.repository.memory.InMemoryRequestRepository;
+import app.toysocialnetwork.repository.memory.InMemoryUserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarSnapshotTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 1, 31, 12, 0, 0, 123_000_000);
+
+    @TempDir
+    Path directory;
+
+    private final List<User> users = List.of(
+            user(1, "Ana", "Pop", "anapop"),
+            user(2, "Ion", "Pop", "ionpop"),
+            user(5, "Ana", "Ionescu", "anaionescu"));
+    private final List<Friendship> friendships = List.of(friendship(7, 1, 2), friendship(8, 5, 1));
+    private final List<Request> requests = List.of(request(3, 2, 5));
+    private final List<Message> messages = List.of(
+            message(10, 1, 2, "Salut!"),
+            message(11, 2, 1, "Ce faci? \u0103\u00ee\u0219\u021b \uD83D\uDC4B"),
+            message(12, 5, 1, "x".repeat(255)));
+
+    private Path write() throws IOException {
+        Path file = directory.resolve("network.snapshot");
+        ColumnarSnapshot.write(file, users.stream(), friendships.stream(), requests.stream(), messages.stream());
+        return file;
+    }
+
+    @Test
+    void writeThenOpenKeepsEveryRow() throws IOException {
+        ColumnarSnapshot snapshot = ColumnarSnapshot.open(write());
+
+        assertEquals(users.size(), snapshot.userCount());
+        assertEquals(friendships.size(), snapshot.friendshipCount());
+        assertEquals(requests.size(), snapshot.requestCount());
+        assertEquals(messages.size(), snapshot.messageCount());
+        for (int row = 0; row < users.size(); row++) {
+            assertEquals(UserView.of(users.get(row)), snapshot.user(row));
+        }
+        for (int row = 0; row < friendships.size(); row++) {
+            assertEquals(FriendshipView.of(friendships.get(row)), snapshot.friendship(row));
+        }
+        assertEquals(RequestView.of(requests.get(0)), snapshot.request(0));
+        for (int row = 0; row < messages.size(); row++) {
+            assertEquals(MessageView.of(messages.get(row)), snapshot.message(row));
+        }
+        assertEquals(List.of("anapop", "ionpop", "anaionescu"), snapshot.usernames());
+    }
+
+    @Test
+    void repeatedNamesAreDecodedOnce() throws IOException {
+        ColumnarSnapshot snapshot = ColumnarSnapshot.open(write());
+
+        assertSame(snapshot.user(0).firstName(), snapshot.user(2).firstName());
+        assertSame(snapshot.user(0).lastName(), snapshot.user(1).lastName());
+    }
+
+    @Test
+    void emptyNetworkRoundTrips() throws IOException {
+        Path file = directory.resolve("empty.snapshot");
+        ColumnarSnapshot.write(file, Stream.empty(), Stream.empty(), Stream.empty(), Stream.empty());
+
+        ColumnarSnapshot snapshot = ColumnarSnapshot.open(file);
+
+        assertEquals(0, snapshot.userCount());
+        assertEquals(0, snapshot.friendshipCount());
+        assertEquals(0, snapshot.requestCount());
+        assertEquals(0, snapshot.messageCount());
+        assertTrue(snapshot.usernames().isEmpty());
+    }
+
+    @Test
+    void restoreIntoFillsTheRepositoriesWithTheirIds() throws IOException {
+        ColumnarSnapshot snapshot = ColumnarSnapshot.open(write());
+        InMemoryUserRepository userRepo = new InMemoryUserRepository(new UserValidation());
+        InMemoryFriendshipRepository friendshipRepo = new InMemoryFriendshipRepository(new FriendshipValidation());
+        InMemoryRequestRepository requestRepo = new InMemoryRequestRepository(new RequestValidation(), friendshipRepo);
+        InMemoryMessageRepository messageRepo = new InMemoryMessageRepository(new MessageValidation());
+
+        snapshot.restoreInto(userRepo, friendshipRepo, requestRepo, messageRepo);
+
+        assertEquals("anaionescu", userRepo.findOne(5L).orElseThrow().getUsername());
+        assertEquals(8L, friendshipRepo.findBetween(1L, 5L).orElseThrow().getId());
+        assertEquals(3L, requestRepo.findBetween(2L, 5L).orElseThrow().getId());
+        assertEquals(2, messageRepo.findBetween(1L, 2L).size());
+        assertEquals(6L, userRepo.save(new User("Maria", "Pop", "mariapop", "secret")).orElseThrow().getId());
+    }
+
+    @Test
+    void writeLeavesNoColumnFilesBehind() throws IOException {
+        write();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(directory.resolve("network.snapshot")), files.toList());
+        }
+    }
+
+    @Test
+    void openRejectsTruncatedAndForeignFiles() throws IOException {
+        Path truncated = write();
+        try (FileChannel channel = FileChannel.open(truncated, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        Path foreign = directory.resolve("foreign.snapshot");
+        Files.write(foreign, new byte[256]);
+
+        assertThrows(IOException.class, () -> ColumnarSnapshot.open(truncated));
+        assertThrows(IOException.class, () -> ColumnarSnapshot.open(foreign));
+    }
+
+    private static User user(long id, String firstName, String lastName, String username) {
+        User user = new User(firstName, lastName, username, "secret");
+        user.setId(id);
+        return user;
+    }
+
+    private static Friendship friendship(long id, long user1Id, long user2Id) {
+        Friendship friendship = new Friendship(user1Id, user2Id, DATE);
+        friendship.setId(id);
+        return friendship;
+    }
+
+    private static Request request(long id, long senderId, long receiverId) {
+        Request request = new Request(senderId, receiverId);
+        request.setId(id);
+        return request;
+    }
+
+    private static Message message(long id, long from, long to, String text) {
+        Message message = new Message(from, to, text, DATE.plusMinutes(id));
+        message.setId(id);
+        return message;
+    }
+}
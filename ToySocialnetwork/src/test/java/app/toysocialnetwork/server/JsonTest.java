@@ -0,0 +1,116 @@
+package app.toysocialnetwork.server;
+
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonTest {
+    @Test
+    void stringEscapesQuotesBackslashesAndControlCharacters() {
+        assertEquals("\"say \\\"hi\\\"\"", Json.string("say \"hi\""));
+        assertEquals("\"C:\\\\temp\"", Json.string("C:\\temp"));
+        assertEquals("\"a\\nb\\rc\\td\"", Json.string("a\nb\rc\td"));
+        assertEquals("\"\\u0000\\u001f\"", Json.string("\u0000\u001f"));
+        assertEquals("\"\u0103 \uD83D\uDC4B /\"", Json.string("\u0103 \uD83D\uDC4B /"));
+        assertEquals("null", Json.string(null));
+        assertEquals("\"\"", Json.string(""));
+    }
+
+    @Test
+    void parsedStringsRoundTrip() {
+        String text = "quote \" backslash \\ newline \n tab \t bell \u0007 unicode \u0219 \uD83D\uDC4B";
+
+        Map<String, String> values = Json.parseObject("{\"text\":" + Json.string(text) + "}");
+
+        assertEquals(text, values.get("text"));
+    }
+
+    @Test
+    void parseObjectKeepsLiteralsAsText() {
+        Map<String, String> values = Json.parseObject(" {\n \"id\" : 42 , \"ratio\":-1.5e3,\"ok\":true,\t\"none\":null, \"name\":\"Ana\" }\n");
+
+        assertEquals(List.of("id", "ratio", "ok", "none", "name"), List.copyOf(values.keySet()));
+        assertEquals("42", values.get("id"));
+        assertEquals("-1.5e3", values.get("ratio"));
+        assertEquals("true", values.get("ok"));
+        assertTrue(values.containsKey("none"));
+        assertNull(values.get("none"));
+        assertEquals("Ana", values.get("name"));
+    }
+
+    @Test
+    void parseObjectDecodesEscapes() {
+        Map<String, String> values = Json.parseObject("{\"text\":\"a\\/b\\\\c\\\"d\\u0041\\u00e9\\b\\f\"}");
+
+        assertEquals("a/b\\c\"dA\u00e9\b\f", values.get("text"));
+    }
+
+    @Test
+    void parseObjectAcceptsAnEmptyObject() {
+        assertTrue(Json.parseObject("{}").isEmpty());
+        assertTrue(Json.parseObject("  { \n }  ").isEmpty());
+    }
+
+    @Test
+    void parseObjectRejectsMalformedJson() {
+        for (String json : List.of(
+                "",
+                "   ",
+                "[]",
+                "{",
+                "{\"a\":1",
+                "{\"a\" 1}",
+                "{\"a\":1,}",
+                "{\"a\":1 \"b\":2}",
+                "{a:1}",
+                "{\"a\":}",
+                "{\"a\":\"unterminated}",
+                "{\"a\":\"\\u12\"}",
+                "{\"a\":\"\\uZZZZ\"}",
+                "{\"a\":1} trailing",
+                "{\"a\":{\"b\":1}}",
+                "{\"a\":[1,2]}")) {
+            assertThrows(IllegalArgumentException.class, () -> Json.parseObject(json), json);
+        }
+    }
+
+    @Test
+    void userLeavesOutThePassword() {
+        User user = new User("Ana", "Pop", "ana\"pop", "secret");
+        user.setId(7L);
+
+        String json = Json.user(user);
+
+        assertEquals("{\"id\":7,\"firstName\":\"Ana\",\"lastName\":\"Pop\",\"username\":\"ana\\\"pop\"}", json);
+        assertFalse(json.contains("secret"));
+    }
+
+    @Test
+    void arraySerializesEveryItem() {
+        Message first = new Message(1L, 2L, "line\none", LocalDateTime.of(2024, 1, 31, 12, 0));
+        first.setId(10L);
+        Message second = new Message(2L, 1L, "two", LocalDateTime.of(2024, 1, 31, 12, 1));
+        second.setId(11L);
+
+        String json = Json.array(List.of(first, second), Json::message);
+
+        assertEquals("[{\"id\":10,\"from\":1,\"to\":2,\"text\":\"line\\none\",\"date\":\"2024-01-31T12:00\"},"
+                + "{\"id\":11,\"from\":2,\"to\":1,\"text\":\"two\",\"date\":\"2024-01-31T12:01\"}]", json);
+        assertEquals("[]", Json.array(List.<Message>of(), Json::message));
+    }
+
+    @Test
+    void errorIsAnEscapedObject() {
+        assertEquals(Map.of("error", "Bad \"id\"\n"), Json.parseObject(Json.error("Bad \"id\"\n")));
+    }
+}
@@ -0,0 +1,180 @@
+package app.toysocialnetwork.service;
+
+import app.toysocialnetwork.domain.Message;
+import app.toysocialnetwork.domain.validators.MessageValidation;
+import app.toysocialnetwork.domain.validators.ValidationException;
+import app.toysocialnetwork.repository.memory.InMemoryMessageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageIngestorTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 1, 31, 12, 0);
+    private static final long LONG_FLUSH_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Records the size of every batch and every message saved on its own
+     */
+    private static class RecordingRepository extends InMemoryMessageRepository {
+        final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+        final List<String> singles = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingRepository() {
+            super(new MessageValidation());
+        }
+
+        @Override
+        public List<Message> saveAll(List<Message> messages) {
+            batches.add(messages.size());
+            return super.saveAll(messages);
+        }
+
+        @Override
+        public Optional<Message> save(Message message) {
+            singles.add(message.getText());
+            return super.save(message);
+        }
+    }
+
+    private final RecordingRepository repository = new RecordingRepository();
+    private MessageIngestor ingestor;
+
+    @AfterEach
+    void closeIngestor() {
+        if (ingestor != null) {
+            ingestor.close();
+        }
+    }
+
+    private static Message message(String text) {
+        return new Message(1L, 2L, text, DATE);
+    }
+
+    private static Message get(CompletableFuture<Message> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void aFullBatchIsFlushedWithoutWaitingForTheInterval() throws Exception {
+        ingestor = new MessageIngestor(repository, 100, 3, LONG_FLUSH_MILLIS);
+
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            results.add(ingestor.submit(message("message " + i)));
+        }
+
+        for (CompletableFuture<Message> result : results) {
+            assertNotNull(get(result).getId());
+        }
+        assertEquals(List.of(3, 3), repository.batches);
+        assertEquals(6, repository.findBetween(1L, 2L).size());
+    }
+
+    @Test
+    void aPartialBatchIsFlushedAfterTheInterval() throws Exception {
+        ingestor = new MessageIngestor(repository, 100, 100, 50);
+
+        CompletableFuture<Message> first = ingestor.submit(message("first"));
+        CompletableFuture<Message> second = ingestor.submit(message("second"));
+
+        get(first);
+        get(second);
+        assertEquals(2, repository.batches.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(repository.singles.isEmpty());
+    }
+
+    @Test
+    void aPartialBatchWaitsForTheInterval() {
+        ingestor = new MessageIngestor(repository, 100, 100, LONG_FLUSH_MILLIS);
+
+        CompletableFuture<Message> result = ingestor.submit(message("waiting"));
+
+        assertThrows(TimeoutException.class, () -> result.get(200, TimeUnit.MILLISECONDS));
+        assertTrue(repository.batches.isEmpty());
+    }
+
+    @Test
+    void aFailedBatchIsRetriedOneByOne() throws Exception {
+        ingestor = new MessageIngestor(repository, 100, 3, LONG_FLUSH_MILLIS);
+
+        CompletableFuture<Message> before = ingestor.submit(message("before"));
+        CompletableFuture<Message> invalid = ingestor.submit(message(""));
+        CompletableFuture<Message> after = ingestor.submit(message("after"));
+
+        assertEquals("before", get(before).getText());
+        assertEquals("after", get(after).getText());
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> get(invalid));
+        assertInstanceOf(ValidationException.class, failure.getCause());
+        assertEquals(List.of("before", "", "after"), repository.singles);
+        assertEquals(2, repository.findBetween(1L, 2L).size());
+    }
+
+    @Test
+    void closeSavesEveryQueuedMessage() throws Exception {
+        ingestor = new MessageIngestor(repository, 1000, 7, LONG_FLUSH_MILLIS);
+
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            results.add(ingestor.submit(message("message " + i)));
+        }
+        ingestor.close();
+
+        assertEquals(0, ingestor.queued());
+        for (CompletableFuture<Message> result : results) {
+            assertTrue(result.isDone());
+            get(result);
+        }
+        assertEquals(500, repository.findBetween(1L, 2L).size());
+        assertTrue(repository.batches.stream().allMatch(size -> size <= 7), repository.batches.toString());
+    }
+
+    @Test
+    void closeDoesNotWaitForTheFlushInterval() throws Exception {
+        ingestor = new MessageIngestor(repository, 100, 100, LONG_FLUSH_MILLIS);
+        CompletableFuture<Message> result = ingestor.submit(message("pending"));
+
+        long start = System.nanoTime();
+        ingestor.close();
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals("pending", get(result).getText());
+    }
+
+    @Test
+    void aClosedIngestorRefusesMessages() {
+        ingestor = new MessageIngestor(repository, 10, 1, 0);
+        ingestor.close();
+
+        assertThrows(IllegalStateException.class, () -> ingestor.submit(message("too late")));
+    }
+
+    @Test
+    void tuningAppliesToTheNextBatch() throws Exception {
+        ingestor = new MessageIngestor(repository, 100, 100, LONG_FLUSH_MILLIS);
+        ingestor.tune(2, LONG_FLUSH_MILLIS);
+
+        CompletableFuture<Message> first = ingestor.submit(message("first"));
+        CompletableFuture<Message> second = ingestor.submit(message("second"));
+
+        get(first);
+        get(second);
+        assertEquals(List.of(2), repository.batches);
+        assertThrows(IllegalArgumentException.class, () -> ingestor.tune(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new MessageIngestor(repository, 0, 1, 0));
+    }
+}
@@ -0,0 +1,122 @@
+package app.toysocialnetwork.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigTest {
+    private static final String KEY = "messages.conversation.recentDays";
+    private static final String VARIABLE = "TSN_MESSAGES_CONVERSATION_RECENTDAYS";
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearOverrides() {
+        System.clearProperty(KEY);
+        System.clearProperty("config.file");
+        Config.reload();
+    }
+
+    private Path externalFile(String... lines) throws IOException {
+        return Files.write(directory.resolve("external.properties"), List.of(lines));
+    }
+
+    @Test
+    void defaultsComeFromTheClasspath() {
+        Map<String, String> values = Config.load(name -> null);
+
+        assertEquals("30", values.get(KEY));
+        assertEquals("round-robin", values.get("db.replicas.selection"));
+    }
+
+    @Test
+    void eachSourceOverridesTheOnesBelowIt() throws IOException {
+        System.setProperty("config.file", externalFile(KEY + "=7").toString());
+        assertEquals("7", Config.load(name -> null).get(KEY));
+
+        Map<String, String> environment = Map.of(VARIABLE, "14");
+        assertEquals("14", Config.load(environment::get).get(KEY));
+
+        System.setProperty(KEY, "21");
+        assertEquals("21", Config.load(environment::get).get(KEY));
+    }
+
+    @Test
+    void theExternalFileCanBeNamedInTheEnvironment() throws IOException {
+        String file = externalFile(KEY + "=60", "extra.key=extra").toString();
+
+        Map<String, String> values = Config.load(Map.of("TSN_CONFIG_FILE", file)::get);
+
+        assertEquals("60", values.get(KEY));
+        assertEquals("extra", values.get("extra.key"));
+    }
+
+    @Test
+    void onlyPropertiesWithADefaultAreOverridden() {
+        System.setProperty("no.such.property", "value");
+        try {
+            Map<String, String> values = Config.load(Map.of("TSN_NO_SUCH_PROPERTY", "value")::get);
+
+            assertFalse(values.containsKey("no.such.property"));
+        } finally {
+            System.clearProperty("no.such.property");
+        }
+    }
+
+    @Test
+    void aMissingExternalFileIsAnError() {
+        System.setProperty("config.file", directory.resolve("missing.properties").toString());
+
+        assertThrows(RuntimeException.class, () -> Config.load(name -> null));
+    }
+
+    @Test
+    void reloadTellsTheListenersOfTheChangedProperties() {
+        List<String> seen = new ArrayList<>();
+        // listeners stay registered, so this one only fails for the value set here
+        Config.onChange(KEY, value -> {
+            if ("45".equals(value)) {
+                throw new IllegalStateException("a failing listener");
+            }
+        });
+        Config.onChange(KEY, seen::add);
+
+        System.setProperty(KEY, "45");
+        List<String> changed = Config.reload();
+
+        assertEquals(List.of(KEY), changed);
+        assertEquals(45, Config.getInt(KEY));
+        assertEquals(List.of("45"), seen);
+        assertTrue(Config.reload().isEmpty());
+
+        System.clearProperty(KEY);
+        Config.reload();
+        assertEquals(List.of("45", "30"), seen);
+    }
+
+    @Test
+    void typedGettersRejectInvalidValues() {
+        System.setProperty(KEY, "many");
+        Config.reload();
+
+        assertThrows(IllegalStateException.class, () -> Config.getInt(KEY));
+        assertThrows(IllegalStateException.class, () -> Config.getBoolean(KEY));
+        assertThrows(IllegalStateException.class, () -> Config.getString("no.such.property"));
+        assertNull(Config.getProperty("no.such.property"));
+        assertTrue(Config.getList("db.replicas.urls").isEmpty());
+    }
+}
@@ -0,0 +1,142 @@
+package app.toysocialnetwork.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest {
+    /**
+     * The state of a fake physical connection
+     */
+    private static class Physical {
+        boolean closed;
+        boolean autoCommit = true;
+        int rollbacks;
+    }
+
+    private final List<Physical> opened = new ArrayList<>();
+
+    private Connection open() {
+        Physical physical = new Physical();
+        opened.add(physical);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "close" -> {
+                        physical.closed = true;
+                        yield null;
+                    }
+                    case "isClosed" -> physical.closed;
+                    case "getAutoCommit" -> physical.autoCommit;
+                    case "setAutoCommit" -> {
+                        physical.autoCommit = (Boolean) args[0];
+                        yield null;
+                    }
+                    case "rollback" -> {
+                        physical.rollbacks++;
+                        yield null;
+                    }
+                    case "commit" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @Test
+    void returnedConnectionsAreReused() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open, 2, 100);
+
+        pool.getConnection().close();
+        pool.getConnection().close();
+        try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+            assertEquals(2, pool.borrowed());
+        }
+
+        assertEquals(2, opened.size());
+        assertEquals(0, pool.borrowed());
+        pool.close();
+        assertTrue(opened.stream().allMatch(physical -> physical.closed));
+    }
+
+    @Test
+    void borrowingFromAnExhaustedPoolTimesOut() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open, 1, 50);
+        Connection held = pool.getConnection();
+
+        assertThrows(SQLException.class, pool::getConnection);
+
+        held.close();
+        pool.getConnection().close();
+        assertEquals(1, opened.size());
+    }
+
+    @Test
+    void connectionsGoBackInAutoCommitMode() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open, 1, 100);
+
+        try (Connection conn = pool.getConnection()) {
+            conn.setAutoCommit(false);
+        }
+
+        assertTrue(opened.get(0).autoCommit);
+        assertEquals(1, opened.get(0).rollbacks);
+        try (Connection conn = pool.getConnection()) {
+            assertTrue(conn.getAutoCommit());
+        }
+        assertEquals(1, opened.get(0).rollbacks);
+    }
+
+    @Test
+    void aClosedConnectionIsReturnedOnlyOnce() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open, 2, 100);
+        AtomicInteger done = new AtomicInteger();
+        Connection conn = pool.getConnection(done::incrementAndGet);
+
+        conn.commit();
+        conn.close();
+        conn.close();
+
+        assertEquals(2, done.get());
+        assertEquals(0, pool.borrowed());
+        assertTrue(conn.isClosed());
+        assertFalse(opened.get(0).closed);
+        assertThrows(SQLException.class, conn::commit);
+    }
+
+    @Test
+    void brokenConnectionsAreNotHandedOutAgain() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open, 1, 100);
+        pool.getConnection().close();
+        opened.get(0).closed = true;
+
+        pool.getConnection().close();
+
+        assertEquals(2, opened.size());
+    }
+
+    @Test
+    void shrinkingClosesIdleConnectionsAndLimitsBorrowers() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open, 3, 50);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        Connection third = pool.getConnection();
+        first.close();
+        second.close();
+
+        pool.resize(1, 50);
+
+        assertEquals(1, opened.stream().filter(physical -> physical.closed).count());
+        assertThrows(SQLException.class, pool::getConnection);
+        third.close();
+        pool.getConnection().close();
+        assertThrows(IllegalArgumentException.class, () -> pool.resize(0, 50));
+    }
+}
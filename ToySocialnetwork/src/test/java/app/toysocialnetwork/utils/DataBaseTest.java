@@ -0,0 +1,229 @@
+package app.toysocialnetwork.utils;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DataBaseTest {
+    private static final String PREFIX = "jdbc:replicatest:";
+    private static final String PRIMARY = PREFIX + "primary";
+
+    /**
+     * Opens fake connections that report the url they were opened for as their catalog;
+     * urls containing "down" cannot be reached
+     */
+    private static class FakeDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            if (url.contains("down")) {
+                throw new SQLException("Connection refused: " + url);
+            }
+            String name = url.substring(PREFIX.length());
+            boolean[] closed = {false};
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "getCatalog" -> name;
+                        case "close" -> {
+                            closed[0] = true;
+                            yield null;
+                        }
+                        case "isClosed" -> closed[0];
+                        case "getAutoCommit" -> true;
+                        case "setAutoCommit", "commit", "rollback" -> null;
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(PREFIX);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+
+    private static final Driver DRIVER = new FakeDriver();
+
+    private DataBase dataBase;
+
+    @BeforeAll
+    static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(DRIVER);
+    }
+
+    @AfterAll
+    static void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(DRIVER);
+    }
+
+    @AfterEach
+    void closeDataBase() {
+        if (dataBase != null) {
+            dataBase.close();
+        }
+    }
+
+    private DataBase dataBase(ReplicaSelection selection, long stickyMillis, String... replicas) {
+        List<String> urls = new ArrayList<>();
+        for (String replica : replicas) {
+            urls.add(PREFIX + replica);
+        }
+        dataBase = new DataBase(PRIMARY, "user", "secret", 5, 100, null, urls, selection, stickyMillis);
+        return dataBase;
+    }
+
+    /**
+     * Borrow a read connection, give it back and tell where it went
+     */
+    private static String read(DataBase dataBase) throws SQLException {
+        try (Connection conn = dataBase.getReadConnection()) {
+            return conn.getCatalog();
+        }
+    }
+
+    private static void write(DataBase dataBase) throws SQLException {
+        try (Connection conn = dataBase.getConnection()) {
+            assertEquals("primary", conn.getCatalog());
+        }
+    }
+
+    @Test
+    void withoutReplicasReadsGoToThePrimary() throws SQLException {
+        DataBase dataBase = dataBase(ReplicaSelection.ROUND_ROBIN, 0);
+
+        assertEquals("primary", read(dataBase));
+        assertEquals(0, dataBase.replicaCount());
+    }
+
+    @Test
+    void roundRobinTakesEachReplicaInTurn() throws SQLException {
+        DataBase dataBase = dataBase(ReplicaSelection.ROUND_ROBIN, 0, "first", "second", "third");
+
+        List<String> replicas = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            replicas.add(read(dataBase));
+        }
+
+        assertEquals(List.of("first", "second", "third", "first", "second", "third"), replicas);
+    }
+
+    @Test
+    void leastLoadedTakesTheReplicaWithFewestBorrowedConnections() throws SQLException {
+        DataBase dataBase = dataBase(ReplicaSelection.LEAST_LOADED, 0, "first", "second", "third");
+        Connection first = dataBase.getReadConnection();
+        Connection second = dataBase.getReadConnection();
+        Connection third = dataBase.getReadConnection();
+        assertEquals(List.of("first", "second", "third"), List.of(first.getCatalog(), second.getCatalog(), third.getCatalog()));
+
+        second.close();
+
+        // the turn is the first replica's, but it is busier than the second
+        assertEquals("second", read(dataBase));
+        first.close();
+        third.close();
+    }
+
+    @Test
+    void readsStayOnThePrimaryForAWhileAfterAWrite() throws SQLException, InterruptedException {
+        DataBase dataBase = dataBase(ReplicaSelection.ROUND_ROBIN, 200, "replica");
+        assertEquals("replica", read(dataBase));
+
+        write(dataBase);
+
+        assertEquals("primary", read(dataBase));
+        Thread.sleep(300);
+        assertEquals("replica", read(dataBase));
+    }
+
+    @Test
+    void aSessionReadsItsWritesMadeOnAnotherThread() throws Exception {
+        DataBase dataBase = dataBase(ReplicaSelection.ROUND_ROBIN, 60_000, "replica");
+        Thread writer = new Thread(() -> {
+            try (DataBase.Session ignored = DataBase.session("writing-session")) {
+                write(dataBase);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        writer.join();
+
+        try (DataBase.Session ignored = DataBase.session("writing-session")) {
+            assertEquals("primary", read(dataBase));
+        }
+        try (DataBase.Session ignored = DataBase.session("other-session")) {
+            assertEquals("replica", read(dataBase));
+        }
+    }
+
+    @Test
+    void aRecentWriteOutlivesThePurgeOfOtherSessions() throws SQLException {
+        DataBase dataBase = dataBase(ReplicaSelection.ROUND_ROBIN, 60_000, "replica");
+        DataBase.sessionWrote("recent-session");
+
+        for (int i = 0; i < 20_000; i++) {
+            DataBase.sessionWrote("bulk-session-" + i);
+        }
+
+        try (DataBase.Session ignored = DataBase.session("recent-session")) {
+            assertEquals("primary", read(dataBase));
+        }
+    }
+
+    @Test
+    void anUnreachableReplicaFallsBackToThePrimary() throws SQLException {
+        DataBase dataBase = dataBase(ReplicaSelection.ROUND_ROBIN, 0, "down", "replica");
+
+        assertEquals("primary", read(dataBase));
+        assertEquals("replica", read(dataBase));
+    }
+
+    @Test
+    void selectionsAreNamedAsInTheProperties() {
+        assertEquals(ReplicaSelection.ROUND_ROBIN, ReplicaSelection.fromKey("round-robin"));
+        assertEquals(ReplicaSelection.LEAST_LOADED, ReplicaSelection.fromKey(ReplicaSelection.LEAST_LOADED.key()));
+        assertThrows(IllegalArgumentException.class, () -> ReplicaSelection.fromKey("random"));
+    }
+}
@@ -0,0 +1,125 @@
+package app.toysocialnetwork.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationScopeTest {
+    private static final long GAP = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Run on a thread of its own, so no burst or scope is left over from another test
+     */
+    private static void onFreshThread(boolean daemon, Runnable action) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                action.run();
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        thread.setDaemon(daemon);
+        thread.start();
+        thread.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    @Test
+    void statementsInAScopeAreCountedInIt() throws InterruptedException {
+        onFreshThread(false, () -> {
+            try (OperationScope scope = OperationScope.open("GET /api/users")) {
+                assertSame(scope, OperationScope.forStatement(0, GAP));
+                assertEquals(1, scope.executed("SELECT 1"));
+                assertEquals(2, OperationScope.forStatement(TimeUnit.SECONDS.toNanos(10), GAP).executed("SELECT 1"));
+                assertEquals(1, scope.executed("SELECT 2"));
+                assertEquals("GET /api/users", scope.name());
+            }
+        });
+    }
+
+    @Test
+    void aNestedScopeJoinsTheOuterOne() throws InterruptedException {
+        onFreshThread(false, () -> {
+            try (OperationScope outer = OperationScope.open("outer")) {
+                try (OperationScope inner = OperationScope.open("inner")) {
+                    assertNotSame(outer, inner);
+                    outer.executed("SELECT 1");
+                    assertEquals(2, OperationScope.forStatement(0, GAP).executed("SELECT 1"));
+                }
+                // closing the joined scope leaves the outer one open
+                assertSame(outer, OperationScope.forStatement(0, GAP));
+            }
+        });
+    }
+
+    @Test
+    void closeEndsTheScope() throws InterruptedException {
+        onFreshThread(false, () -> {
+            OperationScope scope = OperationScope.open("first");
+            scope.close();
+
+            assertNotSame(scope, OperationScope.forStatement(0, GAP));
+        });
+    }
+
+    @Test
+    void statementsOutsideAScopeAreGroupedIntoBursts() throws InterruptedException {
+        onFreshThread(false, () -> {
+            OperationScope burst = OperationScope.forStatement(0, GAP);
+            assertTrue(burst.name().startsWith("statements on thread"));
+
+            assertSame(burst, OperationScope.forStatement(40 * MILLI, GAP));
+            assertSame(burst, OperationScope.forStatement(80 * MILLI, GAP));
+            // the gap is measured from the last statement, not the first
+            OperationScope next = OperationScope.forStatement(140 * MILLI, GAP);
+            assertNotSame(burst, next);
+            assertSame(next, OperationScope.forStatement(141 * MILLI, GAP));
+        });
+    }
+
+    @Test
+    void aBurstLastsAtMostASecond() throws InterruptedException {
+        onFreshThread(false, () -> {
+            OperationScope burst = OperationScope.forStatement(0, GAP);
+            long now = 0;
+            while (now < 1000 * MILLI) {
+                now += 10 * MILLI;
+                assertSame(burst, OperationScope.forStatement(now, GAP));
+            }
+
+            assertNotSame(burst, OperationScope.forStatement(now + 10 * MILLI, GAP));
+        });
+    }
+
+    @Test
+    void openingAScopeEndsTheBurst() throws InterruptedException {
+        onFreshThread(false, () -> {
+            OperationScope burst = OperationScope.forStatement(0, GAP);
+            try (OperationScope scope = OperationScope.open("action")) {
+                assertNotSame(burst, scope);
+                assertSame(scope, OperationScope.forStatement(1, GAP));
+            }
+        });
+    }
+
+    @Test
+    void daemonThreadsOutsideAScopeAreNotGrouped() throws InterruptedException {
+        onFreshThread(true, () -> {
+            assertNull(OperationScope.forStatement(0, GAP));
+            try (OperationScope scope = OperationScope.open("batch")) {
+                assertSame(scope, OperationScope.forStatement(0, GAP));
+            }
+        });
+    }
+}
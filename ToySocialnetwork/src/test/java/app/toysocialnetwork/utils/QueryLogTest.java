@@ -0,0 +1,148 @@
+package app.toysocialnetwork.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryLogTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Keeps what is logged, formatted, prefixed with the level
+     */
+    private static class CapturingLogger implements System.Logger {
+        final List<String> messages = new ArrayList<>();
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public boolean isLoggable(Level level) {
+            return true;
+        }
+
+        @Override
+        public void log(Level level, ResourceBundle bundle, String msg, Throwable thrown) {
+            messages.add(level + " " + msg + " " + thrown.getMessage());
+        }
+
+        @Override
+        public void log(Level level, ResourceBundle bundle, String format, Object... params) {
+            messages.add(level + " " + MessageFormat.format(format, params));
+        }
+    }
+
+    private final CapturingLogger logger = new CapturingLogger();
+
+    private static Map<Integer, Object> parameters(Object... values) {
+        Map<Integer, Object> parameters = new TreeMap<>();
+        for (int i = 0; i < values.length; i++) {
+            parameters.put(i + 1, values[i]);
+        }
+        return parameters;
+    }
+
+    @Test
+    void slowQueriesAreLoggedWithTheirParameters() {
+        QueryLog log = new QueryLog(100, 0, 0, 50, logger);
+
+        log.finished("SELECT * FROM users WHERE id = ?", parameters(42L), 99 * MILLI, 1, false);
+        log.finished("SELECT * FROM users WHERE id = ?", parameters(43L), 150 * MILLI, 1, false);
+
+        assertEquals(1, logger.messages.size());
+        String message = logger.messages.get(0);
+        assertTrue(message.startsWith("WARNING Slow query: 150 ms"), message);
+        assertTrue(message.endsWith("SELECT * FROM users WHERE id = ? [1=43]"), message);
+    }
+
+    @Test
+    void queriesReadingTooManyRowsAreLogged() {
+        QueryLog log = new QueryLog(0, 1000, 0, 50, logger);
+
+        log.finished("SELECT * FROM messages", parameters(), MILLI, 1000, false);
+        log.finished("SELECT * FROM messages", parameters(), MILLI, 1001, false);
+
+        assertEquals(1, logger.messages.size());
+        assertTrue(logger.messages.get(0).contains("Query read 1,001 rows, more than 1,000"), logger.messages.get(0));
+    }
+
+    @Test
+    void cursorReadsAreNotChecked() {
+        QueryLog log = new QueryLog(1, 1, 0, 50, logger);
+
+        log.finished("SELECT * FROM messages", parameters(), 5_000 * MILLI, 1_000_000, true);
+
+        assertTrue(logger.messages.isEmpty());
+    }
+
+    @Test
+    void passwordsAndLongParametersAreNotLoggedInFull() {
+        QueryLog log = new QueryLog(1, 0, 0, 50, logger);
+
+        log.finished("UPDATE users SET password = ? WHERE id = ?", parameters("hunter2", 1L), 10 * MILLI, 1, false);
+        log.finished("INSERT INTO messages (text) VALUES (?)", parameters("x".repeat(500)), 10 * MILLI, 1, false);
+
+        assertTrue(logger.messages.get(0).endsWith("[parameters hidden]"), logger.messages.get(0));
+        assertFalse(logger.messages.get(0).contains("hunter2"));
+        assertTrue(logger.messages.get(1).endsWith("[1=" + "x".repeat(100) + "...]"), logger.messages.get(1));
+    }
+
+    @Test
+    void aStatementRepeatedInOneOperationIsLoggedOnceAsNPlusOne() {
+        QueryLog log = new QueryLog(0, 0, 3, 50, logger);
+
+        try (OperationScope ignored = OperationScope.open("GET /api/users/1/friendships")) {
+            for (int i = 0; i < 10; i++) {
+                log.started("SELECT * FROM users WHERE id = ?");
+            }
+            log.started("SELECT * FROM friendships WHERE user_id1 = ?");
+        }
+        try (OperationScope ignored = OperationScope.open("GET /api/users/2/friendships")) {
+            for (int i = 0; i < 3; i++) {
+                log.started("SELECT * FROM users WHERE id = ?");
+            }
+        }
+
+        assertEquals(1, logger.messages.size());
+        String message = logger.messages.get(0);
+        assertTrue(message.startsWith("WARNING Possible N+1: executed more than 3 times in GET /api/users/1/friendships"), message);
+        assertTrue(message.endsWith("SELECT * FROM users WHERE id = ?"), message);
+    }
+
+    @Test
+    void failuresAreLoggedAsErrorsWithTheirParameters() {
+        QueryLog log = new QueryLog(0, 0, 0, 50, logger);
+
+        log.failed("INSERT INTO requests VALUES (?, ?)", parameters(1L, 2L), new SQLException("duplicate key"));
+
+        String message = logger.messages.get(0);
+        assertTrue(message.startsWith("ERROR Query failed from "), message);
+        assertTrue(message.endsWith("INSERT INTO requests VALUES (?, ?) [1=1, 2=2] duplicate key"), message);
+    }
+
+    @Test
+    void zeroLimitsTurnTheChecksOff() {
+        QueryLog log = new QueryLog(0, 0, 0, 50, logger);
+
+        assertFalse(log.isEnabled());
+        log.started("SELECT 1");
+        log.finished("SELECT 1", parameters(), 10_000 * MILLI, 1_000_000, false);
+        assertTrue(logger.messages.isEmpty());
+
+        log.setLimits(0, 0, 1, 50);
+        assertTrue(log.isEnabled());
+    }
+}
@@ -0,0 +1,74 @@
+package app.toysocialnetwork.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaMigratorTest {
+    private TestDatabase database;
+
+    @BeforeEach
+    void createSchema() {
+        database = TestDatabase.create("schema_migrator_test", 2);
+    }
+
+    @AfterEach
+    void dropSchema() throws SQLException {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    private List<String> strings(String query) throws SQLException {
+        List<String> values = new ArrayList<>();
+        try (Connection conn = database.dataBase().getConnection(); Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery(query);
+            while (rs.next()) {
+                values.add(rs.getString(1));
+            }
+        }
+        return values;
+    }
+
+    @Test
+    void everyMigrationIsAppliedOnceInOrder() throws SQLException {
+        new SchemaMigrator(database.dataBase()).migrate();
+
+        assertEquals(List.of("1", "2", "3", "4", "5"), strings("SELECT version FROM schema_version ORDER BY applied_on, version"));
+    }
+
+    @Test
+    void theHotQueriesHaveTheirIndexes() throws SQLException {
+        Set<String> indexes = new TreeSet<>(strings("SELECT indexname FROM pg_indexes WHERE schemaname = current_schema()"));
+
+        for (String index : List.of("users_username_key",
+                "friendships_pair_key", "friendships_user_id1_idx", "friendships_user_id2_idx",
+                "requests_pair_key", "requests_sender_id_idx", "requests_receiver_id_idx",
+                "messages_conversation_idx", "messages_text_search_idx")) {
+            assertTrue(indexes.contains(index), index + " missing from " + indexes);
+        }
+    }
+
+    @Test
+    void usernameLookupsUseTheIndex() throws SQLException {
+        database.execute("INSERT INTO users (first_name, last_name, username, password) "
+                + "SELECT 'First', 'Last', 'user' || n, 'secret' FROM generate_series(1, 5000) n");
+        database.execute("ANALYZE users");
+
+        String plan = String.join("\n", strings("EXPLAIN SELECT id FROM users WHERE username = 'user42'"));
+
+        assertTrue(plan.contains("users_username_key"), plan);
+    }
+}
@@ -0,0 +1,120 @@
+package app.toysocialnetwork.utils;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementTracerTest {
+    private static final String QUERY_EVENT = "app.toysocialnetwork.Query";
+
+    @TempDir
+    Path directory;
+
+    @FunctionalInterface
+    private interface SqlAction {
+        void run() throws SQLException;
+    }
+
+    /**
+     * A prepared statement whose queries return the given number of rows and whose updates change 5 rows
+     */
+    private static PreparedStatement statement(int rows) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "executeQuery" -> resultSet(rows);
+                    case "executeUpdate" -> 5;
+                    case "setLong", "setString", "close" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static ResultSet resultSet(int rows) {
+        int[] left = {rows};
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "next" -> left[0]-- > 0;
+                    case "close" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private List<RecordedEvent> record(SqlAction action) throws IOException, SQLException {
+        try (Recording recording = new Recording()) {
+            recording.enable(QUERY_EVENT).withoutThreshold();
+            recording.start();
+            action.run();
+            recording.stop();
+            Path file = directory.resolve("queries.jfr");
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().equals(QUERY_EVENT))
+                    .toList();
+        }
+    }
+
+    @Test
+    void aQueryIsRecordedWithTheRowsReadWhenItsResultIsClosed() throws IOException, SQLException {
+        String sql = "SELECT id FROM users WHERE id > ?";
+
+        List<RecordedEvent> events = record(() -> {
+            PreparedStatement stmt = (PreparedStatement) StatementTracer.trace(statement(3), sql);
+            stmt.setLong(1, 42);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                // read every row
+            }
+            rs.close();
+            stmt.close();
+        });
+
+        assertEquals(1, events.size());
+        assertEquals(sql, events.get(0).getString("sql"));
+        assertEquals(3, events.get(0).getLong("rows"));
+    }
+
+    @Test
+    void anUpdateIsRecordedWithTheRowsChanged() throws IOException, SQLException {
+        String sql = "DELETE FROM requests WHERE sender_id = ?";
+
+        List<RecordedEvent> events = record(() -> {
+            PreparedStatement stmt = (PreparedStatement) StatementTracer.trace(statement(0), sql);
+            stmt.setLong(1, 7);
+            stmt.executeUpdate();
+            stmt.setLong(1, 8);
+            stmt.executeUpdate();
+        });
+
+        assertEquals(2, events.size());
+        assertTrue(events.stream().allMatch(event -> event.getLong("rows") == 5 && event.getString("sql").equals(sql)));
+    }
+
+    @Test
+    void statementsAreOnlyWrappedWhenSomethingListens() throws IOException, SQLException {
+        QueryLog queryLog = QueryLog.getInstance();
+        Statement plain = statement(0);
+        queryLog.setLimits(0, 0, 0, 0);
+        try {
+            assertSame(plain, StatementTracer.trace(plain, "SELECT 1"));
+            record(() -> assertNotSame(plain, StatementTracer.trace(plain, "SELECT 1")));
+        } finally {
+            queryLog.setLimits(Config.getLong("db.log.slowQueryMillis"), Config.getLong("db.log.rowLimit"),
+                    Config.getLong("db.log.repeatLimit"), Config.getLong("db.log.burstGapMillis"));
+        }
+    }
+}
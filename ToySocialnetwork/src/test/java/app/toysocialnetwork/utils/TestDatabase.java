@@ -0,0 +1,75 @@
+package app.toysocialnetwork.utils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assumptions.abort;
+
+/**
+ * A schema of its own on the configured PostgreSQL, migrated to the latest version, for the tests that need a database.
+ * The test calling {@link #create(String, int)} is skipped when there is no database to connect to.
+ */
+public final class TestDatabase implements AutoCloseable {
+    private final String url = Config.getString("db.url");
+    private final String username = Config.getString("db.username");
+    private final String password = Config.getString("db.password");
+    private final String schema;
+    private final DataBase dataBase;
+
+    private TestDatabase(String schema, int poolSize) {
+        this.schema = schema;
+        try (Connection conn = DriverManager.getConnection(url, username, password);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+            stmt.execute("CREATE SCHEMA " + schema);
+        } catch (SQLException e) {
+            abort("No PostgreSQL at " + url + ": " + e.getMessage());
+        }
+        dataBase = new DataBase(url + (url.contains("?") ? "&" : "?") + "currentSchema=" + schema,
+                username, password, poolSize, 1000, null);
+        new SchemaMigrator(dataBase).migrate();
+    }
+
+    /**
+     * Create an empty, migrated schema, dropping what a previous run may have left in it
+     * @param schema the name of the schema
+     * @param poolSize the maximum number of open connections; a connection waits at most a second for a free one
+     * @return the database
+     */
+    public static TestDatabase create(String schema, int poolSize) {
+        return new TestDatabase(schema, poolSize);
+    }
+
+    /**
+     * @return the database, with the schema as its current schema
+     */
+    public DataBase dataBase() {
+        return dataBase;
+    }
+
+    /**
+     * Run statements on the schema, for setting up and checking what the code under test cannot
+     * @param sql the statements
+     * @throws SQLException if a statement fails
+     */
+    public void execute(String sql) throws SQLException {
+        try (Connection conn = dataBase.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Close the connections and drop the schema
+     * @throws SQLException if the schema cannot be dropped
+     */
+    @Override
+    public void close() throws SQLException {
+        dataBase.close();
+        try (Connection conn = DriverManager.getConnection(url, username, password);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP SCHEMA " + schema + " CASCADE");
+        }
+    }
+}
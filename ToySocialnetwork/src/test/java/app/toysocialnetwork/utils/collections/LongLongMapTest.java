@@ -0,0 +1,93 @@
+package app.toysocialnetwork.utils.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongLongMapTest {
+    private static final long MISSING = -1;
+
+    @Test
+    void removeShiftsBackCollidingKeys() {
+        long[] colliding = LongObjectMapTest.collidingKeys(5);
+        LongLongMap map = new LongLongMap();
+        for (long key : colliding) {
+            map.put(key, key * 10);
+        }
+
+        assertTrue(map.remove(colliding[1]));
+
+        assertEquals(4, map.size());
+        assertFalse(map.containsKey(colliding[1]));
+        for (int i = 0; i < colliding.length; i++) {
+            if (i != 1) {
+                assertEquals(colliding[i] * 10, map.get(colliding[i], MISSING), "key " + colliding[i] + " lost after a removal");
+            }
+        }
+    }
+
+    @Test
+    void removeEveryCollidingKeyInTurn() {
+        long[] colliding = LongObjectMapTest.collidingKeys(6);
+        LongLongMap map = new LongLongMap();
+        for (long key : colliding) {
+            map.put(key, key);
+        }
+
+        for (int removed = 0; removed < colliding.length; removed++) {
+            assertTrue(map.remove(colliding[removed]));
+            assertFalse(map.remove(colliding[removed]));
+            for (int i = removed + 1; i < colliding.length; i++) {
+                assertEquals(colliding[i], map.get(colliding[i], MISSING));
+            }
+        }
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.keys().length);
+    }
+
+    @Test
+    void removeKeepsKeysWhoseProbeWrapsAround() {
+        long[] colliding = LongObjectMapTest.collidingKeys(4, 30);
+        LongLongMap map = new LongLongMap();
+        for (long key : colliding) {
+            map.put(key, key);
+        }
+
+        map.remove(colliding[0]);
+
+        long[] expected = Arrays.copyOfRange(colliding, 1, colliding.length);
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(expected, keys);
+        for (long key : expected) {
+            assertEquals(key, map.get(key, MISSING));
+        }
+    }
+
+    @Test
+    void matchesHashMapUnderRandomPutsAndRemoves() {
+        Random random = new Random(42);
+        LongLongMap map = new LongLongMap();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                long value = random.nextLong();
+                assertEquals(expected.put(key, value) != null, map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key, MISSING)));
+    }
+}
@@ -0,0 +1,109 @@
+package app.toysocialnetwork.utils.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongObjectMapTest {
+    /**
+     * The capacity of a map built with the default constructor
+     */
+    private static final int CAPACITY = 32;
+
+    @Test
+    void removeShiftsBackCollidingKeys() {
+        long[] colliding = collidingKeys(5);
+        LongObjectMap<String> map = new LongObjectMap<>();
+        for (long key : colliding) {
+            map.put(key, "v" + key);
+        }
+
+        assertEquals("v" + colliding[1], map.remove(colliding[1]));
+
+        assertEquals(4, map.size());
+        assertFalse(map.containsKey(colliding[1]));
+        for (int i = 0; i < colliding.length; i++) {
+            if (i != 1) {
+                assertEquals("v" + colliding[i], map.get(colliding[i]), "key " + colliding[i] + " lost after a removal");
+            }
+        }
+    }
+
+    @Test
+    void removeEveryCollidingKeyInTurn() {
+        long[] colliding = collidingKeys(6);
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        for (long key : colliding) {
+            map.put(key, key);
+        }
+
+        for (int removed = 0; removed < colliding.length; removed++) {
+            assertEquals(colliding[removed], map.remove(colliding[removed]));
+            assertNull(map.remove(colliding[removed]));
+            for (int i = removed + 1; i < colliding.length; i++) {
+                assertEquals(colliding[i], map.get(colliding[i]));
+            }
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void removeKeepsKeysWhoseProbeWrapsAround() {
+        long[] colliding = collidingKeys(4, CAPACITY - 2);
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        for (long key : colliding) {
+            map.put(key, key);
+        }
+
+        map.remove(colliding[0]);
+
+        for (int i = 1; i < colliding.length; i++) {
+            assertEquals(colliding[i], map.get(colliding[i]));
+        }
+    }
+
+    @Test
+    void matchesHashMapUnderRandomPutsAndRemoves() {
+        Random random = new Random(42);
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                long value = random.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+    }
+
+    static long[] collidingKeys(int count) {
+        return collidingKeys(count, 3);
+    }
+
+    /**
+     * Find keys that all hash to the same slot of a map of the default capacity
+     */
+    static long[] collidingKeys(int count, int slot) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 1; found < count; key++) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            if (((int) (hash ^ (hash >>> 32)) & (CAPACITY - 1)) == slot) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,90 @@
+package app.toysocialnetwork.utils.jfr;
+
+import app.toysocialnetwork.domain.User;
+import app.toysocialnetwork.domain.validators.FriendshipValidation;
+import app.toysocialnetwork.domain.validators.MessageValidation;
+import app.toysocialnetwork.domain.validators.RequestValidation;
+import app.toysocialnetwork.domain.validators.UserValidation;
+import app.toysocialnetwork.repository.memory.InMemoryFriendshipRepository;
+import app.toysocialnetwork.repository.memory.InMemoryMessageRepository;
+import app.toysocialnetwork.repository.memory.InMemoryRequestRepository;
+import app.toysocialnetwork.repository.memory.InMemoryUserRepository;
+import app.toysocialnetwork.service.Service;
+import app.toysocialnetwork.utils.event.UserEvent;
+import app.toysocialnetwork.utils.observer.Observer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlightRecorderEventsTest {
+    @TempDir
+    Path directory;
+
+    // the service holds observers weakly
+    private final Observer<UserEvent> first = event -> { };
+    private final Observer<UserEvent> second = event -> { };
+
+    private List<RecordedEvent> record(String eventName, Runnable action) throws IOException {
+        try (Recording recording = new Recording()) {
+            recording.enable(eventName).withoutThreshold();
+            recording.start();
+            action.run();
+            recording.stop();
+            Path file = directory.resolve("events.jfr");
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().equals(eventName))
+                    .toList();
+        }
+    }
+
+    @Test
+    void notifyingObserversIsRecordedWithTheEventTypeAndObserverCount() throws IOException {
+        InMemoryFriendshipRepository friendshipRepo = new InMemoryFriendshipRepository(new FriendshipValidation());
+        Service service = new Service(new InMemoryUserRepository(new UserValidation()), friendshipRepo,
+                new InMemoryRequestRepository(new RequestValidation(), friendshipRepo),
+                new InMemoryMessageRepository(new MessageValidation()));
+        service.addUserObserver(first);
+        service.addUserObserver(second);
+
+        List<RecordedEvent> events = record("app.toysocialnetwork.ObserverNotification",
+                () -> service.addUser(new User("Ana", "Pop", "anapop", "secret")));
+
+        assertEquals(1, events.size());
+        assertEquals("UserEvent.ADD", events.get(0).getString("eventType"));
+        assertEquals(2, events.get(0).getInt("observerCount"));
+    }
+
+    @Test
+    void aControllerReloadIsRecordedWithWhatItShows() throws IOException {
+        List<RecordedEvent> events = record("app.toysocialnetwork.ControllerReload", () -> {
+            ControllerReloadEvent event = new ControllerReloadEvent();
+            event.begin();
+            event.finish(FlightRecorderEventsTest.class, "loadFriendships", 12);
+        });
+
+        assertEquals(1, events.size());
+        assertEquals("FlightRecorderEventsTest", events.get(0).getString("controller"));
+        assertEquals("loadFriendships", events.get(0).getString("method"));
+        assertEquals(12, events.get(0).getInt("items"));
+    }
+
+    @Test
+    void eventsAreNotFilledInWhenNothingRecordsThem() {
+        ControllerReloadEvent event = new ControllerReloadEvent();
+        event.begin();
+
+        event.finish(FlightRecorderEventsTest.class, "loadFriendships", 12);
+
+        assertTrue(event.controller == null && event.items == 0);
+    }
+}
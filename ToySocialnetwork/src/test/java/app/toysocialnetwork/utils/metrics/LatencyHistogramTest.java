@@ -0,0 +1,135 @@
+package app.toysocialnetwork.utils.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 0; nanos < 128; nanos++) {
+            histogram.record(nanos);
+        }
+
+        assertEquals(0, histogram.percentile(0));
+        assertEquals(63, histogram.percentile(50));
+        assertEquals(126, histogram.percentile(99));
+        assertEquals(127, histogram.percentile(100));
+        assertEquals(63.5, histogram.mean());
+    }
+
+    @Test
+    void percentilesUseTheRankRoundedUp() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100; nanos++) {
+            histogram.record(nanos);
+        }
+
+        assertEquals(1, histogram.percentile(0));
+        assertEquals(1, histogram.percentile(1));
+        assertEquals(2, histogram.percentile(1.5));
+        assertEquals(99, histogram.percentile(99));
+        assertEquals(100, histogram.percentile(99.9));
+    }
+
+    @Test
+    void largeValuesAreWithinOneSixtyFourthAbove() {
+        List<Long> values = new ArrayList<>();
+        for (long value = 128; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 / 2 + 1) {
+            values.add(value);
+        }
+        long previous = 0;
+        for (long value : values) {
+            long reported = bucketBound(value);
+
+            assertTrue(reported >= value, value + " reported as " + reported);
+            assertTrue(reported - value <= value / 64, value + " reported as " + reported);
+            assertTrue(reported >= previous);
+            previous = reported;
+        }
+    }
+
+    @Test
+    void bucketBoundsAreContiguous() {
+        // the first value past a bucket's upper bound lands in the next bucket, whose bound is higher
+        long bound = bucketBound(127);
+        while (bound < 1_000_000) {
+            long next = bucketBound(bound + 1);
+
+            assertTrue(next > bound, "bucket after " + bound);
+            assertTrue(bucketBound(next) == next && bucketBound(bound + 1 + (next - bound) / 2) == next);
+            bound = next;
+        }
+    }
+
+    /**
+     * The upper bound of the bucket a value lands in, as reported when a larger value is also recorded
+     */
+    private static long bucketBound(long value) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(value);
+        histogram.record(Long.MAX_VALUE);
+        return histogram.percentile(50);
+    }
+
+    @Test
+    void percentilesNeverExceedTheMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_001);
+
+        assertEquals(1_000_001, histogram.percentile(50));
+        assertEquals(1_000_001, histogram.max());
+    }
+
+    @Test
+    void extremesAreRecorded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.percentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.percentile(100));
+        assertEquals(Long.MAX_VALUE, histogram.max());
+    }
+
+    @Test
+    void resetAndEmptyHistogramsReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(99));
+        assertEquals(0.0, histogram.mean());
+
+        histogram.record(5_000);
+        histogram.reset();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(50));
+        assertEquals(0, histogram.max());
+        assertEquals(0.0, histogram.mean());
+    }
+
+    @Test
+    void concurrentRecordsAreAllCounted() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            long offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(offset * 1_000 + i % 1_000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(800_000, histogram.count());
+        assertEquals(7_999, histogram.max());
+    }
+}
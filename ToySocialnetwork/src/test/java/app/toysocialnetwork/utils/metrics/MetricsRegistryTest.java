@@ -0,0 +1,53 @@
+package app.toysocialnetwork.utils.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsRegistryTest {
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    @Test
+    void attributesCanBeReadThroughThePlatformMBeanServer() throws JMException {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.registerMBean();
+        OperationMetrics operation = registry.operation("test.jmx.read");
+        operation.reset();
+        operation.record(TimeUnit.MILLISECONDS.toNanos(2), 5, false);
+        operation.record(TimeUnit.MILLISECONDS.toNanos(4), 1, true);
+        ObjectName name = new ObjectName("app.toysocialnetwork:type=Metrics");
+
+        CompositeData[] operations = (CompositeData[]) server.getAttribute(name, "Operations");
+        String dump = (String) server.getAttribute(name, "Dump");
+
+        CompositeData read = Arrays.stream(operations)
+                .filter(op -> op.get("name").equals("test.jmx.read"))
+                .findFirst().orElseThrow();
+        assertEquals(2L, read.get("calls"));
+        assertEquals(1L, read.get("errors"));
+        assertEquals(5L, read.get("maxRows"));
+        assertTrue((Double) read.get("maxMillis") >= 4.0);
+        assertTrue(dump.contains("test.jmx.read"), dump);
+    }
+
+    @Test
+    void resetCanBeInvokedThroughThePlatformMBeanServer() throws JMException {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.registerMBean();
+        registry.operation("test.jmx.reset").record(1_000, 0, false);
+        ObjectName name = new ObjectName("app.toysocialnetwork:type=Metrics");
+
+        server.invoke(name, "reset", null, null);
+
+        assertEquals(0, registry.operation("test.jmx.reset").snapshot().getCalls());
+    }
+}
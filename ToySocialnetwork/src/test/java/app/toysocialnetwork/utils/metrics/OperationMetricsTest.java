@@ -0,0 +1,57 @@
+package app.toysocialnetwork.utils.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationMetricsTest {
+    @Test
+    void snapshotSummarizesTheCalls() {
+        OperationMetrics metrics = new OperationMetrics("repository.users.findAll");
+        metrics.record(TimeUnit.MILLISECONDS.toNanos(1), 10, false);
+        metrics.record(TimeUnit.MILLISECONDS.toNanos(3), 30, false);
+        metrics.record(TimeUnit.MILLISECONDS.toNanos(8), -1, true);
+
+        OperationSnapshot snapshot = metrics.snapshot();
+
+        assertEquals("repository.users.findAll", snapshot.getName());
+        assertEquals(3, snapshot.getCalls());
+        assertEquals(1, snapshot.getErrors());
+        assertEquals(4.0, snapshot.getMeanMillis(), 1e-9);
+        assertEquals(8.0, snapshot.getMaxMillis(), 1e-9);
+        assertTrue(snapshot.getP50Millis() >= 3.0 && snapshot.getP50Millis() <= 3.0 * 65 / 64, snapshot.getP50Millis() + " ms");
+        assertEquals(8.0, snapshot.getP99Millis(), 1e-9);
+        // the call without rows counts as a call, but adds no rows
+        assertEquals(40.0 / 3, snapshot.getRowsPerCall(), 1e-9);
+        assertEquals(30, snapshot.getMaxRows());
+    }
+
+    @Test
+    void rowsReadLaterAreAdded() {
+        OperationMetrics metrics = new OperationMetrics("repository.users.streamAll");
+        metrics.record(1_000, 0, false);
+
+        metrics.recordRows(5_000);
+
+        assertEquals(5_000.0, metrics.snapshot().getRowsPerCall(), 1e-9);
+        assertEquals(5_000, metrics.snapshot().getMaxRows());
+    }
+
+    @Test
+    void resetClearsEveryCounter() {
+        OperationMetrics metrics = new OperationMetrics("service.addUser");
+        metrics.record(1_000, 3, true);
+
+        metrics.reset();
+
+        OperationSnapshot snapshot = metrics.snapshot();
+        assertEquals(0, snapshot.getCalls());
+        assertEquals(0, snapshot.getErrors());
+        assertEquals(0.0, snapshot.getMaxMillis());
+        assertEquals(0.0, snapshot.getRowsPerCall());
+        assertEquals(0, snapshot.getMaxRows());
+    }
+}
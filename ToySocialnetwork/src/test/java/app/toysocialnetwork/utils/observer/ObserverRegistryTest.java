@@ -0,0 +1,118 @@
+package app.toysocialnetwork.utils.observer;
+
+import app.toysocialnetwork.utils.event.Event;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ObserverRegistryTest {
+    private record Ping(int number) implements Event {
+    }
+
+    /**
+     * Keeps the numbers of the pings it was sent
+     */
+    private static class Recorder implements Observer<Ping> {
+        final List<Integer> received = new ArrayList<>();
+
+        @Override
+        public void update(Ping event) {
+            received.add(event.number());
+        }
+    }
+
+    private final ObserverRegistry<Ping> registry = new ObserverRegistry<>();
+    // held here, since the registry only holds its observers weakly
+    private Observer<Ping> subscriber;
+
+    /**
+     * Collect garbage until the registry is down to the expected size, or give up after a while
+     */
+    private void awaitSize(int expected) throws InterruptedException {
+        for (int attempt = 0; attempt < 100 && registry.size() != expected; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(expected, registry.size());
+    }
+
+    @Test
+    void everySubscribedObserverIsNotified() {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        registry.subscribe(first);
+        registry.subscribe(second);
+
+        assertEquals(2, registry.notify(new Ping(1)));
+
+        assertEquals(List.of(1), first.received);
+        assertEquals(List.of(1), second.received);
+    }
+
+    @Test
+    void cancellingASubscriptionRemovesOnlyItsObserver() {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        Subscription subscription = registry.subscribe(first);
+        registry.subscribe(second);
+
+        subscription.unsubscribe();
+        subscription.unsubscribe();
+        registry.notify(new Ping(2));
+
+        assertEquals(List.of(), first.received);
+        assertEquals(List.of(2), second.received);
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void unsubscribeRemovesEverySubscriptionOfTheObserver() {
+        Recorder recorder = new Recorder();
+        registry.subscribe(recorder);
+        registry.subscribe(recorder);
+
+        registry.unsubscribe(recorder);
+
+        assertEquals(0, registry.notify(new Ping(3)));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void collectedObserversAreDropped() throws InterruptedException {
+        Recorder kept = new Recorder();
+        registry.subscribe(kept);
+        for (int i = 0; i < 10; i++) {
+            registry.subscribe(new Recorder());
+        }
+
+        awaitSize(1);
+
+        assertEquals(1, registry.notify(new Ping(4)));
+        assertEquals(List.of(4), kept.received);
+    }
+
+    @Test
+    void theSubscriptionOfACollectedObserverCanStillBeCancelled() throws InterruptedException {
+        Subscription subscription = registry.subscribe(new Recorder());
+        awaitSize(0);
+
+        subscription.unsubscribe();
+
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void anObserverSubscribedDuringANotificationGetsTheNextEvent() {
+        Recorder late = new Recorder();
+        subscriber = event -> registry.subscribe(late);
+        registry.subscribe(subscriber);
+
+        registry.notify(new Ping(5));
+        registry.notify(new Ping(6));
+
+        assertEquals(List.of(6), late.received);
+    }
+}